@@ -0,0 +1,69 @@
+package com.arwka.openapiedu.benchmarks;
+
+import com.arwka.openapiedu.config.CachingAuthenticationProvider;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+
+/**
+ * Authentication of repeated HTTP Basic credentials, configured like
+ * {@code SecurityConfiguration}: BCrypt with default strength, with and without the cache
+ * of verified credentials.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthenticationBenchmark {
+
+  private static final String USERNAME = "admin";
+  private static final String PASSWORD = "admin1";
+
+  @Param({"off", "on"})
+  private String cache;
+
+  private AuthenticationProvider provider;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    BCryptPasswordEncoder encoder = new BCryptPasswordEncoder();
+    InMemoryUserDetailsManager users = new InMemoryUserDetailsManager(User
+        .withUsername(USERNAME)
+        .password(encoder.encode(PASSWORD))
+        .roles("ADMIN")
+        .build());
+
+    DaoAuthenticationProvider dao = new DaoAuthenticationProvider();
+    dao.setUserDetailsService(users);
+    dao.setPasswordEncoder(encoder);
+    provider = "off".equals(cache)
+        ? dao
+        : new CachingAuthenticationProvider(dao, users, Duration.ofMinutes(5), 10_000);
+  }
+
+  @Benchmark
+  public Authentication authenticate() {
+    return provider.authenticate(new UsernamePasswordAuthenticationToken(USERNAME, PASSWORD));
+  }
+
+}
@@ -0,0 +1,113 @@
+package com.arwka.openapiedu.benchmarks;
+
+import com.arwka.openapiedu.persistent.repository.OrdersRepository;
+import com.arwka.openapiedu.persistent.repository.impl.ColumnarOrdersRepository;
+import com.arwka.openapiedu.persistent.repository.impl.OrdersRepositoryImpl;
+import com.arwka.openapiedu.service.OrdersService;
+import com.arwka.openapiedu.service.csv.OrdersCsvImporter;
+import com.arwka.openapiedu.service.metrics.OrdersMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import org.openapitools.model.Order;
+import org.openapitools.model.StatusEnum;
+
+/**
+ * Orders and stores shared by benchmarks. Orders are the same in every run, so results of
+ * different runs and stores are comparable.
+ */
+final class BenchmarkOrders {
+
+  static final String MAP = "map";
+  static final String COLUMNAR = "columnar";
+
+  /**
+   * Orders are spread over this many days starting from {@link #START}.
+   */
+  static final int DAYS = 365;
+
+  static final OffsetDateTime START = OffsetDateTime.of(2022, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+  private static final StatusEnum[] STATUSES = StatusEnum.values();
+  private static final int INSERT_BATCH = 10_000;
+
+  private BenchmarkOrders() {
+  }
+
+  /**
+   * Empty store without journal.
+   *
+   * @param store - {@link #MAP} or {@link #COLUMNAR}
+   * @return OrdersRepository
+   */
+  static OrdersRepository store(String store) {
+    switch (store) {
+      case MAP:
+        return new OrdersRepositoryImpl();
+      case COLUMNAR:
+        return new ColumnarOrdersRepository();
+      default:
+        throw new IllegalArgumentException("Unknown store: " + store);
+    }
+  }
+
+  /**
+   * Insert orders with ids from 1 to count.
+   *
+   * @param repository - empty store
+   * @param count      - count of orders
+   * @return the same repository
+   */
+  static OrdersRepository fill(OrdersRepository repository, int count) {
+    List<Order> batch = new ArrayList<>(INSERT_BATCH);
+    for (long id = 1; id <= count; id++) {
+      batch.add(order(id));
+      if (batch.size() == INSERT_BATCH) {
+        repository.insertAll(batch);
+        batch.clear();
+      }
+    }
+    repository.insertAll(batch);
+    return repository;
+  }
+
+  /**
+   * Service over repository for queries and export.
+   *
+   * @param repository - store
+   * @return OrdersService without import, changes and statistics
+   */
+  static OrdersService service(OrdersRepository repository) {
+    return service(repository, null);
+  }
+
+  static OrdersService service(OrdersRepository repository, OrdersCsvImporter importer) {
+    return new OrdersService(repository, null, importer, null, null, null, metrics(),
+        null, null);
+  }
+
+  static OrdersMetrics metrics() {
+    return new OrdersMetrics(new SimpleMeterRegistry());
+  }
+
+  static List<Order> orders(int count) {
+    List<Order> orders = new ArrayList<>(count);
+    for (long id = 1; id <= count; id++) {
+      orders.add(order(id));
+    }
+    return orders;
+  }
+
+  static Order order(long id) {
+    long mixed = id * 0x9E3779B97F4A7C15L;
+    return new Order()
+        .id(id)
+        .productId(Math.floorMod(mixed >>> 16, 1000L) + 1)
+        .quantity(Math.floorMod(mixed >>> 8, 20L) + 1)
+        .date(START.plusSeconds(Math.floorMod(mixed >>> 24, DAYS * 86_400L)))
+        .status(STATUSES[(int) Math.floorMod(mixed >>> 40, (long) STATUSES.length)]);
+  }
+
+}
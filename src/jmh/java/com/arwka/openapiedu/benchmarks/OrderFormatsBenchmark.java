@@ -0,0 +1,105 @@
+package com.arwka.openapiedu.benchmarks;
+
+import com.arwka.openapiedu.ui.controller.OrderSequenceWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openapitools.model.Order;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Formats of {@code GET /orders}: JSON array, NDJSON and Smile array, written by
+ * {@link OrderSequenceWriter} the way responses are. Bytes go to a counting sink, so the
+ * result is the cost of serialization. Orders and bytes per second are reported as secondary
+ * results, their ratio is the size of an order on the wire.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderFormatsBenchmark {
+
+  @Param({"json", "ndjson", "smile"})
+  private String format;
+
+  @Param({"10000", "100000"})
+  private int size;
+
+  private ObjectMapper objectMapper;
+  private List<Order> orders;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+    if ("smile".equals(format)) {
+      builder.factory(new SmileFactory());
+    }
+    objectMapper = builder.build();
+    orders = BenchmarkOrders.orders(size);
+  }
+
+  @Benchmark
+  public long write(Throughput throughput) throws IOException {
+    CountingOutputStream output = new CountingOutputStream();
+    try (OrderSequenceWriter writer =
+             new OrderSequenceWriter(objectMapper, "ndjson".equals(format), output)) {
+      for (Order order : orders) {
+        writer.write(order);
+      }
+    }
+    throughput.orders += size;
+    throughput.bytes += output.count;
+    return output.count;
+  }
+
+  /**
+   * Orders and bytes written per second.
+   */
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Throughput {
+
+    public long orders;
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      orders = 0;
+      bytes = 0;
+    }
+  }
+
+  private static final class CountingOutputStream extends OutputStream {
+
+    private long count;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+  }
+
+}
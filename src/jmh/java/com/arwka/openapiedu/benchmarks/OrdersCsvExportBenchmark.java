@@ -0,0 +1,88 @@
+package com.arwka.openapiedu.benchmarks;
+
+import com.arwka.openapiedu.service.OrdersService;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Export of the whole store by {@link OrdersService#writeOrdersInCsv}, the way
+ * {@code GET /orders/csv} writes it. Bytes go to a counting sink, so the result is the cost
+ * of reading and formatting, rows and bytes per second are reported as secondary results.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrdersCsvExportBenchmark {
+
+  @Param({BenchmarkOrders.MAP, BenchmarkOrders.COLUMNAR})
+  private String store;
+
+  @Param({"100000", "1000000"})
+  private int size;
+
+  private OrdersService ordersService;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    ordersService =
+        BenchmarkOrders.service(BenchmarkOrders.fill(BenchmarkOrders.store(store), size));
+  }
+
+  @Benchmark
+  public long export(Throughput throughput) {
+    CountingOutputStream output = new CountingOutputStream();
+    ordersService.writeOrdersInCsv(output);
+    throughput.rows += size;
+    throughput.bytes += output.count;
+    return output.count;
+  }
+
+  /**
+   * Rows and bytes written per second.
+   */
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Throughput {
+
+    public long rows;
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      rows = 0;
+      bytes = 0;
+    }
+  }
+
+  private static final class CountingOutputStream extends OutputStream {
+
+    private long count;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+  }
+
+}
@@ -0,0 +1,102 @@
+package com.arwka.openapiedu.benchmarks;
+
+import com.arwka.openapiedu.persistent.repository.OrdersRepository;
+import com.arwka.openapiedu.service.OrdersService;
+import com.arwka.openapiedu.service.csv.OrdersCsvImporter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openapitools.model.ImportSummary;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Import of a .csv file into an empty store by {@link OrdersService#addOrdersFromCsv}, the
+ * way {@code POST /orders/csv} reads it, with parsing on the calling thread and on workers.
+ *
+ * <p>Every invocation imports the whole file into a new store, so it runs long enough for
+ * per-invocation setup not to matter.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrdersCsvImportBenchmark {
+
+  @Param({BenchmarkOrders.MAP, BenchmarkOrders.COLUMNAR})
+  private String store;
+
+  @Param({"1000000"})
+  private int size;
+
+  @Param({"1", "4"})
+  private int parallelism;
+
+  @Param({"1000"})
+  private int batchSize;
+
+  private byte[] csv;
+  private OrdersCsvImporter importer;
+  private OrdersService ordersService;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    BenchmarkOrders.service(BenchmarkOrders.fill(BenchmarkOrders.store(store), size))
+        .writeOrdersInCsv(output);
+    csv = output.toByteArray();
+  }
+
+  @Setup(Level.Invocation)
+  public void newStore() {
+    OrdersRepository repository = BenchmarkOrders.store(store);
+    importer = new OrdersCsvImporter(repository, BenchmarkOrders.metrics(), batchSize, 100,
+        parallelism, 1024 * 1024);
+    ordersService = BenchmarkOrders.service(repository, importer);
+  }
+
+  @TearDown(Level.Invocation)
+  public void shutdown() {
+    importer.shutdown();
+  }
+
+  @Benchmark
+  public ImportSummary importCsv(Throughput throughput) {
+    ImportSummary summary = ordersService.addOrdersFromCsv(new ByteArrayInputStream(csv));
+    throughput.rows += size;
+    throughput.bytes += csv.length;
+    return summary;
+  }
+
+  /**
+   * Rows and bytes read per second.
+   */
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Throughput {
+
+    public long rows;
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      rows = 0;
+      bytes = 0;
+    }
+  }
+
+}
@@ -0,0 +1,60 @@
+package com.arwka.openapiedu.benchmarks;
+
+import com.arwka.openapiedu.persistent.repository.OrdersRepository;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Retained heap per order of the map and the columnar store.
+ *
+ * <p>Fills every store with {@code orders} orders of {@link BenchmarkOrders} and measures the
+ * used heap after full GCs before and after, in a fresh JVM. Prints a JSON line with bytes per
+ * order of every store, columnar one should take less than half of the map one.
+ *
+ * <p>Arguments are {@code name=value}, e.g.
+ * {@code mvn -Pbenchmarks -DskipTests test -Dbenchmark.main=...OrdersFootprintRunner
+ * -Djmh.args="orders=1000000"}.
+ */
+public final class OrdersFootprintRunner {
+
+  private static final int GC_RUNS = 3;
+
+  private OrdersFootprintRunner() {
+  }
+
+  public static void main(String[] args) {
+    int orders = 200_000;
+    for (String arg : args) {
+      if (arg.startsWith("orders=")) {
+        orders = Integer.parseInt(arg.substring("orders=".length()));
+      }
+    }
+
+    Map<String, Long> bytesPerOrder = new LinkedHashMap<>();
+    for (String store : new String[] {BenchmarkOrders.MAP, BenchmarkOrders.COLUMNAR}) {
+      long before = usedHeap();
+      OrdersRepository repository = BenchmarkOrders.fill(BenchmarkOrders.store(store), orders);
+      long after = usedHeap();
+      if (repository.count() != orders) {
+        throw new IllegalStateException("Store " + store + " lost orders.");
+      }
+      bytesPerOrder.put(store, (after - before) / orders);
+    }
+
+    System.out.printf(Locale.ROOT, "{\"orders\":%d,\"bytesPerOrder\":{%s}}%n", orders,
+        bytesPerOrder.entrySet().stream()
+            .map(entry -> "\"" + entry.getKey() + "\":" + entry.getValue())
+            .collect(Collectors.joining(",")));
+  }
+
+  private static long usedHeap() {
+    for (int i = 0; i < GC_RUNS; i++) {
+      System.gc();
+    }
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+}
@@ -0,0 +1,81 @@
+package com.arwka.openapiedu.benchmarks;
+
+import com.arwka.openapiedu.persistent.journal.FsyncPolicy;
+import com.arwka.openapiedu.persistent.journal.OrdersJournal;
+import com.arwka.openapiedu.persistent.repository.OrdersRepository;
+import com.arwka.openapiedu.persistent.repository.impl.OrdersRepositoryImpl;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openapitools.model.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of a journaled save for every fsync policy, percentiles are in the sample results.
+ *
+ * <p>The journal is written to {@code java.io.tmpdir}, point it to the device under test
+ * with {@code -jvmArgsAppend -Djava.io.tmpdir=...}.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class OrdersJournalBenchmark {
+
+  @Param({"ALWAYS", "BATCHED", "INTERVAL"})
+  private FsyncPolicy fsync;
+
+  @Param({"100000"})
+  private int size;
+
+  private Path directory;
+  private OrdersJournal journal;
+  private OrdersRepository repository;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("orders-journal-benchmark");
+    journal = new OrdersJournal(directory, fsync, 256, Duration.ofMillis(100),
+        Duration.ofHours(1));
+    OrdersRepositoryImpl store = new OrdersRepositoryImpl(Optional.of(journal));
+    store.init();
+    repository = store;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException, InterruptedException {
+    journal.close();
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public Order save() {
+    return repository.save(
+        BenchmarkOrders.order(ThreadLocalRandom.current().nextInt(size) + 1L));
+  }
+
+}
@@ -0,0 +1,307 @@
+package com.arwka.openapiedu.benchmarks;
+
+import com.arwka.openapiedu.W5RestapiApplication;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Latency of small order calls while many large .csv transfers run at once, with requests
+ * handled on platform or virtual threads.
+ *
+ * <p>Starts the application on a random port, imports {@code orders} orders and measures
+ * {@code GET /orders/stats} and {@code PATCH /orders/{id}} of {@code callers} clients twice:
+ * alone and next to {@code uploads} .csv imports and {@code downloads} .csv exports.
+ * Every transfer moves {@code rate} bytes per second, so transfers hold server threads for
+ * a long time while using little CPU. Prints a JSON line with percentiles in milliseconds.
+ *
+ * <p>Arguments are {@code name=value}, e.g.
+ * {@code mvn -Pbenchmarks -DskipTests test -Dbenchmark.main=...OrdersLoadRunner
+ * -Djmh.args="threads=virtual uploads=300"}. Virtual threads need JDK 21.
+ */
+public final class OrdersLoadRunner {
+
+  private static final String AUTHORIZATION = "Basic " + Base64.getEncoder()
+      .encodeToString("admin:admin1".getBytes(StandardCharsets.UTF_8));
+  private static final int UPLOAD_ROWS = 5_000;
+  private static final long TICK_MILLIS = 100;
+
+  private final Map<String, String> options;
+  private final HttpClient client = HttpClient.newBuilder()
+      .connectTimeout(Duration.ofSeconds(10))
+      .build();
+  private final AtomicLong transferred = new AtomicLong();
+  private final AtomicLong transferErrors = new AtomicLong();
+  private volatile boolean loaded = true;
+  private String base;
+
+  private OrdersLoadRunner(Map<String, String> options) {
+    this.options = options;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      int separator = arg.indexOf('=');
+      if (separator > 0) {
+        options.put(arg.substring(0, separator), arg.substring(separator + 1));
+      }
+    }
+    new OrdersLoadRunner(options).run();
+  }
+
+  private void run() throws Exception {
+    String threads = option("threads", "platform");
+    int orders = intOption("orders", 100_000);
+    int uploads = intOption("uploads", 300);
+    int downloads = intOption("downloads", 100);
+    int callers = intOption("callers", 4);
+    int seconds = intOption("seconds", 30);
+
+    try (ConfigurableApplicationContext context =
+             new SpringApplicationBuilder(W5RestapiApplication.class)
+                 .properties(
+                     "server.port=0",
+                     "management.server.port=-1",
+                     "logging.level.root=error",
+                     "orders.virtual-threads.enabled=" + "virtual".equals(threads))
+                 .run()) {
+      base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+      send(HttpRequest.newBuilder(URI.create(base + "/orders"))
+          .header("Content-Type", "text/csv")
+          .POST(HttpRequest.BodyPublishers.ofByteArray(csv(orders))), orders);
+
+      String idle = measure(callers, orders, seconds / 3);
+
+      byte[] upload = csv(UPLOAD_ROWS);
+      List<Thread> transfers = new ArrayList<>();
+      for (int i = 0; i < uploads + downloads; i++) {
+        Runnable transfer = i < uploads ? () -> uploads(upload) : this::downloads;
+        Thread thread = new Thread(transfer, "transfer-" + i);
+        thread.setDaemon(true);
+        thread.start();
+        transfers.add(thread);
+      }
+      // let transfers occupy the server before measuring
+      Thread.sleep(5_000);
+      long transferredBefore = transferred.get();
+      String busy = measure(callers, orders, seconds);
+      long bytes = transferred.get() - transferredBefore;
+      loaded = false;
+      for (Thread thread : transfers) {
+        thread.join(10_000);
+      }
+
+      System.out.printf(Locale.ROOT, "{\"threads\":\"%s\",\"uploads\":%d,\"downloads\":%d,"
+              + "\"transferredBytesPerSecond\":%d,\"transferErrors\":%d,"
+              + "\"idle\":%s,\"loaded\":%s}%n",
+          threads, uploads, downloads, bytes / seconds, transferErrors.get(), idle, busy);
+    }
+  }
+
+  /**
+   * Get statistics and patch random orders from several clients and summarize latencies.
+   */
+  private String measure(int callers, int orders, int seconds) throws InterruptedException {
+    long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+    long[][] latencies = new long[callers][];
+    AtomicLong errors = new AtomicLong();
+    Thread[] threads = new Thread[callers];
+    for (int i = 0; i < callers; i++) {
+      int caller = i;
+      threads[i] = new Thread(() -> latencies[caller] = call(orders, deadline, errors));
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    return summary(latencies, errors.get());
+  }
+
+  private long[] call(int orders, long deadline, AtomicLong errors) {
+    long[] latencies = new long[1024];
+    int count = 0;
+    while (System.nanoTime() - deadline < 0) {
+      HttpRequest request = count % 2 == 0
+          ? HttpRequest.newBuilder(URI.create(base + "/orders/stats"))
+              .header("Authorization", AUTHORIZATION)
+              .timeout(Duration.ofSeconds(30))
+              .build()
+          : HttpRequest.newBuilder(URI.create(base + "/orders/"
+                  + (ThreadLocalRandom.current().nextInt(orders) + 1)))
+              .header("Authorization", AUTHORIZATION)
+              .header("Content-Type", "application/json")
+              .timeout(Duration.ofSeconds(30))
+              .method("PATCH", HttpRequest.BodyPublishers.ofString(
+                  "{\"quantity\":" + (ThreadLocalRandom.current().nextInt(100) + 1) + "}"))
+              .build();
+      long start = System.nanoTime();
+      try {
+        HttpResponse<Void> response =
+            client.send(request, HttpResponse.BodyHandlers.discarding());
+        // orders which can't be changed any more answer 409, that's a quick answer too
+        if (response.statusCode() >= 500) {
+          errors.incrementAndGet();
+        }
+      } catch (IOException e) {
+        errors.incrementAndGet();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+      if (count == latencies.length) {
+        latencies = Arrays.copyOf(latencies, count * 2);
+      }
+      latencies[count++] = System.nanoTime() - start;
+      sleep(10);
+    }
+    return Arrays.copyOf(latencies, count);
+  }
+
+  /**
+   * Export orders again and again, reading {@code rate} bytes per second.
+   */
+  private void downloads() {
+    int chunk = chunk();
+    byte[] buffer = new byte[chunk];
+    while (loaded) {
+      HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/orders"))
+          .header("Content-Type", "text/csv")
+          .build();
+      try (InputStream body =
+               client.send(request, HttpResponse.BodyHandlers.ofInputStream()).body()) {
+        int read;
+        while (loaded && (read = body.readNBytes(buffer, 0, chunk)) > 0) {
+          transferred.addAndGet(read);
+          sleep(TICK_MILLIS);
+        }
+      } catch (IOException e) {
+        transferErrors.incrementAndGet();
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Import the same rows again and again, sending {@code rate} bytes per second.
+   */
+  private void uploads(byte[] csv) {
+    while (loaded) {
+      HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/orders"))
+          .header("Content-Type", "text/csv")
+          .POST(HttpRequest.BodyPublishers.ofInputStream(() -> new Throttled(csv, chunk())))
+          .build();
+      try {
+        client.send(request, HttpResponse.BodyHandlers.discarding());
+      } catch (IOException e) {
+        transferErrors.incrementAndGet();
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  private void send(HttpRequest.Builder request, int orders) throws Exception {
+    HttpResponse<String> response = client.send(request.build(),
+        HttpResponse.BodyHandlers.ofString());
+    if (response.statusCode() != 201) {
+      throw new IllegalStateException("Can't import " + orders + " orders: "
+          + response.statusCode() + " " + response.body());
+    }
+  }
+
+  private int chunk() {
+    return (int) Math.max(1, intOption("rate", 8192) * TICK_MILLIS / 1000);
+  }
+
+  private static byte[] csv(int orders) {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    BenchmarkOrders.service(BenchmarkOrders.fill(BenchmarkOrders.store(BenchmarkOrders.MAP),
+        orders)).writeOrdersInCsv(output);
+    return output.toByteArray();
+  }
+
+  private static String summary(long[][] latencies, long errors) {
+    long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+    return String.format(Locale.ROOT,
+        "{\"calls\":%d,\"errors\":%d,\"p50\":%.2f,\"p99\":%.2f,\"max\":%.2f}",
+        all.length, errors, millis(all, 0.50), millis(all, 0.99), millis(all, 1.0));
+  }
+
+  private static double millis(long[] sorted, double quantile) {
+    if (sorted.length == 0) {
+      return Double.NaN;
+    }
+    int index = (int) Math.ceil(quantile * sorted.length) - 1;
+    return sorted[Math.max(0, index)] / 1e6;
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private String option(String name, String defaultValue) {
+    return options.getOrDefault(name, defaultValue);
+  }
+
+  private int intOption(String name, int defaultValue) {
+    return Integer.parseInt(option(name, Integer.toString(defaultValue)));
+  }
+
+  /**
+   * Body of upload which gives out one chunk per tick and ends early when load stops.
+   */
+  private final class Throttled extends InputStream {
+
+    private final byte[] data;
+    private final int chunk;
+    private int position;
+
+    private Throttled(byte[] data, int chunk) {
+      this.data = data;
+      this.chunk = chunk;
+    }
+
+    @Override
+    public int read() {
+      byte[] one = new byte[1];
+      return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+      if (position == data.length || !loaded) {
+        return -1;
+      }
+      sleep(TICK_MILLIS);
+      int count = Math.min(Math.min(length, chunk), data.length - position);
+      System.arraycopy(data, position, buffer, offset, count);
+      position += count;
+      transferred.addAndGet(count);
+      return count;
+    }
+  }
+
+}
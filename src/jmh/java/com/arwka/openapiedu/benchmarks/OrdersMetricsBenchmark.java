@@ -0,0 +1,113 @@
+package com.arwka.openapiedu.benchmarks;
+
+import com.arwka.openapiedu.persistent.repository.OrderIdGenerator;
+import com.arwka.openapiedu.persistent.repository.OrdersRepository;
+import com.arwka.openapiedu.service.OrdersPage;
+import com.arwka.openapiedu.service.OrdersService;
+import com.arwka.openapiedu.service.metrics.OrdersMeterBinder;
+import com.arwka.openapiedu.service.metrics.OrdersMetrics;
+import com.arwka.openapiedu.service.stats.OrderStatistics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openapitools.model.EditedOrder;
+import org.openapitools.model.NewOrder;
+import org.openapitools.model.Order;
+import org.openapitools.model.OrderSortField;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of instrumentation on hot paths: service calls timed like {@code http.server.requests}
+ * with its latency histogram, with meters of the service bound to a Prometheus registry.
+ * With {@code off} the registry has no backends and every meter is a no-op.
+ *
+ * <p>Service calls here take well under a microsecond, a request over HTTP takes tens of
+ * them, so {@code timer} alone tells the cost added to every request.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class OrdersMetricsBenchmark {
+
+  private static final NewOrder NEW_ORDER = new NewOrder().productId(1L).quantity(1L);
+  private static final Runnable NOTHING = () -> {
+  };
+
+  @Param({"off", "prometheus"})
+  private String metrics;
+
+  @Param({"100000"})
+  private int size;
+
+  private OrdersService ordersService;
+  private Timer requests;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    MeterRegistry registry = "off".equals(metrics)
+        ? new CompositeMeterRegistry()
+        : new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+
+    OrdersRepository repository =
+        BenchmarkOrders.fill(BenchmarkOrders.store(BenchmarkOrders.MAP), size);
+    OrderIdGenerator generator = new OrderIdGenerator(repository, 64);
+    OrderStatistics statistics = new OrderStatistics(repository);
+    statistics.init();
+    new OrdersMeterBinder(repository, statistics, generator).bindTo(registry);
+    ordersService = new OrdersService(repository, generator, null, null, null, statistics,
+        new OrdersMetrics(registry), null, null);
+
+    requests = Timer.builder("http.server.requests")
+        .tag("operation", "benchmark")
+        .publishPercentileHistogram()
+        .minimumExpectedValue(Duration.ofMillis(1))
+        .maximumExpectedValue(Duration.ofSeconds(30))
+        .register(registry);
+  }
+
+  @Benchmark
+  public void timer() {
+    requests.record(NOTHING);
+  }
+
+  @Benchmark
+  public Order patch() {
+    String id = Long.toString(ThreadLocalRandom.current().nextInt(size) + 1L);
+    EditedOrder changes = new EditedOrder().quantity(ThreadLocalRandom.current().nextLong(100));
+    return requests.record(() -> ordersService.patchOrder(id, changes, null));
+  }
+
+  @Benchmark
+  public OrdersPage page() {
+    return requests.record(
+        () -> ordersService.getOrdersPage(null, null, null, null, 10, OrderSortField.ID));
+  }
+
+  @Benchmark
+  public void createAndDelete() {
+    Order order = requests.record(() -> ordersService.createNewOrder(NEW_ORDER));
+    requests.record(() -> ordersService.deleteOrder(order.getId().toString()));
+  }
+
+}
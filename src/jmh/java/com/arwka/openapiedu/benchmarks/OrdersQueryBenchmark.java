@@ -0,0 +1,84 @@
+package com.arwka.openapiedu.benchmarks;
+
+import com.arwka.openapiedu.persistent.repository.OrdersRepository;
+import com.arwka.openapiedu.service.OrdersPage;
+import com.arwka.openapiedu.service.OrdersService;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openapitools.model.Order;
+import org.openapitools.model.OrderSortField;
+import org.openapitools.model.StatusEnum;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Queries of {@link OrdersService#getOrders} and friends at growing store sizes.
+ *
+ * <p>10M orders need a big heap, so they are opt-in:
+ * {@code -Dbenchmark.heap=24g -Djmh.args="OrdersQueryBenchmark -p size=10000000"}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrdersQueryBenchmark {
+
+  private static final int PAGE_SIZE = 100;
+
+  @Param({BenchmarkOrders.MAP, BenchmarkOrders.COLUMNAR})
+  private String store;
+
+  @Param({"10000", "1000000"})
+  private int size;
+
+  private OrdersService ordersService;
+  private OffsetDateTime dayFrom;
+  private OffsetDateTime dayTo;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    OrdersRepository repository = BenchmarkOrders.fill(BenchmarkOrders.store(store), size);
+    ordersService = BenchmarkOrders.service(repository);
+    dayFrom = BenchmarkOrders.START.plusDays(BenchmarkOrders.DAYS / 2);
+    dayTo = dayFrom.plusDays(1).minusNanos(1);
+  }
+
+  @Benchmark
+  public List<Order> all() {
+    return ordersService.getOrdersWithoutParams();
+  }
+
+  @Benchmark
+  public List<Order> byStatus() {
+    return ordersService.getOrders(StatusEnum.DELIVERED, null, null);
+  }
+
+  @Benchmark
+  public List<Order> byDay() {
+    return ordersService.getOrders(null, dayFrom, dayTo);
+  }
+
+  @Benchmark
+  public List<Order> byStatusAndDay() {
+    return ordersService.getOrders(StatusEnum.DELIVERED, dayFrom, dayTo);
+  }
+
+  @Benchmark
+  public OrdersPage firstPageByDate() {
+    return ordersService.getOrdersPage(null, null, null, null, PAGE_SIZE, OrderSortField.DATE);
+  }
+
+}
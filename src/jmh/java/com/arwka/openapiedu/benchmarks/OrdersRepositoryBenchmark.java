@@ -0,0 +1,105 @@
+package com.arwka.openapiedu.benchmarks;
+
+import com.arwka.openapiedu.persistent.repository.OrdersRepository;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openapitools.model.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Point reads and writes of both stores under contention.
+ *
+ * <p>Plain benchmarks run on 8 threads, scaling is measured by overriding it with
+ * {@code -t 1,2,4,8,16}. The {@code mixed} group runs 6 readers against 2 writers of random
+ * orders, {@code hot} runs the same mix against 16 orders to show contention on one lock.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrdersRepositoryBenchmark {
+
+  private static final int HOT_ORDERS = 16;
+
+  @Param({BenchmarkOrders.MAP, BenchmarkOrders.COLUMNAR})
+  private String store;
+
+  @Param({"100000"})
+  private int size;
+
+  private OrdersRepository repository;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    repository = BenchmarkOrders.fill(BenchmarkOrders.store(store), size);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public Optional<Order> get() {
+    return repository.findById(randomId(size));
+  }
+
+  @Benchmark
+  @Threads(8)
+  public Order save() {
+    return repository.save(BenchmarkOrders.order(randomId(size)));
+  }
+
+  @Benchmark
+  @Threads(8)
+  public Optional<Order> update() {
+    return repository.update(randomId(size), order -> order.setQuantity(order.getQuantity() + 1));
+  }
+
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(6)
+  public Optional<Order> mixedGet() {
+    return repository.findById(randomId(size));
+  }
+
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(2)
+  public Optional<Order> mixedUpdate() {
+    return repository.update(randomId(size), order -> order.setQuantity(order.getQuantity() + 1));
+  }
+
+  @Benchmark
+  @Group("hot")
+  @GroupThreads(6)
+  public Optional<Order> hotGet() {
+    return repository.findById(randomId(HOT_ORDERS));
+  }
+
+  @Benchmark
+  @Group("hot")
+  @GroupThreads(2)
+  public Optional<Order> hotUpdate() {
+    return repository.update(randomId(HOT_ORDERS),
+        order -> order.setQuantity(order.getQuantity() + 1));
+  }
+
+  private static long randomId(int bound) {
+    return ThreadLocalRandom.current().nextInt(bound) + 1L;
+  }
+
+}
@@ -0,0 +1,68 @@
+package com.arwka.openapiedu.benchmarks;
+
+import com.arwka.openapiedu.persistent.repository.OrderFilter;
+import com.arwka.openapiedu.persistent.repository.OrdersRepository;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openapitools.model.Order;
+import org.openapitools.model.StatusEnum;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full scans of the map and columnar stores. Orders of the columnar store are decoded from
+ * its columns on the way, orders of the map store are read as they are.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrdersScanBenchmark {
+
+  @Param({BenchmarkOrders.MAP, BenchmarkOrders.COLUMNAR})
+  private String store;
+
+  @Param({"1000000"})
+  private int size;
+
+  private OrdersRepository repository;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    repository = BenchmarkOrders.fill(BenchmarkOrders.store(store), size);
+  }
+
+  @Benchmark
+  public long sumQuantity() {
+    long sum = 0;
+    Iterator<Order> orders = repository.stream().iterator();
+    while (orders.hasNext()) {
+      sum += orders.next().getQuantity();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public List<Order> findAll() {
+    return repository.findAll();
+  }
+
+  @Benchmark
+  public List<Order> findByStatus() {
+    return repository.findAll(new OrderFilter(StatusEnum.APPROVED, null, null));
+  }
+
+}
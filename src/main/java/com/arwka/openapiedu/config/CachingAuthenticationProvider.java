@@ -0,0 +1,175 @@
+package com.arwka.openapiedu.config;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+/**
+ * Remembers verified username and password pairs for a while, so repeated HTTP Basic
+ * requests don't run the password encoder (BCrypt takes tens of milliseconds) every time.
+ *
+ * <p>Only successful authentications are remembered, so guessing passwords costs the same
+ * as without the cache. Entries are keyed by HMAC-SHA256 of the credentials with a random
+ * key of this process: neither passwords nor anything to guess them offline are kept in
+ * memory. A remembered entry is used only while the user still exists with the same encoded
+ * password and a usable account, so changing the password or locking the user takes effect
+ * on the next request, not after the entry expires.
+ */
+public class CachingAuthenticationProvider implements AuthenticationProvider {
+
+  private static final String HMAC = "HmacSHA256";
+
+  private final AuthenticationProvider delegate;
+  private final UserDetailsService userDetailsService;
+  private final long ttlNanos;
+  private final int maxSize;
+  private final LongSupplier clock;
+  private final SecretKeySpec key;
+  private final Map<ByteBuffer, Verified> verified = new ConcurrentHashMap<>();
+
+  /**
+   * Create provider.
+   *
+   * @param delegate           - provider which verifies credentials with the password encoder
+   * @param userDetailsService - users of delegate
+   * @param ttl                - time a verified pair is remembered
+   * @param maxSize            - max count of remembered pairs
+   */
+  public CachingAuthenticationProvider(AuthenticationProvider delegate,
+                                       UserDetailsService userDetailsService,
+                                       Duration ttl, int maxSize) {
+    this(delegate, userDetailsService, ttl, maxSize, System::nanoTime);
+  }
+
+  CachingAuthenticationProvider(AuthenticationProvider delegate,
+                                UserDetailsService userDetailsService,
+                                Duration ttl, int maxSize, LongSupplier clock) {
+    this.delegate = delegate;
+    this.userDetailsService = userDetailsService;
+    this.ttlNanos = ttl.toNanos();
+    this.maxSize = maxSize;
+    this.clock = clock;
+
+    byte[] secret = new byte[32];
+    new SecureRandom().nextBytes(secret);
+    this.key = new SecretKeySpec(secret, HMAC);
+  }
+
+  @Override
+  public Authentication authenticate(Authentication authentication)
+      throws AuthenticationException {
+    if (!(authentication.getCredentials() instanceof String)) {
+      return delegate.authenticate(authentication);
+    }
+
+    String username = authentication.getName();
+    ByteBuffer digest = digest(username, (String) authentication.getCredentials());
+    long now = clock.getAsLong();
+    Verified entry = verified.get(digest);
+    if (entry != null) {
+      if (now - entry.expiresAt < 0 && isUnchanged(username, entry)) {
+        UsernamePasswordAuthenticationToken result = new UsernamePasswordAuthenticationToken(
+            entry.principal, null, entry.principal.getAuthorities());
+        result.setDetails(authentication.getDetails());
+        return result;
+      }
+      verified.remove(digest, entry);
+    }
+
+    Authentication result = delegate.authenticate(authentication);
+    if (result != null && result.isAuthenticated()
+        && result.getPrincipal() instanceof UserDetails) {
+      remember(digest, (UserDetails) result.getPrincipal(), now);
+    }
+    return result;
+  }
+
+  @Override
+  public boolean supports(Class<?> authentication) {
+    return delegate.supports(authentication);
+  }
+
+  int size() {
+    return verified.size();
+  }
+
+  private boolean isUnchanged(String username, Verified entry) {
+    UserDetails user;
+    try {
+      user = userDetailsService.loadUserByUsername(username);
+    } catch (UsernameNotFoundException e) {
+      return false;
+    }
+    return user.getPassword().equals(entry.encodedPassword)
+        && user.isEnabled()
+        && user.isAccountNonLocked()
+        && user.isAccountNonExpired()
+        && user.isCredentialsNonExpired();
+  }
+
+  private void remember(ByteBuffer digest, UserDetails principal, long now) {
+    // password of principal is erased after authentication, keep the stored one
+    String encodedPassword =
+        userDetailsService.loadUserByUsername(principal.getUsername()).getPassword();
+    verified.put(digest, new Verified(principal, encodedPassword, now + ttlNanos));
+    if (verified.size() > maxSize) {
+      evict(now);
+    }
+  }
+
+  /**
+   * Drop expired pairs, then the ones which expire first till the cache fits.
+   */
+  private void evict(long now) {
+    verified.values().removeIf(entry -> now - entry.expiresAt >= 0);
+    int excess = verified.size() - maxSize;
+    if (excess > 0) {
+      verified.entrySet().stream()
+          .sorted(Comparator.comparingLong(entry -> entry.getValue().expiresAt - now))
+          .limit(excess)
+          .forEach(entry -> verified.remove(entry.getKey(), entry.getValue()));
+    }
+  }
+
+  private ByteBuffer digest(String username, String password) {
+    try {
+      Mac mac = Mac.getInstance(HMAC);
+      mac.init(key);
+      byte[] name = username.getBytes(StandardCharsets.UTF_8);
+      mac.update(ByteBuffer.allocate(Integer.BYTES).putInt(name.length).array());
+      mac.update(name);
+      return ByteBuffer.wrap(mac.doFinal(password.getBytes(StandardCharsets.UTF_8)));
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static final class Verified {
+
+    private final UserDetails principal;
+    private final String encodedPassword;
+    private final long expiresAt;
+
+    private Verified(UserDetails principal, String encodedPassword, long expiresAt) {
+      this.principal = principal;
+      this.encodedPassword = encodedPassword;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+}
@@ -0,0 +1,64 @@
+package com.arwka.openapiedu.config;
+
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.boot.actuate.metrics.web.reactive.server.WebFluxTagsContributor;
+import org.springframework.boot.actuate.metrics.web.servlet.WebMvcTagsContributor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.HandlerMapping;
+
+@Configuration
+public class MetricsConfiguration {
+
+  private static final String OPERATION = "operation";
+  private static final Tag NO_OPERATION = Tag.of(OPERATION, "none");
+
+  /**
+   * Tag timers of requests with the handling method, e.g. "getOrders" or "getOrdersInCsv".
+   * Operations of OrdersApi keep their operationId, .csv and JSON variants of one path
+   * are told apart.
+   *
+   * @return WebMvcTagsContributor
+   */
+  @Bean
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+  public WebMvcTagsContributor operationTagsContributor() {
+    return new WebMvcTagsContributor() {
+
+      @Override
+      public Iterable<Tag> getTags(HttpServletRequest request, HttpServletResponse response,
+                                   Object handler, Throwable exception) {
+        return Tags.of(operation(handler));
+      }
+
+      @Override
+      public Iterable<Tag> getLongRequestTags(HttpServletRequest request, Object handler) {
+        return Tags.of(operation(handler));
+      }
+    };
+  }
+
+  /**
+   * The same tag for requests handled by WebFlux.
+   *
+   * @return WebFluxTagsContributor
+   */
+  @Bean
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+  public WebFluxTagsContributor reactiveOperationTagsContributor() {
+    return (exchange, exception) ->
+        Tags.of(operation(exchange.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE)));
+  }
+
+  private static Tag operation(Object handler) {
+    return handler instanceof HandlerMethod
+        ? Tag.of(OPERATION, ((HandlerMethod) handler).getMethod().getName())
+        : NO_OPERATION;
+  }
+
+}
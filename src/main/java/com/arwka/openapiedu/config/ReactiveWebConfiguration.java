@@ -0,0 +1,64 @@
+package com.arwka.openapiedu.config;
+
+import com.arwka.openapiedu.ui.controller.OrderStreamEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.format.FormatterRegistry;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+/**
+ * WebFlux on Netty, enabled by {@code spring.main.web-application-type=reactive}
+ * (profile "reactive"). A few event loop threads serve all connections, so long-lived
+ * streams of orders, .csv transfers and change subscriptions hold no thread each.
+ */
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWebConfiguration implements WebFluxConfigurer {
+
+  private final ObjectMapper objectMapper;
+  private final Jackson2ObjectMapperBuilder jacksonObjectMapperBuilder;
+
+  /**
+   * Serve on Netty: Tomcat is on the classpath for the servlet mode and would be picked
+   * for reactive mode as well.
+   *
+   * @return NettyReactiveWebServerFactory
+   */
+  @Bean
+  public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+    return new NettyReactiveWebServerFactory();
+  }
+
+  @Override
+  public void addFormatters(FormatterRegistry registry) {
+    WebConfiguration.addEnumConverters(registry);
+  }
+
+  /**
+   * Stream lists of orders in batches instead of collecting them first. Smile bodies are
+   * read and written with the configuration of JSON ones.
+   *
+   * @param configurer - codecs of server
+   */
+  @Override
+  public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+    ObjectMapper smileMapper = jacksonObjectMapperBuilder
+        .createXmlMapper(false)
+        .factory(new SmileFactory())
+        .build();
+    configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(smileMapper));
+    configurer.defaultCodecs().jackson2SmileEncoder(new Jackson2SmileEncoder(smileMapper));
+    configurer.customCodecs().register(new OrderStreamEncoder(objectMapper, smileMapper));
+  }
+
+}
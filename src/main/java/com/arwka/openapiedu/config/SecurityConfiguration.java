@@ -1,16 +1,24 @@
 package com.arwka.openapiedu.config;
 
 
+import java.time.Duration;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.ReactiveAuthenticationManagerAdapter;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.server.SecurityWebFilterChain;
 
 
 @Configuration
@@ -23,17 +31,45 @@ public class SecurityConfiguration {
   private String adminPass;
 
   @Bean
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
   public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
 
     http
         .csrf().disable()
-        .authorizeRequests().antMatchers("/orders/*", "/orders/*/*").authenticated()
+        .authorizeRequests()
+        .antMatchers("/orders/*", "/orders/*/*", "/orders:batch").authenticated()
         .and()
         .httpBasic();
 
     return http.build();
   }
 
+  /**
+   * The same rules for WebFlux. Credentials are verified by the same provider on the bounded
+   * elastic scheduler, BCrypt doesn't run on event loop threads.
+   *
+   * @param http     - reactive security builder
+   * @param provider - provider of servlet mode
+   * @return SecurityWebFilterChain
+   */
+  @Bean
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+  public SecurityWebFilterChain reactiveFilterChain(ServerHttpSecurity http,
+                                                    AuthenticationProvider provider) {
+
+    http
+        .csrf().disable()
+        .authorizeExchange()
+        .pathMatchers("/orders/*", "/orders/*/*", "/orders:batch").authenticated()
+        .anyExchange().permitAll()
+        .and()
+        .httpBasic()
+        .authenticationManager(
+            new ReactiveAuthenticationManagerAdapter(new ProviderManager(provider)));
+
+    return http.build();
+  }
+
   @Bean
   public InMemoryUserDetailsManager userDetailsService() {
 
@@ -46,6 +82,28 @@ public class SecurityConfiguration {
     return new InMemoryUserDetailsManager(user);
   }
 
+  /**
+   * Verify credentials with the password encoder, remembering verified ones for a while
+   * unless {@code auth.cache.ttl} is 0.
+   *
+   * @param ttl     - time verified credentials are remembered
+   * @param maxSize - max count of remembered credentials
+   * @return AuthenticationProvider used by the default authentication manager
+   */
+  @Bean
+  public AuthenticationProvider authenticationProvider(
+      @Value("${auth.cache.ttl:5m}") Duration ttl,
+      @Value("${auth.cache.max-size:10000}") int maxSize) {
+
+    DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+    provider.setUserDetailsService(userDetailsService());
+    provider.setPasswordEncoder(passwordEncoder());
+    if (ttl.isZero()) {
+      return provider;
+    }
+    return new CachingAuthenticationProvider(provider, userDetailsService(), ttl, maxSize);
+  }
+
   @Bean
   public PasswordEncoder passwordEncoder() {
     return new BCryptPasswordEncoder();
@@ -0,0 +1,63 @@
+package com.arwka.openapiedu.config;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Executors starting a virtual thread per task.
+ *
+ * <p>The project is built for Java 17, so the API of JDK 21 is looked up at runtime:
+ * the same jar runs with platform threads on older JDKs and can switch to virtual threads
+ * on newer ones.
+ */
+public final class VirtualThreads {
+
+  private VirtualThreads() {
+  }
+
+  /**
+   * Check if the running JDK has virtual threads.
+   *
+   * @return true on JDK 21 or newer
+   */
+  public static boolean isSupported() {
+    try {
+      Thread.class.getMethod("ofVirtual");
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Create executor which starts a new virtual thread for every task.
+   *
+   * @param prefix - prefix of thread names, followed by a counter
+   * @return ExecutorService, unbounded
+   * @throws IllegalStateException if the running JDK has no virtual threads
+   */
+  public static ExecutorService newExecutor(String prefix) {
+    if (!isSupported()) {
+      throw new IllegalStateException("Virtual threads need JDK 21 or newer, running on "
+          + Runtime.version() + ".");
+    }
+    try {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+      builder = builderType.getMethod("name", String.class, long.class)
+          .invoke(builder, prefix, 0L);
+      ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+      Method newExecutor =
+          Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+      return (ExecutorService) newExecutor.invoke(null, factory);
+    } catch (InvocationTargetException e) {
+      throw new IllegalStateException("Can't create virtual threads.", e.getCause());
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Can't create virtual threads.", e);
+    }
+  }
+
+}
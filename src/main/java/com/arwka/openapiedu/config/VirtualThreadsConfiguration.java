@@ -0,0 +1,60 @@
+package com.arwka.openapiedu.config;
+
+import java.util.concurrent.ExecutorService;
+import javax.annotation.PreDestroy;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Handle requests on virtual threads, enabled by {@code orders.virtual-threads.enabled}
+ * (profile "virtual").
+ *
+ * <p>Tomcat runs every request on its own virtual thread instead of a pool of
+ * {@code server.tomcat.threads.max} threads, so slow .csv uploads, which are imported
+ * on the request thread, don't leave small requests waiting for a free thread.
+ * Streaming .csv exports run on virtual threads of the MVC async support instead of the
+ * shared pool of task execution.
+ *
+ * <p>Background imports, parallel parsing and delivery of changes keep their bounded pools
+ * of platform threads: they are limited on purpose and busy with CPU, not waiting.
+ */
+@Configuration
+@ConditionalOnProperty(name = "orders.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadsConfiguration implements WebMvcConfigurer {
+
+  private final ExecutorService requestExecutor = VirtualThreads.newExecutor("http-");
+  private final ExecutorService exportExecutor = VirtualThreads.newExecutor("csv-export-");
+
+  /**
+   * Run requests of Tomcat connectors on virtual threads.
+   *
+   * @return TomcatProtocolHandlerCustomizer
+   */
+  @Bean
+  public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadsCustomizer() {
+    return protocolHandler -> protocolHandler.setExecutor(requestExecutor);
+  }
+
+  /**
+   * Write streaming responses, e.g. .csv exports, on virtual threads.
+   *
+   * @param configurer - async support configurer
+   */
+  @Override
+  public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+    configurer.setTaskExecutor(new TaskExecutorAdapter(exportExecutor));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    requestExecutor.shutdown();
+    exportExecutor.shutdown();
+  }
+
+}
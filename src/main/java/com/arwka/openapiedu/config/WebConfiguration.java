@@ -0,0 +1,67 @@
+package com.arwka.openapiedu.config;
+
+import com.arwka.openapiedu.ui.controller.OrderLinesHttpMessageConverter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openapitools.model.OrderSortField;
+import org.openapitools.model.StatusEnum;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.format.FormatterRegistry;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebConfiguration implements WebMvcConfigurer {
+
+  /**
+   * Parse enum query parameters by their values from openapi.yaml (e.g. "placed", "date").
+   *
+   * @param registry - formatter registry
+   */
+  @Override
+  public void addFormatters(FormatterRegistry registry) {
+    addEnumConverters(registry);
+  }
+
+  static void addEnumConverters(FormatterRegistry registry) {
+    registry.addConverter(String.class, StatusEnum.class,
+        (Converter<String, StatusEnum>) StatusEnum::fromValue);
+    registry.addConverter(String.class, OrderSortField.class,
+        (Converter<String, OrderSortField>) OrderSortField::fromValue);
+  }
+
+  /**
+   * Write lists of orders as NDJSON for Accept: application/x-ndjson.
+   *
+   * @param objectMapper - mapper of JSON responses
+   * @return OrderLinesHttpMessageConverter
+   */
+  @Bean
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+  public OrderLinesHttpMessageConverter orderLinesHttpMessageConverter(
+      ObjectMapper objectMapper) {
+    return new OrderLinesHttpMessageConverter(objectMapper);
+  }
+
+  /**
+   * Read and write Smile with the configuration of JSON, replaces the default converter
+   * which is built without it.
+   *
+   * @param jacksonObjectMapperBuilder - builder of JSON mapper
+   * @return MappingJackson2SmileHttpMessageConverter
+   */
+  @Bean
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+  public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(
+      Jackson2ObjectMapperBuilder jacksonObjectMapperBuilder) {
+    return new MappingJackson2SmileHttpMessageConverter(jacksonObjectMapperBuilder
+        .createXmlMapper(false)
+        .factory(new SmileFactory())
+        .build());
+  }
+
+}
@@ -0,0 +1,25 @@
+package com.arwka.openapiedu.persistent.journal;
+
+/**
+ * When appended log records are forced to the storage device.
+ */
+public enum FsyncPolicy {
+
+  /**
+   * Every change is forced before the call returns. Concurrent callers share one force.
+   */
+  ALWAYS,
+
+  /**
+   * Every change is written to the OS before the call returns, log is forced
+   * after every {@code fsync-batch-size} records.
+   */
+  BATCHED,
+
+  /**
+   * Every change is written to the OS before the call returns, log is forced
+   * by a timer every {@code fsync-interval}.
+   */
+  INTERVAL
+
+}
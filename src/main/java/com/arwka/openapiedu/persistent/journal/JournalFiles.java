@@ -0,0 +1,72 @@
+package com.arwka.openapiedu.persistent.journal;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Naming and housekeeping of numbered files in the journal directory.
+ */
+@Slf4j
+final class JournalFiles {
+
+  private JournalFiles() {
+  }
+
+  static Path path(Path directory, String prefix, long number, String suffix) {
+    return directory.resolve(String.format("%s-%016d%s", prefix, number, suffix));
+  }
+
+  /**
+   * Numbers of files named {@code prefix-<number>suffix}.
+   *
+   * @return numbers in ascending order
+   */
+  static List<Long> numbers(Path directory, String prefix, String suffix) throws IOException {
+    Pattern name = Pattern.compile(Pattern.quote(prefix) + "-(\\d{16})" + Pattern.quote(suffix));
+    List<Long> numbers = new ArrayList<>();
+    try (Stream<Path> files = Files.list(directory)) {
+      files.forEach(file -> {
+        Matcher matcher = name.matcher(file.getFileName().toString());
+        if (matcher.matches()) {
+          numbers.add(Long.parseLong(matcher.group(1)));
+        }
+      });
+    }
+    numbers.sort(null);
+    return numbers;
+  }
+
+  /**
+   * Delete numbered files below the given number.
+   */
+  static void deleteBefore(Path directory, String prefix, long number, String suffix)
+      throws IOException {
+    for (long existing : numbers(directory, prefix, suffix)) {
+      if (existing < number) {
+        Files.deleteIfExists(path(directory, prefix, existing, suffix));
+      }
+    }
+  }
+
+  /**
+   * Make creation, renaming and deletion of files in directory durable.
+   * Not every platform can open a directory, there it's a no-op.
+   */
+  static void forceDirectory(Path directory) {
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException e) {
+      log.debug("Can't force directory {}", directory, e);
+    }
+  }
+
+}
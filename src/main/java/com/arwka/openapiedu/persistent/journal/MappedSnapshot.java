@@ -0,0 +1,296 @@
+package com.arwka.openapiedu.persistent.journal;
+
+import com.arwka.openapiedu.persistent.repository.OrderTotals;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.zip.CRC32;
+import org.openapitools.model.Order;
+import org.openapitools.model.StatusEnum;
+
+/**
+ * Read-only snapshot file mapped into memory.
+ *
+ * <p>Opening costs O(1): records are sorted by id, so an order is found by binary search
+ * and decoded only when it's read. Status and date indexes written with the snapshot are
+ * mapped too, so queries cost a binary search plus the orders they read. Pages of the file
+ * are loaded by the OS on first access and aren't part of the heap. Instances are safe
+ * for concurrent readers.
+ */
+public final class MappedSnapshot {
+
+  public static final MappedSnapshot EMPTY = new MappedSnapshot(null, new ByteBuffer[0], 0,
+      new int[SnapshotFile.STATUS_GROUPS + 1], IntSection.EMPTY, IntSection.EMPTY,
+      SnapshotFile.encode(new OrderTotals()), 0);
+
+  /**
+   * Records per mapped region, a single {@link MappedByteBuffer} can't exceed 2 GB.
+   */
+  private static final int RECORDS_PER_REGION = (1 << 30) / OrderCodec.SIZE;
+
+  private static final StatusEnum[] STATUSES = StatusEnum.values();
+
+  private final Path path;
+  private final ByteBuffer[] regions;
+  private final int size;
+  /**
+   * Start of every status group in {@link #byStatus}, the last element is the end.
+   */
+  private final int[] statusStarts;
+  private final IntSection byStatus;
+  private final IntSection byDate;
+  private final ByteBuffer totals;
+  private final int checksum;
+
+  private MappedSnapshot(Path path, ByteBuffer[] regions, int size, int[] statusStarts,
+                         IntSection byStatus, IntSection byDate, ByteBuffer totals,
+                         int checksum) {
+    this.path = path;
+    this.regions = regions;
+    this.size = size;
+    this.statusStarts = statusStarts;
+    this.byStatus = byStatus;
+    this.byDate = byDate;
+    this.totals = totals;
+    this.checksum = checksum;
+  }
+
+  /**
+   * Map snapshot file. Only the header is read, use {@link #verify()} to check the content.
+   *
+   * @param path - snapshot file
+   * @return mapped snapshot
+   * @throws IllegalStateException if the file isn't a complete snapshot
+   */
+  static MappedSnapshot open(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path)) {
+      long count = SnapshotFile.readHeader(channel, path);
+      long totalsPosition = SnapshotFile.totalsPosition(count);
+      ByteBuffer totalsSize = ByteBuffer.allocate(Integer.BYTES);
+      if (count > Integer.MAX_VALUE || channel.read(totalsSize, totalsPosition) != Integer.BYTES) {
+        throw new IllegalStateException("Snapshot " + path + " is truncated.");
+      }
+      long expected = totalsPosition + totalsSize.getInt(0) + Integer.BYTES;
+      if (channel.size() != expected) {
+        throw new IllegalStateException("Snapshot " + path + " is truncated.");
+      }
+      ByteBuffer totals = ByteBuffer.allocate(totalsSize.getInt(0));
+      while (totals.hasRemaining()) {
+        channel.read(totals, totalsPosition + totals.position());
+      }
+      int size = (int) count;
+      ByteBuffer[] regions = new ByteBuffer[(size + RECORDS_PER_REGION - 1) / RECORDS_PER_REGION];
+      for (int i = 0; i < regions.length; i++) {
+        long first = (long) i * RECORDS_PER_REGION;
+        long records = Math.min(RECORDS_PER_REGION, size - first);
+        regions[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+            SnapshotFile.HEADER_SIZE + first * OrderCodec.SIZE, records * OrderCodec.SIZE);
+      }
+      long statusIndex = SnapshotFile.HEADER_SIZE + count * OrderCodec.SIZE;
+      long dateIndex = statusIndex + SnapshotFile.statusIndexSize(count);
+      IntSection byStatus = IntSection.map(channel, statusIndex, SnapshotFile.STATUS_GROUPS + 1
+          + count);
+      int[] statusStarts = new int[SnapshotFile.STATUS_GROUPS + 1];
+      for (int group = 0; group < statusStarts.length; group++) {
+        statusStarts[group] = byStatus.get(group);
+      }
+      if (statusStarts[statusStarts.length - 1] != size) {
+        throw new IllegalStateException("Status index of snapshot " + path + " is corrupted.");
+      }
+      IntSection byDate = IntSection.map(channel, dateIndex, count);
+      ByteBuffer trailer = ByteBuffer.allocate(Integer.BYTES);
+      channel.read(trailer, expected - Integer.BYTES);
+      return new MappedSnapshot(path, regions, size, statusStarts, byStatus, byDate,
+          totals.flip(), trailer.getInt(0));
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public long id(int index) {
+    return OrderCodec.id(region(index), offset(index));
+  }
+
+  public StatusEnum status(int index) {
+    return OrderCodec.status(region(index), offset(index));
+  }
+
+  /**
+   * Date of order as instant.
+   *
+   * @param index - position of order in snapshot
+   * @return instant or null if order has no date
+   */
+  public Instant instant(int index) {
+    return OrderCodec.instant(region(index), offset(index));
+  }
+
+  /**
+   * Decode order.
+   *
+   * @param index - position of order in snapshot
+   * @return new Order instance
+   */
+  public Order get(int index) {
+    return OrderCodec.read(region(index), offset(index));
+  }
+
+  /**
+   * Position of order with id.
+   *
+   * @param id - id of order
+   * @return index of order if it's present, otherwise {@code -(insertion point) - 1}
+   */
+  public int indexOf(long id) {
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      long middleId = id(middle);
+      if (middleId < id) {
+        low = middle + 1;
+      } else if (middleId > id) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -(low + 1);
+  }
+
+  public long maxId() {
+    return size == 0 ? 0L : id(size - 1);
+  }
+
+  /**
+   * Counts of orders of the snapshot by status, product and day.
+   *
+   * @return new totals, free to be changed by the caller
+   */
+  public OrderTotals totals() {
+    return SnapshotFile.decode(totals);
+  }
+
+  /**
+   * First entry of status group in {@link #byStatus(int)}.
+   *
+   * @param status - status or null for orders without status
+   * @return entry of the first order with status
+   */
+  public int statusFrom(StatusEnum status) {
+    return statusStarts[group(status)];
+  }
+
+  /**
+   * End of status group in {@link #byStatus(int)}.
+   *
+   * @param status - status or null for orders without status
+   * @return entry after the last order with status
+   */
+  public int statusTo(StatusEnum status) {
+    return statusStarts[group(status) + 1];
+  }
+
+  /**
+   * Entry of status index, orders of a status follow each other in order of id.
+   *
+   * @param entry - entry between {@link #statusFrom} and {@link #statusTo} of a status
+   * @return position of order in snapshot
+   */
+  public int byStatus(int entry) {
+    if (entry < 0 || entry >= size) {
+      throw new IndexOutOfBoundsException(entry);
+    }
+    return byStatus.get(statusStarts.length + (long) entry);
+  }
+
+  /**
+   * Entry of date index, orders follow in order of date and id, orders without date first.
+   *
+   * @param entry - entry of index, from 0 to {@link #size()}
+   * @return position of order in snapshot
+   */
+  public int byDate(int entry) {
+    if (entry < 0 || entry >= size) {
+      throw new IndexOutOfBoundsException(entry);
+    }
+    return byDate.get(entry);
+  }
+
+  /**
+   * Read the whole file and compare its checksum, it touches every page of the mapping.
+   *
+   * @throws IllegalStateException if checksum doesn't match
+   */
+  public void verify() {
+    CRC32 crc = new CRC32();
+    for (ByteBuffer region : regions) {
+      crc.update(region.duplicate().clear());
+    }
+    byStatus.update(crc);
+    byDate.update(crc);
+    crc.update(totals.duplicate());
+    if (path != null && checksum != (int) crc.getValue()) {
+      throw new IllegalStateException("Checksum mismatch in snapshot " + path);
+    }
+  }
+
+  private ByteBuffer region(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException(index);
+    }
+    return regions[index / RECORDS_PER_REGION];
+  }
+
+  private static int offset(int index) {
+    return index % RECORDS_PER_REGION * OrderCodec.SIZE;
+  }
+
+  private static int group(StatusEnum status) {
+    return status == null ? STATUSES.length : status.ordinal();
+  }
+
+  /**
+   * Section of ints mapped in regions of 1 GB.
+   */
+  private static final class IntSection {
+
+    private static final IntSection EMPTY = new IntSection(new ByteBuffer[0]);
+    private static final int INTS_PER_REGION = (1 << 30) / Integer.BYTES;
+
+    private final ByteBuffer[] regions;
+
+    private IntSection(ByteBuffer[] regions) {
+      this.regions = regions;
+    }
+
+    static IntSection map(FileChannel channel, long position, long count) throws IOException {
+      ByteBuffer[] regions = new ByteBuffer[(int) ((count + INTS_PER_REGION - 1)
+          / INTS_PER_REGION)];
+      for (int i = 0; i < regions.length; i++) {
+        long first = (long) i * INTS_PER_REGION;
+        long ints = Math.min(INTS_PER_REGION, count - first);
+        regions[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+            position + first * Integer.BYTES, ints * Integer.BYTES);
+      }
+      return new IntSection(regions);
+    }
+
+    int get(long index) {
+      return regions[(int) (index / INTS_PER_REGION)]
+          .getInt((int) (index % INTS_PER_REGION) * Integer.BYTES);
+    }
+
+    void update(CRC32 crc) {
+      for (ByteBuffer region : regions) {
+        crc.update(region.duplicate().clear());
+      }
+    }
+  }
+
+}
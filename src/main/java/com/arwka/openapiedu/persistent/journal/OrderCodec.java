@@ -0,0 +1,110 @@
+package com.arwka.openapiedu.persistent.journal;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import org.openapitools.model.Order;
+import org.openapitools.model.StatusEnum;
+
+/**
+ * Fixed-width binary form of order used by log and snapshots.
+ *
+ * <p>Layout (big-endian): id, productId, quantity, epoch second of date (8 bytes each),
+ * nanos of date, zone offset seconds (4 bytes each), status ordinal, flags (1 byte each),
+ * version (8 bytes).
+ * Flags tell which of the optional values are present and hold the complete bit,
+ * absent values are stored as zeros.
+ */
+public final class OrderCodec {
+
+  public static final int SIZE = 8 + 8 + 8 + 8 + 4 + 4 + 1 + 1 + 8;
+
+  private static final int HAS_PRODUCT = 1;
+  private static final int HAS_QUANTITY = 1 << 1;
+  private static final int HAS_DATE = 1 << 2;
+  private static final int HAS_STATUS = 1 << 3;
+  private static final int COMPLETE = 1 << 4;
+
+  private static final StatusEnum[] STATUSES = StatusEnum.values();
+
+  private OrderCodec() {
+  }
+
+  /**
+   * Write order at current position of buffer.
+   *
+   * @param buffer - buffer with at least {@link #SIZE} bytes remaining
+   * @param order  - order with id
+   */
+  public static void write(ByteBuffer buffer, Order order) {
+    OffsetDateTime date = order.getDate();
+    int flags = (order.getProductId() == null ? 0 : HAS_PRODUCT)
+        | (order.getQuantity() == null ? 0 : HAS_QUANTITY)
+        | (date == null ? 0 : HAS_DATE)
+        | (order.getStatus() == null ? 0 : HAS_STATUS)
+        | (Boolean.TRUE.equals(order.getComplete()) ? COMPLETE : 0);
+    buffer.putLong(order.getId());
+    buffer.putLong(order.getProductId() == null ? 0L : order.getProductId());
+    buffer.putLong(order.getQuantity() == null ? 0L : order.getQuantity());
+    buffer.putLong(date == null ? 0L : date.toEpochSecond());
+    buffer.putInt(date == null ? 0 : date.getNano());
+    buffer.putInt(date == null ? 0 : date.getOffset().getTotalSeconds());
+    buffer.put(order.getStatus() == null ? 0 : (byte) order.getStatus().ordinal());
+    buffer.put((byte) flags);
+    buffer.putLong(order.getVersion() == null ? 0L : order.getVersion());
+  }
+
+  /**
+   * Read order from current position of buffer.
+   *
+   * @param buffer - buffer with at least {@link #SIZE} bytes remaining
+   * @return order
+   */
+  public static Order read(ByteBuffer buffer) {
+    Order order = read(buffer, buffer.position());
+    buffer.position(buffer.position() + SIZE);
+    return order;
+  }
+
+  /**
+   * Read order at offset without moving position of buffer, safe for concurrent readers.
+   *
+   * @param buffer - buffer
+   * @param offset - offset of record
+   * @return order
+   */
+  public static Order read(ByteBuffer buffer, int offset) {
+    int flags = buffer.get(offset + 41);
+    return new Order()
+        .id(id(buffer, offset))
+        .productId((flags & HAS_PRODUCT) == 0 ? null : buffer.getLong(offset + 8))
+        .quantity((flags & HAS_QUANTITY) == 0 ? null : buffer.getLong(offset + 16))
+        .date((flags & HAS_DATE) == 0 ? null : OffsetDateTime.ofInstant(
+            instant(buffer, offset), ZoneOffset.ofTotalSeconds(buffer.getInt(offset + 36))))
+        .status(status(buffer, offset))
+        .complete((flags & COMPLETE) != 0)
+        .version(buffer.getLong(offset + 42));
+  }
+
+  public static long id(ByteBuffer buffer, int offset) {
+    return buffer.getLong(offset);
+  }
+
+  public static StatusEnum status(ByteBuffer buffer, int offset) {
+    return (buffer.get(offset + 41) & HAS_STATUS) == 0 ? null : STATUSES[buffer.get(offset + 40)];
+  }
+
+  /**
+   * Date of record as instant.
+   *
+   * @return instant or null if record has no date
+   */
+  public static Instant instant(ByteBuffer buffer, int offset) {
+    if ((buffer.get(offset + 41) & HAS_DATE) == 0) {
+      return null;
+    }
+    return Instant.ofEpochSecond(buffer.getLong(offset + 24), buffer.getInt(offset + 32));
+  }
+
+}
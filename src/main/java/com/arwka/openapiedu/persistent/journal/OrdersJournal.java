@@ -0,0 +1,194 @@
+package com.arwka.openapiedu.persistent.journal;
+
+import com.arwka.openapiedu.persistent.repository.OrdersRepository;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.openapitools.model.Order;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Durable storage of orders: write-ahead log of every change plus periodic snapshots.
+ *
+ * <p>On startup the repository maps the newest snapshot and replays the log written
+ * after it. Then it appends every change to the log itself, once the change is applied and
+ * before listeners are notified, so the log never holds a change the repository didn't
+ * make. Every snapshot starts a new log segment, older segments and snapshots are deleted
+ * once it's written.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "orders.persistence.enabled", havingValue = "true")
+public class OrdersJournal {
+
+  private final Path directory;
+  private final FsyncPolicy fsyncPolicy;
+  private final Duration fsyncInterval;
+  private final Duration snapshotInterval;
+  private final WriteAheadLog wal;
+  private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2,
+      runnable -> new Thread(runnable, "orders-journal"));
+
+  private OrdersRepository repository;
+  private long snapshotNumber;
+
+  /**
+   * Create journal.
+   *
+   * @param directory        - directory of log segments and snapshots
+   * @param fsyncPolicy      - when log is forced to the device
+   * @param fsyncBatchSize   - count of records between forces for batched policy
+   * @param fsyncInterval    - time between forces for interval policy
+   * @param snapshotInterval - time between snapshots
+   */
+  public OrdersJournal(@Value("${orders.persistence.directory:./data}") Path directory,
+                       @Value("${orders.persistence.fsync:always}") FsyncPolicy fsyncPolicy,
+                       @Value("${orders.persistence.fsync-batch-size:256}") int fsyncBatchSize,
+                       @Value("${orders.persistence.fsync-interval:100ms}") Duration fsyncInterval,
+                       @Value("${orders.persistence.snapshot-interval:5m}")
+                       Duration snapshotInterval) {
+    this.directory = directory;
+    this.fsyncPolicy = fsyncPolicy;
+    this.fsyncInterval = fsyncInterval;
+    this.snapshotInterval = snapshotInterval;
+    this.wal = new WriteAheadLog(directory, fsyncPolicy, fsyncBatchSize);
+  }
+
+  /**
+   * Map the newest snapshot. Its checksum is verified in background.
+   *
+   * @return snapshot or {@link MappedSnapshot#EMPTY} if there is none
+   */
+  public MappedSnapshot mapSnapshot() {
+    try {
+      Files.createDirectories(directory);
+      snapshotNumber = SnapshotFile.latest(directory);
+      if (snapshotNumber == 0L) {
+        return MappedSnapshot.EMPTY;
+      }
+      MappedSnapshot snapshot = MappedSnapshot.open(SnapshotFile.path(directory, snapshotNumber));
+      scheduler.execute(() -> verifyQuietly(snapshot));
+      return snapshot;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Can't map snapshot of orders from " + directory, e);
+    }
+  }
+
+  /**
+   * Replay the log written after the mapped snapshot and start a new log segment.
+   *
+   * @param put    - receiver of saved orders
+   * @param delete - receiver of deleted ids
+   */
+  public void replay(Consumer<Order> put, LongConsumer delete) {
+    try {
+      long lastSegment = wal.replay(snapshotNumber, put, delete);
+      wal.open(lastSegment + 1);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Can't replay orders log from " + directory, e);
+    }
+  }
+
+  /**
+   * Start periodic snapshots and log forces.
+   *
+   * @param repository - repository to take snapshots of
+   */
+  public void open(OrdersRepository repository) {
+    this.repository = repository;
+    long snapshotMillis = snapshotInterval.toMillis();
+    scheduler.scheduleWithFixedDelay(this::snapshotQuietly,
+        snapshotMillis, snapshotMillis, TimeUnit.MILLISECONDS);
+    if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+      long fsyncMillis = fsyncInterval.toMillis();
+      scheduler.scheduleWithFixedDelay(this::forceQuietly, fsyncMillis, fsyncMillis,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Append change to the log. Called by the repository after the change is applied and its
+   * locks are released, changes of one order come in the order they were applied.
+   *
+   * @param before - previous state of order or null for new order
+   * @param after  - new state of order or null for deleted order
+   */
+  public void append(Order before, Order after) {
+    wal.append(before, after);
+  }
+
+  /**
+   * Commit changes appended by the current thread, once per repository call or batch.
+   */
+  public void commit() {
+    wal.commit();
+  }
+
+  /**
+   * Write snapshot of repository and drop the log it covers.
+   * Writers aren't blocked: the log switches to a new segment first and the snapshot
+   * includes every change of the previous segments, which are appended once applied (and
+   * possibly some later ones, which are replayed idempotently).
+   */
+  public void snapshot() throws IOException {
+    WriteAheadLog.Segment finished = wal.rotate();
+    long number = finished.number() + 1;
+    SnapshotFile.write(directory, number, repository.streamLatest().iterator());
+    wal.deleteBefore(number);
+    try {
+      SnapshotFile.deleteBefore(directory, number);
+    } catch (IOException e) {
+      // snapshot mapped at startup can't be deleted on some platforms, it goes next time
+      log.info("Old snapshot is kept until restart: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Stop background tasks and force the log. Tasks aren't interrupted:
+   * an interrupt during channel I/O would close the log file.
+   */
+  @PreDestroy
+  public void close() throws IOException, InterruptedException {
+    scheduler.shutdown();
+    if (!scheduler.awaitTermination(1, TimeUnit.MINUTES)) {
+      log.warn("Journal tasks didn't finish in time");
+    }
+    wal.close();
+  }
+
+  private void forceQuietly() {
+    try {
+      wal.force();
+    } catch (RuntimeException e) {
+      log.warn("Force of orders log failed", e);
+    }
+  }
+
+  private static void verifyQuietly(MappedSnapshot snapshot) {
+    try {
+      snapshot.verify();
+    } catch (RuntimeException e) {
+      log.error("Snapshot of orders is corrupted, restore it from a backup", e);
+    }
+  }
+
+  private void snapshotQuietly() {
+    try {
+      snapshot();
+    } catch (IOException | RuntimeException e) {
+      log.warn("Snapshot of orders failed", e);
+    }
+  }
+
+}
@@ -0,0 +1,330 @@
+package com.arwka.openapiedu.persistent.journal;
+
+import com.arwka.openapiedu.persistent.repository.OrderTotals;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import org.openapitools.model.Order;
+import org.openapitools.model.StatusEnum;
+
+/**
+ * Compact snapshot of all orders.
+ *
+ * <p>Layout: magic (int), version (int), count of orders (long), orders in {@link OrderCodec}
+ * form sorted by id, status index, date index, totals, CRC32 of everything after the header
+ * (int).
+ * Snapshot number {@code N} contains all changes of log segments below {@code N}, log is
+ * replayed from segment {@code N} on top of it.
+ *
+ * <p>Indexes hold positions of orders (ints), so queries of a mapped snapshot don't scan it:
+ * <ul>
+ *   <li>status index: start of every status group (one per status in order of ordinal, then
+ *   orders without status, then the end), followed by positions grouped by status, in order
+ *   of id within a group;</li>
+ *   <li>date index: positions in order of date and id, orders without date go first.</li>
+ * </ul>
+ *
+ * <p>The version changes with the layout of the file or of its records, files of other
+ * versions are rejected rather than decoded at a wrong width. Version 1 had no order versions
+ * in records, version 2 had no indexes, version 3 had no totals.
+ */
+final class SnapshotFile {
+
+  static final String PREFIX = "snapshot";
+  static final String SUFFIX = ".bin";
+
+  private static final int MAGIC = 0x4F524453;
+  private static final int VERSION = 4;
+  static final int HEADER_SIZE = 4 + 4 + 8;
+  /**
+   * Status groups: one per status and one for orders without status.
+   */
+  static final int STATUS_GROUPS = StatusEnum.values().length + 1;
+  private static final int BUFFER_SIZE = 1024 * 1024 / OrderCodec.SIZE * OrderCodec.SIZE;
+
+  private SnapshotFile() {
+  }
+
+  /**
+   * Write snapshot to temporary file and atomically publish it when it's forced.
+   *
+   * @param directory - journal directory
+   * @param number    - number of first log segment not included in snapshot
+   * @param orders    - all orders in order of id
+   * @throws IllegalStateException if orders aren't sorted by id
+   */
+  static void write(Path directory, long number, Iterator<Order> orders) throws IOException {
+    Path target = path(directory, number);
+    Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      CRC32 crc = new CRC32();
+      channel.position(HEADER_SIZE);
+      IndexKeys keys = new IndexKeys();
+      OrderTotals totals = new OrderTotals();
+      int count = 0;
+      long lastId = Long.MIN_VALUE;
+      while (orders.hasNext()) {
+        Order order = orders.next();
+        if (count > 0 && order.getId() <= lastId) {
+          throw new IllegalStateException("Orders of snapshot aren't sorted by id.");
+        }
+        if (count == Integer.MAX_VALUE) {
+          throw new IllegalStateException("Too many orders for a snapshot.");
+        }
+        lastId = order.getId();
+        if (buffer.remaining() < OrderCodec.SIZE) {
+          drain(channel, buffer, crc);
+        }
+        OrderCodec.write(buffer, order);
+        keys.add(order);
+        totals.change(null, order);
+        count++;
+      }
+      for (int value : keys.byStatus()) {
+        putInt(channel, buffer, crc, value);
+      }
+      for (int value : keys.byDate()) {
+        putInt(channel, buffer, crc, value);
+      }
+      drain(channel, buffer, crc);
+      ByteBuffer section = encode(totals);
+      crc.update(section.array(), 0, section.limit());
+      writeFully(channel, section);
+      buffer.putInt((int) crc.getValue()).flip();
+      writeFully(channel, buffer);
+      buffer.clear().putInt(MAGIC).putInt(VERSION).putLong(count).flip();
+      channel.write(buffer, 0);
+      channel.force(true);
+    }
+    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    JournalFiles.forceDirectory(directory);
+  }
+
+  /**
+   * Position of totals in snapshot file with count of orders.
+   */
+  static long totalsPosition(long count) {
+    return HEADER_SIZE + count * OrderCodec.SIZE + statusIndexSize(count) + count * Integer.BYTES;
+  }
+
+  static long statusIndexSize(long count) {
+    return (STATUS_GROUPS + 1L + count) * Integer.BYTES;
+  }
+
+  /**
+   * Number of the newest snapshot.
+   *
+   * @param directory - journal directory
+   * @return number or 0 if there is no snapshot
+   */
+  static long latest(Path directory) throws IOException {
+    List<Long> numbers = JournalFiles.numbers(directory, PREFIX, SUFFIX);
+    return numbers.isEmpty() ? 0L : numbers.get(numbers.size() - 1);
+  }
+
+  static Path path(Path directory, long number) {
+    return JournalFiles.path(directory, PREFIX, number, SUFFIX);
+  }
+
+  /**
+   * Check format of snapshot.
+   *
+   * @return count of orders
+   * @throws IllegalStateException if the file isn't a snapshot of the current version
+   */
+  static long readHeader(FileChannel channel, Path path) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    while (header.hasRemaining()) {
+      if (channel.read(header, header.position()) < 0) {
+        throw new IllegalStateException("Snapshot " + path + " is truncated.");
+      }
+    }
+    header.flip();
+    if (header.getInt() != MAGIC) {
+      throw new IllegalStateException("Unknown format of snapshot " + path);
+    }
+    int version = header.getInt();
+    if (version != VERSION) {
+      throw new IllegalStateException("Snapshot " + path + " has format version " + version
+          + ", only version " + VERSION + " can be read. Recover it with the release which"
+          + " wrote it and take a new snapshot, or start from an empty directory.");
+    }
+    return header.getLong();
+  }
+
+  /**
+   * Delete snapshots older than the given one.
+   */
+  static void deleteBefore(Path directory, long number) throws IOException {
+    JournalFiles.deleteBefore(directory, PREFIX, number, SUFFIX);
+  }
+
+  /**
+   * Totals section including its length.
+   */
+  static ByteBuffer encode(OrderTotals totals) {
+    Map<Long, long[]> products = totals.byProduct();
+    Map<LocalDate, Long> days = totals.byDay();
+    int size = Integer.BYTES + STATUS_GROUPS * Long.BYTES
+        + Integer.BYTES + products.size() * 3 * Long.BYTES
+        + Integer.BYTES + days.size() * 2 * Long.BYTES;
+    ByteBuffer section = ByteBuffer.allocate(size).putInt(size);
+    for (StatusEnum status : StatusEnum.values()) {
+      section.putLong(totals.count(status));
+    }
+    section.putLong(totals.count(null));
+    section.putInt(products.size());
+    products.forEach((productId, counters) ->
+        section.putLong(productId).putLong(counters[0]).putLong(counters[1]));
+    section.putInt(days.size());
+    days.forEach((day, orders) -> section.putLong(day.toEpochDay()).putLong(orders));
+    return section.flip();
+  }
+
+  /**
+   * Read totals section written by {@link #encode(OrderTotals)}.
+   *
+   * @param section - whole section including its length
+   * @return totals
+   */
+  static OrderTotals decode(ByteBuffer section) {
+    OrderTotals totals = new OrderTotals();
+    int position = Integer.BYTES;
+    for (StatusEnum status : StatusEnum.values()) {
+      totals.addStatus(status, section.getLong(position));
+      position += Long.BYTES;
+    }
+    totals.addStatus(null, section.getLong(position));
+    position += Long.BYTES;
+    int products = section.getInt(position);
+    position += Integer.BYTES;
+    for (int i = 0; i < products; i++, position += 3 * Long.BYTES) {
+      totals.addProduct(section.getLong(position), section.getLong(position + Long.BYTES),
+          section.getLong(position + 2 * Long.BYTES));
+    }
+    int days = section.getInt(position);
+    position += Integer.BYTES;
+    for (int i = 0; i < days; i++, position += 2 * Long.BYTES) {
+      totals.addDay(LocalDate.ofEpochDay(section.getLong(position)),
+          section.getLong(position + Long.BYTES));
+    }
+    return totals;
+  }
+
+  private static void putInt(FileChannel channel, ByteBuffer buffer, CRC32 crc, int value)
+      throws IOException {
+    if (buffer.remaining() < Integer.BYTES) {
+      drain(channel, buffer, crc);
+    }
+    buffer.putInt(value);
+  }
+
+  private static void drain(FileChannel channel, ByteBuffer buffer, CRC32 crc)
+      throws IOException {
+    crc.update(buffer.array(), 0, buffer.position());
+    buffer.flip();
+    writeFully(channel, buffer);
+    buffer.clear();
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /**
+   * Status and date of written orders, 13 bytes per order, to build indexes at the end.
+   */
+  private static final class IndexKeys {
+
+    private byte[] groups = new byte[1024];
+    private long[] seconds = new long[1024];
+    private int[] nanos = new int[1024];
+    private int size;
+
+    void add(Order order) {
+      if (size == groups.length) {
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8L, size * 2L);
+        groups = Arrays.copyOf(groups, capacity);
+        seconds = Arrays.copyOf(seconds, capacity);
+        nanos = Arrays.copyOf(nanos, capacity);
+      }
+      groups[size] = (byte) (order.getStatus() == null
+          ? STATUS_GROUPS - 1
+          : order.getStatus().ordinal());
+      if (order.getDate() == null) {
+        seconds[size] = Long.MIN_VALUE;
+      } else {
+        seconds[size] = order.getDate().toEpochSecond();
+        nanos[size] = order.getDate().getNano();
+      }
+      size++;
+    }
+
+    /**
+     * Starts of status groups followed by positions grouped by status (counting sort,
+     * positions stay in order of id).
+     */
+    int[] byStatus() {
+      int[] index = new int[STATUS_GROUPS + 1 + size];
+      for (int i = 0; i < size; i++) {
+        index[groups[i] + 1]++;
+      }
+      for (int group = 0; group < STATUS_GROUPS; group++) {
+        index[group + 1] += index[group];
+      }
+      int[] next = Arrays.copyOf(index, STATUS_GROUPS);
+      for (int i = 0; i < size; i++) {
+        index[STATUS_GROUPS + 1 + next[groups[i]]++] = i;
+      }
+      return index;
+    }
+
+    /**
+     * Positions in order of date, stable merge sort keeps order of id for equal dates.
+     */
+    int[] byDate() {
+      int[] index = new int[size];
+      for (int i = 0; i < size; i++) {
+        index[i] = i;
+      }
+      int[] merged = new int[size];
+      for (int width = 1; width < size; width *= 2) {
+        for (int low = 0; low < size; low += 2 * width) {
+          int middle = Math.min(low + width, size);
+          int high = Math.min(low + 2 * width, size);
+          int left = low;
+          int right = middle;
+          for (int k = low; k < high; k++) {
+            merged[k] = right >= high || left < middle && compare(index[left], index[right]) <= 0
+                ? index[left++]
+                : index[right++];
+          }
+        }
+        int[] swap = index;
+        index = merged;
+        merged = swap;
+      }
+      return index;
+    }
+
+    private int compare(int first, int second) {
+      int bySecond = Long.compare(seconds[first], seconds[second]);
+      return bySecond != 0 ? bySecond : Integer.compare(nanos[first], nanos[second]);
+    }
+  }
+
+}
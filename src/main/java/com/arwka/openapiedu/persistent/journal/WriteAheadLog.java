@@ -0,0 +1,454 @@
+package com.arwka.openapiedu.persistent.journal;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+import org.openapitools.model.Order;
+
+/**
+ * Append-only log of order changes split into numbered segment files.
+ *
+ * <p>Segment starts with magic (int) and format version (int), then records.
+ * Record layout: payload length (int), CRC32 of type and payload (int), type (byte), payload.
+ * Payload of {@code PUT} is the order in {@link OrderCodec} form, payload of {@code DELETE}
+ * is the id. Segments of other versions (including ones without the header, written before
+ * order versions were added to records) are rejected on replay.
+ *
+ * <p>Records are appended to an in-memory buffer under a short lock. {@link #commit()}
+ * writes everything appended so far with a single write (and a single force, depending on
+ * {@link FsyncPolicy}), so concurrent committers share the cost of I/O (group commit).
+ *
+ * <p>Records are appended after their changes are visible to readers, so a snapshot taken
+ * after {@link #rotate()} contains all records of the finished segments.
+ *
+ * <p>A failed write or force may leave a torn record, and replay stops at it. So the first
+ * failure fails the log: nothing is appended after it, and commits of records which weren't
+ * written before it fail too.
+ */
+@Slf4j
+class WriteAheadLog implements AutoCloseable {
+
+  private static final String PREFIX = "wal";
+  private static final String SUFFIX = ".log";
+  private static final int MAGIC = 0x4F52444C;
+  private static final int FORMAT_VERSION = 2;
+  private static final int SEGMENT_HEADER_SIZE = 4 + 4;
+  private static final int HEADER_SIZE = 4 + 4 + 1;
+  private static final byte PUT = 1;
+  private static final byte DELETE = 2;
+  private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+  private final Path directory;
+  private final FsyncPolicy policy;
+  private final int fsyncBatchSize;
+
+  private final Object appendLock = new Object();
+  // held during write and force, not a monitor: virtual threads waiting for a group commit
+  // would pin their carrier threads
+  private final ReentrantLock flushLock = new ReentrantLock();
+  private final CRC32 crc = new CRC32();
+
+  private final ThreadLocal<Writer> writers = ThreadLocal.withInitial(Writer::new);
+
+  // guarded by appendLock
+  private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+  private long appendedSeq;
+  private Segment current;
+
+  // guarded by flushLock, null while its content is being written
+  private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+  private volatile long writtenSeq;
+  private volatile long forcedSeq;
+  /**
+   * First failure of write or force, the log takes no records after it.
+   */
+  private volatile IOException failure;
+
+  WriteAheadLog(Path directory, FsyncPolicy policy, int fsyncBatchSize) {
+    this.directory = directory;
+    this.policy = policy;
+    this.fsyncBatchSize = fsyncBatchSize;
+  }
+
+  /**
+   * Replay all segments starting from the given one.
+   * Torn tail of the last segment with records (crash during write) is cut off: later segments
+   * get records only after the previous one is forced, so the tail can't hide committed
+   * records. A torn segment header can only be the last one, such a segment is emptied.
+   *
+   * @param firstSegment - number of first segment to replay
+   * @param put          - receiver of saved orders
+   * @param delete       - receiver of deleted ids
+   * @return number of the last existing segment or {@code firstSegment - 1} if there is none
+   * @throws IllegalStateException if a record in the middle of the log is corrupted
+   *                               or a segment has another format version
+   */
+  long replay(long firstSegment, Consumer<Order> put, LongConsumer delete) throws IOException {
+    List<Long> segments = segments();
+    long lastNonEmpty = -1;
+    for (long number : segments) {
+      if (Files.size(segmentPath(number)) > SEGMENT_HEADER_SIZE) {
+        lastNonEmpty = number;
+      }
+    }
+    long last = firstSegment - 1;
+    for (long number : segments) {
+      if (number >= firstSegment) {
+        replaySegment(segmentPath(number), number >= lastNonEmpty, put, delete);
+        last = number;
+      }
+    }
+    return last;
+  }
+
+  /**
+   * Start writing to a new segment.
+   *
+   * @param number - number of segment, greater than all existing ones
+   */
+  void open(long number) throws IOException {
+    flushLock.lock();
+    try {
+      synchronized (appendLock) {
+        current = new Segment(number, openSegment(number));
+      }
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  /**
+   * Add record of change to the log buffer. The calling thread should call
+   * {@link #commit()} after the change is applied to make it durable.
+   *
+   * @param before - previous state of order or null for new order
+   * @param after  - new state of order or null for deleted order
+   */
+  void append(Order before, Order after) {
+    Writer writer = writers.get();
+    synchronized (appendLock) {
+      if (current == null) {
+        throw new IllegalStateException("Orders log is closed.");
+      }
+      checkNotFailed();
+      int payloadSize = after == null ? Long.BYTES : OrderCodec.SIZE;
+      ensureCapacity(HEADER_SIZE + payloadSize);
+      int start = pending.position();
+      putRecord(before, after, payloadSize);
+      crc.reset();
+      crc.update(pending.array(), start + 8, 1 + payloadSize);
+      pending.putInt(start + 4, (int) crc.getValue());
+      writer.seq = ++appendedSeq;
+    }
+  }
+
+  /**
+   * Put record with a zero checksum to pending bytes, the caller holds the append lock.
+   */
+  private void putRecord(Order before, Order after, int payloadSize) {
+    pending.putInt(payloadSize);
+    pending.putInt(0);
+    if (after == null) {
+      pending.put(DELETE);
+      pending.putLong(before.getId());
+    } else {
+      pending.put(PUT);
+      OrderCodec.write(pending, after);
+    }
+  }
+
+  /**
+   * Make records appended by the calling thread durable according to policy:
+   * written to the OS for every policy and forced to the device for {@link FsyncPolicy#ALWAYS}.
+   */
+  void commit() {
+    long seq = writers.get().seq;
+    boolean force = policy == FsyncPolicy.ALWAYS;
+    if ((force ? forcedSeq : writtenSeq) >= seq) {
+      return;
+    }
+    flushLock.lock();
+    try {
+      if ((force ? forcedSeq : writtenSeq) >= seq) {
+        return;
+      }
+      checkNotFailed();
+      Segment segment;
+      ByteBuffer batch;
+      long upTo;
+      synchronized (appendLock) {
+        segment = current;
+        batch = swapPending();
+        upTo = appendedSeq;
+      }
+      write(segment, batch, upTo, force);
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  /**
+   * Write and force everything appended so far.
+   */
+  void force() {
+    flushLock.lock();
+    try {
+      checkNotFailed();
+      Segment segment;
+      ByteBuffer batch;
+      long upTo;
+      synchronized (appendLock) {
+        segment = current;
+        batch = swapPending();
+        upTo = appendedSeq;
+      }
+      write(segment, batch, upTo, true);
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  /**
+   * Finish current segment and continue in the next one.
+   *
+   * @return finished segment, all of its records are visible in the repository
+   */
+  Segment rotate() throws IOException {
+    flushLock.lock();
+    try {
+      checkNotFailed();
+      Segment previous = current;
+      FileChannel next = openSegment(previous.number + 1);
+      ByteBuffer batch;
+      long upTo;
+      synchronized (appendLock) {
+        batch = swapPending();
+        upTo = appendedSeq;
+        current = new Segment(previous.number + 1, next);
+      }
+      write(previous, batch, upTo, true);
+      previous.channel.close();
+      return previous;
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  /**
+   * Delete segments which are covered by a snapshot.
+   *
+   * @param firstKept - number of first segment to keep
+   */
+  void deleteBefore(long firstKept) throws IOException {
+    JournalFiles.deleteBefore(directory, PREFIX, firstKept, SUFFIX);
+  }
+
+  @Override
+  public void close() throws IOException {
+    flushLock.lock();
+    try {
+      if (current == null) {
+        return;
+      }
+      if (failure == null) {
+        force();
+      }
+      current.channel.close();
+      current = null;
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  private ByteBuffer swapPending() {
+    ByteBuffer batch = pending;
+    pending = spare;
+    spare = null;
+    return batch;
+  }
+
+  private void write(Segment segment, ByteBuffer batch, long upTo, boolean force) {
+    try {
+      batch.flip();
+      while (batch.hasRemaining()) {
+        segment.channel.write(batch);
+      }
+      writtenSeq = upTo;
+      if (force || policy == FsyncPolicy.BATCHED && upTo - forcedSeq >= fsyncBatchSize) {
+        segment.channel.force(false);
+        forcedSeq = upTo;
+      }
+    } catch (IOException e) {
+      // records of the batch are lost, their writers fail in commit
+      failure = e;
+      throw new UncheckedIOException("Can't write orders log.", e);
+    } finally {
+      batch.clear();
+      spare = batch;
+    }
+  }
+
+  private void checkNotFailed() {
+    IOException failed = failure;
+    if (failed != null) {
+      throw new UncheckedIOException("Orders log failed, changes can't be made durable.",
+          failed);
+    }
+  }
+
+  private void ensureCapacity(int size) {
+    if (pending.remaining() < size) {
+      ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2,
+          pending.position() + size));
+      pending.flip();
+      bigger.put(pending);
+      pending = bigger;
+    }
+  }
+
+  private FileChannel openSegment(long number) throws IOException {
+    FileChannel channel = FileChannel.open(segmentPath(number),
+        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE)
+        .putInt(MAGIC)
+        .putInt(FORMAT_VERSION)
+        .flip();
+    while (header.hasRemaining()) {
+      channel.write(header);
+    }
+    channel.force(false);
+    JournalFiles.forceDirectory(directory);
+    return channel;
+  }
+
+  private void replaySegment(Path path, boolean isLast, Consumer<Order> put,
+                             LongConsumer delete) throws IOException {
+    try (FileChannel channel = FileChannel.open(path,
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      long size = channel.size();
+      if (size < SEGMENT_HEADER_SIZE) {
+        if (size > 0) {
+          // the header is forced before any record is written, only a new segment can be torn
+          log.warn("Emptying {} with torn header", path);
+          channel.truncate(0);
+          channel.force(true);
+        }
+        return;
+      }
+      ByteBuffer segmentHeader = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+      readFully(channel, segmentHeader, 0);
+      checkFormat(path, segmentHeader.getInt(0), segmentHeader.getInt(4));
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      ByteBuffer payload = ByteBuffer.allocate(OrderCodec.SIZE);
+      CRC32 checksum = new CRC32();
+      long position = SEGMENT_HEADER_SIZE;
+      while (position < size) {
+        try {
+          readFully(channel, header.clear(), position);
+          int length = header.getInt(0);
+          byte type = header.get(8);
+          if (length != expectedLength(type)) {
+            throw new IOException("Unknown record at " + position);
+          }
+          readFully(channel, payload.clear().limit(length), position + HEADER_SIZE);
+          checksum.reset();
+          checksum.update(type);
+          checksum.update(payload.array(), 0, length);
+          if ((int) checksum.getValue() != header.getInt(4)) {
+            throw new IOException("Checksum mismatch at " + position);
+          }
+        } catch (IOException e) {
+          if (!isLast) {
+            throw new IllegalStateException("Orders log " + path + " is corrupted.", e);
+          }
+          log.warn("Truncating torn tail of {} at {}: {}", path, position, e.getMessage());
+          channel.truncate(position);
+          channel.force(true);
+          return;
+        }
+        payload.flip();
+        if (header.get(8) == PUT) {
+          put.accept(OrderCodec.read(payload));
+        } else {
+          delete.accept(payload.getLong());
+        }
+        position += HEADER_SIZE + payload.limit();
+      }
+    }
+  }
+
+  private static void checkFormat(Path path, int magic, int version) {
+    if (magic != MAGIC) {
+      throw new IllegalStateException("Orders log " + path + " has no format header, it was"
+          + " written by a release with another record layout. Recover it with that release"
+          + " and take a snapshot, or start from an empty directory.");
+    }
+    if (version != FORMAT_VERSION) {
+      throw new IllegalStateException("Orders log " + path + " has format version " + version
+          + ", only version " + FORMAT_VERSION + " can be read.");
+    }
+  }
+
+  private static int expectedLength(byte type) {
+    if (type == PUT) {
+      return OrderCodec.SIZE;
+    }
+    return type == DELETE ? Long.BYTES : -1;
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new EOFException("Unexpected end of log at " + position);
+      }
+      position += read;
+    }
+  }
+
+  private List<Long> segments() throws IOException {
+    return JournalFiles.numbers(directory, PREFIX, SUFFIX);
+  }
+
+  private Path segmentPath(long number) {
+    return JournalFiles.path(directory, PREFIX, number, SUFFIX);
+  }
+
+  /**
+   * Last record appended by a thread.
+   */
+  private static class Writer {
+    private long seq;
+  }
+
+  /**
+   * Segment file.
+   */
+  static class Segment {
+    private final long number;
+    private final FileChannel channel;
+
+    Segment(long number, FileChannel channel) {
+      this.number = number;
+      this.channel = channel;
+    }
+
+    long number() {
+      return number;
+    }
+  }
+
+}
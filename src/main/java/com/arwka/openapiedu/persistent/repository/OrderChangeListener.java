@@ -0,0 +1,32 @@
+package com.arwka.openapiedu.persistent.repository;
+
+import org.openapitools.model.Order;
+
+/**
+ * Listener of changes in {@link OrdersRepository}.
+ *
+ * <p>Listeners must not throw: they are notified after the change is applied and logged,
+ * so there is nothing left to undo. Repository logs and ignores their exceptions, the other
+ * listeners are notified anyway.
+ */
+public interface OrderChangeListener {
+
+  /**
+   * Called by the thread which made the change after repository released the lock of the
+   * order, changes of one order still come in the order they were applied. Must be fast and
+   * must not call repository: changes of other orders may wait for it.
+   *
+   * @param before - previous state of order or null for new order
+   * @param after  - new state of order or null for deleted order
+   */
+  void onChange(Order before, Order after);
+
+  /**
+   * Called by the thread which made changes after repository released the locks,
+   * once per repository call (once per batch for batch calls). May block. Atomic batch which
+   * failed or conflicted changed nothing, listeners aren't called for it at all.
+   */
+  default void afterChanges() {
+  }
+
+}
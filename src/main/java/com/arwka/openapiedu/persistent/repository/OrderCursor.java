@@ -0,0 +1,75 @@
+package com.arwka.openapiedu.persistent.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import lombok.Value;
+import org.openapitools.model.Order;
+import org.openapitools.model.OrderSortField;
+
+/**
+ * Keyset position in ordered listing of orders: page starts right after it.
+ */
+@Value
+public class OrderCursor {
+
+  /**
+   * Sort key of orders without date, they go before all dated orders.
+   */
+  public static final Instant NO_DATE = Instant.MIN;
+
+  OrderSortField sort;
+  Instant date;
+  long id;
+
+  /**
+   * Position of the order in listing sorted by field.
+   *
+   * @param order - last order of page
+   * @param sort  - sort field
+   * @return cursor pointing right after order
+   */
+  public static OrderCursor after(Order order, OrderSortField sort) {
+    return new OrderCursor(sort, dateKey(order), order.getId());
+  }
+
+  public static Instant dateKey(Order order) {
+    return order.getDate() == null ? NO_DATE : order.getDate().toInstant();
+  }
+
+  /**
+   * Parse cursor given to client by {@link #encode()}.
+   *
+   * @param value - opaque cursor
+   * @return cursor
+   * @throws IllegalArgumentException if value isn't a valid cursor
+   */
+  public static OrderCursor decode(String value) {
+    try {
+      String[] parts = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8)
+          .split(":");
+      if (parts.length != 4) {
+        throw new IllegalArgumentException("Malformed cursor.");
+      }
+      return new OrderCursor(
+          OrderSortField.fromValue(parts[0]),
+          Instant.ofEpochSecond(Long.parseLong(parts[1]), Long.parseLong(parts[2])),
+          Long.parseLong(parts[3])
+      );
+    } catch (RuntimeException e) {
+      throw new IllegalArgumentException("Malformed cursor.", e);
+    }
+  }
+
+  /**
+   * Opaque form of cursor for clients.
+   *
+   * @return url-safe string
+   */
+  public String encode() {
+    String value = sort.getValue() + ":" + date.getEpochSecond() + ":" + date.getNano() + ":" + id;
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+}
@@ -0,0 +1,67 @@
+package com.arwka.openapiedu.persistent.repository;
+
+import java.time.OffsetDateTime;
+import lombok.Value;
+import org.openapitools.model.Order;
+import org.openapitools.model.StatusEnum;
+
+/**
+ * Search criteria for orders, every {@code null} field matches any value.
+ */
+@Value
+public class OrderFilter {
+
+  public static final OrderFilter ANY = new OrderFilter(null, null, null);
+
+  StatusEnum status;
+  OffsetDateTime from;
+  OffsetDateTime to;
+
+  /**
+   * Create filter and check that period is valid.
+   *
+   * @param status - order status
+   * @param from   - datetime FROM (period, inclusive)
+   * @param to     - datetime TO (period, inclusive)
+   */
+  public OrderFilter(StatusEnum status, OffsetDateTime from, OffsetDateTime to) {
+    if (from != null && to != null && from.isAfter(to)) {
+      throw new IllegalArgumentException("Period start is after period end.");
+    }
+    this.status = status;
+    this.from = from;
+    this.to = to;
+  }
+
+  public boolean hasPeriod() {
+    return from != null || to != null;
+  }
+
+  public boolean isEmpty() {
+    return status == null && !hasPeriod();
+  }
+
+  /**
+   * Check order against criteria.
+   *
+   * @param order - order to check
+   * @return true if order satisfies all criteria
+   */
+  public boolean matches(Order order) {
+    if (status != null && status != order.getStatus()) {
+      return false;
+    }
+    if (hasPeriod()) {
+      OffsetDateTime date = order.getDate();
+      if (date == null) {
+        return false;
+      }
+      if (from != null && date.isBefore(from)) {
+        return false;
+      }
+      return to == null || !date.isAfter(to);
+    }
+    return true;
+  }
+
+}
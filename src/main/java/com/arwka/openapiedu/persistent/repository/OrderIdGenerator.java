@@ -0,0 +1,122 @@
+package com.arwka.openapiedu.persistent.repository;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Allocator of ids for new orders.
+ *
+ * <p>Ids are reserved from the shared sequence in blocks. Blocks belong to a small fixed
+ * set of stripes chosen by thread rather than to threads themselves, so short-lived
+ * threads (a virtual thread per request) share blocks instead of wasting one each,
+ * and the shared counter is still touched once per block.
+ * Ids are unique but not ordered by time of creation and can have gaps.
+ *
+ * <p>Orders saved with explicit ids (import, recovery) can take ids from already
+ * reserved blocks. Callers should insert new orders with
+ * {@link OrdersRepository#insert(org.openapitools.model.Order)} and on conflict call
+ * {@link #observe(long)} with the max stored id before the next attempt.
+ */
+@Component
+public class OrderIdGenerator {
+
+  private static final int MAX_STRIPES = 64;
+  private static final Block EMPTY = new Block(0L, 0L);
+
+  private final AtomicLong nextUnreserved = new AtomicLong(1L);
+  private final int blockSize;
+  private final AtomicReferenceArray<Block> stripes;
+  private final ReentrantLock[] refills;
+  private final LongAdder reservedBlocks = new LongAdder();
+
+  /**
+   * Create generator starting above max id in repository.
+   *
+   * @param ordersRepository - repository of orders
+   * @param blockSize        - count of ids reserved by a stripe at once
+   */
+  public OrderIdGenerator(OrdersRepository ordersRepository,
+                          @Value("${orders.id.block-size:64}") int blockSize) {
+    this.blockSize = blockSize;
+    int processors = Runtime.getRuntime().availableProcessors();
+    int count = Math.min(MAX_STRIPES, Integer.highestOneBit(processors * 2 - 1) << 1);
+    this.stripes = new AtomicReferenceArray<>(count);
+    this.refills = new ReentrantLock[count];
+    for (int i = 0; i < count; i++) {
+      stripes.set(i, EMPTY);
+      refills[i] = new ReentrantLock();
+    }
+    observe(ordersRepository.maxId());
+  }
+
+  /**
+   * Allocate new id.
+   *
+   * @return id which wasn't returned before
+   */
+  public long nextId() {
+    int stripe = stripe();
+    while (true) {
+      Block block = stripes.get(stripe);
+      long id = block.next.getAndIncrement();
+      if (id < block.end) {
+        return id;
+      }
+      refill(stripe, block);
+    }
+  }
+
+  /**
+   * Count of blocks reserved from the shared sequence, every one is a write to shared counter.
+   */
+  public long reservedBlocks() {
+    return reservedBlocks.sum();
+  }
+
+  /**
+   * Move sequence above id used outside of generator. Blocks reserved before
+   * aren't affected and are given out till the end.
+   *
+   * @param usedId - id which is already taken
+   */
+  public void observe(long usedId) {
+    nextUnreserved.accumulateAndGet(usedId + 1, Math::max);
+  }
+
+  private void refill(int stripe, Block exhausted) {
+    // a lock rather than a monitor, it doesn't pin a virtual thread to its carrier
+    ReentrantLock refill = refills[stripe];
+    refill.lock();
+    try {
+      if (stripes.get(stripe) == exhausted) {
+        long start = nextUnreserved.getAndAdd(blockSize);
+        stripes.set(stripe, new Block(start, start + blockSize));
+        reservedBlocks.increment();
+      }
+    } finally {
+      refill.unlock();
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  private int stripe() {
+    long thread = Thread.currentThread().getId();
+    return (int) (thread * 0x9E3779B97F4A7C15L >>> 32) & (stripes.length() - 1);
+  }
+
+  private static final class Block {
+
+    private final AtomicLong next;
+    private final long end;
+
+    private Block(long start, long end) {
+      this.next = new AtomicLong(start);
+      this.end = end;
+    }
+  }
+
+}
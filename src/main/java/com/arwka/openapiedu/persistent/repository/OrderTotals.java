@@ -0,0 +1,119 @@
+package com.arwka.openapiedu.persistent.repository;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.openapitools.model.Order;
+import org.openapitools.model.StatusEnum;
+
+/**
+ * Counts of orders by status, product and UTC day: the figures order statistics start from.
+ *
+ * <p>Totals are written with every snapshot for exactly the orders it contains and brought up
+ * to date on recovery by the changes replayed from the log, so nobody has to read all orders
+ * at startup to count them. Not thread-safe: one thread fills them while a snapshot is written
+ * or the store is recovered.
+ */
+public class OrderTotals {
+
+  private static final StatusEnum[] STATUSES = StatusEnum.values();
+
+  private final long[] byStatus = new long[STATUSES.length + 1];
+  /**
+   * Count of orders and their total quantity by product.
+   */
+  private final Map<Long, long[]> byProduct = new HashMap<>();
+  private final Map<LocalDate, Long> byDay = new HashMap<>();
+
+  /**
+   * Count the change of an order: subtract its previous state, add the new one.
+   *
+   * @param before - previous state of order or null for new order
+   * @param after  - new state of order or null for deleted order
+   */
+  public void change(Order before, Order after) {
+    if (before != null) {
+      add(before, -1);
+    }
+    if (after != null) {
+      add(after, 1);
+    }
+  }
+
+  /**
+   * Count of orders in status.
+   *
+   * @param status - status or null for orders without status
+   * @return count
+   */
+  public long count(StatusEnum status) {
+    return byStatus[status == null ? STATUSES.length : status.ordinal()];
+  }
+
+  /**
+   * Count of orders and their total quantity by product, groups may be empty.
+   *
+   * @return map of product id to pair of order count and quantity
+   */
+  public Map<Long, long[]> byProduct() {
+    return Collections.unmodifiableMap(byProduct);
+  }
+
+  /**
+   * Count of orders by UTC day of date, groups may be empty.
+   *
+   * @return map of day to order count
+   */
+  public Map<LocalDate, Long> byDay() {
+    return Collections.unmodifiableMap(byDay);
+  }
+
+  public void addStatus(StatusEnum status, long orders) {
+    byStatus[status == null ? STATUSES.length : status.ordinal()] += orders;
+  }
+
+  /**
+   * Add to the counters of product.
+   *
+   * @param productId - id of product
+   * @param orders    - count of orders, negative to subtract
+   * @param quantity  - total quantity of the orders
+   */
+  public void addProduct(long productId, long orders, long quantity) {
+    long[] counters = byProduct.computeIfAbsent(productId, key -> new long[2]);
+    counters[0] += orders;
+    counters[1] += quantity;
+  }
+
+  public void addDay(LocalDate day, long orders) {
+    byDay.merge(day, orders, Long::sum);
+  }
+
+  /**
+   * Copy totals which the caller may change without changing these.
+   *
+   * @return independent copy
+   */
+  public OrderTotals copy() {
+    OrderTotals copy = new OrderTotals();
+    System.arraycopy(byStatus, 0, copy.byStatus, 0, byStatus.length);
+    byProduct.forEach((productId, counters) ->
+        copy.addProduct(productId, counters[0], counters[1]));
+    copy.byDay.putAll(byDay);
+    return copy;
+  }
+
+  private void add(Order order, int sign) {
+    addStatus(order.getStatus(), sign);
+    if (order.getProductId() != null) {
+      addProduct(order.getProductId(), sign,
+          order.getQuantity() == null ? 0L : sign * order.getQuantity());
+    }
+    if (order.getDate() != null) {
+      addDay(order.getDate().atZoneSameInstant(ZoneOffset.UTC).toLocalDate(), sign);
+    }
+  }
+
+}
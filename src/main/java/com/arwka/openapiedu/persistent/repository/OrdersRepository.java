@@ -1,9 +1,94 @@
 package com.arwka.openapiedu.persistent.repository;
 
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import org.openapitools.model.Order;
+import org.openapitools.model.OrderSortField;
 
+/**
+ * Thread-safe storage of orders.
+ *
+ * <p>Orders returned by the repository are shared read-only instances:
+ * callers must not modify them, all changes go through {@link #save(Order)}
+ * or {@link #update(long, Consumer)}.
+ */
 public interface OrdersRepository {
-  HashMap<Long, Order> getOrders();
-  Order addOrder(Order order);
+
+  Optional<Order> findById(long id);
+
+  boolean existsById(long id);
+
+  List<Order> findAll();
+
+  List<Order> findAll(OrderFilter filter);
+
+  Stream<Order> stream();
+
+  /**
+   * Lazy stream over the latest state of orders, including changes of batches which didn't
+   * commit yet, for snapshots of the journal: their changes are already in the log.
+   *
+   * @return Stream of orders
+   */
+  default Stream<Order> streamLatest() {
+    return stream();
+  }
+
+  List<Order> findPage(OrderFilter filter, OrderSortField sort, OrderCursor after, int limit);
+
+  /**
+   * Totals of orders as of the end of recovery: totals of the snapshot plus changes replayed
+   * from the log. Later changes are only seen by listeners.
+   *
+   * @return totals or empty if orders weren't recovered, then callers count them by a scan
+   */
+  default Optional<OrderTotals> recoveredTotals() {
+    return Optional.empty();
+  }
+
+  long count();
+
+  long maxId();
+
+  /**
+   * Version of the whole store, it grows after every call or batch which changed some order,
+   * when the changes are already visible to readers. Calls which changed nothing, like
+   * rejected updates, leave it as is. Result of a read started after observing version {@code v}
+   * contains all changes up to {@code v}.
+   *
+   * @return version, starts from 0 at startup
+   */
+  long version();
+
+  Order save(Order order);
+
+  Optional<Order> insert(Order order);
+
+  int insertAll(Collection<Order> orders);
+
+  Optional<Order> update(long id, Consumer<Order> changes);
+
+  Optional<Order> deleteById(long id);
+
+  /**
+   * Run changes of the current thread as one batch: listeners get
+   * {@link OrderChangeListener#afterChanges()} once for the whole batch, so the journal
+   * commits it with one write. Nested batches are part of the outer one.
+   *
+   * <p>Changes of atomic batch are staged: {@link #findById} and {@link #existsById} of the
+   * batch see them, the store and other threads don't. When changes complete, the store
+   * installs them in one commit if every changed order is still in the state the batch read,
+   * otherwise nothing is changed and {@link java.util.ConcurrentModificationException} is
+   * thrown, the caller may run the batch again. If changes throw, nothing is changed,
+   * journaled or published. Queries of the batch don't see its changes.
+   *
+   * @param atomic  - stage changes and install them at once
+   * @param changes - changes made through this repository
+   */
+  void batch(boolean atomic, Runnable changes);
+
+  void addListener(OrderChangeListener listener);
 }
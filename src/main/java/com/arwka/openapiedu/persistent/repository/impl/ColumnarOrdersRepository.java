@@ -0,0 +1,1075 @@
+package com.arwka.openapiedu.persistent.repository.impl;
+
+import com.arwka.openapiedu.persistent.journal.MappedSnapshot;
+import com.arwka.openapiedu.persistent.journal.OrdersJournal;
+import com.arwka.openapiedu.persistent.repository.OrderChangeListener;
+import com.arwka.openapiedu.persistent.repository.OrderCursor;
+import com.arwka.openapiedu.persistent.repository.OrderFilter;
+import com.arwka.openapiedu.persistent.repository.OrderTotals;
+import com.arwka.openapiedu.persistent.repository.OrdersRepository;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.openapitools.model.Order;
+import org.openapitools.model.OrderSortField;
+import org.openapitools.model.StatusEnum;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Order store keeping every field in a primitive column, enabled by
+ * {@code orders.store=columnar}.
+ *
+ * <p>An order takes a slot in every column: 5 longs (id, productId, quantity, epoch second,
+ * version), 2 ints (nanos, zone offset), a status byte and a byte of flags (presence of
+ * optional values, complete, liveness), 58 bytes, plus 24 bytes of the id-to-slot index at its
+ * lowest load and half a byte of status bitsets. {@link OrdersRepositoryImpl} needs about 10
+ * objects per order (map node, boxed keys and values, OffsetDateTime with its
+ * LocalDateTime/LocalDate/LocalTime, index nodes), all of them traced by GC.
+ * {@code OrdersFootprintRunner} of the benchmarks measures the retained heap of both stores
+ * with 200k orders: about 430 bytes per order in the map store and 100 in this one, including
+ * free capacity of the columns.
+ * {@code Order} objects are created only when orders are returned to the caller.
+ *
+ * <p>Indexes: a bitset of slots per status and, per block of {@value #BLOCK} slots, the ranges
+ * of ids and of epoch seconds ever written there. Queries by status visit only the slots of
+ * the status, queries by period skip blocks outside the range of dates, pages skip blocks
+ * which can't hold keys after the cursor or before the last key of a full page. New ids grow,
+ * so blocks hold narrow ranges of ids, and a page by id reads about one block of slots however
+ * deep it is; slots freed by deletes are reused by newer ids and widen the ranges of their
+ * blocks. A page still checks the ranges of every block, so paging through all orders costs
+ * O(N / {@value #BLOCK}) per page on top of the page itself, the map store pays only for the
+ * page. Pages by date skip blocks by dates only once the cursor is past undated orders, and
+ * as many as their dates follow ids; otherwise they read every slot like the first one does.
+ *
+ * <p>Locking: slots are allocated and freed under the write lock of {@code structure}, which
+ * makes inserts and deletes exclusive. Everything else holds its read lock, so the columns
+ * don't move, pages and streams for one block or chunk at a time, and the lock of the slot's
+ * stripe: changes of existing orders take it for writing, so orders of different stripes
+ * change in parallel, reads validate an optimistic stamp and fall back to the read lock.
+ * Changes of one order are atomic like in the map store, they are journaled and passed to
+ * listeners after the locks are released. Queries see every order in some state it had during
+ * the query, like the map store, not a snapshot of all orders.
+ * Changes of atomic batch are staged and installed under the write lock of {@code structure}.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "orders.store", havingValue = "columnar")
+public class ColumnarOrdersRepository implements OrdersRepository {
+
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final int BLOCK = 1024;
+  private static final int STRIPES = 64;
+  private static final int STREAM_CHUNK = 256;
+  private static final byte NO_STATUS = -1;
+  private static final StatusEnum[] STATUSES = StatusEnum.values();
+  private static final long NO_DATE_SECOND = OrderCursor.NO_DATE.getEpochSecond();
+
+  private static final byte LIVE = 1;
+  private static final byte HAS_PRODUCT = 1 << 1;
+  private static final byte HAS_QUANTITY = 1 << 2;
+  private static final byte HAS_DATE = 1 << 3;
+  private static final byte COMPLETE = 1 << 4;
+
+  private final ReentrantReadWriteLock structure = new ReentrantReadWriteLock();
+  private final StampedLock[] stripes = new StampedLock[STRIPES];
+  private final List<OrderChangeListener> listeners = new CopyOnWriteArrayList<>();
+  private final PendingChanges pending = new PendingChanges();
+  private final OrdersJournal journal;
+  private final AtomicLong version = new AtomicLong();
+  private final ThreadLocal<RepositoryBatch> batches = new ThreadLocal<>();
+
+  private final LongIntMap slots = new LongIntMap(INITIAL_CAPACITY);
+  private long[] ids = new long[INITIAL_CAPACITY];
+  private long[] productIds = new long[INITIAL_CAPACITY];
+  private long[] quantities = new long[INITIAL_CAPACITY];
+  private long[] epochSeconds = new long[INITIAL_CAPACITY];
+  private int[] nanos = new int[INITIAL_CAPACITY];
+  private int[] offsets = new int[INITIAL_CAPACITY];
+  private byte[] statuses = new byte[INITIAL_CAPACITY];
+  private long[] versions = new long[INITIAL_CAPACITY];
+  private byte[] flags = new byte[INITIAL_CAPACITY];
+  private AtomicLongArray[] byStatus = new AtomicLongArray[STATUSES.length];
+  /**
+   * Min and max epoch second of dated orders ever written to the block, ranges only widen.
+   */
+  private AtomicLongArray blockMin = ranges(INITIAL_CAPACITY, Long.MAX_VALUE);
+  private AtomicLongArray blockMax = ranges(INITIAL_CAPACITY, Long.MIN_VALUE);
+  /**
+   * Min and max id ever allocated a slot of the block, ranges only widen.
+   */
+  private AtomicLongArray blockMinId = ranges(INITIAL_CAPACITY, Long.MAX_VALUE);
+  private AtomicLongArray blockMaxId = ranges(INITIAL_CAPACITY, Long.MIN_VALUE);
+  private int[] freeSlots = new int[16];
+  private int freeCount;
+  private int usedSlots;
+  /**
+   * Max id of stored orders, recounted only after the order with it is deleted.
+   */
+  private long maxId;
+  private boolean maxIdStale;
+
+  private OrderTotals recovered;
+
+  public ColumnarOrdersRepository() {
+    this((OrdersJournal) null);
+  }
+
+  @Autowired
+  public ColumnarOrdersRepository(Optional<OrdersJournal> journal) {
+    this(journal.orElse(null));
+  }
+
+  private ColumnarOrdersRepository(OrdersJournal journal) {
+    this.journal = journal;
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new StampedLock();
+    }
+    for (int i = 0; i < byStatus.length; i++) {
+      byStatus[i] = new AtomicLongArray(bits(INITIAL_CAPACITY));
+    }
+  }
+
+  /**
+   * Recover orders from journal if persistence is enabled,
+   * otherwise initialize mock-repository with mock-values.
+   */
+  @PostConstruct
+  public void init() {
+    if (journal != null) {
+      MappedSnapshot snapshot = journal.mapSnapshot();
+      for (int i = 0; i < snapshot.size(); i++) {
+        load(snapshot.get(i));
+      }
+      // orders of the snapshot are counted there, replayed changes are counted by load/unload
+      recovered = snapshot.totals();
+      journal.replay(this::load, this::unload);
+      journal.open(this);
+      return;
+    }
+
+    save(new Order().id(1L));
+    save(new Order().id(2L));
+    save(new Order().id(3L));
+  }
+
+  @Override
+  public Optional<Order> findById(long id) {
+    RepositoryBatch batch = staging();
+    if (batch != null) {
+      return Optional.ofNullable(batch.find(id, this::stored));
+    }
+    return Optional.ofNullable(stored(id));
+  }
+
+  @Override
+  public boolean existsById(long id) {
+    RepositoryBatch batch = staging();
+    if (batch != null) {
+      return batch.find(id, this::stored) != null;
+    }
+    Lock readLock = structure.readLock();
+    readLock.lock();
+    try {
+      return slots.get(id) != LongIntMap.MISSING;
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  private Order stored(long id) {
+    Lock readLock = structure.readLock();
+    readLock.lock();
+    try {
+      int slot = slots.get(id);
+      return slot == LongIntMap.MISSING ? null : readSlot(slot, this::read);
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  @Override
+  public List<Order> findAll() {
+    return stream().collect(Collectors.toList());
+  }
+
+  /**
+   * Find orders by filter: slots of the status if it's given, blocks overlapping the period.
+   *
+   * @param filter - search criteria
+   * @return List of matching orders
+   */
+  @Override
+  public List<Order> findAll(OrderFilter filter) {
+    if (filter.isEmpty()) {
+      return findAll();
+    }
+    IntFunction<Order> reader = slot -> matches(slot, filter) ? read(slot) : null;
+    Lock readLock = structure.readLock();
+    readLock.lock();
+    try {
+      List<Order> result = new ArrayList<>();
+      for (int block = 0; block * BLOCK < usedSlots; block++) {
+        if (filter.hasPeriod() && !overlaps(block, filter)) {
+          continue;
+        }
+        int end = Math.min((block + 1) * BLOCK, usedSlots);
+        for (int slot = firstCandidate(block * BLOCK, end, filter); slot < end;
+             slot = firstCandidate(slot + 1, end, filter)) {
+          Order order = readSlot(slot, reader);
+          if (order != null) {
+            result.add(order);
+          }
+        }
+      }
+      return result;
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  /**
+   * Lazy stream over stored orders in order of id. Ids are copied and sorted when the stream
+   * starts, orders are read in small chunks, so changes made meanwhile may be visible.
+   *
+   * @return Stream of orders
+   */
+  @Override
+  public Stream<Order> stream() {
+    long[] sortedIds;
+    Lock readLock = structure.readLock();
+    readLock.lock();
+    try {
+      sortedIds = new long[slots.size()];
+      int count = 0;
+      for (int slot = 0; slot < usedSlots; slot++) {
+        if ((flags[slot] & LIVE) != 0) {
+          sortedIds[count++] = ids[slot];
+        }
+      }
+    } finally {
+      readLock.unlock();
+    }
+    Arrays.sort(sortedIds);
+    Iterator<Order> iterator = new Iterator<>() {
+      private final List<Order> chunk = new ArrayList<>(STREAM_CHUNK);
+      private int position;
+      private int next;
+
+      @Override
+      public boolean hasNext() {
+        while (position == chunk.size() && next < sortedIds.length) {
+          chunk.clear();
+          position = 0;
+          int end = Math.min(next + STREAM_CHUNK, sortedIds.length);
+          readLock.lock();
+          try {
+            for (; next < end; next++) {
+              int slot = slots.get(sortedIds[next]);
+              if (slot != LongIntMap.MISSING) {
+                chunk.add(readSlot(slot, ColumnarOrdersRepository.this::read));
+              }
+            }
+          } finally {
+            readLock.unlock();
+          }
+        }
+        return position < chunk.size();
+      }
+
+      @Override
+      public Order next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return chunk.get(position++);
+      }
+    };
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+        Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT), false);
+  }
+
+  /**
+   * Find page of orders by keyset: the page starts right after cursor.
+   * It's a scan of candidate slots keeping the first {@code limit} keys in a heap. Blocks whose
+   * ids, for pages by id, are up to the cursor or after the last key of a full heap are
+   * skipped. When only dated orders can qualify, so are blocks whose dates are before the
+   * cursor or the period, after the period or, for pages by date, after the last key of a
+   * full heap. The read lock of the structure is held for one block at a time.
+   *
+   * @param filter - search criteria
+   * @param sort   - sort field
+   * @param after  - cursor of previous page or null for first page
+   * @param limit  - max count of orders in page
+   * @return List of matching orders sorted by field
+   */
+  @Override
+  public List<Order> findPage(OrderFilter filter, OrderSortField sort, OrderCursor after,
+                              int limit) {
+    if (limit <= 0) {
+      return List.of();
+    }
+    boolean byDate = sort == OrderSortField.DATE;
+    Comparator<PageEntry> order = byDate
+        ? Comparator.<PageEntry>comparingLong(entry -> entry.second)
+            .thenComparingInt(entry -> entry.nano)
+            .thenComparingLong(entry -> entry.id)
+        : Comparator.comparingLong(entry -> entry.id);
+    PriorityQueue<PageEntry> smallest = new PriorityQueue<>(order.reversed());
+    IntFunction<PageEntry> reader = slot -> {
+      if (!isAfter(slot, sort, after) || !matches(slot, filter)) {
+        return null;
+      }
+      PageEntry entry = new PageEntry(ids[slot], dateSecond(slot), dateNano(slot), null);
+      if (smallest.size() == limit && order.compare(entry, smallest.peek()) >= 0) {
+        return null;
+      }
+      entry.order = read(slot);
+      return entry;
+    };
+    boolean datedOnly = filter.hasPeriod()
+        || byDate && after != null && after.getDate().getEpochSecond() > NO_DATE_SECOND;
+    Lock readLock = structure.readLock();
+    for (int block = 0; ; block++) {
+      readLock.lock();
+      try {
+        if (block * BLOCK >= usedSlots) {
+          break;
+        }
+        if (skips(block, filter, sort, after, datedOnly,
+            smallest.size() == limit ? smallest.peek() : null)) {
+          continue;
+        }
+        int end = Math.min((block + 1) * BLOCK, usedSlots);
+        for (int slot = firstCandidate(block * BLOCK, end, filter); slot < end;
+             slot = firstCandidate(slot + 1, end, filter)) {
+          PageEntry entry = readSlot(slot, reader);
+          if (entry == null) {
+            continue;
+          }
+          if (smallest.size() == limit) {
+            smallest.poll();
+          }
+          smallest.add(entry);
+        }
+      } finally {
+        readLock.unlock();
+      }
+    }
+    Order[] page = new Order[smallest.size()];
+    for (int i = page.length - 1; i >= 0; i--) {
+      page[i] = smallest.poll().order;
+    }
+    return Arrays.asList(page);
+  }
+
+  @Override
+  public Optional<OrderTotals> recoveredTotals() {
+    return Optional.ofNullable(recovered).map(OrderTotals::copy);
+  }
+
+  @Override
+  public long count() {
+    Lock readLock = structure.readLock();
+    readLock.lock();
+    try {
+      return slots.size();
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  @Override
+  public long version() {
+    return version.get();
+  }
+
+  /**
+   * Max id of stored orders, slots are scanned only after the order with it was deleted.
+   *
+   * @return max id or 0 if repository is empty
+   */
+  @Override
+  public long maxId() {
+    Lock readLock = structure.readLock();
+    readLock.lock();
+    try {
+      if (!maxIdStale) {
+        return maxId;
+      }
+    } finally {
+      readLock.unlock();
+    }
+    Lock writeLock = structure.writeLock();
+    writeLock.lock();
+    try {
+      if (maxIdStale) {
+        long max = 0L;
+        for (int slot = 0; slot < usedSlots; slot++) {
+          if ((flags[slot] & LIVE) != 0 && ids[slot] > max) {
+            max = ids[slot];
+          }
+        }
+        maxId = max;
+        maxIdStale = false;
+      }
+      return maxId;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public Order save(Order order) {
+    RepositoryBatch batch = staging();
+    if (batch != null) {
+      return batch.save(order, this::stored);
+    }
+    try {
+      Order saved = change(order.getId(), before -> OrdersRepositoryImpl.copyOf(order));
+      if (saved != null) {
+        return saved;
+      }
+      Lock writeLock = structure.writeLock();
+      writeLock.lock();
+      try {
+        saved = change(order.getId(), before -> OrdersRepositoryImpl.copyOf(order));
+        return saved != null ? saved : insertLocked(order);
+      } finally {
+        writeLock.unlock();
+      }
+    } finally {
+      afterChanges();
+    }
+  }
+
+  @Override
+  public Optional<Order> insert(Order order) {
+    RepositoryBatch batch = staging();
+    if (batch != null) {
+      return batch.insert(order, this::stored);
+    }
+    Lock writeLock = structure.writeLock();
+    writeLock.lock();
+    try {
+      return Optional.ofNullable(insertLocked(order));
+    } finally {
+      writeLock.unlock();
+      afterChanges();
+    }
+  }
+
+  /**
+   * Save batch of new orders under one lock, orders with already existing ids are skipped.
+   *
+   * @param orders - orders to save
+   * @return count of saved orders
+   */
+  @Override
+  public int insertAll(Collection<Order> orders) {
+    int inserted = 0;
+    RepositoryBatch batch = staging();
+    if (batch != null) {
+      for (Order order : orders) {
+        if (batch.insert(order, this::stored).isPresent()) {
+          inserted++;
+        }
+      }
+      return inserted;
+    }
+    Lock writeLock = structure.writeLock();
+    writeLock.lock();
+    try {
+      for (Order order : orders) {
+        if (insertLocked(order) != null) {
+          inserted++;
+        }
+      }
+    } finally {
+      writeLock.unlock();
+      afterChanges();
+    }
+    return inserted;
+  }
+
+  @Override
+  public Optional<Order> update(long id, Consumer<Order> changes) {
+    RepositoryBatch batch = staging();
+    if (batch != null) {
+      return batch.update(id, changes, this::stored);
+    }
+    try {
+      return Optional.ofNullable(change(id, before -> {
+        Order after = OrdersRepositoryImpl.copyOf(before);
+        changes.accept(after);
+        return after;
+      }));
+    } finally {
+      afterChanges();
+    }
+  }
+
+  @Override
+  public Optional<Order> deleteById(long id) {
+    RepositoryBatch batch = staging();
+    if (batch != null) {
+      return batch.delete(id, this::stored);
+    }
+    Lock writeLock = structure.writeLock();
+    writeLock.lock();
+    try {
+      int slot = slots.get(id);
+      if (slot == LongIntMap.MISSING) {
+        return Optional.empty();
+      }
+      Order removed = read(slot);
+      free(slot);
+      pending.add(id, removed, null);
+      return Optional.of(removed);
+    } finally {
+      writeLock.unlock();
+      afterChanges();
+    }
+  }
+
+  /**
+   * Run changes as one batch. Changes of atomic batch are staged and installed under the
+   * write lock of the structure, so nobody sees a part of them.
+   */
+  @Override
+  public void batch(boolean atomic, Runnable changes) {
+    if (batches.get() != null) {
+      changes.run();
+      return;
+    }
+    RepositoryBatch batch = new RepositoryBatch(atomic);
+    batches.set(batch);
+    if (atomic) {
+      try {
+        changes.run();
+      } finally {
+        batches.remove();
+      }
+      install(batch.staged());
+      return;
+    }
+    try {
+      changes.run();
+    } finally {
+      batches.remove();
+      commitChanges();
+    }
+  }
+
+  @Override
+  public void addListener(OrderChangeListener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Put recovered order without notifying listeners.
+   */
+  private void load(Order order) {
+    Lock writeLock = structure.writeLock();
+    writeLock.lock();
+    try {
+      int slot = slots.get(order.getId());
+      if (recovered != null) {
+        recovered.change(slot == LongIntMap.MISSING ? null : read(slot), order);
+      }
+      write(slot == LongIntMap.MISSING ? allocate(order.getId()) : slot, order);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Remove recovered deletion without notifying listeners.
+   */
+  private void unload(long id) {
+    Lock writeLock = structure.writeLock();
+    writeLock.lock();
+    try {
+      int slot = slots.get(id);
+      if (slot != LongIntMap.MISSING) {
+        recovered.change(read(slot), null);
+        free(slot);
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Change existing order in its slot under the lock of its stripe.
+   *
+   * @param id     - order id
+   * @param change - function making new state of order from a copy of the stored one
+   * @return new state of order or null if there is no such order
+   */
+  private Order change(long id, UnaryOperator<Order> change) {
+    Lock readLock = structure.readLock();
+    readLock.lock();
+    try {
+      int slot = slots.get(id);
+      if (slot == LongIntMap.MISSING) {
+        return null;
+      }
+      StampedLock stripe = stripe(slot);
+      long stamp = stripe.writeLock();
+      try {
+        Order before = read(slot);
+        Order after = change.apply(read(slot));
+        after.setId(id);
+        after.setVersion(OrdersRepositoryImpl.nextVersion(before));
+        write(slot, after);
+        pending.add(id, before, after);
+        return after;
+      } finally {
+        stripe.unlockWrite(stamp);
+      }
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  private Order insertLocked(Order order) {
+    if (slots.get(order.getId()) != LongIntMap.MISSING) {
+      return null;
+    }
+    Order saved = OrdersRepositoryImpl.copyOf(order).version(1L);
+    write(allocate(order.getId()), saved);
+    pending.add(order.getId(), null, saved);
+    return saved;
+  }
+
+  /**
+   * Install staged changes of atomic batch as one commit: every order is checked to be in the
+   * state the batch read, then all changes are written, journaled and committed once.
+   *
+   * @param staged - staged changes in order of id
+   * @throws ConcurrentModificationException if another thread changed an order meanwhile,
+   *                                         nothing is changed then
+   */
+  private void install(List<RepositoryBatch.Staged> staged) {
+    staged.removeIf(RepositoryBatch.Staged::isNoop);
+    if (staged.isEmpty()) {
+      return;
+    }
+    Lock writeLock = structure.writeLock();
+    writeLock.lock();
+    try {
+      for (RepositoryBatch.Staged change : staged) {
+        int slot = slots.get(change.getId());
+        if (!Objects.equals(slot == LongIntMap.MISSING ? null : read(slot), change.getBase())) {
+          throw new ConcurrentModificationException(
+              "Order " + change.getId() + " was changed by another thread.");
+        }
+      }
+      for (RepositoryBatch.Staged change : staged) {
+        int slot = slots.get(change.getId());
+        Order before = slot == LongIntMap.MISSING ? null : read(slot);
+        Order after = change.getAfter() == null
+            ? null
+            : OrdersRepositoryImpl.copyOf(change.getAfter());
+        if (after == null) {
+          free(slot);
+        } else {
+          write(slot == LongIntMap.MISSING ? allocate(after.getId()) : slot, after);
+        }
+        pending.add(change.getId(), before, after);
+      }
+    } finally {
+      writeLock.unlock();
+    }
+    commitChanges();
+  }
+
+  /**
+   * Append change to the journal and notify listeners of it, after the locks are released.
+   * Listeners get the change even if the append fails: it is visible already.
+   */
+  private void handOver(Order before, Order after) {
+    try {
+      if (journal != null) {
+        journal.append(before, after);
+      }
+    } finally {
+      for (OrderChangeListener listener : listeners) {
+        try {
+          listener.onChange(before, after);
+        } catch (RuntimeException e) {
+          log.error("Listener {} failed on change of order {}", listener,
+              (after != null ? after : before).getId(), e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Atomic batch of the current thread, whose changes are staged.
+   */
+  private RepositoryBatch staging() {
+    RepositoryBatch batch = batches.get();
+    return batch != null && batch.isAtomic() ? batch : null;
+  }
+
+  private void afterChanges() {
+    if (batches.get() == null) {
+      commitChanges();
+    } else {
+      pending.handOver(this::handOver);
+    }
+  }
+
+  private void commitChanges() {
+    try {
+      pending.handOver(this::handOver);
+      if (journal != null) {
+        journal.commit();
+      }
+    } finally {
+      if (pending.takeChanged()) {
+        version.incrementAndGet();
+      }
+      for (OrderChangeListener listener : listeners) {
+        try {
+          listener.afterChanges();
+        } catch (RuntimeException e) {
+          log.error("Listener {} failed after changes", listener, e);
+        }
+      }
+    }
+  }
+
+  private StampedLock stripe(int slot) {
+    return stripes[slot & (STRIPES - 1)];
+  }
+
+  /**
+   * Read slot consistently with changes of its order: optimistically, then under the read lock
+   * of its stripe if a change interfered. The caller holds the read lock of the structure.
+   *
+   * @param slot   - slot
+   * @param reader - function of the slot, it must not fail on a slot changed meanwhile
+   * @return result of reader
+   */
+  private <T> T readSlot(int slot, IntFunction<T> reader) {
+    StampedLock stripe = stripe(slot);
+    long stamp = stripe.tryOptimisticRead();
+    if (stamp != 0L) {
+      T result = reader.apply(slot);
+      if (stripe.validate(stamp)) {
+        return result;
+      }
+    }
+    stamp = stripe.readLock();
+    try {
+      return reader.apply(slot);
+    } finally {
+      stripe.unlockRead(stamp);
+    }
+  }
+
+  private Order read(int slot) {
+    byte slotFlags = flags[slot];
+    byte status = statuses[slot];
+    return new Order()
+        .id(ids[slot])
+        .productId((slotFlags & HAS_PRODUCT) != 0 ? productIds[slot] : null)
+        .quantity((slotFlags & HAS_QUANTITY) != 0 ? quantities[slot] : null)
+        .date((slotFlags & HAS_DATE) != 0 ? OffsetDateTime.ofInstant(
+            Instant.ofEpochSecond(epochSeconds[slot], nanos[slot]),
+            ZoneOffset.ofTotalSeconds(offsets[slot])) : null)
+        .status(status == NO_STATUS ? null : STATUSES[status])
+        .complete((slotFlags & COMPLETE) != 0)
+        .version(versions[slot]);
+  }
+
+  /**
+   * Write order to its slot and indexes. The caller holds the write lock of the structure or
+   * the read lock of the structure and the write lock of the slot's stripe.
+   */
+  private void write(int slot, Order order) {
+    ids[slot] = order.getId();
+    productIds[slot] = order.getProductId() == null ? 0L : order.getProductId();
+    quantities[slot] = order.getQuantity() == null ? 0L : order.getQuantity();
+    OffsetDateTime date = order.getDate();
+    epochSeconds[slot] = date == null ? 0L : date.toEpochSecond();
+    nanos[slot] = date == null ? 0 : date.getNano();
+    offsets[slot] = date == null ? 0 : date.getOffset().getTotalSeconds();
+    versions[slot] = order.getVersion() == null ? 0L : order.getVersion();
+    flags[slot] = (byte) (flags[slot] & LIVE
+        | (order.getProductId() != null ? HAS_PRODUCT : 0)
+        | (order.getQuantity() != null ? HAS_QUANTITY : 0)
+        | (date != null ? HAS_DATE : 0)
+        | (Boolean.TRUE.equals(order.getComplete()) ? COMPLETE : 0));
+    byte status = order.getStatus() == null ? NO_STATUS : (byte) order.getStatus().ordinal();
+    byte previous = statuses[slot];
+    if (status != previous) {
+      // a query for either status may see the slot in both bitsets, never in none
+      if (status != NO_STATUS) {
+        setBit(byStatus[status], slot);
+      }
+      statuses[slot] = status;
+      if (previous != NO_STATUS) {
+        clearBit(byStatus[previous], slot);
+      }
+    }
+    if (date != null) {
+      long second = date.toEpochSecond();
+      int block = slot / BLOCK;
+      if (second < blockMin.get(block)) {
+        blockMin.accumulateAndGet(block, second, Math::min);
+      }
+      if (second > blockMax.get(block)) {
+        blockMax.accumulateAndGet(block, second, Math::max);
+      }
+    }
+  }
+
+  private int allocate(long id) {
+    int slot;
+    if (freeCount > 0) {
+      slot = freeSlots[--freeCount];
+    } else {
+      if (usedSlots == ids.length) {
+        grow(ids.length * 2);
+      }
+      slot = usedSlots++;
+    }
+    flags[slot] = LIVE;
+    statuses[slot] = NO_STATUS;
+    slots.put(id, slot);
+    int block = slot / BLOCK;
+    blockMinId.accumulateAndGet(block, id, Math::min);
+    blockMaxId.accumulateAndGet(block, id, Math::max);
+    if (id > maxId) {
+      maxId = id;
+    }
+    return slot;
+  }
+
+  private void free(int slot) {
+    slots.remove(ids[slot]);
+    if (ids[slot] == maxId) {
+      maxIdStale = true;
+    }
+    flags[slot] = 0;
+    if (statuses[slot] != NO_STATUS) {
+      clearBit(byStatus[statuses[slot]], slot);
+      statuses[slot] = NO_STATUS;
+    }
+    if (freeCount == freeSlots.length) {
+      freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+    }
+    freeSlots[freeCount++] = slot;
+  }
+
+  private void grow(int capacity) {
+    ids = Arrays.copyOf(ids, capacity);
+    productIds = Arrays.copyOf(productIds, capacity);
+    quantities = Arrays.copyOf(quantities, capacity);
+    epochSeconds = Arrays.copyOf(epochSeconds, capacity);
+    nanos = Arrays.copyOf(nanos, capacity);
+    offsets = Arrays.copyOf(offsets, capacity);
+    statuses = Arrays.copyOf(statuses, capacity);
+    versions = Arrays.copyOf(versions, capacity);
+    flags = Arrays.copyOf(flags, capacity);
+    for (int i = 0; i < byStatus.length; i++) {
+      byStatus[i] = copyOf(byStatus[i], bits(capacity), 0L);
+    }
+    blockMin = copyOf(blockMin, blocks(capacity), Long.MAX_VALUE);
+    blockMax = copyOf(blockMax, blocks(capacity), Long.MIN_VALUE);
+    blockMinId = copyOf(blockMinId, blocks(capacity), Long.MAX_VALUE);
+    blockMaxId = copyOf(blockMaxId, blocks(capacity), Long.MIN_VALUE);
+  }
+
+  /**
+   * First slot from {@code slot} to {@code end} that may match the status of filter.
+   */
+  private int firstCandidate(int slot, int end, OrderFilter filter) {
+    if (filter.getStatus() == null || slot >= end) {
+      return slot;
+    }
+    AtomicLongArray bits = byStatus[filter.getStatus().ordinal()];
+    int word = slot >>> 6;
+    long mask = bits.get(word) & (-1L << slot);
+    while (mask == 0L) {
+      if (++word << 6 >= end) {
+        return end;
+      }
+      mask = bits.get(word);
+    }
+    return Math.min((word << 6) + Long.numberOfTrailingZeros(mask), end);
+  }
+
+  /**
+   * Check that no slot of the block can be on the page.
+   *
+   * @param last - the last key of a full page so far, or null
+   */
+  private boolean skips(int block, OrderFilter filter, OrderSortField sort, OrderCursor after,
+                        boolean datedOnly, PageEntry last) {
+    if (blockMinId.get(block) > blockMaxId.get(block)) {
+      return true;
+    }
+    if (sort == OrderSortField.ID) {
+      if (after != null && blockMaxId.get(block) <= after.getId()
+          || last != null && blockMinId.get(block) > last.id) {
+        return true;
+      }
+    }
+    if (!datedOnly) {
+      return false;
+    }
+    if (!overlaps(block, filter)) {
+      return true;
+    }
+    if (sort == OrderSortField.DATE && after != null
+        && blockMax.get(block) < after.getDate().getEpochSecond()) {
+      return true;
+    }
+    return sort == OrderSortField.DATE && last != null && blockMin.get(block) > last.second;
+  }
+
+  /**
+   * Check that the block may hold dated orders of the period of filter.
+   */
+  private boolean overlaps(int block, OrderFilter filter) {
+    long min = blockMin.get(block);
+    long max = blockMax.get(block);
+    if (min > max) {
+      return false;
+    }
+    if (filter.getFrom() != null && max < filter.getFrom().toEpochSecond()) {
+      return false;
+    }
+    return filter.getTo() == null || min <= filter.getTo().toEpochSecond();
+  }
+
+  private boolean matches(int slot, OrderFilter filter) {
+    if ((flags[slot] & LIVE) == 0) {
+      return false;
+    }
+    if (filter.getStatus() != null && statuses[slot] != filter.getStatus().ordinal()) {
+      return false;
+    }
+    if (filter.hasPeriod()) {
+      if ((flags[slot] & HAS_DATE) == 0) {
+        return false;
+      }
+      if (filter.getFrom() != null && compareDate(slot, filter.getFrom().toInstant()) < 0) {
+        return false;
+      }
+      return filter.getTo() == null || compareDate(slot, filter.getTo().toInstant()) <= 0;
+    }
+    return true;
+  }
+
+  private boolean isAfter(int slot, OrderSortField sort, OrderCursor after) {
+    if (after == null) {
+      return true;
+    }
+    if (sort == OrderSortField.ID) {
+      return ids[slot] > after.getId();
+    }
+    Instant cursor = after.getDate();
+    int byDate = Long.compare(dateSecond(slot), cursor.getEpochSecond());
+    if (byDate == 0) {
+      byDate = Integer.compare(dateNano(slot), cursor.getNano());
+    }
+    return byDate > 0 || byDate == 0 && ids[slot] > after.getId();
+  }
+
+  private long dateSecond(int slot) {
+    return (flags[slot] & HAS_DATE) != 0 ? epochSeconds[slot] : NO_DATE_SECOND;
+  }
+
+  private int dateNano(int slot) {
+    return (flags[slot] & HAS_DATE) != 0 ? nanos[slot] : 0;
+  }
+
+  private int compareDate(int slot, Instant instant) {
+    int bySecond = Long.compare(epochSeconds[slot], instant.getEpochSecond());
+    return bySecond != 0 ? bySecond : Integer.compare(nanos[slot], instant.getNano());
+  }
+
+  private static int bits(int capacity) {
+    return (capacity + Long.SIZE - 1) / Long.SIZE;
+  }
+
+  private static int blocks(int capacity) {
+    return (capacity + BLOCK - 1) / BLOCK;
+  }
+
+  private static AtomicLongArray ranges(int capacity, long empty) {
+    return copyOf(new AtomicLongArray(0), blocks(capacity), empty);
+  }
+
+  private static AtomicLongArray copyOf(AtomicLongArray array, int length, long fill) {
+    AtomicLongArray copy = new AtomicLongArray(length);
+    for (int i = 0; i < length; i++) {
+      copy.set(i, i < array.length() ? array.get(i) : fill);
+    }
+    return copy;
+  }
+
+  private static void setBit(AtomicLongArray bits, int index) {
+    long bit = 1L << index;
+    long word = bits.get(index >>> 6);
+    while ((word & bit) == 0L && !bits.weakCompareAndSetVolatile(index >>> 6, word, word | bit)) {
+      word = bits.get(index >>> 6);
+    }
+  }
+
+  private static void clearBit(AtomicLongArray bits, int index) {
+    long bit = 1L << index;
+    long word = bits.get(index >>> 6);
+    while ((word & bit) != 0L
+        && !bits.weakCompareAndSetVolatile(index >>> 6, word, word & ~bit)) {
+      word = bits.get(index >>> 6);
+    }
+  }
+
+  /**
+   * Sort key of a page candidate read together with its order.
+   */
+  @AllArgsConstructor
+  private static final class PageEntry {
+    private final long id;
+    private final long second;
+    private final int nano;
+    private Order order;
+  }
+
+}
@@ -0,0 +1,116 @@
+package com.arwka.openapiedu.persistent.repository.impl;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from long keys to non-negative int values without boxing.
+ *
+ * <p>Linear probing, load factor at most 1/2, removal by backward shift (no tombstones).
+ * Not thread-safe.
+ */
+class LongIntMap {
+
+  static final int MISSING = -1;
+
+  private long[] keys;
+  private int[] values;
+  private int size;
+  private int mask;
+
+  LongIntMap(int expectedSize) {
+    int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+    allocate(capacity);
+  }
+
+  int size() {
+    return size;
+  }
+
+  int get(long key) {
+    for (int i = slot(key); ; i = (i + 1) & mask) {
+      int value = values[i];
+      if (value == MISSING) {
+        return MISSING;
+      }
+      if (keys[i] == key) {
+        return value;
+      }
+    }
+  }
+
+  /**
+   * Associate key with value.
+   *
+   * @param key   - key
+   * @param value - non-negative value
+   */
+  void put(long key, int value) {
+    int i = slot(key);
+    while (values[i] != MISSING) {
+      if (keys[i] == key) {
+        values[i] = value;
+        return;
+      }
+      i = (i + 1) & mask;
+    }
+    keys[i] = key;
+    values[i] = value;
+    if (++size * 2 > values.length) {
+      resize(values.length * 2);
+    }
+  }
+
+  /**
+   * Remove key.
+   *
+   * @return previous value or {@link #MISSING}
+   */
+  int remove(long key) {
+    int i = slot(key);
+    while (values[i] != MISSING && keys[i] != key) {
+      i = (i + 1) & mask;
+    }
+    int removed = values[i];
+    if (removed == MISSING) {
+      return MISSING;
+    }
+    // shift back following entries of the cluster which can't be found past the hole
+    int hole = i;
+    for (int j = (hole + 1) & mask; values[j] != MISSING; j = (j + 1) & mask) {
+      int home = slot(keys[j]);
+      if (((j - home) & mask) >= ((j - hole) & mask)) {
+        keys[hole] = keys[j];
+        values[hole] = values[j];
+        hole = j;
+      }
+    }
+    values[hole] = MISSING;
+    size--;
+    return removed;
+  }
+
+  private int slot(long key) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32)) & mask;
+  }
+
+  private void resize(int capacity) {
+    long[] oldKeys = keys;
+    int[] oldValues = values;
+    allocate(capacity);
+    size = 0;
+    for (int i = 0; i < oldValues.length; i++) {
+      if (oldValues[i] != MISSING) {
+        put(oldKeys[i], oldValues[i]);
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new int[capacity];
+    Arrays.fill(values, MISSING);
+    mask = capacity - 1;
+  }
+
+}
@@ -0,0 +1,172 @@
+package com.arwka.openapiedu.persistent.repository.impl;
+
+import com.arwka.openapiedu.persistent.repository.OrderCursor;
+import com.arwka.openapiedu.persistent.repository.OrderFilter;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Collectors;
+import lombok.Value;
+import org.openapitools.model.Order;
+import org.openapitools.model.OrderSortField;
+import org.openapitools.model.StatusEnum;
+
+/**
+ * Secondary indexes of order store: ordered ids, ids by status and ids by date.
+ *
+ * <p>Indexes are updated by the owning repository while it holds the per-order
+ * lock, so changes of a single order are applied in order. Readers can see an
+ * index entry slightly ahead of or behind the stored order, so every candidate
+ * should be checked against the filter again.
+ */
+class OrderIndexes {
+
+  private final NavigableSet<Long> ids = new ConcurrentSkipListSet<>();
+  private final Map<StatusEnum, NavigableSet<Long>> byStatus = new EnumMap<>(StatusEnum.class);
+  private final NavigableSet<DateKey> byDate = new ConcurrentSkipListSet<>();
+
+  OrderIndexes() {
+    for (StatusEnum status : StatusEnum.values()) {
+      byStatus.put(status, new ConcurrentSkipListSet<>());
+    }
+  }
+
+  /**
+   * Move order between index entries.
+   *
+   * @param before - previous state of order or null for new order
+   * @param after  - new state of order or null for deleted order
+   */
+  void update(Order before, Order after) {
+    if (before == null) {
+      ids.add(after.getId());
+    } else if (after == null) {
+      ids.remove(before.getId());
+    }
+
+    StatusEnum oldStatus = before == null ? null : before.getStatus();
+    StatusEnum newStatus = after == null ? null : after.getStatus();
+    if (oldStatus != newStatus || before == null || after == null) {
+      if (oldStatus != null) {
+        byStatus.get(oldStatus).remove(before.getId());
+      }
+      if (newStatus != null) {
+        byStatus.get(newStatus).add(after.getId());
+      }
+    }
+
+    DateKey oldDate = DateKey.of(before);
+    DateKey newDate = DateKey.of(after);
+    if (!Objects.equals(oldDate, newDate)) {
+      if (oldDate != null) {
+        byDate.remove(oldDate);
+      }
+      if (newDate != null) {
+        byDate.add(newDate);
+      }
+    }
+  }
+
+  long maxId() {
+    Long last = ids.floor(Long.MAX_VALUE);
+    return last == null ? 0L : last;
+  }
+
+  /**
+   * Ids of orders that may satisfy the filter.
+   *
+   * @param filter - non-empty filter
+   * @return candidate ids, each one should be checked with {@link OrderFilter#matches(Order)}
+   */
+  Collection<Long> candidates(OrderFilter filter) {
+    if (filter.hasPeriod()) {
+      return between(DateKey.first(filter.getFrom()), true, DateKey.last(filter.getTo()))
+          .stream()
+          .map(DateKey::getId)
+          .collect(Collectors.toList());
+    }
+    return byStatus.get(filter.getStatus());
+  }
+
+  /**
+   * Ids of orders that may satisfy the filter in the order of sort field, starting after cursor.
+   * Iteration is lazy, so reading a page costs O(log n) plus the number of skipped candidates.
+   *
+   * @param filter - search criteria
+   * @param sort   - sort field
+   * @param after  - cursor of previous page or null for first page
+   * @return candidate ids, each one should be checked with {@link OrderFilter#matches(Order)}
+   */
+  Iterable<Long> ordered(OrderFilter filter, OrderSortField sort, OrderCursor after) {
+    if (sort == OrderSortField.DATE) {
+      DateKey lower = DateKey.first(filter.getFrom());
+      boolean inclusive = true;
+      if (after != null) {
+        DateKey cursor = new DateKey(after.getDate(), after.getId());
+        if (lower == null || cursor.compareTo(lower) >= 0) {
+          lower = cursor;
+          inclusive = false;
+        }
+      }
+      NavigableSet<DateKey> range = between(lower, inclusive, DateKey.last(filter.getTo()));
+      return () -> range.stream().map(DateKey::getId).iterator();
+    }
+
+    NavigableSet<Long> source = filter.getStatus() == null ? ids : byStatus.get(filter.getStatus());
+    return after == null ? source : source.tailSet(after.getId(), false);
+  }
+
+  private NavigableSet<DateKey> between(DateKey lower, boolean inclusive, DateKey upper) {
+    if (lower != null && upper != null) {
+      return lower.compareTo(upper) > 0
+          ? Collections.emptyNavigableSet()
+          : byDate.subSet(lower, inclusive, upper, true);
+    }
+    if (lower != null) {
+      return byDate.tailSet(lower, inclusive);
+    }
+    if (upper != null) {
+      return byDate.headSet(upper, true);
+    }
+    return byDate;
+  }
+
+  /**
+   * Key of date index, ids break ties between orders with the same date.
+   */
+  @Value
+  static class DateKey implements Comparable<DateKey> {
+
+    private static final Comparator<DateKey> ORDER = Comparator
+        .comparing(DateKey::getDate)
+        .thenComparingLong(DateKey::getId);
+
+    Instant date;
+    long id;
+
+    static DateKey of(Order order) {
+      return order == null ? null : new DateKey(OrderCursor.dateKey(order), order.getId());
+    }
+
+    static DateKey first(OffsetDateTime date) {
+      return date == null ? null : new DateKey(date.toInstant(), Long.MIN_VALUE);
+    }
+
+    static DateKey last(OffsetDateTime date) {
+      return date == null ? null : new DateKey(date.toInstant(), Long.MAX_VALUE);
+    }
+
+    @Override
+    public int compareTo(DateKey other) {
+      return ORDER.compare(this, other);
+    }
+  }
+
+}
@@ -1,25 +1,153 @@
 package com.arwka.openapiedu.persistent.repository.impl;
 
+import com.arwka.openapiedu.persistent.journal.MappedSnapshot;
+import com.arwka.openapiedu.persistent.journal.OrdersJournal;
+import com.arwka.openapiedu.persistent.repository.OrderChangeListener;
+import com.arwka.openapiedu.persistent.repository.OrderCursor;
+import com.arwka.openapiedu.persistent.repository.OrderFilter;
+import com.arwka.openapiedu.persistent.repository.OrderTotals;
 import com.arwka.openapiedu.persistent.repository.OrdersRepository;
-import java.util.HashMap;
+import com.arwka.openapiedu.persistent.repository.impl.ViewClock.View;
+import java.lang.ref.Cleaner;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import javax.annotation.PostConstruct;
-import lombok.Getter;
-import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
 import org.openapitools.model.Order;
+import org.openapitools.model.OrderSortField;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
+@Slf4j
 @Repository
-@ToString
-@Getter
+@ConditionalOnProperty(name = "orders.store", havingValue = "map", matchIfMissing = true)
 public class OrdersRepositoryImpl implements OrdersRepository {
 
-  private final HashMap<Long, Order> orders = new HashMap<>();
+  /**
+   * Closes views of streams which were dropped without being consumed or closed, a backstop
+   * for callers which don't close them.
+   */
+  private static final Cleaner VIEWS = Cleaner.create();
+
+  /**
+   * Longest wait for an order locked by the commit of an atomic batch.
+   */
+  private static final long COMMIT_WAIT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  /**
+   * Write takes the next stamp of the clock inside compute of its order.
+   */
+  private static final long NEXT_STAMP = 0L;
+
+  /**
+   * Write of recovery, it isn't stamped, recorded for views nor published.
+   */
+  private static final long RECOVERY = -1L;
+
+  /**
+   * Orders created or changed since startup. Stored orders are never modified in place:
+   * every write puts a fresh copy, so readers always see a complete order.
+   * Deleted orders of the snapshot are kept as {@link SnapshotView#DELETED}.
+   */
+  private final ConcurrentHashMap<Long, Order> orders = new ConcurrentHashMap<>();
+
+  /**
+   * Values of the map replaced by writes which some open view doesn't see, newest first, so
+   * scans read the map as of the moment they started. A chain is cut at the first write every
+   * view sees, without open views nothing is kept.
+   */
+  private final ConcurrentHashMap<Long, Write> history = new ConcurrentHashMap<>();
+
+  /**
+   * Ids with chains whose orders were removed from the map, scans merge them with the index.
+   */
+  private final ConcurrentSkipListSet<Long> deletedIds = new ConcurrentSkipListSet<>();
+
+  /**
+   * Ids with chains, they are pruned when the id is written and when a view closes.
+   */
+  private final Set<Long> retained = ConcurrentHashMap.newKeySet();
+
+  private final ViewClock clock = new ViewClock();
+
+  /**
+   * Indexes of orders in the map, orders of the snapshot aren't indexed.
+   */
+  private final OrderIndexes indexes = new OrderIndexes();
+
+  private final List<OrderChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+  private final PendingChanges pending = new PendingChanges();
+
+  private final AtomicLong count = new AtomicLong();
+
+  private final AtomicLong version = new AtomicLong();
+
+  private final ThreadLocal<RepositoryBatch> batches = new ThreadLocal<>();
+
+  /**
+   * Ids locked by commits of atomic batches: other writers, {@link #findById} and views which
+   * see the commit wait till it is installed, so nobody sees a part of it.
+   */
+  private final ConcurrentHashMap<Long, Commit> committing = new ConcurrentHashMap<>();
+
+  private final OrdersJournal journal;
+
+  private SnapshotView snapshot = new SnapshotView(MappedSnapshot.EMPTY, orders);
+
+  private OrderTotals recovered;
+
+  public OrdersRepositoryImpl() {
+    this.journal = null;
+  }
+
+  @Autowired
+  public OrdersRepositoryImpl(Optional<OrdersJournal> journal) {
+    this.journal = journal.orElse(null);
+  }
 
   /**
-   * Initialize mock-repository with mock-values.
+   * Recover orders from journal if persistence is enabled,
+   * otherwise initialize mock-repository with mock-values.
+   *
+   * <p>Orders of the snapshot stay in the mapped file and are decoded on access,
+   * only the log written after it is replayed into memory.
    */
   @PostConstruct
   public void init() {
+    if (journal != null) {
+      MappedSnapshot mapped = journal.mapSnapshot();
+      snapshot = new SnapshotView(mapped, orders);
+      count.set(snapshot.size());
+      recovered = mapped.totals();
+      journal.replay(this::load, this::unload);
+      journal.open(this);
+      return;
+    }
+
     Order order1 = new Order();
     Order order2 = new Order();
     Order order3 = new Order();
@@ -28,9 +156,154 @@ public class OrdersRepositoryImpl implements OrdersRepository {
     order2.setId(2L);
     order3.setId(3L);
 
-    orders.put(order1.getId(), order1);
-    orders.put(order2.getId(), order2);
-    orders.put(order3.getId(), order3);
+    save(order1);
+    save(order2);
+    save(order3);
+  }
+
+  @Override
+  public Optional<Order> findById(long id) {
+    RepositoryBatch batch = staging();
+    return Optional.ofNullable(batch != null ? batch.find(id, this::stored) : stored(id));
+  }
+
+  @Override
+  public boolean existsById(long id) {
+    RepositoryBatch batch = staging();
+    if (batch != null) {
+      return batch.find(id, this::stored) != null;
+    }
+    awaitCommit(id);
+    Order stored = orders.get(id);
+    return stored == null ? snapshot.contains(id) : stored != SnapshotView.DELETED;
+  }
+
+  @Override
+  public List<Order> findAll() {
+    try (Stream<Order> orders = stream()) {
+      return orders.collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Find orders by filter using status and date indexes, as of the moment of the call.
+   *
+   * @param filter - search criteria
+   * @return List of matching orders
+   */
+  @Override
+  public List<Order> findAll(OrderFilter filter) {
+    if (filter.isEmpty()) {
+      return findAll();
+    }
+    View view = clock.open();
+    try {
+      List<Order> result = snapshot.findAll(filter, id -> rawAt(id, view));
+      // indexes hold the latest state, ids changed since the view opened are checked again
+      Set<Long> found = new HashSet<>();
+      for (Long id : indexes.candidates(filter)) {
+        Order order = rawAt(id, view);
+        if (order != null && order != SnapshotView.DELETED && filter.matches(order)) {
+          result.add(order);
+          found.add(id);
+        }
+      }
+      for (Long id : history.keySet()) {
+        Order order = rawAt(id, view);
+        if (order != null && order != SnapshotView.DELETED && filter.matches(order)
+            && !found.contains(id)) {
+          result.add(order);
+        }
+      }
+      return result;
+    } finally {
+      release(view);
+    }
+  }
+
+  /**
+   * Lazy stream over stored orders in order of id as of the moment it was created: changes
+   * made while it is consumed aren't visible, and writers never wait for it. The moment is
+   * the first read of the stream. Old versions are kept till the stream is consumed or closed.
+   *
+   * @return Stream of orders
+   */
+  @Override
+  public Stream<Order> stream() {
+    ViewSpliterator orders = new ViewSpliterator();
+    return StreamSupport.stream(orders, false).onClose(orders::close);
+  }
+
+  /**
+   * Lazy stream over the latest values of the map in order of id, it never throws
+   * ConcurrentModificationException and reflects some of the changes made while it is consumed.
+   *
+   * @return Stream of orders
+   */
+  @Override
+  public Stream<Order> streamLatest() {
+    Iterator<Order> iterator = snapshot.ordered(indexes.ordered(OrderFilter.ANY, OrderSortField.ID,
+        null).iterator(), orders::get);
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+        Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT), false);
+  }
+
+  /**
+   * Find page of orders by keyset: the page starts right after cursor.
+   *
+   * @param filter - search criteria
+   * @param sort   - sort field
+   * @param after  - cursor of previous page or null for first page
+   * @param limit  - max count of orders in page
+   * @return List of matching orders sorted by field
+   */
+  @Override
+  public List<Order> findPage(OrderFilter filter, OrderSortField sort, OrderCursor after,
+                              int limit) {
+    List<Order> page = new ArrayList<>(Math.min(limit, 1024));
+    for (Long id : indexes.ordered(filter, sort, after)) {
+      Order order = orders.get(id);
+      if (order != null && order != SnapshotView.DELETED && filter.matches(order)) {
+        page.add(order);
+        if (page.size() == limit) {
+          break;
+        }
+      }
+    }
+    if (snapshot.size() == 0) {
+      return page;
+    }
+    page.addAll(snapshot.findPage(filter, sort, after, limit));
+    Comparator<Order> order = sort == OrderSortField.DATE
+        ? Comparator.comparing(OrderCursor::dateKey).thenComparing(Order::getId)
+        : Comparator.comparing(Order::getId);
+    page.sort(order);
+    return page.size() > limit ? new ArrayList<>(page.subList(0, limit)) : page;
+  }
+
+  @Override
+  public Optional<OrderTotals> recoveredTotals() {
+    return Optional.ofNullable(recovered).map(OrderTotals::copy);
+  }
+
+  @Override
+  public long count() {
+    return count.get();
+  }
+
+  /**
+   * Max id of stored orders.
+   *
+   * @return max id or 0 if repository is empty
+   */
+  @Override
+  public long maxId() {
+    return Math.max(indexes.maxId(), snapshot.maxId());
+  }
+
+  @Override
+  public long version() {
+    return version.get();
   }
 
   /**
@@ -40,8 +313,708 @@ public class OrdersRepositoryImpl implements OrdersRepository {
    * @return Order (saved)
    */
   @Override
-  public Order addOrder(Order order) {
-    return orders.put(order.getId(), order);
+  public Order save(Order order) {
+    RepositoryBatch batch = staging();
+    if (batch != null) {
+      return batch.save(order, this::stored);
+    }
+    Order copy = copyOf(order);
+    try {
+      compute(copy.getId(), (key, stored) -> apply(key, stored, copy, NEXT_STAMP));
+    } finally {
+      afterChanges();
+    }
+    return copy;
+  }
+
+  /**
+   * Save new order if its id is free.
+   *
+   * @param order - order to save
+   * @return Order (saved) or empty if id is already taken
+   */
+  @Override
+  public Optional<Order> insert(Order order) {
+    RepositoryBatch batch = staging();
+    if (batch != null) {
+      return batch.insert(order, this::stored);
+    }
+    try {
+      return insertWithoutCommit(order);
+    } finally {
+      afterChanges();
+    }
+  }
+
+  /**
+   * Save batch of new orders, orders with already existing ids are skipped.
+   *
+   * @param orders - orders to save
+   * @return count of saved orders
+   */
+  @Override
+  public int insertAll(Collection<Order> orders) {
+    int inserted = 0;
+    RepositoryBatch batch = staging();
+    if (batch != null) {
+      for (Order order : orders) {
+        if (batch.insert(order, this::stored).isPresent()) {
+          inserted++;
+        }
+      }
+      return inserted;
+    }
+    try {
+      for (Order order : orders) {
+        if (insertWithoutCommit(order).isPresent()) {
+          inserted++;
+        }
+      }
+    } finally {
+      afterChanges();
+    }
+    return inserted;
+  }
+
+  /**
+   * Atomically apply changes to existing order.
+   *
+   * @param id      - order id
+   * @param changes - changes to apply to a private copy of the order
+   * @return Order (updated) or empty if there is no such order
+   */
+  @Override
+  public Optional<Order> update(long id, Consumer<Order> changes) {
+    RepositoryBatch batch = staging();
+    if (batch != null) {
+      return batch.update(id, changes, this::stored);
+    }
+    Order[] updated = new Order[1];
+    try {
+      compute(id, (key, stored) -> {
+        Order current = current(key, stored);
+        if (current == null) {
+          return stored;
+        }
+        Order copy = copyOf(current);
+        changes.accept(copy);
+        copy.setId(key);
+        updated[0] = copy;
+        return apply(key, stored, copy, NEXT_STAMP);
+      });
+    } finally {
+      afterChanges();
+    }
+    return Optional.ofNullable(updated[0]);
+  }
+
+  @Override
+  public Optional<Order> deleteById(long id) {
+    RepositoryBatch batch = staging();
+    if (batch != null) {
+      return batch.delete(id, this::stored);
+    }
+    Order[] removed = new Order[1];
+    try {
+      compute(id, (key, stored) -> {
+        removed[0] = current(key, stored);
+        return removed[0] == null ? stored : apply(key, stored, null, NEXT_STAMP);
+      });
+    } finally {
+      afterChanges();
+    }
+    return Optional.ofNullable(removed[0]);
+  }
+
+  @Override
+  public void batch(boolean atomic, Runnable changes) {
+    if (batches.get() != null) {
+      changes.run();
+      return;
+    }
+    RepositoryBatch batch = new RepositoryBatch(atomic);
+    batches.set(batch);
+    if (atomic) {
+      try {
+        changes.run();
+      } finally {
+        batches.remove();
+      }
+      install(batch.staged());
+      return;
+    }
+    try {
+      changes.run();
+    } finally {
+      batches.remove();
+      commitChanges();
+    }
+  }
+
+  @Override
+  public void addListener(OrderChangeListener listener) {
+    listeners.add(listener);
+  }
+
+  private Optional<Order> insertWithoutCommit(Order order) {
+    Order copy = copyOf(order);
+    boolean[] absent = new boolean[1];
+    compute(copy.getId(), (key, stored) -> {
+      if (current(key, stored) != null) {
+        return stored;
+      }
+      absent[0] = true;
+      return apply(key, stored, copy, NEXT_STAMP);
+    });
+    return absent[0] ? Optional.of(copy) : Optional.empty();
+  }
+
+  /**
+   * Current state of order.
+   *
+   * @param id     - id of order
+   * @param stored - value in the map
+   * @return order or null if there is no such order
+   */
+  private Order current(long id, Order stored) {
+    if (stored == SnapshotView.DELETED) {
+      return null;
+    }
+    return stored != null ? stored : snapshot.find(id);
+  }
+
+  /**
+   * State of order for a reader outside of the commit of an atomic batch.
+   *
+   * @param id - id of order
+   * @return order or null if there is no such order
+   */
+  private Order stored(long id) {
+    awaitCommit(id);
+    return current(id, orders.get(id));
+  }
+
+  /**
+   * Atomic batch of the current thread, whose changes are staged.
+   */
+  private RepositoryBatch staging() {
+    RepositoryBatch batch = batches.get();
+    return batch != null && batch.isAtomic() ? batch : null;
+  }
+
+  /**
+   * Change order inside compute of the map once no other thread commits it.
+   *
+   * @param id     - id of order
+   * @param change - function of id and value of the map
+   */
+  private void compute(long id, BiFunction<Long, Order, Order> change) {
+    while (true) {
+      Commit[] blocking = new Commit[1];
+      orders.compute(id, (key, stored) -> {
+        // checked inside compute: a commit validating the id waits for this compute
+        blocking[0] = blocking(key);
+        return blocking[0] != null ? stored : change.apply(key, stored);
+      });
+      if (blocking[0] == null) {
+        return;
+      }
+      awaitCommit(id, blocking[0]);
+    }
+  }
+
+  /**
+   * Install staged changes of atomic batch as one commit. Ids are locked in ascending order,
+   * every order is checked to be in the state the batch read, then all changes are applied
+   * under one stamp, journaled and committed once. Ids are unlocked even if it fails midway.
+   *
+   * @param staged - staged changes in order of id
+   * @throws ConcurrentModificationException if another thread changed an order meanwhile,
+   *                                         nothing is changed then
+   */
+  private void install(List<RepositoryBatch.Staged> staged) {
+    staged.removeIf(RepositoryBatch.Staged::isNoop);
+    if (staged.isEmpty()) {
+      return;
+    }
+    Commit commit = new Commit();
+    lock(staged, commit);
+    boolean applied = false;
+    try {
+      for (RepositoryBatch.Staged change : staged) {
+        boolean[] unchanged = new boolean[1];
+        orders.compute(change.getId(), (key, stored) -> {
+          unchanged[0] = Objects.equals(current(key, stored), change.getBase());
+          return stored;
+        });
+        if (!unchanged[0]) {
+          throw new ConcurrentModificationException(
+              "Order " + change.getId() + " was changed by another thread.");
+        }
+      }
+      long stamp = clock.next();
+      commit.stamp = stamp;
+      applied = true;
+      for (RepositoryBatch.Staged change : staged) {
+        Order after = change.getAfter() == null ? null : copyOf(change.getAfter());
+        long version = after == null ? 1L : after.getVersion();
+        orders.compute(change.getId(),
+            (key, stored) -> apply(key, stored, after, stamp, version));
+      }
+    } finally {
+      unlock(staged, commit);
+      if (applied) {
+        commitChanges();
+      }
+    }
+  }
+
+  /**
+   * Lock ids for commit, waiting for other commits holding them. Ids are taken in ascending
+   * order, so commits don't deadlock.
+   */
+  private void lock(List<RepositoryBatch.Staged> staged, Commit commit) {
+    for (int i = 0; i < staged.size(); ) {
+      long id = staged.get(i).getId();
+      Commit other = committing.putIfAbsent(id, commit);
+      if (other == null) {
+        i++;
+      } else if (!other.await()) {
+        unlock(staged.subList(0, i), commit);
+        throw new ConcurrentModificationException(
+            "Order " + id + " is locked by another batch for too long.");
+      }
+    }
+  }
+
+  private void unlock(List<RepositoryBatch.Staged> staged, Commit commit) {
+    for (RepositoryBatch.Staged change : staged) {
+      committing.remove(change.getId(), commit);
+    }
+    commit.done.countDown();
+  }
+
+  /**
+   * Commit of another thread holding the id.
+   *
+   * @param id - id of order
+   * @return commit or null if the id is free or held by the current thread
+   */
+  private Commit blocking(long id) {
+    if (committing.isEmpty()) {
+      return null;
+    }
+    Commit commit = committing.get(id);
+    return commit == null || commit.owner == Thread.currentThread() ? null : commit;
+  }
+
+  private void awaitCommit(long id) {
+    Commit commit = blocking(id);
+    if (commit != null) {
+      awaitCommit(id, commit);
+    }
+  }
+
+  private void awaitCommit(long id, Commit commit) {
+    if (!commit.await()) {
+      throw new ConcurrentModificationException(
+          "Order " + id + " is locked by a batch for too long.");
+    }
+  }
+
+  private Order apply(long id, Order stored, Order after, long stamp) {
+    return apply(id, stored, after, stamp, 1L);
+  }
+
+  /**
+   * Apply change inside compute of the map: stamp version, keep replaced value for views,
+   * update indexes and size, collect the change for the journal and listeners, which get it
+   * once compute returns.
+   *
+   * @param id         - id of order
+   * @param stored     - value in the map before change
+   * @param after      - new state of order or null for deleted order
+   * @param stamp      - stamp of write, {@link #NEXT_STAMP} or {@link #RECOVERY}, which isn't
+   *                   journaled, stamped nor passed to listeners
+   * @param minVersion - lowest version to stamp
+   * @return new value of the map
+   */
+  private Order apply(long id, Order stored, Order after, long stamp, long minVersion) {
+    boolean notify = stamp != RECOVERY;
+    Order before = current(id, stored);
+    if (notify && after != null) {
+      after.setVersion(Math.max(nextVersion(before), minVersion));
+    }
+    if (notify) {
+      record(id, stored, after, stamp == NEXT_STAMP ? clock.next() : stamp);
+    }
+    Order indexed = stored == SnapshotView.DELETED ? null : stored;
+    if (indexed != null || after != null) {
+      indexes.update(indexed, after);
+    }
+    if (before == null && after != null) {
+      count.incrementAndGet();
+    } else if (before != null && after == null) {
+      count.decrementAndGet();
+    }
+    if (notify) {
+      pending.add(id, before, after);
+    }
+    if (after == null) {
+      return snapshot.contains(id) ? SnapshotView.DELETED : null;
+    }
+    return after;
+  }
+
+  /**
+   * Hand changes of the call over, they are committed once the batch ends if there is one.
+   */
+  private void afterChanges() {
+    if (batches.get() == null) {
+      commitChanges();
+    } else {
+      pending.handOver(this::handOver);
+    }
+  }
+
+  /**
+   * Commit changes of the call or batch to the journal and notify listeners.
+   */
+  private void commitChanges() {
+    try {
+      pending.handOver(this::handOver);
+      if (journal != null) {
+        journal.commit();
+      }
+    } finally {
+      if (pending.takeChanged()) {
+        version.incrementAndGet();
+      }
+      for (OrderChangeListener listener : listeners) {
+        try {
+          listener.afterChanges();
+        } catch (RuntimeException e) {
+          log.error("Listener {} failed after changes", listener, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Append change to the journal and notify listeners of it, after the lock of the order is
+   * released. Listeners get the change even if the append fails: it is visible already.
+   */
+  private void handOver(Order before, Order after) {
+    try {
+      if (journal != null) {
+        journal.append(before, after);
+      }
+    } finally {
+      for (OrderChangeListener listener : listeners) {
+        try {
+          listener.onChange(before, after);
+        } catch (RuntimeException e) {
+          log.error("Listener {} failed on change of order {}", listener,
+              (after != null ? after : before).getId(), e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Keep value which is about to be replaced, before the new one is visible in the map, if
+   * some open view doesn't see the write. The chain is cut on the way.
+   *
+   * @param id     - id of order
+   * @param stored - value in the map before change
+   * @param after  - new state of order or null for deleted order
+   * @param stamp  - stamp of write
+   */
+  private void record(long id, Order stored, Order after, long stamp) {
+    // read after the stamp is taken: a view opened later sees the write
+    long seen = clock.seenByAll();
+    if (stamp <= seen && history.isEmpty()) {
+      return;
+    }
+    history.compute(id, (key, newest) -> {
+      Write chain = newest == null ? null : newest.cut(seen);
+      if (stamp > seen) {
+        chain = new Write(stamp, stored, chain);
+        if (after == null) {
+          deletedIds.add(key);
+        }
+      }
+      return track(key, chain);
+    });
+  }
+
+  /**
+   * Value of the map as the view sees it.
+   *
+   * @param id   - id of order
+   * @param view - point-in-time view
+   * @return order, {@link SnapshotView#DELETED} or null if the map had no entry
+   */
+  private Order rawAt(long id, View view) {
+    Commit commit = blocking(id);
+    if (commit != null && view.sees(commit.stamp)) {
+      awaitCommit(id, commit);
+    }
+    // the map is read first: a value replaced after that is found in the chain
+    Order value = orders.get(id);
+    for (Write write = history.get(id); write != null && !view.sees(write.stamp);
+         write = write.older) {
+      value = write.before;
+    }
+    return value;
+  }
+
+  /**
+   * Ids of the map, including ones removed from it since views opened, in ascending order.
+   * Removed ids are looked up at every step: an id removed from the index behind the iterator
+   * is among them before that.
+   */
+  private Iterator<Long> changedIds() {
+    Iterator<Long> indexed = indexes.ordered(OrderFilter.ANY, OrderSortField.ID, null).iterator();
+    return new Iterator<>() {
+      private Long nextIndexed = indexed.hasNext() ? indexed.next() : null;
+      private long last = Long.MIN_VALUE;
+      private Long next;
+
+      @Override
+      public boolean hasNext() {
+        if (next == null) {
+          Long removedId = last == Long.MAX_VALUE || deletedIds.isEmpty()
+              ? null
+              : deletedIds.higher(last);
+          while (nextIndexed != null && nextIndexed <= last) {
+            nextIndexed = indexed.hasNext() ? indexed.next() : null;
+          }
+          next = removedId == null || nextIndexed != null && nextIndexed < removedId
+              ? nextIndexed
+              : removedId;
+        }
+        return next != null;
+      }
+
+      @Override
+      public Long next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        last = next;
+        next = null;
+        return last;
+      }
+    };
+  }
+
+  private void release(View view) {
+    clock.close(view);
+    if (!retained.isEmpty()) {
+      prune(new ArrayList<>(retained));
+    }
+  }
+
+  /**
+   * Cut chains of ids at the first write which every view sees.
+   *
+   * @param ids - ids of changed orders
+   */
+  private void prune(Collection<Long> ids) {
+    long seen = clock.seenByAll();
+    for (Long id : ids) {
+      history.computeIfPresent(id, (key, newest) -> track(key, newest.cut(seen)));
+    }
+  }
+
+  /**
+   * Keep track of retained and removed ids inside compute of the chains.
+   *
+   * @param id    - id of order
+   * @param chain - chain after cut
+   * @return chain or null if nothing is kept
+   */
+  private Write track(Long id, Write chain) {
+    if (chain == null) {
+      retained.remove(id);
+      deletedIds.remove(id);
+    } else {
+      retained.add(id);
+    }
+    return chain;
+  }
+
+  /**
+   * Put recovered order without notifying listeners.
+   */
+  private void load(Order order) {
+    orders.compute(order.getId(), (key, stored) -> {
+      recovered.change(current(key, stored), order);
+      return apply(key, stored, order, RECOVERY);
+    });
+  }
+
+  /**
+   * Remove recovered deletion without notifying listeners.
+   */
+  private void unload(long id) {
+    orders.compute(id, (key, stored) -> {
+      Order before = current(key, stored);
+      if (before == null) {
+        return stored;
+      }
+      recovered.change(before, null);
+      return apply(key, stored, null, RECOVERY);
+    });
+  }
+
+  static long nextVersion(Order before) {
+    return before == null || before.getVersion() == null ? 1L : before.getVersion() + 1;
+  }
+
+  /**
+   * Value of the map replaced by write with stamp, link of version chain. Stamps fall from
+   * the newest link to the oldest.
+   */
+  private static final class Write {
+
+    private final long stamp;
+    private final Order before;
+    private final Write older;
+
+    private Write(long stamp, Order before, Write older) {
+      this.stamp = stamp;
+      this.before = before;
+      this.older = older;
+    }
+
+    /**
+     * Chain without the first write every view sees and all older ones, readers stop at it.
+     * Links are immutable, so the kept part is copied.
+     *
+     * @param seen - highest stamp seen by all views
+     * @return chain or null if nothing is kept
+     */
+    private Write cut(long seen) {
+      int kept = 0;
+      Write first = this;
+      while (first != null && first.stamp > seen) {
+        kept++;
+        first = first.older;
+      }
+      if (first == null) {
+        return this;
+      }
+      Write[] links = new Write[kept];
+      Write link = this;
+      for (int i = 0; i < kept; i++) {
+        links[i] = link;
+        link = link.older;
+      }
+      Write chain = null;
+      for (int i = kept - 1; i >= 0; i--) {
+        chain = new Write(links[i].stamp, links[i].before, chain);
+      }
+      return chain;
+    }
+  }
+
+  /**
+   * Ids of an atomic batch locked for its commit.
+   */
+  private static final class Commit {
+
+    private final Thread owner = Thread.currentThread();
+    private final CountDownLatch done = new CountDownLatch(1);
+    /**
+     * Stamp of the installed changes, taken once the ids are locked and checked.
+     */
+    private volatile long stamp = Long.MAX_VALUE;
+
+    /**
+     * Wait till the commit is installed, at most {@link #COMMIT_WAIT_NANOS}.
+     *
+     * @return true if it is installed
+     */
+    private boolean await() {
+      try {
+        return done.await(COMMIT_WAIT_NANOS, TimeUnit.NANOSECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Orders of a view which is opened by the first read, so a stream which is never read
+   * holds nothing. The view is released once the orders are read or the stream is closed.
+   */
+  private final class ViewSpliterator extends Spliterators.AbstractSpliterator<Order> {
+
+    private Iterator<Order> orders;
+    private Cleaner.Cleanable cleanable;
+    private boolean closed;
+
+    private ViewSpliterator() {
+      super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Order> action) {
+      if (closed) {
+        return false;
+      }
+      if (orders == null) {
+        View view = clock.open();
+        cleanable = VIEWS.register(this, new Release(OrdersRepositoryImpl.this, view));
+        orders = snapshot.ordered(changedIds(), id -> rawAt(id, view));
+      }
+      if (orders.hasNext()) {
+        action.accept(orders.next());
+        return true;
+      }
+      close();
+      return false;
+    }
+
+    private void close() {
+      closed = true;
+      if (cleanable != null) {
+        cleanable.clean();
+      }
+    }
+  }
+
+  /**
+   * Cleaning action of a stream, it must not reach the stream itself.
+   */
+  private static final class Release implements Runnable {
+
+    private final OrdersRepositoryImpl repository;
+    private final View view;
+
+    private Release(OrdersRepositoryImpl repository, View view) {
+      this.repository = repository;
+      this.view = view;
+    }
+
+    @Override
+    public void run() {
+      repository.release(view);
+    }
+  }
+
+  static Order copyOf(Order order) {
+    return new Order()
+        .id(order.getId())
+        .productId(order.getProductId())
+        .quantity(order.getQuantity())
+        .date(order.getDate())
+        .status(order.getStatus())
+        .complete(order.getComplete())
+        .version(order.getVersion());
   }
 
 }
@@ -0,0 +1,111 @@
+package com.arwka.openapiedu.persistent.repository.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+import org.openapitools.model.Order;
+
+/**
+ * Changes made by a thread which aren't appended to the journal and passed to listeners yet.
+ * The store only collects them while it holds the lock of the order and hands them over after
+ * the lock is released, so no I/O or listener code runs under its locks.
+ *
+ * <p>Every change takes the next ticket of the stripe of its id while the order is locked,
+ * so tickets of one order grow in the order of its changes. Changes are handed over in the
+ * order of tickets of their stripe: a thread waits for the previous ticket, which another
+ * thread holds only between its change and its handover. So the journal and listeners get
+ * changes of every order in the order they were applied, changes of different stripes don't
+ * wait for each other.
+ */
+final class PendingChanges {
+
+  private static final int STRIPES = 64;
+
+  private final AtomicLongArray taken = new AtomicLongArray(STRIPES);
+  private final AtomicLongArray handed = new AtomicLongArray(STRIPES);
+  private final ThreadLocal<Pending> pending = ThreadLocal.withInitial(Pending::new);
+
+  /**
+   * Collect change of the current thread, called while the store holds the lock of the order.
+   *
+   * @param id     - id of order
+   * @param before - previous state of order or null for new order
+   * @param after  - new state of order or null for deleted order
+   */
+  void add(long id, Order before, Order after) {
+    int stripe = Long.hashCode(id) & (STRIPES - 1);
+    Pending changes = pending.get();
+    changes.list.add(new Change(stripe, taken.incrementAndGet(stripe), before, after));
+    changes.changed = true;
+  }
+
+  /**
+   * Whether the current thread changed anything since the previous call, which ends its
+   * commit.
+   *
+   * @return true if some change was collected
+   */
+  boolean takeChanged() {
+    Pending changes = pending.get();
+    boolean changed = changes.changed;
+    changes.changed = false;
+    return changed;
+  }
+
+  /**
+   * Hand changes of the current thread over in their order, called without any lock of the
+   * store held. Every change is handed over even if the consumer throws for some of them,
+   * the first exception is thrown after the last one.
+   *
+   * @param consumer - consumer of previous and new state of order
+   */
+  void handOver(BiConsumer<Order, Order> consumer) {
+    List<Change> changes = pending.get().list;
+    if (changes.isEmpty()) {
+      return;
+    }
+    RuntimeException failure = null;
+    try {
+      for (Change change : changes) {
+        while (handed.get(change.stripe) != change.ticket - 1) {
+          Thread.yield();
+        }
+        try {
+          consumer.accept(change.before, change.after);
+        } catch (RuntimeException e) {
+          if (failure == null) {
+            failure = e;
+          }
+        } finally {
+          handed.set(change.stripe, change.ticket);
+        }
+      }
+    } finally {
+      changes.clear();
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private static final class Pending {
+    private final List<Change> list = new ArrayList<>();
+    private boolean changed;
+  }
+
+  private static final class Change {
+    private final int stripe;
+    private final long ticket;
+    private final Order before;
+    private final Order after;
+
+    private Change(int stripe, long ticket, Order before, Order after) {
+      this.stripe = stripe;
+      this.ticket = ticket;
+      this.before = before;
+      this.after = after;
+    }
+  }
+
+}
@@ -0,0 +1,130 @@
+package com.arwka.openapiedu.persistent.repository.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import lombok.Value;
+import org.openapitools.model.Order;
+
+/**
+ * Batch of changes made by one thread. An atomic batch stages its changes here: the store
+ * isn't changed till the batch completes, then the store installs them in one commit if the
+ * orders are still in the state the batch read.
+ */
+final class RepositoryBatch {
+
+  private final boolean atomic;
+  private final Map<Long, Staged> staged = new HashMap<>();
+
+  RepositoryBatch(boolean atomic) {
+    this.atomic = atomic;
+  }
+
+  boolean isAtomic() {
+    return atomic;
+  }
+
+  /**
+   * State of order as the batch sees it.
+   *
+   * @param id     - order id
+   * @param stored - current state of order in the store by id, null if there is no such order
+   * @return order or null if there is no such order
+   */
+  Order find(long id, LongFunction<Order> stored) {
+    return read(id, stored).after;
+  }
+
+  Order save(Order order, LongFunction<Order> stored) {
+    Staged current = read(order.getId(), stored);
+    return stage(current, OrdersRepositoryImpl.copyOf(order));
+  }
+
+  Optional<Order> insert(Order order, LongFunction<Order> stored) {
+    Staged current = read(order.getId(), stored);
+    if (current.after != null) {
+      return Optional.empty();
+    }
+    return Optional.of(stage(current, OrdersRepositoryImpl.copyOf(order)));
+  }
+
+  Optional<Order> update(long id, Consumer<Order> changes, LongFunction<Order> stored) {
+    Staged current = read(id, stored);
+    if (current.after == null) {
+      return Optional.empty();
+    }
+    Order copy = OrdersRepositoryImpl.copyOf(current.after);
+    changes.accept(copy);
+    copy.setId(id);
+    return Optional.of(stage(current, copy));
+  }
+
+  Optional<Order> delete(long id, LongFunction<Order> stored) {
+    Staged current = read(id, stored);
+    if (current.after != null) {
+      stage(current, null);
+    }
+    return Optional.ofNullable(current.after);
+  }
+
+  /**
+   * Staged changes in order of id, the order stores lock them in.
+   */
+  List<Staged> staged() {
+    List<Staged> changes = new ArrayList<>(staged.values());
+    changes.sort(Comparator.comparingLong(Staged::getId));
+    return changes;
+  }
+
+  /**
+   * Staged change of order or, if there is none, the stored state as both base and state:
+   * the base is the state a new change is derived from.
+   */
+  private Staged read(long id, LongFunction<Order> stored) {
+    Staged change = staged.get(id);
+    if (change != null) {
+      return change;
+    }
+    Order order = stored.apply(id);
+    return new Staged(id, order, order);
+  }
+
+  /**
+   * Stage new state of order. Version continues the latest known state, a staged deletion
+   * continues the stored one.
+   */
+  private Order stage(Staged current, Order after) {
+    if (after != null) {
+      after.setVersion(OrdersRepositoryImpl.nextVersion(
+          current.after != null ? current.after : current.base));
+    }
+    staged.put(current.id, new Staged(current.id, current.base, after));
+    return after;
+  }
+
+  /**
+   * Change of one order: state read by the batch and state to install.
+   */
+  @Value
+  static class Staged {
+    long id;
+    /**
+     * Stored state of order when the batch first read it, null if there was no such order.
+     */
+    Order base;
+    /**
+     * New state of order, null for deleted order.
+     */
+    Order after;
+
+    boolean isNoop() {
+      return base == null && after == null;
+    }
+  }
+
+}
@@ -0,0 +1,296 @@
+package com.arwka.openapiedu.persistent.repository.impl;
+
+import com.arwka.openapiedu.persistent.journal.MappedSnapshot;
+import com.arwka.openapiedu.persistent.repository.OrderCursor;
+import com.arwka.openapiedu.persistent.repository.OrderFilter;
+import com.arwka.openapiedu.persistent.repository.impl.OrderIndexes.DateKey;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.function.LongFunction;
+import org.openapitools.model.Order;
+import org.openapitools.model.OrderSortField;
+import org.openapitools.model.StatusEnum;
+
+/**
+ * Orders of mapped snapshot which weren't changed since startup.
+ *
+ * <p>Changed orders live in the map of the repository, deleted snapshot orders are kept
+ * there as {@link #DELETED}, so an order of the snapshot is visible only while the map
+ * has no entry for its id. Snapshot orders have no in-heap indexes: queries by status
+ * and date use the indexes mapped with the snapshot and decode only candidates.
+ *
+ * <p>Scans take the map entry as of a point in time from the caller, pages read the
+ * current one.
+ */
+class SnapshotView {
+
+  /**
+   * Map value of a deleted snapshot order.
+   */
+  static final Order DELETED = new Order();
+
+  private final MappedSnapshot snapshot;
+  private final Map<Long, Order> changed;
+
+  SnapshotView(MappedSnapshot snapshot, Map<Long, Order> changed) {
+    this.snapshot = snapshot;
+    this.changed = changed;
+  }
+
+  int size() {
+    return snapshot.size();
+  }
+
+  long maxId() {
+    return snapshot.maxId();
+  }
+
+  boolean contains(long id) {
+    return snapshot.indexOf(id) >= 0;
+  }
+
+  /**
+   * Order of snapshot, regardless of later changes.
+   *
+   * @param id - id of order
+   * @return order or null if snapshot doesn't contain it
+   */
+  Order find(long id) {
+    int index = snapshot.indexOf(id);
+    return index < 0 ? null : snapshot.get(index);
+  }
+
+  /**
+   * Merge unchanged snapshot orders with changed ones in order of id.
+   *
+   * @param changedIds - ids of changed orders in ascending order, may repeat
+   * @param changedAt  - map entry of id or null
+   * @return iterator over all orders in order of id
+   */
+  Iterator<Order> ordered(Iterator<Long> changedIds, LongFunction<Order> changedAt) {
+    return new Iterator<>() {
+      private int index;
+      private Long changedId = nextChanged();
+      private long last = Long.MIN_VALUE;
+      private Order next;
+
+      @Override
+      public boolean hasNext() {
+        while (next == null && (index < snapshot.size() || changedId != null)) {
+          long id;
+          Order order;
+          if (changedId == null || index < snapshot.size() && snapshot.id(index) < changedId) {
+            id = snapshot.id(index);
+            Order value = changedAt.apply(id);
+            order = value == null ? snapshot.get(index) : value;
+            index++;
+          } else {
+            id = changedId;
+            order = changedAt.apply(id);
+            changedId = nextChanged();
+          }
+          if (id > last) {
+            last = id;
+            next = order == DELETED ? null : order;
+          }
+        }
+        return next != null;
+      }
+
+      @Override
+      public Order next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        Order order = next;
+        next = null;
+        return order;
+      }
+
+      private Long nextChanged() {
+        return changedIds.hasNext() ? changedIds.next() : null;
+      }
+    };
+  }
+
+  /**
+   * Unchanged snapshot orders matching the filter, read through the smaller of status group
+   * and date range.
+   *
+   * @param filter    - non-empty search criteria
+   * @param changedAt - map entry of id or null
+   * @return List of orders
+   */
+  List<Order> findAll(OrderFilter filter, LongFunction<Order> changedAt) {
+    List<Order> result = new ArrayList<>();
+    StatusEnum status = filter.getStatus();
+    int statusFrom = status == null ? 0 : snapshot.statusFrom(status);
+    int statusTo = status == null ? snapshot.size() : snapshot.statusTo(status);
+    int dateFrom = dateFrom(DateKey.first(filter.getFrom()), true);
+    int dateTo = dateTo(DateKey.last(filter.getTo()));
+    if (status == null || filter.hasPeriod() && dateTo - dateFrom < statusTo - statusFrom) {
+      for (int entry = dateFrom; entry < dateTo; entry++) {
+        add(result, candidate(snapshot.byDate(entry), filter, changedAt));
+      }
+    } else {
+      for (int entry = statusFrom; entry < statusTo; entry++) {
+        add(result, candidate(snapshot.byStatus(entry), filter, changedAt));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Page of unchanged snapshot orders after cursor.
+   *
+   * @param filter - search criteria
+   * @param sort   - sort field
+   * @param after  - cursor of previous page or null for first page
+   * @param limit  - max count of orders in page
+   * @return List of orders sorted by field
+   */
+  List<Order> findPage(OrderFilter filter, OrderSortField sort, OrderCursor after, int limit) {
+    List<Order> page = new ArrayList<>(Math.min(limit, 1024));
+    if (sort == OrderSortField.DATE) {
+      DateKey lower = DateKey.first(filter.getFrom());
+      boolean inclusive = true;
+      if (after != null) {
+        DateKey cursor = new DateKey(after.getDate(), after.getId());
+        if (lower == null || cursor.compareTo(lower) >= 0) {
+          lower = cursor;
+          inclusive = false;
+        }
+      }
+      int to = dateTo(DateKey.last(filter.getTo()));
+      for (int entry = dateFrom(lower, inclusive); entry < to && page.size() < limit; entry++) {
+        add(page, candidate(snapshot.byDate(entry), filter, changed::get));
+      }
+      return page;
+    }
+
+    long afterId = after == null ? Long.MIN_VALUE : after.getId();
+    StatusEnum status = filter.getStatus();
+    if (status != null) {
+      int to = snapshot.statusTo(status);
+      for (int entry = firstAfterId(snapshot.statusFrom(status), to, afterId);
+           entry < to && page.size() < limit; entry++) {
+        add(page, candidate(snapshot.byStatus(entry), filter, changed::get));
+      }
+      return page;
+    }
+    int start = after == null ? 0 : snapshot.indexOf(afterId);
+    start = start < 0 ? -start - 1 : start + (after == null ? 0 : 1);
+    int dateFrom = dateFrom(DateKey.first(filter.getFrom()), true);
+    int dateTo = dateTo(DateKey.last(filter.getTo()));
+    long inPeriod = dateTo - dateFrom;
+    // a scan by id reads about limit * size / inPeriod orders, the date range reads inPeriod
+    if (!filter.hasPeriod() || inPeriod * inPeriod >= (long) limit * (snapshot.size() - start)) {
+      for (int i = start; i < snapshot.size() && page.size() < limit; i++) {
+        add(page, candidate(i, filter, changed::get));
+      }
+      return page;
+    }
+    // keep the first `limit` ids of the date range in a max-heap
+    PriorityQueue<Integer> smallest = new PriorityQueue<>(Comparator.reverseOrder());
+    for (int entry = dateFrom; entry < dateTo; entry++) {
+      int position = snapshot.byDate(entry);
+      if (position < start
+          || smallest.size() == limit && position >= smallest.peek()
+          || candidate(position, filter, changed::get) == null) {
+        continue;
+      }
+      smallest.add(position);
+      if (smallest.size() > limit) {
+        smallest.poll();
+      }
+    }
+    while (!smallest.isEmpty()) {
+      page.add(snapshot.get(smallest.poll()));
+    }
+    Collections.reverse(page);
+    return page;
+  }
+
+  /**
+   * First entry of the date index with key above the lower bound.
+   *
+   * @param lower     - lower bound or null for the first entry
+   * @param inclusive - whether an entry equal to the bound is included
+   * @return entry
+   */
+  private int dateFrom(DateKey lower, boolean inclusive) {
+    return lower == null ? 0 : firstDateAbove(lower, inclusive);
+  }
+
+  /**
+   * Entry of the date index after the last key within the upper bound.
+   *
+   * @param upper - upper bound (inclusive) or null for the end of the index
+   * @return entry
+   */
+  private int dateTo(DateKey upper) {
+    return upper == null ? snapshot.size() : firstDateAbove(upper, false);
+  }
+
+  private int firstDateAbove(DateKey key, boolean inclusive) {
+    int low = 0;
+    int high = snapshot.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      int compared = dateKey(snapshot.byDate(middle)).compareTo(key);
+      if (compared < 0 || compared == 0 && !inclusive) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * First entry of a status group with id above the given one, ids in a group are ascending.
+   */
+  private int firstAfterId(int from, int to, long id) {
+    int low = from;
+    int high = to;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (snapshot.id(snapshot.byStatus(middle)) <= id) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private DateKey dateKey(int position) {
+    Instant instant = snapshot.instant(position);
+    return new DateKey(instant == null ? OrderCursor.NO_DATE : instant, snapshot.id(position));
+  }
+
+  private static void add(List<Order> orders, Order order) {
+    if (order != null) {
+      orders.add(order);
+    }
+  }
+
+  private Order candidate(int index, OrderFilter filter, LongFunction<Order> changedAt) {
+    if (filter.getStatus() != null && snapshot.status(index) != filter.getStatus()) {
+      return null;
+    }
+    if (changedAt.apply(snapshot.id(index)) != null) {
+      return null;
+    }
+    Order order = snapshot.get(index);
+    return filter.matches(order) ? order : null;
+  }
+
+}
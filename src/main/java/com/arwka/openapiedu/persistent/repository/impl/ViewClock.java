@@ -0,0 +1,89 @@
+package com.arwka.openapiedu.persistent.repository.impl;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stamps of writes and point-in-time views of readers.
+ *
+ * <p>Every write takes the next stamp inside compute of its order, so stamps of one order grow
+ * in the order of its writes. A view sees writes with stamps up to the last one taken before
+ * it was opened. A write which took its stamp but isn't in the map yet is simply not seen:
+ * it changes one order and readers of that order find the previous value. An atomic batch
+ * takes one stamp for all of its orders, its readers wait for it by the locks of its ids.
+ *
+ * <p>Nothing is locked: stamps are a counter and views are a concurrent set, which is
+ * empty unless some scan is running.
+ */
+final class ViewClock {
+
+  /**
+   * Nothing is seen by all views: a view is being opened and its stamp isn't known yet.
+   */
+  static final long NONE = -1L;
+
+  private final AtomicLong last = new AtomicLong();
+  private final Set<View> open = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Take stamp of a write.
+   *
+   * @return stamp
+   */
+  long next() {
+    return last.incrementAndGet();
+  }
+
+  /**
+   * Open view of writes stamped so far, it must be closed to let old versions go.
+   *
+   * @return view
+   */
+  View open() {
+    // registered first: a writer which doesn't find it read the clock before the view did
+    View view = new View();
+    open.add(view);
+    view.last = last.get();
+    return view;
+  }
+
+  void close(View view) {
+    open.remove(view);
+  }
+
+  /**
+   * Highest stamp seen by every open view and every view opened later, values replaced by
+   * writes up to it aren't needed anymore.
+   *
+   * @return stamp or {@link #NONE}
+   */
+  long seenByAll() {
+    long seen = last.get();
+    for (View view : open) {
+      long viewed = view.last;
+      if (viewed == NONE) {
+        return NONE;
+      }
+      seen = Math.min(seen, viewed);
+    }
+    return seen;
+  }
+
+  /**
+   * Point-in-time view, its identity is the key of open views.
+   */
+  static final class View {
+
+    private volatile long last = NONE;
+
+    long last() {
+      return last;
+    }
+
+    boolean sees(long stamp) {
+      return stamp <= last;
+    }
+  }
+
+}
@@ -0,0 +1,43 @@
+package com.arwka.openapiedu.service;
+
+import org.openapitools.model.StatusEnum;
+
+/**
+ * Lifecycle of order: placed, then approved, then delivered.
+ *
+ * <p>Orders without status (created before statuses existed) are treated as placed.
+ */
+public final class OrderTransitions {
+
+  private OrderTransitions() {
+  }
+
+  /**
+   * Check that order can move to the next status.
+   *
+   * @param from - current status
+   * @param to   - new status
+   * @throws IllegalStateException if the transition isn't allowed
+   */
+  public static void check(StatusEnum from, StatusEnum to) {
+    StatusEnum current = from == null ? StatusEnum.PLACED : from;
+    if (current.ordinal() + 1 != to.ordinal()) {
+      throw new IllegalStateException("Order is " + current + ", it can't become " + to + ".");
+    }
+  }
+
+  /**
+   * Check that an edit of order may set the status: it's the current status or the next one.
+   *
+   * @param from - current status
+   * @param to   - status of edit
+   * @throws IllegalStateException if the transition isn't allowed
+   */
+  public static void checkEdit(StatusEnum from, StatusEnum to) {
+    StatusEnum current = from == null ? StatusEnum.PLACED : from;
+    if (current != to) {
+      check(current, to);
+    }
+  }
+
+}
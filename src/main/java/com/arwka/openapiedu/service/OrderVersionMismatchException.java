@@ -0,0 +1,12 @@
+package com.arwka.openapiedu.service;
+
+/**
+ * Order was changed since the version the client has seen.
+ */
+public class OrderVersionMismatchException extends RuntimeException {
+
+  public OrderVersionMismatchException(long id, Long version) {
+    super("Order " + id + " has version " + version + ".");
+  }
+
+}
@@ -0,0 +1,20 @@
+package com.arwka.openapiedu.service;
+
+import java.util.List;
+import lombok.Value;
+import org.openapitools.model.Order;
+
+/**
+ * Page of orders listing.
+ */
+@Value
+public class OrdersPage {
+
+  List<Order> orders;
+
+  /**
+   * Opaque cursor of the next page or null if this page is the last one.
+   */
+  String nextCursor;
+
+}
@@ -1,30 +1,57 @@
 package com.arwka.openapiedu.service;
 
-import com.arwka.openapiedu.persistent.repository.impl.OrdersRepositoryImpl;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import com.arwka.openapiedu.persistent.repository.OrderCursor;
+import com.arwka.openapiedu.persistent.repository.OrderFilter;
+import com.arwka.openapiedu.persistent.repository.OrderIdGenerator;
+import com.arwka.openapiedu.persistent.repository.OrdersRepository;
+import com.arwka.openapiedu.service.cache.OrdersQuery;
+import com.arwka.openapiedu.service.cache.OrdersQueryCache;
+import com.arwka.openapiedu.service.cache.OrdersQueryResult;
+import com.arwka.openapiedu.service.changes.OrderChangeStream;
+import com.arwka.openapiedu.service.csv.CsvEncoding;
+import com.arwka.openapiedu.service.csv.OrderCsvMapper;
+import com.arwka.openapiedu.service.csv.OrdersCsvChunks;
+import com.arwka.openapiedu.service.csv.OrdersCsvExportFiles;
+import com.arwka.openapiedu.service.csv.OrdersCsvImporter;
+import com.arwka.openapiedu.service.csv.OrdersImportJobs;
+import com.arwka.openapiedu.service.metrics.OrdersMetrics;
+import com.arwka.openapiedu.service.stats.OrderStatistics;
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.io.Reader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
-import org.apache.commons.csv.CSVRecord;
 import org.openapitools.model.EditedOrder;
+import org.openapitools.model.ImportJob;
+import org.openapitools.model.ImportSummary;
 import org.openapitools.model.NewOrder;
 import org.openapitools.model.Order;
+import org.openapitools.model.OrderBatch;
+import org.openapitools.model.OrderBatchResult;
+import org.openapitools.model.OrderOperation;
+import org.openapitools.model.OrderOperationResult;
+import org.openapitools.model.OrderOperationStatus;
+import org.openapitools.model.OrderSortField;
+import org.openapitools.model.OrderStats;
 import org.openapitools.model.StatusEnum;
-import org.springframework.core.io.InputStreamResource;
-import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -32,23 +59,142 @@ import org.springframework.stereotype.Service;
 @RequiredArgsConstructor
 public class OrdersService {
 
-  private final OrdersRepositoryImpl ordersRepository;
+  private static final int CSV_BUFFER_SIZE = 64 * 1024;
 
   /**
-   * Get all orders.
+   * Runs of atomic batch whose orders were changed concurrently before it reports a conflict.
+   */
+  private static final int BATCH_ATTEMPTS = 3;
+
+  /**
+   * Distinguishes store versions of this run from versions before restart.
+   */
+  private final String instance = Long.toString(System.currentTimeMillis(), 36);
+
+  private final OrdersRepository ordersRepository;
+  private final OrderIdGenerator orderIdGenerator;
+  private final OrdersCsvImporter ordersCsvImporter;
+  private final OrdersImportJobs ordersImportJobs;
+  private final OrderChangeStream orderChangeStream;
+  private final OrderStatistics orderStatistics;
+  private final OrdersMetrics ordersMetrics;
+  private final OrdersCsvExportFiles ordersCsvExportFiles;
+  private final OrdersQueryCache ordersQueryCache;
+
+  /**
+   * Get orders filtered by status and period.
    *
-   * @param status - not implemented
-   * @param from   - not implemented
-   * @param to     - not implemented
-   * @return List of all orders in DB.
+   * @param status - order status
+   * @param from   - datetime FROM (period, inclusive)
+   * @param to     - datetime TO (period, inclusive)
+   * @return List of matching orders in DB.
    */
   public List<Order> getOrders(StatusEnum status, OffsetDateTime from, OffsetDateTime to) {
-    return ordersRepository.getOrders().values().stream().toList();
-    // without realization of filtering.
+    return ordersRepository.findAll(new OrderFilter(status, from, to));
+  }
+
+  /**
+   * Get page of orders filtered by status and period.
+   *
+   * @param status - order status
+   * @param from   - datetime FROM (period, inclusive)
+   * @param to     - datetime TO (period, inclusive)
+   * @param cursor - opaque cursor of the previous page or null for first page
+   * @param limit  - max count of orders in page
+   * @param sort   - sort field
+   * @return OrdersPage with orders and cursor of the next page
+   */
+  public OrdersPage getOrdersPage(StatusEnum status, OffsetDateTime from, OffsetDateTime to,
+                                  String cursor, int limit, OrderSortField sort) {
+    OrderCursor after = null;
+    if (cursor != null) {
+      after = OrderCursor.decode(cursor);
+      if (after.getSort() != sort) {
+        throw new IllegalArgumentException("Cursor was issued for another sort field.");
+      }
+    }
+
+    List<Order> page = ordersRepository
+        .findPage(new OrderFilter(status, from, to), sort, after, limit);
+
+    String nextCursor = page.size() < limit
+        ? null
+        : OrderCursor.after(page.get(page.size() - 1), sort).encode();
+    return new OrdersPage(page, nextCursor);
   }
 
   public List<Order> getOrdersWithoutParams() {
-    return ordersRepository.getOrders().values().stream().toList();
+    return ordersRepository.findAll();
+  }
+
+  public boolean isQueryCacheEnabled() {
+    return ordersQueryCache.isEnabled();
+  }
+
+  /**
+   * Get orders filtered by status and period serialized in format, from the cache of query
+   * results if no matching order was changed since the list was serialized.
+   *
+   * @param status     - order status
+   * @param from       - datetime FROM (period, inclusive)
+   * @param to         - datetime TO (period, inclusive)
+   * @param format     - name of format, part of the cache key
+   * @param serializer - serializes list of orders in format
+   * @return serialized list or orders if the list is too long to be cached
+   */
+  public OrdersQueryResult getSerializedOrders(StatusEnum status, OffsetDateTime from,
+                                               OffsetDateTime to, String format,
+                                               Function<List<Order>, byte[]> serializer) {
+    OrderFilter filter = new OrderFilter(status, from, to);
+    return ordersQueryCache.get(new OrdersQuery(filter, format),
+        () -> filter.isEmpty() ? ordersRepository.findAll() : ordersRepository.findAll(filter),
+        serializer);
+  }
+
+  /**
+   * Orders filtered by status and period, read from the store while the stream is consumed.
+   *
+   * @param status - order status
+   * @param from   - datetime FROM (period, inclusive)
+   * @param to     - datetime TO (period, inclusive)
+   * @return lazy Stream of matching orders, it must be closed
+   * @throws IllegalArgumentException if period is invalid
+   */
+  public Stream<Order> streamOrders(StatusEnum status, OffsetDateTime from, OffsetDateTime to) {
+    OrderFilter filter = new OrderFilter(status, from, to);
+    Stream<Order> orders = ordersRepository.stream();
+    return filter.isEmpty() ? orders : orders.filter(filter::matches);
+  }
+
+  /**
+   * Check filter of orders before a response which streams them is started.
+   *
+   * @param status - order status
+   * @param from   - datetime FROM (period, inclusive)
+   * @param to     - datetime TO (period, inclusive)
+   * @throws IllegalArgumentException if period is invalid
+   */
+  public void checkFilter(StatusEnum status, OffsetDateTime from, OffsetDateTime to) {
+    new OrderFilter(status, from, to);
+  }
+
+  /**
+   * Version of all orders, it's unique across restarts. Read it before reading orders:
+   * then the orders contain at least all changes of this version.
+   *
+   * @return opaque version
+   */
+  public String getStoreVersion() {
+    return instance + "-" + ordersRepository.version();
+  }
+
+  /**
+   * Get statistics of orders by status, product and day.
+   *
+   * @return OrderStats maintained by every change, nothing is scanned
+   */
+  public OrderStats getStats() {
+    return orderStatistics.getStats();
   }
 
   /**
@@ -60,51 +206,49 @@ public class OrdersService {
   public Order createNewOrder(NewOrder newOrder) {
     Order order = new Order();
 
-    order.setId(ordersRepository.getOrders().size() + 1L);
     order.setProductId(newOrder.getProductId());
     order.setQuantity(newOrder.getQuantity());
-
-    return ordersRepository.addOrder(order);
+    order.setDate(OffsetDateTime.now());
+    order.setStatus(StatusEnum.PLACED);
+
+    while (true) {
+      order.setId(orderIdGenerator.nextId());
+      Optional<Order> saved = ordersRepository.insert(order);
+      if (saved.isPresent()) {
+        return saved.get();
+      }
+      ordersMetrics.idConflict();
+      orderIdGenerator.observe(ordersRepository.maxId());
+    }
   }
 
   /**
-   * Patch existing order.
+   * Patch existing order. Expected versions and the status transition are checked in the same
+   * atomic update as the change, so a concurrent change of the order can't be overwritten.
+   * Without status the status of order stays as it is.
    *
-   * @param id          - order id to patch
-   * @param editedOrder - edited orded object
+   * @param id               - order id to patch
+   * @param editedOrder      - edited orded object
+   * @param expectedVersions - versions of order to patch or null to patch any version
    * @return Order with changes from editedOrder
+   * @throws NoSuchElementException         if there is no such order
+   * @throws OrderVersionMismatchException if version of order isn't expected
+   * @throws IllegalStateException          if order can't move to the status
    */
-  public Order patchOrder(String id, EditedOrder editedOrder) {
-
-    if (ordersRepository.getOrders().containsKey(Long.parseLong(id))) {
-
-      long idOfOrder = Long.parseLong(id);
-      Order order = ordersRepository.getOrders().get(idOfOrder);
-
-      order.setStatus(editedOrder.getStatus());
-      order.setComplete(editedOrder.getComplete());
-      order.setQuantity(editedOrder.getQuantity());
-
-      return ordersRepository.addOrder(order);
-
-    } else {
-      throw new NoSuchElementException("Order not found.");
-    }
+  public Order patchOrder(String id, EditedOrder editedOrder, Set<Long> expectedVersions) {
+    return patch(Long.parseLong(id), editedOrder, expectedVersions);
   }
 
   /**
-   * Change status of order to approve.
+   * Change status of order to approved.
    *
    * @param id - order id
-   * @return Order with status approve
+   * @return Order with status approved
+   * @throws NoSuchElementException if there is no such order
+   * @throws IllegalStateException  if order isn't placed
    */
   public Order approveOrder(String id) {
-    long idOfOrder = Long.parseLong(id);
-    ordersRepository
-        .getOrders()
-        .get(idOfOrder)
-        .setStatus(StatusEnum.APPROVED);
-    return ordersRepository.getOrders().get(idOfOrder);
+    return moveTo(Long.parseLong(id), StatusEnum.APPROVED, null);
   }
 
   /**
@@ -112,14 +256,11 @@ public class OrdersService {
    *
    * @param id - order id
    * @return Order with status delivered
+   * @throws NoSuchElementException if there is no such order
+   * @throws IllegalStateException  if order isn't approved
    */
   public Order deliverOrder(String id) {
-    long idOfOrder = Long.parseLong(id);
-    ordersRepository
-        .getOrders()
-        .get(idOfOrder)
-        .setStatus(StatusEnum.DELIVERED);
-    return ordersRepository.getOrders().get(idOfOrder);
+    return moveTo(Long.parseLong(id), StatusEnum.DELIVERED, null);
   }
 
   /**
@@ -128,88 +269,320 @@ public class OrdersService {
    * @param id - order id
    */
   public void deleteOrder(String id) {
-    ordersRepository
-        .getOrders()
-        .remove(Long.parseLong(id));
+    ordersRepository.deleteById(Long.parseLong(id));
   }
 
   /**
-   * Get orders from CSV.
+   * Apply operations of batch in order as one repository batch. Atomic batch is run again
+   * if other requests changed its orders before it was installed, operations of other
+   * batches are applied once and a conflict fails only the operation.
    *
-   * @return Resource
+   * @param batch - operations and atomicity
+   * @return OrderBatchResult with result of every operation
    */
-  public Resource getOrdersInCsv() {
+  public OrderBatchResult applyBatch(OrderBatch batch) {
+    if (!Boolean.TRUE.equals(batch.getAtomic())) {
+      return applyBatchOnce(batch);
+    }
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return applyBatchOnce(batch);
+      } catch (ConcurrentModificationException e) {
+        if (attempt == BATCH_ATTEMPTS) {
+          List<OrderOperationResult> results = new ArrayList<>();
+          for (int i = 0; i < batch.getOperations().size(); i++) {
+            results.add(failed(new OrderOperationResult(), OrderOperationStatus.CONFLICT, e));
+          }
+          return new OrderBatchResult().committed(false).results(results);
+        }
+      }
+    }
+  }
 
-    String[] csvHeader = {"id", "productId", "quantity", "date", "status", "complete"};
+  private OrderBatchResult applyBatchOnce(OrderBatch batch) {
+    boolean atomic = Boolean.TRUE.equals(batch.getAtomic());
+    List<OrderOperation> operations = batch.getOperations();
+    List<OrderOperationResult> results = new ArrayList<>(operations.size());
+    try {
+      ordersRepository.batch(atomic, () -> {
+        for (OrderOperation operation : operations) {
+          OrderOperationResult result = apply(operation, atomic);
+          results.add(result);
+          if (atomic && result.getStatus() != OrderOperationStatus.OK) {
+            throw new BatchRevertedException();
+          }
+        }
+      });
+    } catch (BatchRevertedException e) {
+      for (int i = 0; i < results.size() - 1; i++) {
+        results.set(i, new OrderOperationResult().status(OrderOperationStatus.ROLLED_BACK));
+      }
+      while (results.size() < operations.size()) {
+        results.add(new OrderOperationResult().status(OrderOperationStatus.SKIPPED));
+      }
+      return new OrderBatchResult().committed(false).results(results);
+    }
+    return new OrderBatchResult().committed(true).results(results);
+  }
 
-    List<Order> listOfOrders = ordersRepository.getOrders().values().stream().toList();
-    List<List<String>> csvBody = new ArrayList<>();
+  /**
+   * Apply operation of batch, its failure becomes status of the result. A conflict with
+   * another batch aborts an atomic batch, so the whole batch is run again.
+   */
+  private OrderOperationResult apply(OrderOperation operation, boolean atomic) {
+    OrderOperationResult result = new OrderOperationResult().status(OrderOperationStatus.OK);
+    try {
+      Set<Long> expectedVersions = operation.getVersion() == null
+          ? null
+          : Set.of(operation.getVersion());
+      switch (operation.getOp()) {
+        case CREATE:
+          return result.order(createNewOrder(required(operation.getOrder(), "order")));
+        case PATCH:
+          return result.order(patch(required(operation.getId(), "id"),
+              required(operation.getChanges(), "changes"), expectedVersions));
+        case APPROVE:
+          return result.order(moveTo(required(operation.getId(), "id"),
+              StatusEnum.APPROVED, expectedVersions));
+        case DELIVER:
+          return result.order(moveTo(required(operation.getId(), "id"),
+              StatusEnum.DELIVERED, expectedVersions));
+        case DELETE:
+          return result.order(ordersRepository.deleteById(required(operation.getId(), "id"))
+              .orElseThrow(() -> new NoSuchElementException("Order not found.")));
+        default:
+          throw new IllegalArgumentException("Unknown operation " + operation.getOp());
+      }
+    } catch (ConcurrentModificationException e) {
+      if (atomic) {
+        throw e;
+      }
+      return failed(result, OrderOperationStatus.CONFLICT, e);
+    } catch (NoSuchElementException e) {
+      return failed(result, OrderOperationStatus.NOT_FOUND, e);
+    } catch (OrderVersionMismatchException e) {
+      return failed(result, OrderOperationStatus.PRECONDITION_FAILED, e);
+    } catch (IllegalStateException e) {
+      return failed(result, OrderOperationStatus.CONFLICT, e);
+    } catch (IllegalArgumentException e) {
+      return failed(result, OrderOperationStatus.INVALID, e);
+    }
+  }
+
+  private Order patch(long id, EditedOrder editedOrder, Set<Long> expectedVersions) {
+    return ordersRepository
+        .update(id, order -> {
+          checkVersion(order, expectedVersions);
+          StatusEnum status = editedOrder.getStatus();
+          if (status != null) {
+            OrderTransitions.checkEdit(order.getStatus(), status);
+            order.setStatus(status);
+          }
+          order.setComplete(editedOrder.getComplete());
+          order.setQuantity(editedOrder.getQuantity());
+        })
+        .orElseThrow(() -> new NoSuchElementException("Order not found."));
+  }
 
-    for (Order currentOrder : listOfOrders) {
-      csvBody.add(Arrays.asList(
-          Objects.toString(currentOrder.getId(), "null"),
-          Objects.toString(currentOrder.getProductId(), "null"),
-          Objects.toString(currentOrder.getQuantity(), "null"),
-          Objects.toString(currentOrder.getDate(), "null"),
-          Objects.toString(currentOrder.getStatus(), "null"),
-          Objects.toString(currentOrder.getComplete(), "null")
-      ));
+  /**
+   * Atomically check the current status and move order to the next one.
+   * The check and the change are applied as one repository update, so of concurrent
+   * requests for the same transition exactly one succeeds and the others get a conflict.
+   */
+  private Order moveTo(long id, StatusEnum status, Set<Long> expectedVersions) {
+    return ordersRepository
+        .update(id, order -> {
+          checkVersion(order, expectedVersions);
+          OrderTransitions.check(order.getStatus(), status);
+          order.setStatus(status);
+        })
+        .orElseThrow(() -> new NoSuchElementException("Order not found."));
+  }
+
+  private static void checkVersion(Order order, Set<Long> expectedVersions) {
+    if (expectedVersions != null && !expectedVersions.contains(order.getVersion())) {
+      throw new OrderVersionMismatchException(order.getId(), order.getVersion());
+    }
+  }
+
+  private static <T> T required(T value, String name) {
+    if (value == null) {
+      throw new IllegalArgumentException("Operation requires " + name + ".");
+    }
+    return value;
+  }
+
+  private static OrderOperationResult failed(OrderOperationResult result,
+                                             OrderOperationStatus status, Exception e) {
+    return result.status(status).error(e.getMessage());
+  }
+
+  /**
+   * Aborts atomic batch after the first failed operation, its staged changes are dropped.
+   */
+  private static class BatchRevertedException extends RuntimeException {
+
+    BatchRevertedException() {
+      super(null, null, false, false);
     }
+  }
+
+  private static final class CountingOutputStream extends FilterOutputStream {
+
+    private long count;
 
-    ByteArrayInputStream byteArrayOutputStream;
+    CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+  }
+
+  /**
+   * Write all orders in CSV to output stream row by row.
+   *
+   * @param outputStream - output stream, stays open
+   */
+  public void writeOrdersInCsv(OutputStream outputStream) {
+    writeOrdersInCsv(ordersRepository.stream(), outputStream);
+  }
+
+  /**
+   * Write orders in CSV compressed by the coding to output stream row by row.
+   *
+   * @param orders       - orders to write, e.g. from {@link #streamOrders}, the stream is closed
+   * @param encoding     - content coding
+   * @param outputStream - output stream, stays open
+   */
+  public void writeOrdersInCsv(Stream<Order> orders, CsvEncoding encoding,
+                               OutputStream outputStream) {
+    try (OutputStream encoded = encoding.encode(outputStream)) {
+      writeOrdersInCsv(orders, encoded);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
 
-    try (
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        CSVPrinter csvPrinter = new CSVPrinter(
-            new PrintWriter(out),
-            CSVFormat.DEFAULT.withHeader(csvHeader)
-        )
-    ) {
-      for (List<String> record : csvBody) {
-        csvPrinter.printRecord(record);
+  /**
+   * Write orders in CSV to output stream row by row.
+   *
+   * @param orders       - orders to write, e.g. from {@link #streamOrders}, the stream is closed
+   * @param outputStream - output stream, stays open
+   */
+  public void writeOrdersInCsv(Stream<Order> orders, OutputStream outputStream) {
+
+    CountingOutputStream counting = new CountingOutputStream(outputStream);
+    Writer writer = new BufferedWriter(
+        new OutputStreamWriter(counting, StandardCharsets.UTF_8), CSV_BUFFER_SIZE);
+
+    long rows = 0;
+    try (orders) {
+      CSVPrinter csvPrinter = new CSVPrinter(writer,
+          CSVFormat.DEFAULT.withHeader(OrderCsvMapper.HEADER));
+      Iterator<Order> rowsToWrite = orders.iterator();
+      while (rowsToWrite.hasNext()) {
+        OrderCsvMapper.print(csvPrinter, rowsToWrite.next());
+        rows++;
       }
       csvPrinter.flush();
-      byteArrayOutputStream = new ByteArrayInputStream(out.toByteArray());
     } catch (IOException e) {
-      throw new RuntimeException(e.getMessage());
+      throw new UncheckedIOException(e);
+    } finally {
+      // rows which were sent before client has gone count too
+      ordersMetrics.csvExported(rows, counting.count);
+    }
+  }
+
+  /**
+   * Latest file with all orders in CSV, written in the background once per store version and
+   * coding. Lets the server send repeated exports of unchanged orders without formatting them
+   * again. The file may be of an older version while the new one is written.
+   *
+   * @param encoding - content coding of file
+   * @return file to release once it's sent, or empty if files of exports are disabled or none
+   *     is written yet
+   */
+  public Optional<OrdersCsvExportFiles.ExportFile> getOrdersCsvFile(CsvEncoding encoding) {
+    if (!ordersCsvExportFiles.isEnabled()) {
+      return Optional.empty();
     }
+    return ordersCsvExportFiles.get(getStoreVersion(), encoding,
+        output -> writeOrdersInCsv(ordersRepository.stream(), encoding, output));
+  }
 
-    return new InputStreamResource(byteArrayOutputStream);
+  /**
+   * Orders in CSV as chunks, each one is written only when the caller asks for it, so a
+   * non-blocking server holds no thread for a slow client.
+   *
+   * @param orders   - orders to write, e.g. of {@link #streamOrders}, closed with the chunks
+   * @param encoding - content coding of chunks
+   * @return chunks of .csv, to close after the last one or when the client has gone
+   */
+  public OrdersCsvChunks readOrdersInCsv(Stream<Order> orders, CsvEncoding encoding) {
+    OrdersCsvChunks chunks;
+    try {
+      chunks = new OrdersCsvChunks(orders.iterator(), CSV_BUFFER_SIZE, encoding);
+    } catch (RuntimeException e) {
+      orders.close();
+      throw e;
+    }
+    return chunks.onClose(() -> {
+      try (orders) {
+        // rows which were sent before client has gone count too
+        ordersMetrics.csvExported(chunks.rows(), chunks.bytes());
+      }
+    });
   }
 
   /**
    * Add to DB list of orders from inputStream.
    *
    * @param inputStream - input stream
+   * @return ImportSummary with counts of accepted, rejected and duplicate orders
    */
-  public void addOrdersFromCsv(InputStream inputStream) {
+  public ImportSummary addOrdersFromCsv(InputStream inputStream) {
+    return ordersCsvImporter.importOrders(inputStream);
+  }
 
-    List<Order> orderList = new ArrayList<>();
+  /**
+   * Start background import of orders from inputStream.
+   *
+   * @param inputStream - input stream
+   * @return ImportJob to poll progress of import
+   */
+  public ImportJob submitOrdersFromCsv(InputStream inputStream) {
+    return ordersImportJobs.submit(inputStream);
+  }
 
-    try {
-      Reader reader = new InputStreamReader(inputStream);
-      Iterable<CSVRecord> records = CSVFormat.DEFAULT.parse(reader);
-
-      log.info("Getting started to read records from .csv ...");
-      for (CSVRecord record : records) {
-        if (record.stream().toList().size() > 2) {
-          Order currentOrder = new Order();
-
-          currentOrder.setId(Long.parseLong(record.stream().toList().get(0)));
-          currentOrder.setProductId(Long.parseLong(record.stream().toList().get(1)));
-          currentOrder.setQuantity(Long.parseLong(record.stream().toList().get(2)));
-          currentOrder.setDate(OffsetDateTime.parse(record.stream().toList().get(3)));
-          currentOrder.setStatus(StatusEnum.valueOf(record.stream().toList().get(4)));
-          currentOrder.setComplete(Boolean.getBoolean(record.stream().toList().get(5)));
-
-          orderList.add(currentOrder);
-          log.info("Order added to DB: " + currentOrder);
-        }
-      }
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
+  /**
+   * Get progress of background import.
+   *
+   * @param jobId - id of import job
+   * @return ImportJob
+   */
+  public ImportJob getImportJob(String jobId) {
+    return ordersImportJobs.getJob(jobId);
+  }
 
+  /**
+   * Subscribe to stream of changes of orders, the transport starts the subscription with the
+   * sink of its connection.
+   *
+   * @param lastEventId - id of the last received event or null to get only new changes
+   * @return subscription to changes
+   */
+  public OrderChangeStream.Subscription subscribeToChanges(String lastEventId) {
+    return orderChangeStream.open(lastEventId);
   }
 
-}
\ No newline at end of file
+}
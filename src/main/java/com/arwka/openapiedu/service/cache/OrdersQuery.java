@@ -0,0 +1,44 @@
+package com.arwka.openapiedu.service.cache;
+
+import com.arwka.openapiedu.persistent.repository.OrderFilter;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import lombok.Value;
+import org.openapitools.model.Order;
+
+/**
+ * Key of cached query result: filter of orders and format of the serialized list. Periods are
+ * normalized to UTC, so the same instants written with other offsets hit the same entry.
+ */
+@Value
+public class OrdersQuery {
+
+  OrderFilter filter;
+  String format;
+
+  /**
+   * Create key.
+   *
+   * @param filter - filter of orders
+   * @param format - name of format of serialized list, e.g. "json"
+   */
+  public OrdersQuery(OrderFilter filter, String format) {
+    this.filter = new OrderFilter(filter.getStatus(), utc(filter.getFrom()), utc(filter.getTo()));
+    this.format = format;
+  }
+
+  /**
+   * Check whether the result may contain state of order.
+   *
+   * @param order - state of order or null
+   * @return true if order isn't null and matches filter
+   */
+  public boolean matches(Order order) {
+    return order != null && filter.matches(order);
+  }
+
+  private static OffsetDateTime utc(OffsetDateTime dateTime) {
+    return dateTime == null ? null : dateTime.withOffsetSameInstant(ZoneOffset.UTC);
+  }
+
+}
@@ -0,0 +1,213 @@
+package com.arwka.openapiedu.service.cache;
+
+import com.arwka.openapiedu.persistent.repository.OrderChangeListener;
+import com.arwka.openapiedu.persistent.repository.OrdersRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import org.openapitools.model.Order;
+import org.openapitools.model.StatusEnum;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Serialized lists of orders by query, so repeated dashboard queries neither scan the store
+ * nor serialize orders again.
+ *
+ * <p>Caffeine bounds the total size of lists in bytes and evicts by W-TinyLFU: a list asked
+ * for once doesn't push out lists asked for all the time. Entries don't expire, they are
+ * removed by changes of orders: a change removes lists whose filter matches the state before
+ * or after it, lists of other statuses and periods stay. Removal happens after the change
+ * is visible in the repository; a list which was being built meanwhile isn't kept. Cached
+ * queries are indexed by status of their filter, so a change only checks the queries of the
+ * statuses it touches and those without status.
+ *
+ * <p>Hits, misses, evictions and size are reported as {@code cache.*} meters with tag
+ * {@code cache=orders.query}, removals by changes as {@code orders.query.cache.invalidations}.
+ */
+@Component
+public class OrdersQueryCache implements OrderChangeListener {
+
+  private static final String NAME = "orders.query";
+  private static final StatusEnum[] STATUSES = StatusEnum.values();
+
+  private final OrdersRepository ordersRepository;
+  private final boolean enabled;
+  private final int maxEntryOrders;
+  private final Cache<OrdersQuery, byte[]> cache;
+  private final Counter invalidations;
+  /**
+   * Cached queries by status of filter, the last set holds queries of any status. A query may
+   * stay here a while after its entry is gone, never the other way round.
+   */
+  private final List<Set<OrdersQuery>> byStatus = new ArrayList<>();
+  /**
+   * Count of repository calls which changed orders, a list built across one of them
+   * may miss the change.
+   */
+  private final AtomicLong changes = new AtomicLong();
+  /**
+   * Changes of the current call, queries are checked once the repository released locks.
+   */
+  private final ThreadLocal<List<Order>> changed = ThreadLocal.withInitial(ArrayList::new);
+
+  /**
+   * Create cache.
+   *
+   * @param ordersRepository - repository of orders
+   * @param registry         - registry of metrics
+   * @param maxWeight        - max total size of cached lists in bytes, 0 disables cache
+   * @param maxEntryOrders   - max count of orders of a cached list, longer lists are streamed
+   */
+  public OrdersQueryCache(OrdersRepository ordersRepository, MeterRegistry registry,
+                          @Value("${orders.query-cache.max-weight:67108864}") long maxWeight,
+                          @Value("${orders.query-cache.max-entry-orders:10000}")
+                          int maxEntryOrders) {
+    this.ordersRepository = ordersRepository;
+    this.enabled = maxWeight > 0;
+    this.maxEntryOrders = maxEntryOrders;
+    this.cache = Caffeine.newBuilder()
+        .maximumWeight(Math.max(maxWeight, 0))
+        .weigher((OrdersQuery query, byte[] bytes) -> bytes.length)
+        .evictionListener((OrdersQuery query, byte[] bytes, RemovalCause cause) ->
+            queries(query.getFilter().getStatus()).remove(query))
+        .recordStats()
+        .build();
+    this.invalidations = Counter.builder(NAME + ".cache.invalidations")
+        .description("Cached query results removed by changes of orders")
+        .register(registry);
+    CaffeineCacheMetrics.monitor(registry, cache, NAME);
+    for (int i = 0; i <= STATUSES.length; i++) {
+      byStatus.add(ConcurrentHashMap.newKeySet());
+    }
+  }
+
+  /**
+   * Listen to changes of orders if the cache is enabled, they remove cached lists.
+   */
+  @PostConstruct
+  public void init() {
+    if (enabled) {
+      ordersRepository.addListener(this);
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Serialized result of query, built by loading and serializing orders if it isn't cached.
+   *
+   * @param query      - filter and format
+   * @param load       - reads orders of query from repository
+   * @param serializer - serializes orders in format of query
+   * @return serialized list or orders if there are more of them than a cached list may hold
+   */
+  public OrdersQueryResult get(OrdersQuery query, Supplier<List<Order>> load,
+                               Function<List<Order>, byte[]> serializer) {
+    if (!enabled) {
+      return OrdersQueryResult.of(load.get());
+    }
+    byte[] cached = cache.getIfPresent(query);
+    if (cached != null) {
+      return OrdersQueryResult.serialized(cached);
+    }
+
+    long seen = changes.get();
+    List<Order> orders = load.get();
+    if (orders.size() > maxEntryOrders) {
+      return OrdersQueryResult.of(orders);
+    }
+    return OrdersQueryResult.serialized(put(query, serializer.apply(orders), seen));
+  }
+
+  /**
+   * Cache serialized list of query, read after {@code seen} changes.
+   *
+   * @return bytes of list
+   */
+  private byte[] put(OrdersQuery query, byte[] bytes, long seen) {
+    cache.put(query, bytes);
+    // indexed after the entry exists, so an entry is never left out of the index
+    queries(query.getFilter().getStatus()).add(query);
+    // a change which became visible while orders were read may have missed this entry
+    if (changes.get() != seen) {
+      cache.asMap().remove(query, bytes);
+    }
+    return bytes;
+  }
+
+  /**
+   * Remember the change, the new state isn't visible to readers yet.
+   */
+  @Override
+  public void onChange(Order before, Order after) {
+    List<Order> orders = changed.get();
+    if (before != null) {
+      orders.add(before);
+    }
+    if (after != null) {
+      orders.add(after);
+    }
+  }
+
+  /**
+   * Remove lists which may contain the changed orders, it costs the count of cached queries
+   * of the changed statuses and of any status times the count of changed orders.
+   */
+  @Override
+  public void afterChanges() {
+    List<Order> orders = changed.get();
+    if (orders.isEmpty()) {
+      return;
+    }
+    changes.incrementAndGet();
+    if (cache.estimatedSize() > 0) {
+      EnumSet<StatusEnum> statuses = EnumSet.noneOf(StatusEnum.class);
+      for (Order order : orders) {
+        if (order.getStatus() != null && statuses.add(order.getStatus())) {
+          invalidate(queries(order.getStatus()), orders);
+        }
+      }
+      invalidate(queries(null), orders);
+    }
+    orders.clear();
+  }
+
+  private void invalidate(Set<OrdersQuery> queries, List<Order> orders) {
+    queries.removeIf(query -> {
+      for (Order order : orders) {
+        if (query.matches(order)) {
+          if (cache.asMap().remove(query) != null) {
+            invalidations.increment();
+          }
+          return true;
+        }
+      }
+      return false;
+    });
+  }
+
+  /**
+   * Cached queries of status.
+   *
+   * @param status - status of filter or null for queries of any status
+   */
+  private Set<OrdersQuery> queries(StatusEnum status) {
+    return byStatus.get(status == null ? STATUSES.length : status.ordinal());
+  }
+
+}
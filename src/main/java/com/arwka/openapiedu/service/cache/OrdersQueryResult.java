@@ -0,0 +1,43 @@
+package com.arwka.openapiedu.service.cache;
+
+import java.util.List;
+import org.openapitools.model.Order;
+
+/**
+ * Result of query: the serialized list or, if there are too many orders to keep it in cache,
+ * the orders themselves to be written while they are sent.
+ */
+public final class OrdersQueryResult {
+
+  private final byte[] bytes;
+  private final List<Order> orders;
+
+  private OrdersQueryResult(byte[] bytes, List<Order> orders) {
+    this.bytes = bytes;
+    this.orders = orders;
+  }
+
+  public static OrdersQueryResult serialized(byte[] bytes) {
+    return new OrdersQueryResult(bytes, null);
+  }
+
+  public static OrdersQueryResult of(List<Order> orders) {
+    return new OrdersQueryResult(null, orders);
+  }
+
+  public boolean isSerialized() {
+    return bytes != null;
+  }
+
+  /**
+   * Serialized list, not to be modified: it may be shared by cache.
+   */
+  public byte[] getBytes() {
+    return bytes;
+  }
+
+  public List<Order> getOrders() {
+    return orders;
+  }
+
+}
@@ -0,0 +1,193 @@
+package com.arwka.openapiedu.service.changes;
+
+import com.arwka.openapiedu.persistent.repository.OrderChangeListener;
+import com.arwka.openapiedu.persistent.repository.OrdersRepository;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.annotation.PostConstruct;
+import lombok.Getter;
+import org.openapitools.model.Order;
+import org.openapitools.model.OrderChangeType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded ring buffer of the latest changes of orders.
+ *
+ * <p>Every change gets the next offset when the repository passes it over, which it does in
+ * the order changes of one order were applied, but it is published only in
+ * {@link #afterChanges()}, once the change or batch is committed: readers never get a change
+ * before it is in the journal. Readers stop at the first offset which isn't published yet.
+ * Writers never wait for readers: a change is published by a single store into its slot,
+ * which never replaces a newer change, and a reader which fell behind by more than the
+ * capacity finds its slot overwritten and has to resync.
+ */
+@Component
+public class OrderChangeFeed implements OrderChangeListener {
+
+  /**
+   * Returned for a change which was already overwritten.
+   */
+  static final Entry LOST = new Entry(-1L, null, null);
+
+  private static final String SEPARATOR = "-";
+
+  private final OrdersRepository ordersRepository;
+  private final AtomicReferenceArray<Entry> ring;
+  private final int mask;
+  private final AtomicLong next = new AtomicLong();
+
+  /**
+   * Changes of the current call or batch waiting for its commit.
+   */
+  private final ThreadLocal<List<Entry>> pending = ThreadLocal.withInitial(ArrayList::new);
+
+  /**
+   * Distinguishes positions of this run from positions before restart.
+   */
+  private final String instance = Long.toString(System.currentTimeMillis(), 36);
+
+  /**
+   * Create feed.
+   *
+   * @param ordersRepository - repository to listen to
+   * @param capacity         - count of kept changes, rounded up to a power of two
+   */
+  public OrderChangeFeed(OrdersRepository ordersRepository,
+                         @Value("${orders.changes.buffer-size:65536}") int capacity) {
+    this.ordersRepository = ordersRepository;
+    int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+    this.ring = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+  }
+
+  @PostConstruct
+  public void init() {
+    ordersRepository.addListener(this);
+  }
+
+  @Override
+  public void onChange(Order before, Order after) {
+    OrderChangeType type;
+    if (before == null) {
+      type = OrderChangeType.CREATED;
+    } else if (after == null) {
+      type = OrderChangeType.DELETED;
+    } else {
+      type = OrderChangeType.UPDATED;
+    }
+    long offset = next.getAndIncrement();
+    pending.get().add(new Entry(offset, type, after == null ? before : after));
+  }
+
+  /**
+   * Publish committed changes of the current thread. Repository calls it before
+   * {@link OrderChangeStream} wakes subscribers: the feed registers first, the stream
+   * depends on it.
+   */
+  @Override
+  public void afterChanges() {
+    List<Entry> entries = pending.get();
+    if (entries.isEmpty()) {
+      return;
+    }
+    for (Entry entry : entries) {
+      publish(entry);
+    }
+    entries.clear();
+  }
+
+  /**
+   * Offset of the next change.
+   */
+  public long head() {
+    return next.get();
+  }
+
+  /**
+   * Change at offset.
+   *
+   * @param offset - offset of change
+   * @return change, null if it isn't published yet or {@link #LOST} if it was overwritten
+   */
+  Entry get(long offset) {
+    Entry entry = ring.get(index(offset));
+    if (entry == null || entry.offset < offset) {
+      return null;
+    }
+    return entry.offset == offset ? entry : LOST;
+  }
+
+  /**
+   * Id of position in stream, it's sent as id of event.
+   *
+   * @param offset - offset of the next change to read
+   * @return id
+   */
+  String id(long offset) {
+    return instance + SEPARATOR + offset;
+  }
+
+  /**
+   * Offset to resume reading from.
+   *
+   * @param id - id of the last received event or null to read only new changes
+   * @return offset or -1 if the position is unknown
+   */
+  long offset(String id) {
+    if (id == null) {
+      return head();
+    }
+    int separator = id.lastIndexOf(SEPARATOR);
+    if (separator < 0 || !id.substring(0, separator).equals(instance)) {
+      return -1L;
+    }
+    try {
+      long offset = Long.parseLong(id.substring(separator + 1));
+      return offset >= 0 && offset <= head() ? offset : -1L;
+    } catch (NumberFormatException e) {
+      return -1L;
+    }
+  }
+
+  private void publish(Entry entry) {
+    int index = index(entry.offset);
+    Entry current;
+    do {
+      current = ring.get(index);
+      if (current != null && current.offset > entry.offset) {
+        // a later change was published into the slot, readers that need this one resync
+        return;
+      }
+    } while (!ring.compareAndSet(index, current, entry));
+  }
+
+  private int index(long offset) {
+    return (int) offset & mask;
+  }
+
+  /**
+   * Published change, its data is serialized once for all subscribers.
+   */
+  @Getter
+  static final class Entry {
+
+    private final long offset;
+    private final OrderChangeType type;
+    private final Order order;
+    private volatile String data;
+
+    Entry(long offset, OrderChangeType type, Order order) {
+      this.offset = offset;
+      this.type = type;
+      this.order = order;
+    }
+
+    void setData(String data) {
+      this.data = data;
+    }
+  }
+
+}
@@ -0,0 +1,310 @@
+package com.arwka.openapiedu.service.changes;
+
+import com.arwka.openapiedu.persistent.repository.OrderChangeListener;
+import com.arwka.openapiedu.persistent.repository.OrdersRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.openapitools.model.Order;
+import org.openapitools.model.OrderChange;
+import org.openapitools.model.OrderChangeType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Subscribers of {@link OrderChangeFeed} over Server-Sent Events.
+ *
+ * <p>Subscribers don't own threads: a small pool delivers events. Writers only flag that
+ * there is something new, one wake-up task schedules every lagging subscriber, and each
+ * subscriber is drained by at most one task at a time, up to a batch of events per turn.
+ * A subscriber which fell behind the buffer gets a resync event and goes on from the head.
+ *
+ * <p>The stream knows no transport: a subscriber is an {@link OrderEventSink}, which tells
+ * whether it takes events now, and calls {@link Subscription#request()} when it does again.
+ * The feed is read by offset, so a slow client just lags behind and the pool never blocks
+ * on a connection.
+ */
+@Slf4j
+@Component
+public class OrderChangeStream implements OrderChangeListener {
+
+  private static final long RESYNC = -1L;
+
+  private final OrdersRepository ordersRepository;
+  private final OrderChangeFeed feed;
+  private final ObjectMapper objectMapper;
+  private final Duration timeout;
+  private final Duration heartbeat;
+  private final int maxSubscribers;
+  private final int batchSize;
+  private final ThreadPoolExecutor executor;
+  private final ScheduledExecutorService heartbeats;
+  private final Set<Subscription> subscribers = ConcurrentHashMap.newKeySet();
+  private final AtomicBoolean wakeUpScheduled = new AtomicBoolean();
+
+  /**
+   * Create stream.
+   *
+   * @param ordersRepository - repository to listen to
+   * @param feed             - buffer of changes
+   * @param objectMapper     - serializer of events
+   * @param threads          - threads delivering events to all subscribers
+   * @param maxSubscribers   - max count of subscribers at once
+   * @param batchSize        - max count of events sent to a subscriber per turn
+   * @param timeout          - lifetime of subscription, client reconnects after it
+   * @param heartbeat        - interval of comments which keep idle connections open
+   */
+  public OrderChangeStream(OrdersRepository ordersRepository, OrderChangeFeed feed,
+                           ObjectMapper objectMapper,
+                           @Value("${orders.changes.threads:2}") int threads,
+                           @Value("${orders.changes.max-subscribers:10000}") int maxSubscribers,
+                           @Value("${orders.changes.batch-size:256}") int batchSize,
+                           @Value("${orders.changes.timeout:30m}") Duration timeout,
+                           @Value("${orders.changes.heartbeat:15s}") Duration heartbeat) {
+    this.ordersRepository = ordersRepository;
+    this.feed = feed;
+    this.objectMapper = objectMapper;
+    this.maxSubscribers = maxSubscribers;
+    this.batchSize = batchSize;
+    this.timeout = timeout;
+    this.heartbeat = heartbeat;
+
+    AtomicInteger counter = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(),
+        runnable -> new Thread(runnable, "order-changes-" + counter.incrementAndGet()));
+    this.heartbeats = Executors.newSingleThreadScheduledExecutor(
+        runnable -> new Thread(runnable, "order-changes-heartbeat"));
+  }
+
+  /**
+   * Listen to changes of orders and start heartbeats of idle subscribers.
+   */
+  @PostConstruct
+  public void init() {
+    // registered after the feed, which publishes changes in its afterChanges
+    ordersRepository.addListener(this);
+    heartbeats.scheduleAtFixedRate(this::heartbeat,
+        heartbeat.toMillis(), heartbeat.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stop delivery and end connections of all subscribers.
+   */
+  @PreDestroy
+  public void shutdown() {
+    heartbeats.shutdownNow();
+    executor.shutdownNow();
+    for (Subscription subscriber : subscribers) {
+      subscriber.sink.complete();
+    }
+  }
+
+  /**
+   * Open subscription to changes, the transport starts it with the sink of its connection.
+   *
+   * @param lastEventId - id of the last received event or null to get only new changes
+   * @return subscription, not delivered until started
+   * @throws RejectedExecutionException if there are too many subscribers
+   */
+  public Subscription open(String lastEventId) {
+    checkCapacity();
+    return new Subscription(feed.offset(lastEventId));
+  }
+
+  public int subscribers() {
+    return subscribers.size();
+  }
+
+  private void checkCapacity() {
+    if (subscribers.size() >= maxSubscribers) {
+      throw new RejectedExecutionException("Too many subscribers of changes.");
+    }
+  }
+
+  @Override
+  public void onChange(Order before, Order after) {
+    // events are read from the feed
+  }
+
+  /**
+   * Wake up subscribers, all changes of many concurrent writers are coalesced into one task.
+   */
+  @Override
+  public void afterChanges() {
+    if (!subscribers.isEmpty() && wakeUpScheduled.compareAndSet(false, true)) {
+      try {
+        executor.execute(this::wakeUp);
+      } catch (RejectedExecutionException e) {
+        wakeUpScheduled.set(false);
+      }
+    }
+  }
+
+  private void wakeUp() {
+    wakeUpScheduled.set(false);
+    long head = feed.head();
+    for (Subscription subscriber : subscribers) {
+      if (subscriber.offset != head) {
+        schedule(subscriber);
+      }
+    }
+  }
+
+  private void heartbeat() {
+    for (Subscription subscriber : subscribers) {
+      subscriber.heartbeat = true;
+      schedule(subscriber);
+    }
+  }
+
+  private void schedule(Subscription subscriber) {
+    if (subscriber.scheduled.compareAndSet(false, true)) {
+      try {
+        executor.execute(() -> drain(subscriber));
+      } catch (RejectedExecutionException e) {
+        subscriber.scheduled.set(false);
+      }
+    }
+  }
+
+  /**
+   * Send pending events of subscriber, only one thread drains a subscriber at a time.
+   */
+  private void drain(Subscription subscriber) {
+    boolean open = true;
+    try {
+      int sent = 0;
+      while (sent < batchSize && subscriber.sink.isReady()) {
+        if (subscriber.offset == RESYNC) {
+          subscriber.offset = feed.head();
+          send(subscriber, OrderChangeType.RESYNC.getValue(), subscriber.offset,
+              serialize(new OrderChange()
+                  .id(feed.id(subscriber.offset))
+                  .type(OrderChangeType.RESYNC)));
+          sent++;
+          continue;
+        }
+        OrderChangeFeed.Entry entry = feed.get(subscriber.offset);
+        if (entry == null) {
+          break;
+        }
+        if (entry == OrderChangeFeed.LOST) {
+          subscriber.offset = RESYNC;
+          continue;
+        }
+        send(subscriber, entry.getType().getValue(), entry.getOffset() + 1, data(entry));
+        subscriber.offset = entry.getOffset() + 1;
+        sent++;
+      }
+      if (sent == 0 && subscriber.heartbeat && subscriber.sink.isReady()) {
+        subscriber.sink.comment("heartbeat");
+      }
+      subscriber.heartbeat = false;
+    } catch (IOException | IllegalStateException e) {
+      // client has gone or emitter is complete
+      open = false;
+      subscribers.remove(subscriber);
+      subscriber.sink.fail(e);
+    } finally {
+      subscriber.scheduled.set(false);
+    }
+    if (open && subscriber.sink.isReady()
+        && (subscriber.offset == RESYNC || feed.get(subscriber.offset) != null)) {
+      schedule(subscriber);
+    }
+  }
+
+  private void send(Subscription subscriber, String name, long resumeOffset, String data)
+      throws IOException {
+    subscriber.sink.event(feed.id(resumeOffset), name, data);
+  }
+
+  private String data(OrderChangeFeed.Entry entry) {
+    String data = entry.getData();
+    if (data == null) {
+      data = serialize(new OrderChange()
+          .id(feed.id(entry.getOffset() + 1))
+          .type(entry.getType())
+          .order(entry.getOrder()));
+      entry.setData(data);
+    }
+    return data;
+  }
+
+  private String serialize(OrderChange change) {
+    try {
+      return objectMapper.writeValueAsString(change);
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Subscription to changes, resolved by {@link #open} and delivered once started.
+   */
+  public final class Subscription {
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile OrderEventSink sink;
+
+    /**
+     * Offset of the next event, changed only by the thread draining the subscriber.
+     */
+    private volatile long offset;
+
+    private volatile boolean heartbeat;
+
+    private Subscription(long offset) {
+      this.offset = offset;
+    }
+
+    /**
+     * Start delivery of events to sink.
+     *
+     * @param sink - connection of subscriber
+     */
+    public void start(OrderEventSink sink) {
+      this.sink = sink;
+      subscribers.add(this);
+      schedule(this);
+    }
+
+    /**
+     * Deliver events again, called when the sink takes events after it wasn't ready.
+     */
+    public void request() {
+      schedule(this);
+    }
+
+    /**
+     * Stop delivery, called when the connection ends.
+     */
+    public void cancel() {
+      subscribers.remove(this);
+    }
+
+    /**
+     * Lifetime of subscription, client reconnects after it.
+     */
+    public Duration getTimeout() {
+      return timeout;
+    }
+  }
+
+}
@@ -0,0 +1,48 @@
+package com.arwka.openapiedu.service.changes;
+
+import java.io.IOException;
+
+/**
+ * Connection of a subscriber of {@link OrderChangeStream}, implemented by the transport.
+ * Only one thread of the stream calls a sink at a time.
+ */
+public interface OrderEventSink {
+
+  /**
+   * Check if the sink takes more events now without blocking. A failed sink is ready,
+   * it throws on the next event, so the subscriber is dropped.
+   *
+   * @return true if the next event may be sent
+   */
+  boolean isReady();
+
+  /**
+   * Send event.
+   *
+   * @param id   - id of event, the client resumes after it
+   * @param name - type of event
+   * @param data - JSON of change
+   * @throws IOException if the client has gone
+   */
+  void event(String id, String name, String data) throws IOException;
+
+  /**
+   * Send comment, e.g. to keep an idle connection open.
+   *
+   * @param comment - text of comment
+   * @throws IOException if the client has gone
+   */
+  void comment(String comment) throws IOException;
+
+  /**
+   * End the connection on shutdown.
+   */
+  void complete();
+
+  /**
+   * End the connection after the sink failed.
+   *
+   * @param error - cause
+   */
+  void fail(Throwable error);
+}
@@ -0,0 +1,45 @@
+package com.arwka.openapiedu.service.csv;
+
+import com.arwka.openapiedu.persistent.repository.OrdersRepository;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.openapitools.model.Order;
+
+/**
+ * Collects parsed orders of single import and saves them to repository in batches.
+ * Not thread-safe: every import has exactly one committer.
+ */
+@Slf4j
+class BatchCommitter {
+
+  private final OrdersRepository ordersRepository;
+  private final ImportProgress progress;
+  private final int batchSize;
+  private final List<Order> batch;
+
+  BatchCommitter(OrdersRepository ordersRepository, ImportProgress progress, int batchSize) {
+    this.ordersRepository = ordersRepository;
+    this.progress = progress;
+    this.batchSize = batchSize;
+    this.batch = new ArrayList<>(batchSize);
+  }
+
+  void add(Order order) {
+    batch.add(order);
+    if (batch.size() == batchSize) {
+      flush();
+    }
+  }
+
+  void flush() {
+    if (batch.isEmpty()) {
+      return;
+    }
+    int inserted = ordersRepository.insertAll(batch);
+    progress.committed(batch.size(), inserted);
+    log.debug("Batch of {} orders saved to DB, {} duplicates", inserted, batch.size() - inserted);
+    batch.clear();
+  }
+
+}
@@ -0,0 +1,166 @@
+package com.arwka.openapiedu.service.csv;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Content codings of .csv transfers. Text of orders shrinks several times, so a compressed
+ * export or upload is limited by CPU instead of network.
+ */
+public enum CsvEncoding {
+
+  IDENTITY("identity", ".csv"),
+  GZIP("gzip", ".csv.gz"),
+  ZSTD("zstd", ".csv.zst");
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int ZSTD_LEVEL = 3;
+
+  /**
+   * In order of preference when Accept-Encoding allows several of them with the same weight.
+   */
+  private static final CsvEncoding[] PREFERRED = {ZSTD, GZIP};
+
+  private final String name;
+  private final String fileSuffix;
+
+  CsvEncoding(String name, String fileSuffix) {
+    this.name = name;
+    this.fileSuffix = fileSuffix;
+  }
+
+  /**
+   * Name of coding in Content-Encoding and Accept-Encoding headers.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Suffix of a file with .csv in this coding.
+   */
+  public String getFileSuffix() {
+    return fileSuffix;
+  }
+
+  /**
+   * Compress into target. Closing the result finishes the coding, the target stays open.
+   *
+   * @param target - stream of encoded bytes
+   * @return stream of .csv
+   * @throws IOException if target fails
+   */
+  public OutputStream encode(OutputStream target) throws IOException {
+    OutputStream nonClosing = StreamUtils.nonClosing(target);
+    switch (this) {
+      case GZIP:
+        return new GZIPOutputStream(nonClosing, BUFFER_SIZE);
+      case ZSTD:
+        return new ZstdOutputStream(nonClosing, ZSTD_LEVEL);
+      default:
+        return nonClosing;
+    }
+  }
+
+  /**
+   * Decompress while reading.
+   *
+   * @param source - stream of encoded bytes
+   * @return stream of .csv
+   * @throws IllegalArgumentException if source isn't in this coding
+   */
+  public InputStream decode(InputStream source) {
+    try {
+      switch (this) {
+        case GZIP:
+          return new GZIPInputStream(source, BUFFER_SIZE);
+        case ZSTD:
+          return new ZstdInputStream(source);
+        default:
+          return source;
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Body isn't in " + name + " coding.", e);
+    }
+  }
+
+  /**
+   * Coding of Content-Encoding header.
+   *
+   * @param contentEncoding - value of header or null
+   * @return coding or empty if it isn't supported
+   */
+  public static Optional<CsvEncoding> of(String contentEncoding) {
+    if (contentEncoding == null || contentEncoding.isBlank()) {
+      return Optional.of(IDENTITY);
+    }
+    String value = contentEncoding.trim().toLowerCase(Locale.ROOT);
+    for (CsvEncoding encoding : values()) {
+      if (encoding.name.equals(value)) {
+        return Optional.of(encoding);
+      }
+    }
+    // x-gzip is the old name of gzip
+    return value.equals("x-gzip") ? Optional.of(GZIP) : Optional.empty();
+  }
+
+  /**
+   * Pick coding of response by Accept-Encoding header.
+   *
+   * @param acceptEncoding - value of header or null
+   * @return the coding with the highest weight, identity if no other one is acceptable
+   */
+  public static CsvEncoding negotiate(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return IDENTITY;
+    }
+    CsvEncoding best = IDENTITY;
+    double bestWeight = 0;
+    for (CsvEncoding encoding : PREFERRED) {
+      double weight = weight(acceptEncoding, encoding.name);
+      if (weight > bestWeight) {
+        best = encoding;
+        bestWeight = weight;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Weight of coding in Accept-Encoding, "*" stands for codings which aren't listed.
+   */
+  private static double weight(String acceptEncoding, String name) {
+    double any = 0;
+    for (String item : acceptEncoding.split(",")) {
+      String[] parts = item.split(";");
+      String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+      double weight = 1;
+      for (int i = 1; i < parts.length; i++) {
+        String parameter = parts[i].trim();
+        if (parameter.startsWith("q=")) {
+          try {
+            weight = Double.parseDouble(parameter.substring(2));
+          } catch (NumberFormatException e) {
+            weight = 0;
+          }
+        }
+      }
+      if (coding.equals(name) || (name.equals("gzip") && coding.equals("x-gzip"))) {
+        return weight;
+      }
+      if (coding.equals("*")) {
+        any = weight;
+      }
+    }
+    return any;
+  }
+
+}
@@ -0,0 +1,67 @@
+package com.arwka.openapiedu.service.csv;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openapitools.model.ImportError;
+import org.openapitools.model.ImportSummary;
+
+/**
+ * Counters of running .csv import, safe to read while import is in progress.
+ */
+public class ImportProgress {
+
+  private final AtomicLong accepted = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong duplicates = new AtomicLong();
+  private final List<ImportError> errors = new ArrayList<>();
+  private final int maxReportedErrors;
+
+  public ImportProgress(int maxReportedErrors) {
+    this.maxReportedErrors = maxReportedErrors;
+  }
+
+  /**
+   * Count committed batch.
+   *
+   * @param batchSize - count of orders in batch
+   * @param inserted  - count of orders saved, the rest were duplicates
+   */
+  public void committed(int batchSize, int inserted) {
+    accepted.addAndGet(inserted);
+    duplicates.addAndGet(batchSize - inserted);
+  }
+
+  /**
+   * Count rejected row, only first rejected rows are kept with their messages.
+   *
+   * @param row     - number of row
+   * @param message - why row was rejected
+   */
+  public void rejected(long row, String message) {
+    rejected.incrementAndGet();
+    synchronized (errors) {
+      if (errors.size() < maxReportedErrors) {
+        errors.add(new ImportError().row(row).message(message));
+      }
+    }
+  }
+
+  /**
+   * Current state of import.
+   *
+   * @return ImportSummary
+   */
+  public ImportSummary toSummary() {
+    List<ImportError> reported;
+    synchronized (errors) {
+      reported = List.copyOf(errors);
+    }
+    return new ImportSummary()
+        .accepted(accepted.get())
+        .rejected(rejected.get())
+        .duplicates(duplicates.get())
+        .errors(reported);
+  }
+
+}
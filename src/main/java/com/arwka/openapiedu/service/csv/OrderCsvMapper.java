@@ -0,0 +1,138 @@
+package com.arwka.openapiedu.service.csv;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Objects;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.openapitools.model.Order;
+import org.openapitools.model.StatusEnum;
+
+/**
+ * Mapping between orders and rows of .csv file.
+ *
+ * <p>Row format is {@link #HEADER}, absent values are written as {@code null}.
+ */
+public final class OrderCsvMapper {
+
+  public static final String[] HEADER =
+      {"id", "productId", "quantity", "date", "status", "complete"};
+
+  private static final String NULL = "null";
+  private static final long MAX_QUANTITY = 100L;
+
+  private OrderCsvMapper() {
+  }
+
+  /**
+   * Write order as row of .csv.
+   *
+   * @param printer - csv printer
+   * @param order   - order to write
+   * @throws IOException if printer fails
+   */
+  public static void print(CSVPrinter printer, Order order) throws IOException {
+    printer.printRecord(
+        Objects.toString(order.getId(), NULL),
+        Objects.toString(order.getProductId(), NULL),
+        Objects.toString(order.getQuantity(), NULL),
+        Objects.toString(order.getDate(), NULL),
+        Objects.toString(order.getStatus(), NULL),
+        Objects.toString(order.getComplete(), NULL)
+    );
+  }
+
+  /**
+   * Check if record is the header row written by export.
+   *
+   * @param row    - number of row in .csv
+   * @param record - row of .csv
+   * @return true for header row
+   */
+  public static boolean isHeader(long row, CSVRecord record) {
+    return row == 1 && record.size() > 0 && HEADER[0].equals(record.get(0));
+  }
+
+  /**
+   * Parse and validate row of .csv, every field is read once.
+   *
+   * @param record - row of .csv
+   * @return Order
+   * @throws IllegalArgumentException if row isn't a valid order
+   */
+  public static Order parse(CSVRecord record) {
+    if (record.size() != HEADER.length) {
+      throw new IllegalArgumentException(
+          "expected " + HEADER.length + " fields, found " + record.size());
+    }
+
+    Long id = parseLong(record.get(0), "id");
+    if (id == null || id < 1) {
+      throw new IllegalArgumentException("id must be positive");
+    }
+    Long productId = parseLong(record.get(1), "productId");
+    if (productId != null && productId < 1) {
+      throw new IllegalArgumentException("productId must be positive");
+    }
+    Long quantity = parseLong(record.get(2), "quantity");
+    if (quantity != null && (quantity < 1 || quantity > MAX_QUANTITY)) {
+      throw new IllegalArgumentException("quantity must be in 1.." + MAX_QUANTITY);
+    }
+
+    return new Order()
+        .id(id)
+        .productId(productId)
+        .quantity(quantity)
+        .date(parseDate(record.get(3)))
+        .status(parseStatus(record.get(4)))
+        .complete(parseBoolean(record.get(5)));
+  }
+
+  private static Long parseLong(String value, String field) {
+    if (NULL.equals(value) || value.isEmpty()) {
+      return null;
+    }
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(field + " is not a number: " + value);
+    }
+  }
+
+  private static OffsetDateTime parseDate(String value) {
+    if (NULL.equals(value) || value.isEmpty()) {
+      return null;
+    }
+    try {
+      return OffsetDateTime.parse(value);
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("date is not a date-time: " + value);
+    }
+  }
+
+  private static StatusEnum parseStatus(String value) {
+    if (NULL.equals(value) || value.isEmpty()) {
+      return null;
+    }
+    try {
+      return StatusEnum.fromValue(value);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("status is unknown: " + value);
+    }
+  }
+
+  private static Boolean parseBoolean(String value) {
+    if (NULL.equals(value) || value.isEmpty()) {
+      return false;
+    }
+    if ("true".equalsIgnoreCase(value)) {
+      return true;
+    }
+    if ("false".equalsIgnoreCase(value)) {
+      return false;
+    }
+    throw new IllegalArgumentException("complete is not a boolean: " + value);
+  }
+
+}
@@ -0,0 +1,175 @@
+package com.arwka.openapiedu.service.csv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.openapitools.model.Order;
+
+/**
+ * Orders in .csv cut into chunks of about the given size, written only when the next chunk
+ * is asked for. Lets a non-blocking server produce an export as fast as the client reads it
+ * instead of blocking a thread on a slow connection.
+ *
+ * <p>In a compressed coding chunks are parts of one compressed stream, the size is the one
+ * of compressed bytes. Chunks are closed after the last one or when the client has gone,
+ * which runs their close actions, e.g. closes the stream of orders.
+ */
+public final class OrdersCsvChunks implements AutoCloseable {
+
+  private final Iterator<Order> orders;
+  private final int chunkSize;
+  private final ByteArrayOutputStream chunk;
+  private final Text text;
+  private final Writer writer;
+  private final CSVPrinter printer;
+  private long rows;
+  private long bytes;
+  private boolean finished;
+  private Runnable closeAction = () -> { };
+
+  /**
+   * Create chunks, the first one starts with the header.
+   *
+   * @param orders    - orders to write
+   * @param chunkSize - size of chunk in bytes, the last row may exceed it
+   */
+  public OrdersCsvChunks(Iterator<Order> orders, int chunkSize) {
+    this(orders, chunkSize, CsvEncoding.IDENTITY);
+  }
+
+  /**
+   * Create chunks of coding, the first one starts with the header.
+   *
+   * @param orders    - orders to write
+   * @param chunkSize - size of chunk in bytes, the last row may exceed it
+   * @param encoding  - coding of chunks
+   */
+  public OrdersCsvChunks(Iterator<Order> orders, int chunkSize, CsvEncoding encoding) {
+    this.orders = orders;
+    this.chunkSize = chunkSize;
+    this.chunk = new ByteArrayOutputStream(chunkSize + 1024);
+    try {
+      this.text = new Text(encoding.encode(chunk));
+      this.writer = new OutputStreamWriter(text, StandardCharsets.UTF_8);
+      this.printer = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader(OrderCsvMapper.HEADER));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Write the next chunk.
+   *
+   * @return bytes of chunk or null after the last one
+   */
+  public byte[] next() {
+    if (finished && chunk.size() == 0) {
+      return null;
+    }
+    try {
+      while (chunk.size() < chunkSize && orders.hasNext()) {
+        OrderCsvMapper.print(printer, orders.next());
+        rows++;
+        // writer keeps a few KB of encoded chars, flush them to see the real size
+        if ((rows & 63) == 0) {
+          writer.flush();
+        }
+      }
+      if (!finished && !orders.hasNext()) {
+        finished = true;
+        // ends the compressed stream
+        writer.close();
+      } else {
+        writer.flush();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    if (chunk.size() == 0) {
+      return null;
+    }
+    bytes += text.count;
+    text.count = 0;
+    byte[] result = chunk.toByteArray();
+    chunk.reset();
+    return result;
+  }
+
+  /**
+   * Add action run on close, after the ones added before.
+   *
+   * @param action - close action
+   * @return these chunks
+   */
+  public OrdersCsvChunks onClose(Runnable action) {
+    Runnable previous = closeAction;
+    closeAction = () -> {
+      try {
+        previous.run();
+      } finally {
+        action.run();
+      }
+    };
+    return this;
+  }
+
+  /**
+   * Run close actions, only the first call does.
+   */
+  @Override
+  public void close() {
+    Runnable action = closeAction;
+    closeAction = () -> { };
+    action.run();
+  }
+
+  public long rows() {
+    return rows;
+  }
+
+  /**
+   * Bytes of .csv text written so far, before compression.
+   */
+  public long bytes() {
+    return bytes;
+  }
+
+  /**
+   * Text on its way to the coding: counted, flushes of the writer stop here, so they don't
+   * cut compressed blocks short.
+   */
+  private static final class Text extends FilterOutputStream {
+
+    private long count;
+
+    Text(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+
+    @Override
+    public void flush() {
+      // see class comment
+    }
+  }
+
+}
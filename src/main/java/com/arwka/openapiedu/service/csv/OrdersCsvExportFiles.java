@@ -0,0 +1,230 @@
+package com.arwka.openapiedu.service.csv;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Files of the full .csv export, one per store version and coding. While orders don't
+ * change every export is the same file, which the server sends from the page cache
+ * without copying it through the JVM, see {@code orders.export.files}.
+ *
+ * <p>Requests get the latest file there is and never write one: when the store has a newer
+ * version, the file is written again by a background thread, and requests meanwhile get the
+ * previous one with its own version. Before the first file is written, requests stream the
+ * export as without files.
+ *
+ * <p>Files replaced by newer ones are deleted once nobody holds them and they weren't handed
+ * out for {@code orders.export.files.retention}: sendfile opens the file only after the
+ * request is handled, when its holder has released it.
+ */
+@Slf4j
+@Component
+public class OrdersCsvExportFiles {
+
+  private static final String PREFIX = "orders-";
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final boolean enabled;
+  private final Path directory;
+  private final long retentionNanos;
+  private final ExecutorService writer = Executors.newSingleThreadExecutor(
+      runnable -> new Thread(runnable, "orders-csv-export"));
+
+  /**
+   * Latest file, pending writes and replaced files by coding, guarded by the map itself.
+   */
+  private final Map<CsvEncoding, ExportFile> latest = new EnumMap<>(CsvEncoding.class);
+  private final Map<CsvEncoding, Boolean> writing = new EnumMap<>(CsvEncoding.class);
+  private final List<ExportFile> replaced = new ArrayList<>();
+
+  /**
+   * Create files of exports.
+   *
+   * @param enabled   - serve full exports from files
+   * @param directory - directory of files
+   * @param retention - how long replaced files are kept after they were last handed out
+   */
+  public OrdersCsvExportFiles(@Value("${orders.export.files.enabled:false}") boolean enabled,
+                              @Value("${orders.export.files.directory:./data/exports}")
+                              Path directory,
+                              @Value("${orders.export.files.retention:1m}") Duration retention) {
+    this.enabled = enabled;
+    this.directory = directory;
+    this.retentionNanos = retention.toNanos();
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    writer.shutdownNow();
+  }
+
+  /**
+   * Latest file of coding, held by the caller till it calls {@link ExportFile#release()}.
+   * If the file is older than the store version or there is none, a new one is written in
+   * the background.
+   *
+   * @param version  - current store version
+   * @param encoding - coding of file
+   * @param export   - writes the export of the current store, the stream is closed after it
+   * @return file or empty if none is written yet
+   */
+  public Optional<ExportFile> get(String version, CsvEncoding encoding, Export export) {
+    ExportFile file;
+    synchronized (latest) {
+      file = latest.get(encoding);
+      if (file != null) {
+        file.holders++;
+        file.handedOut = System.nanoTime();
+      }
+      if ((file == null || !file.version.equals(version))
+          && writing.put(encoding, Boolean.TRUE) == null) {
+        try {
+          writer.execute(() -> write(version, encoding, export));
+        } catch (RejectedExecutionException e) {
+          writing.remove(encoding);
+        }
+      }
+    }
+    return Optional.ofNullable(file);
+  }
+
+  private void write(String version, CsvEncoding encoding, Export export) {
+    Path path = directory.resolve(PREFIX + version + encoding.getFileSuffix());
+    try {
+      if (!Files.exists(path)) {
+        write(path, export);
+      }
+      synchronized (latest) {
+        ExportFile previous = latest.put(encoding, new ExportFile(path, version));
+        if (previous != null) {
+          replaced.add(previous);
+        }
+      }
+      deleteUnused(encoding, path);
+    } catch (IOException | RuntimeException e) {
+      log.warn("Export of orders to {} failed", path, e);
+    } finally {
+      synchronized (latest) {
+        writing.remove(encoding);
+      }
+    }
+  }
+
+  private void write(Path file, Export export) throws IOException {
+    Files.createDirectories(directory);
+    // readers see either no file or a complete one
+    Path temp = Files.createTempFile(directory, PREFIX, ".tmp");
+    try {
+      try (OutputStream output =
+               new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE)) {
+        export.writeTo(output);
+      }
+      Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    log.info("Export of orders written to {}, {} bytes", file, Files.size(file));
+  }
+
+  /**
+   * Delete replaced files which nobody holds anymore, and files of coding left by previous
+   * runs.
+   */
+  private void deleteUnused(CsvEncoding encoding, Path file) throws IOException {
+    List<Path> kept = new ArrayList<>();
+    List<Path> unused = new ArrayList<>();
+    long now = System.nanoTime();
+    synchronized (latest) {
+      for (Iterator<ExportFile> files = replaced.iterator(); files.hasNext(); ) {
+        ExportFile old = files.next();
+        if (old.holders == 0 && now - old.handedOut > retentionNanos) {
+          unused.add(old.path);
+          files.remove();
+        } else {
+          kept.add(old.path);
+        }
+      }
+      kept.addAll(latest.values().stream().map(ExportFile::getPath).toList());
+    }
+    try (DirectoryStream<Path> files =
+             Files.newDirectoryStream(directory, PREFIX + "*" + encoding.getFileSuffix())) {
+      for (Path old : files) {
+        if (!old.equals(file) && !kept.contains(old)) {
+          unused.add(old);
+        }
+      }
+    }
+    for (Path old : unused) {
+      Files.deleteIfExists(old);
+    }
+  }
+
+  /**
+   * Complete file of the export, it isn't deleted while somebody holds it.
+   */
+  public final class ExportFile {
+    private final Path path;
+    private final String version;
+    private int holders;
+    private long handedOut = System.nanoTime();
+
+    private ExportFile(Path path, String version) {
+      this.path = path;
+      this.version = version;
+    }
+
+    public Path getPath() {
+      return path;
+    }
+
+    /**
+     * Store version the export contains at least.
+     */
+    public String getVersion() {
+      return version;
+    }
+
+    /**
+     * Let the file go once it's sent or handed to the server for sending.
+     */
+    public void release() {
+      synchronized (latest) {
+        holders--;
+        handedOut = System.nanoTime();
+      }
+    }
+  }
+
+  /**
+   * Writer of the export.
+   */
+  @FunctionalInterface
+  public interface Export {
+
+    void writeTo(OutputStream output) throws IOException;
+  }
+
+}
@@ -0,0 +1,182 @@
+package com.arwka.openapiedu.service.csv;
+
+import com.arwka.openapiedu.persistent.repository.OrdersRepository;
+import com.arwka.openapiedu.service.metrics.OrdersMetrics;
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+import org.openapitools.model.ImportSummary;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bulk import of orders from .csv: rows are parsed once, validated
+ * and saved to repository in batches.
+ *
+ * <p>With {@code orders.import.parallelism} above 1 rows are parsed by a pool
+ * of workers, see {@link ParallelCsvImport}.
+ */
+@Slf4j
+@Component
+public class OrdersCsvImporter {
+
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+  private final OrdersRepository ordersRepository;
+  private final OrdersMetrics ordersMetrics;
+  private final int batchSize;
+  private final int maxReportedErrors;
+  private final int parallelism;
+  private final int chunkSize;
+  private final ExecutorService workers;
+
+  /**
+   * Create importer.
+   *
+   * @param ordersRepository  - repository to save orders
+   * @param ordersMetrics     - counters of imported rows and bytes
+   * @param batchSize         - count of orders saved to repository at once
+   * @param maxReportedErrors - count of rejected rows reported with their messages
+   * @param parallelism       - count of threads parsing .csv, 1 to parse on calling thread
+   * @param chunkSize         - bytes of .csv parsed by one worker task
+   */
+  public OrdersCsvImporter(OrdersRepository ordersRepository,
+                           OrdersMetrics ordersMetrics,
+                           @Value("${orders.import.batch-size:1000}") int batchSize,
+                           @Value("${orders.import.max-reported-errors:100}")
+                           int maxReportedErrors,
+                           @Value("${orders.import.parallelism:1}") int parallelism,
+                           @Value("${orders.import.chunk-size:1048576}") int chunkSize) {
+    this.ordersRepository = ordersRepository;
+    this.ordersMetrics = ordersMetrics;
+    this.batchSize = batchSize;
+    this.maxReportedErrors = maxReportedErrors;
+    this.parallelism = parallelism;
+    this.chunkSize = chunkSize;
+    this.workers = parallelism > 1
+        ? Executors.newFixedThreadPool(parallelism, workerThreadFactory())
+        : null;
+  }
+
+  /**
+   * Stop workers of parallel parsing.
+   */
+  @PreDestroy
+  public void shutdown() {
+    if (workers != null) {
+      workers.shutdownNow();
+    }
+  }
+
+  /**
+   * Import orders from .csv with optional header row.
+   *
+   * @param inputStream - .csv in UTF-8
+   * @return ImportSummary
+   */
+  public ImportSummary importOrders(InputStream inputStream) {
+    ImportProgress progress = new ImportProgress(maxReportedErrors);
+    importOrders(inputStream, progress);
+    return progress.toSummary();
+  }
+
+  /**
+   * Import orders from .csv with optional header row, counting them in progress.
+   *
+   * @param inputStream - .csv in UTF-8
+   * @param progress    - progress of import
+   */
+  public void importOrders(InputStream inputStream, ImportProgress progress) {
+    BatchCommitter committer = new BatchCommitter(ordersRepository, progress, batchSize);
+
+    CountingInputStream counting = new CountingInputStream(inputStream);
+
+    log.info("Getting started to read records from .csv ...");
+    try {
+      if (workers == null) {
+        importSequentially(counting, committer, progress);
+      } else {
+        new ParallelCsvImport(workers, chunkSize, 2 * parallelism, committer, progress)
+            .run(counting);
+      }
+    } finally {
+      ordersMetrics.csvImported(progress.toSummary(), counting.count);
+    }
+
+    ImportSummary summary = progress.toSummary();
+    log.info("Import from .csv finished: {} accepted, {} rejected, {} duplicates",
+        summary.getAccepted(), summary.getRejected(), summary.getDuplicates());
+  }
+
+  private void importSequentially(InputStream inputStream, BatchCommitter committer,
+                                  ImportProgress progress) {
+    Reader reader = new BufferedReader(
+        new InputStreamReader(inputStream, StandardCharsets.UTF_8), READ_BUFFER_SIZE);
+
+    try {
+      for (CSVRecord record : CSVFormat.DEFAULT.parse(reader)) {
+        if (OrderCsvMapper.isHeader(record.getRecordNumber(), record)) {
+          continue;
+        }
+        try {
+          committer.add(OrderCsvMapper.parse(record));
+        } catch (IllegalArgumentException e) {
+          progress.rejected(record.getRecordNumber(), e.getMessage());
+        }
+      }
+      committer.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static ThreadFactory workerThreadFactory() {
+    AtomicInteger counter = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, "csv-import-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  private static final class CountingInputStream extends FilterInputStream {
+
+    private long count;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = in.read();
+      if (b != -1) {
+        count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = in.read(b, off, len);
+      if (read > 0) {
+        count += read;
+      }
+      return read;
+    }
+  }
+
+}
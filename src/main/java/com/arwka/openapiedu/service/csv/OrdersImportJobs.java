@@ -0,0 +1,221 @@
+package com.arwka.openapiedu.service.csv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.openapitools.model.ImportJob;
+import org.openapitools.model.ImportJobStatus;
+import org.openapitools.model.ImportSummary;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Background imports of .csv.
+ *
+ * <p>Upload is spooled to a temporary file on the request thread, then imported
+ * by a bounded pool of job threads. Spooling runs at the speed of the client, so the request
+ * thread is held for the whole upload. A place in the pool is taken before the upload is
+ * read: when all threads are busy and the queue is full, new jobs are rejected with
+ * {@link RejectedExecutionException} without reading their uploads.
+ */
+@Slf4j
+@Service
+public class OrdersImportJobs {
+
+  private final OrdersCsvImporter importer;
+  private final int maxReportedErrors;
+  private final int retainedJobs;
+  private final ThreadPoolExecutor executor;
+  private final Semaphore places;
+  private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+  /**
+   * Create job registry.
+   *
+   * @param importer          - importer of .csv
+   * @param threads           - count of imports running at once
+   * @param queueCapacity     - count of imports waiting for a thread
+   * @param retainedJobs      - count of finished jobs kept for polling
+   * @param maxReportedErrors - count of rejected rows reported with their messages
+   */
+  public OrdersImportJobs(OrdersCsvImporter importer,
+                          @Value("${orders.import.jobs.threads:2}") int threads,
+                          @Value("${orders.import.jobs.queue-capacity:8}") int queueCapacity,
+                          @Value("${orders.import.jobs.retained:100}") int retainedJobs,
+                          @Value("${orders.import.max-reported-errors:100}")
+                          int maxReportedErrors) {
+    this.importer = importer;
+    this.maxReportedErrors = maxReportedErrors;
+    this.retainedJobs = retainedJobs;
+
+    this.places = new Semaphore(threads + queueCapacity);
+    AtomicInteger counter = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity),
+        runnable -> new Thread(runnable, "csv-import-job-" + counter.incrementAndGet()));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Take a place in the pool, save upload to temporary file and queue its import.
+   *
+   * @param inputStream - .csv in UTF-8
+   * @return ImportJob in status queued
+   * @throws RejectedExecutionException if too many imports are running or queued
+   */
+  public ImportJob submit(InputStream inputStream) {
+    if (!places.tryAcquire()) {
+      throw new RejectedExecutionException("Too many imports are running or queued.");
+    }
+    Path file = null;
+    Job job = null;
+    try {
+      file = Files.createTempFile("orders-import-", ".csv");
+      long bytes = Files.copy(inputStream, file, StandardCopyOption.REPLACE_EXISTING);
+      job = new Job(UUID.randomUUID().toString(), bytes, new ImportProgress(maxReportedErrors));
+      jobs.put(job.id, job);
+      Job queued = job;
+      Path spooled = file;
+      executor.execute(() -> run(queued, spooled));
+    } catch (IOException e) {
+      abandon(job, file);
+      throw new UncheckedIOException(e);
+    } catch (RuntimeException e) {
+      abandon(job, file);
+      throw e;
+    }
+    evictFinished();
+    return job.toModel();
+  }
+
+  /**
+   * Get current state of import job.
+   *
+   * @param jobId - id of job
+   * @return ImportJob
+   * @throws NoSuchElementException if there is no such job
+   */
+  public ImportJob getJob(String jobId) {
+    Job job = jobs.get(jobId);
+    if (job == null) {
+      throw new NoSuchElementException("Import job not found.");
+    }
+    return job.toModel();
+  }
+
+  private void run(Job job, Path file) {
+    job.startedAt = OffsetDateTime.now();
+    job.status = ImportJobStatus.RUNNING;
+    try (InputStream inputStream = Files.newInputStream(file)) {
+      importer.importOrders(inputStream, job.progress);
+      job.status = ImportJobStatus.COMPLETED;
+    } catch (IOException | RuntimeException e) {
+      log.warn("Import job {} failed", job.id, e);
+      job.error = e.getMessage();
+      job.status = ImportJobStatus.FAILED;
+    } finally {
+      job.finishedAt = OffsetDateTime.now();
+      deleteQuietly(file);
+      places.release();
+    }
+  }
+
+  /**
+   * Give back the place of a job which didn't start.
+   */
+  private void abandon(Job job, Path file) {
+    if (job != null) {
+      jobs.remove(job.id);
+    }
+    if (file != null) {
+      deleteQuietly(file);
+    }
+    places.release();
+  }
+
+  private void evictFinished() {
+    int excess = jobs.size() - retainedJobs;
+    if (excess <= 0) {
+      return;
+    }
+    jobs.values().stream()
+        .filter(Job::isFinished)
+        .sorted(Comparator.comparing(job -> job.finishedAt))
+        .limit(excess)
+        .forEach(job -> jobs.remove(job.id));
+  }
+
+  private static void deleteQuietly(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      log.warn("Can't delete temporary file {}", file, e);
+    }
+  }
+
+  private static class Job {
+    private final String id;
+    private final long bytes;
+    private final ImportProgress progress;
+    private final OffsetDateTime createdAt = OffsetDateTime.now();
+    private volatile ImportJobStatus status = ImportJobStatus.QUEUED;
+    private volatile OffsetDateTime startedAt;
+    private volatile OffsetDateTime finishedAt;
+    private volatile String error;
+
+    Job(String id, long bytes, ImportProgress progress) {
+      this.id = id;
+      this.bytes = bytes;
+      this.progress = progress;
+    }
+
+    boolean isFinished() {
+      return finishedAt != null;
+    }
+
+    ImportJob toModel() {
+      ImportSummary summary = progress.toSummary();
+      OffsetDateTime started = startedAt;
+      Double rowsPerSecond = null;
+      if (started != null) {
+        OffsetDateTime end = finishedAt == null ? OffsetDateTime.now() : finishedAt;
+        long rows = summary.getAccepted() + summary.getRejected() + summary.getDuplicates();
+        long millis = Math.max(1L, Duration.between(started, end).toMillis());
+        rowsPerSecond = rows * 1000.0 / millis;
+      }
+      return new ImportJob()
+          .id(id)
+          .status(status)
+          .bytes(bytes)
+          .createdAt(createdAt)
+          .startedAt(started)
+          .finishedAt(finishedAt)
+          .rowsPerSecond(rowsPerSecond)
+          .summary(summary)
+          .error(error);
+    }
+  }
+
+}
@@ -0,0 +1,156 @@
+package com.arwka.openapiedu.service.csv;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+import org.openapitools.model.Order;
+
+/**
+ * Single parallel import of .csv.
+ *
+ * <p>The calling thread reads input in line-aligned chunks and submits them to
+ * worker pool for parsing. It also commits parsed chunks strictly in input order,
+ * so rows are numbered and duplicates are detected as in sequential import.
+ * At most {@code maxChunksInFlight} chunks are parsed or waiting for commit at once,
+ * which bounds memory and slows reading down when workers or repository lag behind.
+ *
+ * <p>Chunks are split on line breaks, so quoted values with line breaks are not supported.
+ */
+class ParallelCsvImport {
+
+  private final ExecutorService workers;
+  private final int chunkSize;
+  private final int maxChunksInFlight;
+  private final BatchCommitter committer;
+  private final ImportProgress progress;
+
+  private final Deque<Future<ParsedChunk>> inFlight = new ArrayDeque<>();
+  private long committedRecords;
+
+  ParallelCsvImport(ExecutorService workers, int chunkSize, int maxChunksInFlight,
+                    BatchCommitter committer, ImportProgress progress) {
+    this.workers = workers;
+    this.chunkSize = chunkSize;
+    this.maxChunksInFlight = maxChunksInFlight;
+    this.committer = committer;
+    this.progress = progress;
+  }
+
+  void run(InputStream inputStream) {
+    try {
+      byte[] buffer = new byte[chunkSize];
+      int filled = 0;
+      boolean first = true;
+      int read;
+      while ((read = inputStream.read(buffer, filled, buffer.length - filled)) != -1) {
+        filled += read;
+        if (filled < buffer.length) {
+          continue;
+        }
+        int end = lastLineBreak(buffer, filled);
+        if (end < 0) {
+          buffer = Arrays.copyOf(buffer, buffer.length * 2);
+          continue;
+        }
+        submit(Arrays.copyOf(buffer, end + 1), first);
+        first = false;
+        filled -= end + 1;
+        System.arraycopy(buffer, end + 1, buffer, 0, filled);
+      }
+      if (filled > 0) {
+        submit(Arrays.copyOf(buffer, filled), first);
+      }
+      while (!inFlight.isEmpty()) {
+        commitOldest();
+      }
+      committer.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      inFlight.forEach(future -> future.cancel(true));
+    }
+  }
+
+  private void submit(byte[] chunk, boolean first) {
+    while (inFlight.size() >= maxChunksInFlight
+        || (!inFlight.isEmpty() && inFlight.peek().isDone())) {
+      commitOldest();
+    }
+    inFlight.add(workers.submit(() -> parse(chunk, first)));
+  }
+
+  private void commitOldest() {
+    ParsedChunk chunk;
+    try {
+      chunk = inFlight.remove().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Import from .csv was interrupted.", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+
+    for (Order order : chunk.orders) {
+      committer.add(order);
+    }
+    for (int i = 0; i < chunk.errorRows.size(); i++) {
+      progress.rejected(committedRecords + chunk.errorRows.get(i), chunk.errorMessages.get(i));
+    }
+    committedRecords += chunk.records;
+  }
+
+  private static ParsedChunk parse(byte[] chunk, boolean first) throws IOException {
+    ParsedChunk parsed = new ParsedChunk();
+    InputStreamReader reader = new InputStreamReader(
+        new ByteArrayInputStream(chunk), StandardCharsets.UTF_8);
+    for (CSVRecord record : CSVFormat.DEFAULT.parse(reader)) {
+      parsed.records = record.getRecordNumber();
+      if (first && OrderCsvMapper.isHeader(record.getRecordNumber(), record)) {
+        continue;
+      }
+      try {
+        parsed.orders.add(OrderCsvMapper.parse(record));
+      } catch (IllegalArgumentException e) {
+        parsed.errorRows.add(record.getRecordNumber());
+        parsed.errorMessages.add(e.getMessage());
+      }
+    }
+    return parsed;
+  }
+
+  private static int lastLineBreak(byte[] buffer, int length) {
+    for (int i = length - 1; i >= 0; i--) {
+      if (buffer[i] == '\n') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Chunk parsed by worker, row numbers are relative to chunk start.
+   */
+  private static class ParsedChunk {
+    private final List<Order> orders = new ArrayList<>();
+    private final List<Long> errorRows = new ArrayList<>();
+    private final List<String> errorMessages = new ArrayList<>();
+    private long records;
+  }
+
+}
@@ -0,0 +1,50 @@
+package com.arwka.openapiedu.service.metrics;
+
+import com.arwka.openapiedu.persistent.repository.OrderIdGenerator;
+import com.arwka.openapiedu.persistent.repository.OrdersRepository;
+import com.arwka.openapiedu.service.stats.OrderStatistics;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.openapitools.model.StatusEnum;
+import org.springframework.stereotype.Component;
+
+/**
+ * Meters which read state the service keeps anyway. They are evaluated only when metrics
+ * are scraped, so writers of orders don't pay for them.
+ */
+@Component
+@RequiredArgsConstructor
+public class OrdersMeterBinder implements MeterBinder {
+
+  private final OrdersRepository ordersRepository;
+  private final OrderStatistics orderStatistics;
+  private final OrderIdGenerator orderIdGenerator;
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("orders.stored", ordersRepository, OrdersRepository::count)
+        .description("Orders in repository")
+        .register(registry);
+
+    List<StatusEnum> statuses = new ArrayList<>(Arrays.asList(StatusEnum.values()));
+    statuses.add(null);
+    for (StatusEnum status : statuses) {
+      Gauge.builder("orders.status", orderStatistics, statistics -> statistics.count(status))
+          .description("Orders in status")
+          .tag("status", status == null ? OrderStatistics.NO_STATUS_KEY : status.getValue())
+          .register(registry);
+    }
+
+    FunctionCounter.builder("orders.id.blocks", orderIdGenerator,
+            OrderIdGenerator::reservedBlocks)
+        .description("Blocks of ids reserved from the shared sequence")
+        .register(registry);
+  }
+
+}
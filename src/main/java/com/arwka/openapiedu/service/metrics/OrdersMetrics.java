@@ -0,0 +1,96 @@
+package com.arwka.openapiedu.service.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.openapitools.model.ImportSummary;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counters of events which happen outside of the repository: .csv transfers, handled
+ * exceptions and conflicts of allocated ids.
+ *
+ * <p>Counters are created once, so recording an event doesn't look the meter up. Transfers
+ * are counted once per file, not per row.
+ */
+@Component
+public class OrdersMetrics {
+
+  private static final String DIRECTION = "direction";
+  private static final String IMPORT = "import";
+  private static final String EXPORT = "export";
+
+  private final MeterRegistry registry;
+  private final Counter exportedRows;
+  private final Counter exportedBytes;
+  private final Counter importedRows;
+  private final Counter importedBytes;
+  private final Counter idConflicts;
+
+  /**
+   * Register meters of orders.
+   *
+   * @param registry - registry of meters
+   */
+  public OrdersMetrics(MeterRegistry registry) {
+    this.registry = registry;
+    this.exportedRows = rows(EXPORT);
+    this.exportedBytes = bytes(EXPORT);
+    this.importedRows = rows(IMPORT);
+    this.importedBytes = bytes(IMPORT);
+    this.idConflicts = Counter.builder("orders.id.conflicts")
+        .description("Inserts of new orders retried because the allocated id was taken")
+        .register(registry);
+  }
+
+  /**
+   * Count exported .csv.
+   *
+   * @param rows  - count of written orders
+   * @param bytes - count of written bytes
+   */
+  public void csvExported(long rows, long bytes) {
+    exportedRows.increment(rows);
+    exportedBytes.increment(bytes);
+  }
+
+  /**
+   * Count imported .csv, every row is counted whether it was accepted or not.
+   *
+   * @param summary - summary of import
+   * @param bytes   - count of read bytes
+   */
+  public void csvImported(ImportSummary summary, long bytes) {
+    importedRows.increment(summary.getAccepted() + summary.getRejected()
+        + summary.getDuplicates());
+    importedBytes.increment(bytes);
+  }
+
+  /**
+   * Count exception turned into a response.
+   *
+   * @param handler - name of handler
+   */
+  public void exceptionHandled(String handler) {
+    registry.counter("orders.exceptions", "handler", handler).increment();
+  }
+
+  public void idConflict() {
+    idConflicts.increment();
+  }
+
+  private Counter rows(String direction) {
+    return Counter.builder("orders.csv.rows")
+        .description("Rows of .csv files")
+        .tag(DIRECTION, direction)
+        .register(registry);
+  }
+
+  private Counter bytes(String direction) {
+    return Counter.builder("orders.csv.bytes")
+        .description("Bytes of .csv files")
+        .baseUnit("bytes")
+        .tag(DIRECTION, direction)
+        .register(registry);
+  }
+
+}
@@ -0,0 +1,212 @@
+package com.arwka.openapiedu.service.stats;
+
+import com.arwka.openapiedu.persistent.repository.OrderChangeListener;
+import com.arwka.openapiedu.persistent.repository.OrderTotals;
+import com.arwka.openapiedu.persistent.repository.OrdersRepository;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+import org.openapitools.model.DayStats;
+import org.openapitools.model.Order;
+import org.openapitools.model.OrderStats;
+import org.openapitools.model.ProductStats;
+import org.openapitools.model.StatusEnum;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counters of orders by status, product and day, kept up to date by every change.
+ *
+ * <p>Changes of one order come from the repository in the order they were applied, so its
+ * before and after states are subtracted and added in that order.
+ * Writers of different orders only touch striped {@link LongAdder}s, reading the statistics
+ * costs as much as the count of products and days, not of orders. While orders are being
+ * changed, counters of different groups may briefly reflect different sets of changes.
+ */
+@Component
+public class OrderStatistics implements OrderChangeListener {
+
+  /**
+   * Key of orders without status.
+   */
+  public static final String NO_STATUS_KEY = "none";
+
+  private static final StatusEnum[] STATUSES = StatusEnum.values();
+  private static final int NO_STATUS = STATUSES.length;
+
+  private final OrdersRepository ordersRepository;
+  private final LongAdder[] byStatus = new LongAdder[NO_STATUS + 1];
+  private final Map<Long, ProductCounters> byProduct = new ConcurrentHashMap<>();
+  private final Map<LocalDate, LongAdder> byDay = new ConcurrentHashMap<>();
+
+  /**
+   * Create statistics, counts are taken in {@link #init()}.
+   *
+   * @param ordersRepository - repository to count and listen to
+   */
+  public OrderStatistics(OrdersRepository ordersRepository) {
+    this.ordersRepository = ordersRepository;
+    for (int i = 0; i < byStatus.length; i++) {
+      byStatus[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Take counts of orders which are already stored, it runs before the service takes requests.
+   * Recovered store gives totals kept with its snapshot, otherwise orders are counted by a scan.
+   */
+  @PostConstruct
+  public void init() {
+    ordersRepository.addListener(this);
+    Optional<OrderTotals> recovered = ordersRepository.recoveredTotals();
+    if (recovered.isPresent()) {
+      add(recovered.get());
+      return;
+    }
+    try (Stream<Order> orders = ordersRepository.stream()) {
+      orders.forEach(order -> add(order, 1));
+    }
+  }
+
+  @Override
+  public void onChange(Order before, Order after) {
+    if (before == null || after == null) {
+      if (before != null) {
+        add(before, -1);
+      }
+      if (after != null) {
+        add(after, 1);
+      }
+      return;
+    }
+    // change of one order touches only the groups it moves between
+    if (before.getStatus() != after.getStatus()) {
+      byStatus[statusIndex(before)].decrement();
+      byStatus[statusIndex(after)].increment();
+    }
+    if (!Objects.equals(before.getProductId(), after.getProductId())
+        || !Objects.equals(before.getQuantity(), after.getQuantity())) {
+      addProduct(before, -1);
+      addProduct(after, 1);
+    }
+    if (!Objects.equals(day(before), day(after))) {
+      addDay(before, -1);
+      addDay(after, 1);
+    }
+  }
+
+  /**
+   * Current statistics.
+   *
+   * @return OrderStats with groups which have orders
+   */
+  public OrderStats getStats() {
+    long total = 0;
+    Map<String, Long> statuses = new LinkedHashMap<>();
+    for (int i = 0; i < byStatus.length; i++) {
+      long count = byStatus[i].sum();
+      total += count;
+      statuses.put(i == NO_STATUS ? NO_STATUS_KEY : STATUSES[i].getValue(), count);
+    }
+
+    List<ProductStats> products = new ArrayList<>();
+    byProduct.forEach((productId, counters) -> {
+      long orders = counters.orders.sum();
+      if (orders != 0) {
+        products.add(new ProductStats()
+            .productId(productId)
+            .orders(orders)
+            .quantity(counters.quantity.sum()));
+      }
+    });
+    products.sort(Comparator.comparing(ProductStats::getProductId));
+
+    List<DayStats> days = new ArrayList<>();
+    byDay.forEach((day, counter) -> {
+      long orders = counter.sum();
+      if (orders != 0) {
+        days.add(new DayStats().day(day).orders(orders));
+      }
+    });
+    days.sort(Comparator.comparing(DayStats::getDay));
+
+    return new OrderStats()
+        .total(total)
+        .byStatus(statuses)
+        .byProduct(products)
+        .byDay(days);
+  }
+
+  /**
+   * Count of orders in status.
+   *
+   * @param status - status or null for orders without status
+   * @return count
+   */
+  public long count(StatusEnum status) {
+    return byStatus[status == null ? NO_STATUS : status.ordinal()].sum();
+  }
+
+  private void add(OrderTotals totals) {
+    for (int i = 0; i < byStatus.length; i++) {
+      byStatus[i].add(totals.count(i == NO_STATUS ? null : STATUSES[i]));
+    }
+    totals.byProduct().forEach((productId, counters) -> {
+      ProductCounters product = byProduct.computeIfAbsent(productId, key -> new ProductCounters());
+      product.orders.add(counters[0]);
+      product.quantity.add(counters[1]);
+    });
+    totals.byDay().forEach((day, orders) ->
+        byDay.computeIfAbsent(day, key -> new LongAdder()).add(orders));
+  }
+
+  private void add(Order order, int sign) {
+    byStatus[statusIndex(order)].add(sign);
+    addProduct(order, sign);
+    addDay(order, sign);
+  }
+
+  private void addProduct(Order order, int sign) {
+    if (order.getProductId() == null) {
+      return;
+    }
+    ProductCounters counters =
+        byProduct.computeIfAbsent(order.getProductId(), key -> new ProductCounters());
+    counters.orders.add(sign);
+    if (order.getQuantity() != null) {
+      counters.quantity.add(sign * order.getQuantity());
+    }
+  }
+
+  private void addDay(Order order, int sign) {
+    LocalDate day = day(order);
+    if (day != null) {
+      byDay.computeIfAbsent(day, key -> new LongAdder()).add(sign);
+    }
+  }
+
+  private static int statusIndex(Order order) {
+    return order.getStatus() == null ? NO_STATUS : order.getStatus().ordinal();
+  }
+
+  private static LocalDate day(Order order) {
+    return order.getDate() == null
+        ? null
+        : order.getDate().atZoneSameInstant(ZoneOffset.UTC).toLocalDate();
+  }
+
+  private static final class ProductCounters {
+    private final LongAdder orders = new LongAdder();
+    private final LongAdder quantity = new LongAdder();
+  }
+
+}
@@ -0,0 +1,41 @@
+package com.arwka.openapiedu.ui.controller;
+
+import com.arwka.openapiedu.service.csv.CsvEncoding;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Content codings of .csv requests and responses.
+ */
+final class CsvCodings {
+
+  private static final String CSV = "csv";
+
+  private CsvCodings() {
+  }
+
+  /**
+   * Coding of uploaded .csv.
+   *
+   * @param contentEncoding - Content-Encoding header or null
+   * @return coding
+   * @throws ResponseStatusException with 415 if the coding isn't supported
+   */
+  static CsvEncoding ofUpload(String contentEncoding) {
+    return CsvEncoding.of(contentEncoding)
+        .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE,
+            "Content-Encoding " + contentEncoding + " isn't supported."));
+  }
+
+  /**
+   * Name of .csv in coding in ETag, the same export in another coding is another
+   * representation.
+   *
+   * @param encoding - coding of response
+   * @return "csv", "csv-gzip" or "csv-zstd"
+   */
+  static String representation(CsvEncoding encoding) {
+    return encoding == CsvEncoding.IDENTITY ? CSV : CSV + "-" + encoding.getName();
+  }
+
+}
@@ -0,0 +1,149 @@
+package com.arwka.openapiedu.ui.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+/**
+ * Blocking view of a request body for parsers which read an InputStream.
+ *
+ * <p>Buffers are requested one at a time, only after the previous one was taken by the
+ * reader, so at most two buffers of a body are held and a slow reader slows down the
+ * client instead of filling memory. Reads block, use it on a thread which may wait.
+ */
+final class DataBufferInputStream extends InputStream implements Subscriber<DataBuffer> {
+
+  private static final Object COMPLETE = new Object();
+
+  private final Publisher<DataBuffer> body;
+  private final BlockingQueue<Object> signals = new LinkedBlockingQueue<>();
+  private volatile Subscription subscription;
+  private DataBuffer current;
+  private volatile boolean closed;
+  private boolean subscribed;
+  private boolean done;
+
+  DataBufferInputStream(Publisher<DataBuffer> body) {
+    this.body = body;
+  }
+
+  @Override
+  public int read() throws IOException {
+    DataBuffer buffer = buffer();
+    return buffer == null ? -1 : buffer.read() & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] bytes, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    DataBuffer buffer = buffer();
+    if (buffer == null) {
+      return -1;
+    }
+    int count = Math.min(length, buffer.readableByteCount());
+    buffer.read(bytes, offset, count);
+    return count;
+  }
+
+  @Override
+  public int available() {
+    return current == null ? 0 : current.readableByteCount();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    done = true;
+    Subscription active = subscription;
+    if (active != null) {
+      active.cancel();
+    }
+    if (current != null) {
+      DataBufferUtils.release(current);
+      current = null;
+    }
+    releaseQueued();
+  }
+
+  @Override
+  public void onSubscribe(Subscription subscription) {
+    this.subscription = subscription;
+    subscription.request(1);
+  }
+
+  @Override
+  public void onNext(DataBuffer buffer) {
+    signals.add(buffer);
+    // reader has gone meanwhile
+    if (closed) {
+      releaseQueued();
+    }
+  }
+
+  @Override
+  public void onError(Throwable error) {
+    signals.add(error);
+  }
+
+  @Override
+  public void onComplete() {
+    signals.add(COMPLETE);
+  }
+
+  /**
+   * Buffer with unread bytes, waits for the next one when the current one is read.
+   *
+   * @return buffer or null at the end of body
+   */
+  private DataBuffer buffer() throws IOException {
+    while (current == null || current.readableByteCount() == 0) {
+      if (current != null) {
+        DataBufferUtils.release(current);
+        current = null;
+      }
+      if (done) {
+        return null;
+      }
+      if (!subscribed) {
+        subscribed = true;
+        body.subscribe(this);
+      }
+      Object signal;
+      try {
+        signal = signals.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for request body.");
+      }
+      if (signal == COMPLETE) {
+        done = true;
+      } else if (signal instanceof Throwable) {
+        done = true;
+        throw new IOException("Can't read request body.", (Throwable) signal);
+      } else {
+        current = (DataBuffer) signal;
+        subscription.request(1);
+      }
+    }
+    return current;
+  }
+
+  private void releaseQueued() {
+    Object signal;
+    while ((signal = signals.poll()) != null) {
+      if (signal instanceof DataBuffer) {
+        DataBufferUtils.release((DataBuffer) signal);
+      }
+    }
+  }
+
+}
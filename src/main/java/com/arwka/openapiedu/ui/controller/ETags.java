@@ -0,0 +1,81 @@
+package com.arwka.openapiedu.ui.controller;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.openapitools.model.Order;
+
+/**
+ * Strong entity tags of orders and of the whole store.
+ *
+ * <p>Tag of an order is its version. Tag of a list is the store version with the instance
+ * of the service and the representation, so it never repeats after restart and json and
+ * csv of the same query have different tags.
+ */
+final class ETags {
+
+  private static final String ANY = "*";
+  private static final String WEAK_PREFIX = "W/";
+
+  private ETags() {
+  }
+
+  static String ofOrder(Order order) {
+    return quote(String.valueOf(order.getVersion()));
+  }
+
+  static String ofStore(String storeVersion, String representation) {
+    return quote(storeVersion + "-" + representation);
+  }
+
+  /**
+   * Check If-None-Match header, tags are compared weakly.
+   *
+   * @param ifNoneMatch - value of header or null
+   * @param etag        - current tag
+   * @return true if the full response should be sent
+   */
+  static boolean noneMatch(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return true;
+    }
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.startsWith(WEAK_PREFIX)) {
+        tag = tag.substring(WEAK_PREFIX.length());
+      }
+      if (tag.equals(ANY) || tag.equals(etag)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Versions of order listed in If-Match header, weak and foreign tags match nothing.
+   *
+   * @param ifMatch - value of header or null
+   * @return versions or null if any version matches
+   */
+  static Set<Long> versions(String ifMatch) {
+    if (ifMatch == null || ifMatch.trim().equals(ANY)) {
+      return null;
+    }
+    Set<Long> versions = new HashSet<>();
+    for (String tag : ifMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+        try {
+          versions.add(Long.parseLong(tag.substring(1, tag.length() - 1)));
+        } catch (NumberFormatException e) {
+          // not a tag of order, it can't match
+        }
+      }
+    }
+    return versions;
+  }
+
+  private static String quote(String value) {
+    return "\"" + value + "\"";
+  }
+
+}
@@ -0,0 +1,178 @@
+package com.arwka.openapiedu.ui.controller;
+
+import com.arwka.openapiedu.config.VirtualThreads;
+import com.arwka.openapiedu.service.OrdersService;
+import com.arwka.openapiedu.service.changes.OrderChangeStream;
+import com.arwka.openapiedu.service.changes.OrderEventSink;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Servlet subscribers of changes of orders.
+ *
+ * <p>Every subscriber has a bounded queue of events, the delivering pool of
+ * {@link OrderChangeStream} only fills it and never blocks on a connection. A writer task per
+ * subscriber sends the queue to the client, on a virtual thread where the JDK has them, and
+ * requests more events once there is room, so a slow client lags behind in the feed instead of
+ * holding a thread of the pool.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class OrderChangeEmitters {
+
+  private final OrdersService ordersService;
+  private final int queueSize;
+  private final ExecutorService writers;
+
+  /**
+   * Create emitters.
+   *
+   * @param ordersService - service subscriptions are opened with
+   * @param queueSize     - max count of events queued for a subscriber
+   */
+  public OrderChangeEmitters(OrdersService ordersService,
+                             @Value("${orders.changes.queue-size:256}") int queueSize) {
+    this.ordersService = ordersService;
+    this.queueSize = queueSize;
+    AtomicInteger counter = new AtomicInteger();
+    this.writers = VirtualThreads.isSupported()
+        ? VirtualThreads.newExecutor("order-changes-writer-")
+        : Executors.newCachedThreadPool(runnable -> new Thread(runnable,
+            "order-changes-writer-" + counter.incrementAndGet()));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    writers.shutdownNow();
+  }
+
+  /**
+   * Subscribe to changes.
+   *
+   * @param lastEventId - id of the last received event or null to get only new changes
+   * @return emitter of events
+   * @throws RejectedExecutionException if there are too many subscribers
+   */
+  public SseEmitter subscribe(String lastEventId) {
+    OrderChangeStream.Subscription subscription = ordersService.subscribeToChanges(lastEventId);
+    SseEmitter emitter = new SseEmitter(subscription.getTimeout().toMillis());
+    emitter.onCompletion(subscription::cancel);
+    emitter.onTimeout(emitter::complete);
+    emitter.onError(error -> subscription.cancel());
+    subscription.start(new EmitterSink(emitter, queueSize, writers, subscription::request));
+    return emitter;
+  }
+
+  /**
+   * Connection with a bounded queue of events, sent by its own writer task: a blocking write
+   * holds the writer, never a thread of the delivering pool.
+   */
+  private static final class EmitterSink implements OrderEventSink {
+
+    private final SseEmitter emitter;
+    private final ArrayBlockingQueue<SseEmitter.SseEventBuilder> queue;
+    private final ExecutorService writers;
+    private final Runnable writable;
+    private final AtomicBoolean writing = new AtomicBoolean();
+    private volatile Throwable failure;
+
+    /**
+     * Create sink.
+     *
+     * @param emitter  - emitter of connection
+     * @param capacity - max count of queued events
+     * @param writers  - executor of writer tasks
+     * @param writable - action run when the writer made room in the queue
+     */
+    private EmitterSink(SseEmitter emitter, int capacity, ExecutorService writers,
+                        Runnable writable) {
+      this.emitter = emitter;
+      this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+      this.writers = writers;
+      this.writable = writable;
+    }
+
+    @Override
+    public boolean isReady() {
+      return failure != null || queue.remainingCapacity() > 0;
+    }
+
+    @Override
+    public void event(String id, String name, String data) throws IOException {
+      enqueue(SseEmitter.event().id(id).name(name).data(data));
+    }
+
+    @Override
+    public void comment(String comment) throws IOException {
+      enqueue(SseEmitter.event().comment(comment));
+    }
+
+    @Override
+    public void complete() {
+      queue.clear();
+      emitter.complete();
+    }
+
+    @Override
+    public void fail(Throwable error) {
+      queue.clear();
+      if (failure == null) {
+        failure = error;
+        emitter.completeWithError(error);
+      }
+    }
+
+    private void enqueue(SseEmitter.SseEventBuilder event) throws IOException {
+      if (failure != null) {
+        throw new IOException("Sending of events failed.", failure);
+      }
+      if (!queue.offer(event)) {
+        throw new IllegalStateException("Queue of events is full.");
+      }
+      startWriter();
+    }
+
+    private void startWriter() {
+      if (writing.compareAndSet(false, true)) {
+        try {
+          writers.execute(this::write);
+        } catch (RejectedExecutionException e) {
+          writing.set(false);
+          fail(e);
+        }
+      }
+    }
+
+    /**
+     * Send queued events, then let the subscriber fill the queue again.
+     */
+    private void write() {
+      try {
+        SseEmitter.SseEventBuilder event;
+        while (failure == null && (event = queue.poll()) != null) {
+          emitter.send(event);
+        }
+      } catch (IOException | IllegalStateException e) {
+        // client has gone or emitter is complete
+        fail(e);
+      } finally {
+        writing.set(false);
+      }
+      if (failure == null && !queue.isEmpty()) {
+        startWriter();
+      }
+      writable.run();
+    }
+  }
+
+}
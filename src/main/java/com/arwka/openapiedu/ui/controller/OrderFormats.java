@@ -0,0 +1,63 @@
+package com.arwka.openapiedu.ui.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.http.MediaType;
+
+/**
+ * Formats of lists of orders besides .csv, chosen by Accept of the request.
+ */
+final class OrderFormats {
+
+  static final String SMILE_VALUE = "application/x-jackson-smile";
+  static final MediaType SMILE = MediaType.parseMediaType(SMILE_VALUE);
+
+  /**
+   * In order of preference when Accept allows several of them.
+   */
+  private static final List<MediaType> FORMATS =
+      List.of(MediaType.APPLICATION_JSON, MediaType.APPLICATION_NDJSON, SMILE);
+
+  private OrderFormats() {
+  }
+
+  /**
+   * Pick format of the response.
+   *
+   * @param accept - media types of Accept header, empty if there is none
+   * @return the most specific acceptable format, JSON if none of them is acceptable
+   */
+  static MediaType negotiate(List<MediaType> accept) {
+    List<MediaType> sorted = new ArrayList<>(accept);
+    MediaType.sortBySpecificityAndQuality(sorted);
+    for (MediaType acceptable : sorted) {
+      if (acceptable.getQualityValue() == 0) {
+        continue;
+      }
+      for (MediaType format : FORMATS) {
+        if (acceptable.includes(format)) {
+          return format;
+        }
+      }
+    }
+    return MediaType.APPLICATION_JSON;
+  }
+
+  /**
+   * Name of format in ETag, a list in one format is another representation than in other.
+   *
+   * @param format - one of formats
+   * @return "json", "ndjson" or "smile"
+   */
+  static String representation(MediaType format) {
+    if (MediaType.APPLICATION_NDJSON.equalsTypeAndSubtype(format)) {
+      return "ndjson";
+    }
+    return SMILE.equalsTypeAndSubtype(format) ? "smile" : "json";
+  }
+
+  static boolean isLines(MediaType format) {
+    return MediaType.APPLICATION_NDJSON.equalsTypeAndSubtype(format);
+  }
+
+}
@@ -0,0 +1,76 @@
+package com.arwka.openapiedu.ui.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+import org.openapitools.model.Order;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+/**
+ * Writes a list of orders as NDJSON, one order per line, straight to the response.
+ * Lines are written while the client reads them instead of being collected into one body.
+ */
+public class OrderLinesHttpMessageConverter
+    extends AbstractGenericHttpMessageConverter<List<Order>> {
+
+  private final ObjectMapper objectMapper;
+
+  /**
+   * Create converter.
+   *
+   * @param objectMapper - mapper configured like the one of other responses
+   */
+  public OrderLinesHttpMessageConverter(ObjectMapper objectMapper) {
+    super(MediaType.APPLICATION_NDJSON);
+    this.objectMapper = objectMapper;
+  }
+
+  @Override
+  protected boolean supports(Class<?> clazz) {
+    return List.class.isAssignableFrom(clazz);
+  }
+
+  @Override
+  public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+    return false;
+  }
+
+  @Override
+  public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+    if (clazz != null && !supports(clazz)) {
+      return false;
+    }
+    Type bodyType = type != null ? type : clazz;
+    return Order.class.equals(ResolvableType.forType(bodyType).asCollection().resolveGeneric(0))
+        && canWrite(mediaType);
+  }
+
+  @Override
+  protected void writeInternal(List<Order> orders, Type type, HttpOutputMessage outputMessage)
+      throws IOException {
+    try (OrderSequenceWriter lines =
+             new OrderSequenceWriter(objectMapper, true, outputMessage.getBody())) {
+      for (Order order : orders) {
+        lines.write(order);
+      }
+    }
+  }
+
+  @Override
+  protected List<Order> readInternal(Class<? extends List<Order>> clazz,
+                                     HttpInputMessage inputMessage) {
+    throw new HttpMessageNotReadableException("Orders aren't read from NDJSON.", inputMessage);
+  }
+
+  @Override
+  public List<Order> read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) {
+    throw new HttpMessageNotReadableException("Orders aren't read from NDJSON.", inputMessage);
+  }
+
+}
@@ -0,0 +1,63 @@
+package com.arwka.openapiedu.ui.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import org.openapitools.model.Order;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Serializes lists of orders to bytes of the response body, the way they are streamed
+ * otherwise, for the cache of query results.
+ */
+@Component
+public class OrderListSerializer {
+
+  private static final int ORDER_SIZE_HINT = 160;
+
+  private final ObjectMapper jsonMapper;
+  private final ObjectMapper smileMapper;
+
+  /**
+   * Create serializer.
+   *
+   * @param jsonMapper                 - mapper configured like the one of other responses
+   * @param jacksonObjectMapperBuilder - builder of JSON mapper, Smile mapper is built by it
+   */
+  public OrderListSerializer(ObjectMapper jsonMapper,
+                             Jackson2ObjectMapperBuilder jacksonObjectMapperBuilder) {
+    this.jsonMapper = jsonMapper;
+    this.smileMapper = jacksonObjectMapperBuilder.createXmlMapper(false)
+        .factory(new SmileFactory())
+        .build();
+  }
+
+  /**
+   * Serialize orders.
+   *
+   * @param orders - orders to write
+   * @param format - one of formats of {@link OrderFormats}
+   * @return body of response
+   */
+  byte[] serialize(List<Order> orders, MediaType format) {
+    ObjectMapper mapper = OrderFormats.SMILE.equalsTypeAndSubtype(format)
+        ? smileMapper
+        : jsonMapper;
+    ByteArrayOutputStream body = new ByteArrayOutputStream(orders.size() * ORDER_SIZE_HINT + 2);
+    try (OrderSequenceWriter writer =
+             new OrderSequenceWriter(mapper, OrderFormats.isLines(format), body)) {
+      for (Order order : orders) {
+        writer.write(order);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return body.toByteArray();
+  }
+
+}
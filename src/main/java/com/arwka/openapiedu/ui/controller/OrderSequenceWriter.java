@@ -0,0 +1,77 @@
+package com.arwka.openapiedu.ui.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.openapitools.model.Order;
+
+/**
+ * Writes orders one by one as an array or, for NDJSON, one order per line, so a list of
+ * orders is never turned into one big body in memory. The format is the one of the mapper:
+ * JSON or Smile.
+ *
+ * <p>Nothing is flushed to the target till {@link #flush()} or {@link #close()}, the target
+ * itself stays open.
+ */
+public final class OrderSequenceWriter implements Closeable {
+
+  private final ObjectWriter writer;
+  private final JsonGenerator generator;
+  private final boolean lines;
+
+  /**
+   * Create writer, the array is started at once.
+   *
+   * @param objectMapper - mapper of JSON or Smile
+   * @param lines        - write NDJSON instead of array, JSON mapper only
+   * @param output       - target of orders
+   * @throws IOException if target fails
+   */
+  public OrderSequenceWriter(ObjectMapper objectMapper, boolean lines, OutputStream output)
+      throws IOException {
+    this.writer = objectMapper.writerFor(Order.class)
+        .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    this.generator = objectMapper.getFactory().createGenerator(output)
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    this.lines = lines;
+    if (lines) {
+      // lines are separated by writes of the newline, not by the generator
+      generator.setRootValueSeparator(null);
+    } else {
+      generator.writeStartArray();
+    }
+  }
+
+  /**
+   * Write the next order.
+   *
+   * @param order - order
+   * @throws IOException if target fails
+   */
+  public void write(Order order) throws IOException {
+    writer.writeValue(generator, order);
+    if (lines) {
+      generator.writeRaw('\n');
+    }
+  }
+
+  public void flush() throws IOException {
+    generator.flush();
+  }
+
+  /**
+   * End the array and flush the rest.
+   */
+  @Override
+  public void close() throws IOException {
+    if (!lines && !generator.isClosed()) {
+      generator.writeEndArray();
+    }
+    generator.close();
+  }
+
+}
@@ -0,0 +1,168 @@
+package com.arwka.openapiedu.ui.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import org.openapitools.model.Order;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractEncoder;
+import org.springframework.core.codec.EncodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.HttpMessageEncoder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Writes a Flux of orders as a JSON array, as NDJSON or as a Smile array while it is read
+ * from the store.
+ *
+ * <p>The default Jackson encoders collect a Flux into a list before writing an array
+ * and flush NDJSON after every line. Here orders are written in batches, one buffer per
+ * batch, so memory doesn't grow with the count of orders and millions of them aren't
+ * millions of flushes.
+ */
+public class OrderStreamEncoder extends AbstractEncoder<Order>
+    implements HttpMessageEncoder<Order> {
+
+  private static final int BATCH_SIZE = 256;
+  private static final int ORDER_SIZE_HINT = 160;
+
+  private final ObjectMapper jsonMapper;
+  private final ObjectMapper smileMapper;
+
+  /**
+   * Create encoder.
+   *
+   * @param jsonMapper  - mapper configured like the one of other responses
+   * @param smileMapper - mapper of Smile with the same configuration
+   */
+  public OrderStreamEncoder(ObjectMapper jsonMapper, ObjectMapper smileMapper) {
+    super(MediaType.APPLICATION_JSON, MediaType.APPLICATION_NDJSON, OrderFormats.SMILE);
+    this.jsonMapper = jsonMapper;
+    this.smileMapper = smileMapper;
+  }
+
+  @Override
+  public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+    return Order.class.equals(elementType.toClass()) && super.canEncode(elementType, mimeType);
+  }
+
+  @Override
+  public Flux<DataBuffer> encode(Publisher<? extends Order> inputStream,
+                                 DataBufferFactory bufferFactory, ResolvableType elementType,
+                                 MimeType mimeType, Map<String, Object> hints) {
+    if (inputStream instanceof Mono) {
+      return Mono.from(inputStream)
+          .map(order -> encodeValue(order, bufferFactory, elementType, mimeType, hints))
+          .flux();
+    }
+    boolean lines = MediaType.APPLICATION_NDJSON.isCompatibleWith(mimeType);
+    return Flux.defer(() -> {
+      BufferTarget target = new BufferTarget();
+      OrderSequenceWriter sequence = open(mapper(mimeType), lines, target);
+      return Flux.from(inputStream)
+          .buffer(BATCH_SIZE)
+          .map(batch -> write(sequence, target, bufferFactory, batch))
+          .concatWith(Mono.fromCallable(() -> end(sequence, target, bufferFactory)));
+    });
+  }
+
+  @Override
+  public DataBuffer encodeValue(Order value, DataBufferFactory bufferFactory,
+                                ResolvableType valueType, MimeType mimeType,
+                                Map<String, Object> hints) {
+    try {
+      return bufferFactory.wrap(mapper(mimeType).writerFor(Order.class)
+          .writeValueAsBytes(value));
+    } catch (IOException e) {
+      throw new EncodingException("Can't write order.", e);
+    }
+  }
+
+  @Override
+  public List<MediaType> getStreamingMediaTypes() {
+    return List.of(MediaType.APPLICATION_NDJSON);
+  }
+
+  private ObjectMapper mapper(MimeType mimeType) {
+    return OrderFormats.SMILE.isCompatibleWith(mimeType) ? smileMapper : jsonMapper;
+  }
+
+  private static OrderSequenceWriter open(ObjectMapper mapper, boolean lines,
+                                          OutputStream target) {
+    try {
+      return new OrderSequenceWriter(mapper, lines, target);
+    } catch (IOException e) {
+      throw new EncodingException("Can't write orders.", e);
+    }
+  }
+
+  private static DataBuffer write(OrderSequenceWriter sequence, BufferTarget target,
+                                  DataBufferFactory bufferFactory,
+                                  List<? extends Order> batch) {
+    DataBuffer buffer = bufferFactory.allocateBuffer(batch.size() * ORDER_SIZE_HINT);
+    target.buffer = buffer;
+    try {
+      for (Order order : batch) {
+        sequence.write(order);
+      }
+      sequence.flush();
+    } catch (IOException e) {
+      DataBufferUtils.release(buffer);
+      throw new EncodingException("Can't write orders.", e);
+    } finally {
+      target.buffer = null;
+    }
+    return buffer;
+  }
+
+  /**
+   * End of the array, nothing for NDJSON.
+   *
+   * @return the last buffer or null if there is nothing to write
+   */
+  private static DataBuffer end(OrderSequenceWriter sequence, BufferTarget target,
+                                DataBufferFactory bufferFactory) {
+    DataBuffer buffer = bufferFactory.allocateBuffer(16);
+    target.buffer = buffer;
+    try {
+      sequence.close();
+    } catch (IOException e) {
+      DataBufferUtils.release(buffer);
+      throw new EncodingException("Can't write orders.", e);
+    } finally {
+      target.buffer = null;
+    }
+    if (buffer.readableByteCount() == 0) {
+      DataBufferUtils.release(buffer);
+      return null;
+    }
+    return buffer;
+  }
+
+  /**
+   * Target of the generator of one response, the bytes of each batch go to its own buffer.
+   */
+  private static final class BufferTarget extends OutputStream {
+
+    private DataBuffer buffer;
+
+    @Override
+    public void write(int b) {
+      buffer.write((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      buffer.write(b, off, len);
+    }
+  }
+
+}
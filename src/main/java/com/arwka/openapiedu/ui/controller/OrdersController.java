@@ -1,15 +1,39 @@
 package com.arwka.openapiedu.ui.controller;
 
+import com.arwka.openapiedu.service.OrdersPage;
 import com.arwka.openapiedu.service.OrdersService;
+import com.arwka.openapiedu.service.cache.OrdersQueryResult;
+import com.arwka.openapiedu.service.csv.CsvEncoding;
+import com.arwka.openapiedu.service.csv.OrdersCsvExportFiles.ExportFile;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 import lombok.RequiredArgsConstructor;
+import org.apache.catalina.Globals;
 import org.openapitools.api.OrdersApi;
 import org.openapitools.model.EditedOrder;
+import org.openapitools.model.ImportJob;
+import org.openapitools.model.ImportSummary;
 import org.openapitools.model.NewOrder;
 import org.openapitools.model.Order;
+import org.openapitools.model.OrderBatch;
+import org.openapitools.model.OrderBatchResult;
+import org.openapitools.model.OrderSortField;
+import org.openapitools.model.OrderStats;
 import org.openapitools.model.StatusEnum;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -21,99 +45,372 @@ import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @Controller
 @RequiredArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class OrdersController implements OrdersApi {
 
+  private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+  private static final int DEFAULT_PAGE_SIZE = 100;
   private final OrdersService ordersService;
+  private final NativeWebRequest request;
+  private final OrderListSerializer orderListSerializer;
+  private final OrderChangeEmitters orderChangeEmitters;
 
   /**
-   * Get orders.
+   * Get orders as a JSON array, one order per line with Accept: application/x-ndjson
+   * or as Smile array with Accept: application/x-jackson-smile.
+   * Page is returned if cursor or limit is given,
+   * cursor of the next page is in X-Next-Cursor header.
+   * Response has ETag of the store, nothing is read while it matches If-None-Match.
+   * Lists which aren't pages are served from the cache of query results if it's enabled.
    *
-   * @param status - order status (not implemented)
-   * @param from   - datetime FROM (period) (not implemented)
-   * @param to     - datetime TO (period) (not implemented)
-   * @return ResponseEntity with list of orders
+   * @param status      - order status
+   * @param from        - datetime FROM (period)
+   * @param to          - datetime TO (period)
+   * @param cursor      - cursor of the next page from previous response
+   * @param limit       - max count of orders in page
+   * @param sort        - sort field of page
+   * @param ifNoneMatch - ETag from previous response
+   * @return ResponseEntity with list of orders or NOT_MODIFIED
    */
   @Override
-  @GetMapping(value = "/orders", consumes = "application/json")
+  @GetMapping(value = "/orders", consumes = "application/json", produces = {
+      MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE,
+      OrderFormats.SMILE_VALUE})
   public ResponseEntity<List<Order>> getOrders(StatusEnum status, OffsetDateTime from,
-                                               OffsetDateTime to) {
+                                               OffsetDateTime to, String cursor,
+                                               Integer limit, OrderSortField sort,
+                                               String ifNoneMatch) {
+
+    MediaType format = OrderFormats.negotiate(acceptedMediaTypes());
+    String etag = ETags.ofStore(ordersService.getStoreVersion(),
+        OrderFormats.representation(format));
+    if (!ETags.noneMatch(ifNoneMatch, etag)) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+
+    if (null != cursor || null != limit) {
+      OrdersPage page = ordersService.getOrdersPage(status, from, to, cursor,
+          limit == null ? DEFAULT_PAGE_SIZE : limit,
+          sort == null ? OrderSortField.ID : sort);
+
+      ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+      if (page.getNextCursor() != null) {
+        response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+      }
+      return response
+          .eTag(etag)
+          .varyBy(HttpHeaders.ACCEPT)
+          .contentType(format)
+          .body(page.getOrders());
+    }
+
+    if (ordersService.isQueryCacheEnabled()) {
+      OrdersQueryResult result = ordersService.getSerializedOrders(status, from, to,
+          OrderFormats.representation(format),
+          orders -> orderListSerializer.serialize(orders, format));
+      if (result.isSerialized()) {
+        return serialized(ResponseEntity
+            .ok()
+            .eTag(etag)
+            .varyBy(HttpHeaders.ACCEPT)
+            .contentType(format)
+            .body(result.getBytes()));
+      }
+      return ResponseEntity
+          .ok()
+          .eTag(etag)
+          .varyBy(HttpHeaders.ACCEPT)
+          .contentType(format)
+          .body(result.getOrders());
+    }
 
     if (null == from && null == to && null == status) {
       return ResponseEntity
           .ok()
-          .contentType(MediaType.APPLICATION_JSON)
+          .eTag(etag)
+          .varyBy(HttpHeaders.ACCEPT)
+          .contentType(format)
           .body(ordersService.getOrdersWithoutParams());
     } else {
       return ResponseEntity
           .ok()
-          .contentType(MediaType.APPLICATION_JSON)
+          .eTag(etag)
+          .varyBy(HttpHeaders.ACCEPT)
+          .contentType(format)
           .body(ordersService.getOrders(status, from, to));
     }
 
   }
 
+  /**
+   * Serialized list as the body of a list response: the bytes are written as they are
+   * by {@link org.springframework.http.converter.ByteArrayHttpMessageConverter}.
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> ResponseEntity<T> serialized(ResponseEntity<byte[]> response) {
+    return (ResponseEntity<T>) (ResponseEntity<?>) response;
+  }
+
+  /**
+   * Export orders to .csv, rows are streamed to client while they are written.
+   * Filters are checked before the response is started. The export is compressed by gzip
+   * or zstd if Accept-Encoding allows it. Without filters and with files of exports enabled
+   * the file of the current store version is sent by the server without copying.
+   *
+   * @param status         - order status
+   * @param from           - datetime FROM (period)
+   * @param to             - datetime TO (period)
+   * @param ifNoneMatch    - ETag from previous response
+   * @param acceptEncoding - codings accepted by client
+   * @return ResponseEntity with streaming .csv body or NOT_MODIFIED
+   */
   @GetMapping(value = "/orders", consumes = "text/csv")
-  public ResponseEntity<?> getOrdersInCsv(StatusEnum status, OffsetDateTime from,
-                                          OffsetDateTime to) {
+  public ResponseEntity<StreamingResponseBody> getOrdersInCsv(
+      @RequestParam(value = "status", required = false) StatusEnum status,
+      @RequestParam(value = "from", required = false)
+      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+      @RequestParam(value = "to", required = false)
+      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+      @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false)
+      String acceptEncoding) {
+
+    CsvEncoding encoding = CsvEncoding.negotiate(acceptEncoding);
+    String etag = ETags.ofStore(ordersService.getStoreVersion(),
+        CsvCodings.representation(encoding));
+    if (!ETags.noneMatch(ifNoneMatch, etag)) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+          .eTag(etag)
+          .varyBy(HttpHeaders.ACCEPT_ENCODING)
+          .build();
+    }
 
+    ordersService.checkFilter(status, from, to);
     HttpHeaders headers = new HttpHeaders();
+    headers.setETag(etag);
+    headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
     headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=orders.csv");
     headers.set(HttpHeaders.CONTENT_TYPE, "text/csv");
+    if (encoding != CsvEncoding.IDENTITY) {
+      headers.set(HttpHeaders.CONTENT_ENCODING, encoding.getName());
+    }
+
+    if (null == status && null == from && null == to) {
+      Optional<ExportFile> file = ordersService.getOrdersCsvFile(encoding);
+      if (file.isPresent()) {
+        // the latest file, of an older version while the next one is written
+        headers.setETag(ETags.ofStore(file.get().getVersion(),
+            CsvCodings.representation(encoding)));
+        return sendFile(file.get(), headers);
+      }
+    }
 
-    return new ResponseEntity<>(
-        ordersService.getOrdersInCsv(),
+    return new ResponseEntity<>(outputStream -> {
+      // the view of the store is opened by the export and closed with it
+      try (Stream<Order> orders = ordersService.streamOrders(status, from, to)) {
+        ordersService.writeOrdersInCsv(orders, encoding, outputStream);
+      }
+    },
         headers,
         HttpStatus.OK
     );
   }
 
   /**
-   * Create and save new order.
+   * Send file by sendfile of Tomcat, which copies it from the page cache to the socket
+   * in the kernel, or through a file channel where it's not supported. The file is released
+   * once it's sent, or handed to Tomcat, which opens it within the retention of files.
+   */
+  private ResponseEntity<StreamingResponseBody> sendFile(ExportFile file, HttpHeaders headers) {
+    boolean streamed = false;
+    try {
+      Path path = file.getPath();
+      long size;
+      try {
+        size = Files.size(path);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      headers.setContentLength(size);
+
+      if (Boolean.TRUE.equals(request.getAttribute(Globals.SENDFILE_SUPPORTED_ATTR,
+          RequestAttributes.SCOPE_REQUEST))) {
+        request.setAttribute(Globals.SENDFILE_FILENAME_ATTR, path.toAbsolutePath().toString(),
+            RequestAttributes.SCOPE_REQUEST);
+        request.setAttribute(Globals.SENDFILE_FILE_START_ATTR, 0L,
+            RequestAttributes.SCOPE_REQUEST);
+        request.setAttribute(Globals.SENDFILE_FILE_END_ATTR, size,
+            RequestAttributes.SCOPE_REQUEST);
+        return new ResponseEntity<>(headers, HttpStatus.OK);
+      }
+
+      streamed = true;
+      return new ResponseEntity<>(outputStream -> {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+          WritableByteChannel target = Channels.newChannel(outputStream);
+          long position = 0;
+          while (position < size) {
+            position += channel.transferTo(position, size - position, target);
+          }
+        } finally {
+          file.release();
+        }
+      }, headers, HttpStatus.OK);
+    } finally {
+      if (!streamed) {
+        file.release();
+      }
+    }
+  }
+
+  /**
+   * Get statistics of orders.
+   *
+   * @return ResponseEntity with counts by status, product and day
+   */
+  @Override
+  @GetMapping("/orders/stats")
+  public ResponseEntity<OrderStats> getOrderStats() {
+    return ResponseEntity
+        .ok()
+        .contentType(MediaType.APPLICATION_JSON)
+        .body(ordersService.getStats());
+  }
+
+  /**
+   * Create and save new order from JSON or Smile, the order is returned in format of Accept.
    *
    * @param newOrder - order-to-create
    * @return ResponseEntity with created and saved order
    */
   @Override
-  @PostMapping(value = "/orders", consumes = "application/json")
+  @PostMapping(value = "/orders",
+      consumes = {MediaType.APPLICATION_JSON_VALUE, OrderFormats.SMILE_VALUE})
   public ResponseEntity<Order> createNewOrder(NewOrder newOrder) {
+    Order order = ordersService.createNewOrder(newOrder);
     return ResponseEntity
         .status(HttpStatus.CREATED)
-        .body(ordersService.createNewOrder(newOrder));
+        .eTag(ETags.ofOrder(order))
+        .body(order);
   }
 
   /**
-   * Load orders from .csv
+   * Load orders from .csv, compressed by gzip or zstd if Content-Encoding says so.
    *
-   * @param inputStream - input stream of .csv file
-   * @return ResponseEntity with status CREATED
+   * @param inputStream     - input stream of .csv file
+   * @param contentEncoding - coding of body
+   * @return ResponseEntity with status CREATED and import summary
    */
   @PostMapping(value = "/orders", consumes = "text/csv", produces = "application/json")
-  public ResponseEntity<Void> loadOrdersFromCsv(InputStream inputStream) {
-    ordersService.addOrdersFromCsv(inputStream);
+  public ResponseEntity<ImportSummary> loadOrdersFromCsv(
+      InputStream inputStream,
+      @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false)
+      String contentEncoding) {
+    InputStream csv = CsvCodings.ofUpload(contentEncoding).decode(inputStream);
     return ResponseEntity
         .status(HttpStatus.CREATED)
-        .build();
+        .contentType(MediaType.APPLICATION_JSON)
+        .body(ordersService.addOrdersFromCsv(csv));
   }
 
   /**
-   * Patch existing order.
+   * Start background import of orders from .csv, compressed by gzip or zstd
+   * if Content-Encoding says so.
    *
-   * @param id - id
+   * @param inputStream     - input stream of .csv file
+   * @param contentEncoding - coding of body
+   * @return ResponseEntity with status ACCEPTED and import job
+   */
+  @PostMapping(value = "/orders", consumes = "text/csv", produces = "application/json",
+      params = "async=true")
+  public ResponseEntity<ImportJob> submitOrdersFromCsv(
+      InputStream inputStream,
+      @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false)
+      String contentEncoding) {
+    InputStream csv = CsvCodings.ofUpload(contentEncoding).decode(inputStream);
+    ImportJob job = ordersService.submitOrdersFromCsv(csv);
+    return ResponseEntity
+        .accepted()
+        .location(URI.create("/orders/imports/" + job.getId()))
+        .contentType(MediaType.APPLICATION_JSON)
+        .body(job);
+  }
+
+  /**
+   * Apply batch of create, patch, approve, deliver and delete operations.
+   *
+   * @param orderBatch - operations and atomicity
+   * @return ResponseEntity with result of every operation
+   */
+  @Override
+  @PostMapping(value = "/orders:batch", consumes = "application/json",
+      produces = "application/json")
+  public ResponseEntity<OrderBatchResult> batchOrders(OrderBatch orderBatch) {
+    return ResponseEntity
+        .ok()
+        .contentType(MediaType.APPLICATION_JSON)
+        .body(ordersService.applyBatch(orderBatch));
+  }
+
+  /**
+   * Stream changes of orders as Server-Sent Events.
+   *
+   * @param lastEventIdHeader - id of the last received event sent by reconnecting client
+   * @param lastEventId       - id of the last received event as query parameter
+   * @return SseEmitter of change events
+   */
+  @GetMapping(value = "/orders/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter getOrderChanges(
+      @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+      @RequestParam(value = "lastEventId", required = false) String lastEventId) {
+    return orderChangeEmitters.subscribe(
+        lastEventIdHeader != null ? lastEventIdHeader : lastEventId);
+  }
+
+  /**
+   * Get progress of background import.
+   *
+   * @param jobId - id of import job
+   * @return ResponseEntity with import job
+   */
+  @Override
+  @GetMapping("/orders/imports/{jobId}")
+  public ResponseEntity<ImportJob> getImportJob(@PathVariable(name = "jobId") String jobId) {
+    return ResponseEntity
+        .ok()
+        .contentType(MediaType.APPLICATION_JSON)
+        .body(ordersService.getImportJob(jobId));
+  }
+
+  /**
+   * Patch existing order, with If-Match only if it wasn't changed since the given ETag.
+   *
+   * @param id          - id
+   * @param ifMatch     - ETag of order from previous response
    * @param editedOrder - editedOrder
    * @return ResponseEntity with Order with changes from editedOrder
    */
   @Override
   @PatchMapping("/orders/{id}")
   public ResponseEntity<Order> patchOrder(@PathVariable(name = "id") String id,
+                                          String ifMatch,
                                           EditedOrder editedOrder) {
 
+    Order order = ordersService.patchOrder(id, editedOrder, ETags.versions(ifMatch));
     return ResponseEntity
         .ok()
+        .eTag(ETags.ofOrder(order))
         .contentType(MediaType.APPLICATION_JSON)
-        .body(ordersService.patchOrder(id, editedOrder));
+        .body(order);
   }
 
   /**
@@ -125,10 +422,12 @@ public class OrdersController implements OrdersApi {
   @Override
   @PutMapping("/orders/{id}/approved")
   public ResponseEntity<Order> approveOrder(@PathVariable(name = "id") String id) {
+    Order order = ordersService.approveOrder(id);
     return ResponseEntity
         .ok()
+        .eTag(ETags.ofOrder(order))
         .contentType(MediaType.APPLICATION_JSON)
-        .body(ordersService.approveOrder(id));
+        .body(order);
   }
 
   /**
@@ -140,10 +439,12 @@ public class OrdersController implements OrdersApi {
   @Override
   @PutMapping("/orders/{id}/delivered")
   public ResponseEntity<Order> deliverOrder(@PathVariable(name = "id") String id) {
+    Order order = ordersService.deliverOrder(id);
     return ResponseEntity
         .ok()
+        .eTag(ETags.ofOrder(order))
         .contentType(MediaType.APPLICATION_JSON)
-        .body(ordersService.deliverOrder(id));
+        .body(order);
   }
 
   /**
@@ -161,4 +462,9 @@ public class OrdersController implements OrdersApi {
         .build();
   }
 
+  private List<MediaType> acceptedMediaTypes() {
+    String[] accept = request.getHeaderValues(HttpHeaders.ACCEPT);
+    return accept == null ? List.of() : MediaType.parseMediaTypes(List.of(accept));
+  }
+
 }
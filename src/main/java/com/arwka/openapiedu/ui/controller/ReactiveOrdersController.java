@@ -0,0 +1,533 @@
+package com.arwka.openapiedu.ui.controller;
+
+import com.arwka.openapiedu.service.OrdersPage;
+import com.arwka.openapiedu.service.OrdersService;
+import com.arwka.openapiedu.service.cache.OrdersQueryResult;
+import com.arwka.openapiedu.service.changes.OrderChangeStream;
+import com.arwka.openapiedu.service.changes.OrderEventSink;
+import com.arwka.openapiedu.service.csv.CsvEncoding;
+import com.arwka.openapiedu.service.csv.OrdersCsvChunks;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import lombok.RequiredArgsConstructor;
+import org.openapitools.api.reactive.OrdersApi;
+import org.openapitools.model.EditedOrder;
+import org.openapitools.model.ImportJob;
+import org.openapitools.model.ImportSummary;
+import org.openapitools.model.NewOrder;
+import org.openapitools.model.Order;
+import org.openapitools.model.OrderBatch;
+import org.openapitools.model.OrderBatchResult;
+import org.openapitools.model.OrderSortField;
+import org.openapitools.model.OrderStats;
+import org.openapitools.model.StatusEnum;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.ZeroCopyHttpOutputMessage;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Orders API on WebFlux, used instead of {@link OrdersController} when the application
+ * runs as a reactive web application (profile "reactive").
+ *
+ * <p>Event loop threads only read the in-memory store: lists and .csv exports are
+ * produced while the client reads them. Changes of orders, which may wait for the journal
+ * to be forced to disk, and parsing of uploads run on the bounded elastic scheduler.
+ */
+@Controller
+@RequiredArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveOrdersController implements OrdersApi {
+
+  private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+  private static final int DEFAULT_PAGE_SIZE = 100;
+
+  private final OrdersService ordersService;
+  private final OrderListSerializer orderListSerializer;
+
+  /**
+   * Get orders as a JSON array, one order per line with Accept: application/x-ndjson
+   * or as Smile array with Accept: application/x-jackson-smile.
+   * Page is returned if cursor or limit is given, cursor of the next page is in
+   * X-Next-Cursor header. Orders are written while they are read from the store, lists which
+   * aren't pages are served from the cache of query results if it's enabled.
+   *
+   * @param status      - order status
+   * @param from        - datetime FROM (period)
+   * @param to          - datetime TO (period)
+   * @param cursor      - cursor of the next page from previous response
+   * @param limit       - max count of orders in page
+   * @param sort        - sort field of page
+   * @param ifNoneMatch - ETag from previous response
+   * @param exchange    - current exchange
+   * @return ResponseEntity with Flux of orders or NOT_MODIFIED
+   */
+  @Override
+  @GetMapping(value = "/orders", consumes = "application/json",
+      produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE,
+          OrderFormats.SMILE_VALUE})
+  public Mono<ResponseEntity<Flux<Order>>> getOrders(StatusEnum status, OffsetDateTime from,
+                                                     OffsetDateTime to, String cursor,
+                                                     Integer limit, OrderSortField sort,
+                                                     String ifNoneMatch,
+                                                     ServerWebExchange exchange) {
+
+    MediaType contentType =
+        OrderFormats.negotiate(exchange.getRequest().getHeaders().getAccept());
+    String etag = ETags.ofStore(ordersService.getStoreVersion(),
+        OrderFormats.representation(contentType));
+    if (!ETags.noneMatch(ifNoneMatch, etag)) {
+      return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build());
+    }
+
+    if (null != cursor || null != limit) {
+      return blocking(() -> ordersService.getOrdersPage(status, from, to, cursor,
+          limit == null ? DEFAULT_PAGE_SIZE : limit,
+          sort == null ? OrderSortField.ID : sort))
+          .map(page -> {
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (page.getNextCursor() != null) {
+              response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+            }
+            return response
+                .eTag(etag)
+                .varyBy(HttpHeaders.ACCEPT)
+                .contentType(contentType)
+                .body(Flux.fromIterable(page.getOrders()));
+          });
+    }
+
+    if (ordersService.isQueryCacheEnabled()) {
+      // a miss scans the store and serializes the result, not on the event loop
+      return blocking(() -> ordersService.getSerializedOrders(status, from, to,
+          OrderFormats.representation(contentType),
+          orders -> orderListSerializer.serialize(orders, contentType)))
+          .flatMap(result -> result.isSerialized()
+              ? writeSerialized(exchange.getResponse(), result.getBytes(), etag, contentType)
+              : Mono.just(ResponseEntity
+                  .ok()
+                  .eTag(etag)
+                  .varyBy(HttpHeaders.ACCEPT)
+                  .contentType(contentType)
+                  .body(Flux.fromIterable(result.getOrders()))));
+    }
+
+    ordersService.checkFilter(status, from, to);
+    return Mono.just(ResponseEntity
+        .ok()
+        .eTag(etag)
+        .varyBy(HttpHeaders.ACCEPT)
+        .contentType(contentType)
+        .body(Flux.fromStream(() -> ordersService.streamOrders(status, from, to))
+            .subscribeOn(Schedulers.boundedElastic())));
+  }
+
+  /**
+   * Write serialized list as it is, the response is complete when the result completes
+   * without a ResponseEntity.
+   */
+  private static <T> Mono<T> writeSerialized(ServerHttpResponse response, byte[] body,
+                                             String etag, MediaType contentType) {
+    response.setStatusCode(HttpStatus.OK);
+    response.getHeaders().setETag(etag);
+    response.getHeaders().setVary(List.of(HttpHeaders.ACCEPT));
+    response.getHeaders().setContentType(contentType);
+    response.getHeaders().setContentLength(body.length);
+    return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(body)))
+        .then(Mono.empty());
+  }
+
+  /**
+   * Export orders to .csv, chunks are written when the client is ready for them.
+   * Filters are checked before the response is started. The export is compressed by gzip
+   * or zstd if Accept-Encoding allows it. Without filters and with files of exports enabled
+   * the file of the current store version is sent by Netty without copying.
+   *
+   * <p>The response is written here: a file region can't be the body of a ResponseEntity.
+   *
+   * @param status         - order status
+   * @param from           - datetime FROM (period)
+   * @param to             - datetime TO (period)
+   * @param ifNoneMatch    - ETag from previous response
+   * @param acceptEncoding - codings accepted by client
+   * @param exchange       - current exchange
+   * @return completion of .csv chunks, of file or of NOT_MODIFIED
+   */
+  @GetMapping(value = "/orders", consumes = "text/csv")
+  public Mono<Void> getOrdersInCsv(
+      @RequestParam(value = "status", required = false) StatusEnum status,
+      @RequestParam(value = "from", required = false)
+      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+      @RequestParam(value = "to", required = false)
+      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+      @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false)
+      String acceptEncoding,
+      ServerWebExchange exchange) {
+
+    CsvEncoding encoding = CsvEncoding.negotiate(acceptEncoding);
+    String etag = ETags.ofStore(ordersService.getStoreVersion(),
+        CsvCodings.representation(encoding));
+    ServerHttpResponse response = exchange.getResponse();
+    HttpHeaders headers = response.getHeaders();
+    headers.setETag(etag);
+    headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+    if (!ETags.noneMatch(ifNoneMatch, etag)) {
+      response.setStatusCode(HttpStatus.NOT_MODIFIED);
+      return response.setComplete();
+    }
+
+    ordersService.checkFilter(status, from, to);
+    Supplier<Stream<Order>> orders = () -> ordersService.streamOrders(status, from, to);
+    response.setStatusCode(HttpStatus.OK);
+    headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=orders.csv");
+    headers.set(HttpHeaders.CONTENT_TYPE, "text/csv");
+    if (encoding != CsvEncoding.IDENTITY) {
+      headers.set(HttpHeaders.CONTENT_ENCODING, encoding.getName());
+    }
+
+    if (null == status && null == from && null == to
+        && response instanceof ZeroCopyHttpOutputMessage) {
+      // the latest file, of an older version while the next one is written
+      return blocking(() -> ordersService.getOrdersCsvFile(encoding))
+          .flatMap(file -> file
+              .map(export -> {
+                headers.setETag(ETags.ofStore(export.getVersion(),
+                    CsvCodings.representation(encoding)));
+                return sendFile((ZeroCopyHttpOutputMessage) response, export.getPath())
+                    .doFinally(signal -> export.release());
+              })
+              .orElseGet(() -> response.writeWith(
+                  csvChunks(orders, encoding, response.bufferFactory()))));
+    }
+
+    return response.writeWith(csvChunks(orders, encoding, response.bufferFactory()));
+  }
+
+  /**
+   * Chunks of .csv written on demand, orders are read on subscription and closed when the
+   * flux ends.
+   */
+  private Flux<DataBuffer> csvChunks(Supplier<Stream<Order>> orders, CsvEncoding encoding,
+                                     DataBufferFactory bufferFactory) {
+    return Flux.using(() -> ordersService.readOrdersInCsv(orders.get(), encoding),
+        chunks -> Flux.generate(sink -> {
+          byte[] chunk = chunks.next();
+          if (chunk == null) {
+            sink.complete();
+          } else {
+            sink.next(bufferFactory.wrap(chunk));
+          }
+        }),
+        OrdersCsvChunks::close);
+  }
+
+  private static Mono<Void> sendFile(ZeroCopyHttpOutputMessage response, Path file) {
+    try {
+      long size = Files.size(file);
+      response.getHeaders().setContentLength(size);
+      return response.writeWith(file, 0, size);
+    } catch (IOException e) {
+      return Mono.error(new UncheckedIOException(e));
+    }
+  }
+
+  /**
+   * Get statistics of orders.
+   *
+   * @param exchange - current exchange
+   * @return ResponseEntity with counts by status, product and day
+   */
+  @Override
+  @GetMapping("/orders/stats")
+  public Mono<ResponseEntity<OrderStats>> getOrderStats(ServerWebExchange exchange) {
+    return Mono.fromSupplier(() -> ResponseEntity
+        .ok()
+        .contentType(MediaType.APPLICATION_JSON)
+        .body(ordersService.getStats()));
+  }
+
+  /**
+   * Create and save new order from JSON or Smile, the order is returned in format of Accept.
+   *
+   * @param newOrder - order-to-create
+   * @param exchange - current exchange
+   * @return ResponseEntity with created and saved order
+   */
+  @Override
+  @PostMapping(value = "/orders",
+      consumes = {MediaType.APPLICATION_JSON_VALUE, OrderFormats.SMILE_VALUE})
+  public Mono<ResponseEntity<Order>> createNewOrder(Mono<NewOrder> newOrder,
+                                                    ServerWebExchange exchange) {
+    return newOrder
+        .switchIfEmpty(Mono.error(() -> new IllegalArgumentException("Order is missing.")))
+        .publishOn(Schedulers.boundedElastic())
+        .map(ordersService::createNewOrder)
+        .map(order -> ResponseEntity
+            .status(HttpStatus.CREATED)
+            .eTag(ETags.ofOrder(order))
+            .body(order));
+  }
+
+  /**
+   * Load orders from .csv, the body is parsed while it arrives, decompressed by gzip or zstd
+   * if Content-Encoding says so.
+   *
+   * @param body            - buffers of .csv file
+   * @param contentEncoding - coding of body
+   * @return ResponseEntity with status CREATED and import summary
+   */
+  @PostMapping(value = "/orders", consumes = "text/csv", produces = "application/json")
+  public Mono<ResponseEntity<ImportSummary>> loadOrdersFromCsv(
+      @RequestBody Flux<DataBuffer> body,
+      @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false)
+      String contentEncoding) {
+    CsvEncoding encoding = CsvCodings.ofUpload(contentEncoding);
+    return blocking(() -> {
+      try (InputStream inputStream = encoding.decode(new DataBufferInputStream(body))) {
+        return ordersService.addOrdersFromCsv(inputStream);
+      }
+    }).map(summary -> ResponseEntity
+        .status(HttpStatus.CREATED)
+        .contentType(MediaType.APPLICATION_JSON)
+        .body(summary));
+  }
+
+  /**
+   * Start background import of orders from .csv, decompressed by gzip or zstd
+   * if Content-Encoding says so.
+   *
+   * @param body            - buffers of .csv file
+   * @param contentEncoding - coding of body
+   * @return ResponseEntity with status ACCEPTED and import job
+   */
+  @PostMapping(value = "/orders", consumes = "text/csv", produces = "application/json",
+      params = "async=true")
+  public Mono<ResponseEntity<ImportJob>> submitOrdersFromCsv(
+      @RequestBody Flux<DataBuffer> body,
+      @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false)
+      String contentEncoding) {
+    CsvEncoding encoding = CsvCodings.ofUpload(contentEncoding);
+    return blocking(() -> {
+      try (InputStream inputStream = encoding.decode(new DataBufferInputStream(body))) {
+        return ordersService.submitOrdersFromCsv(inputStream);
+      }
+    }).map(job -> ResponseEntity
+        .accepted()
+        .location(URI.create("/orders/imports/" + job.getId()))
+        .contentType(MediaType.APPLICATION_JSON)
+        .body(job));
+  }
+
+  /**
+   * Apply batch of create, patch, approve, deliver and delete operations.
+   *
+   * @param orderBatch - operations and atomicity
+   * @param exchange   - current exchange
+   * @return ResponseEntity with result of every operation
+   */
+  @Override
+  @PostMapping(value = "/orders:batch", consumes = "application/json",
+      produces = "application/json")
+  public Mono<ResponseEntity<OrderBatchResult>> batchOrders(Mono<OrderBatch> orderBatch,
+                                                            ServerWebExchange exchange) {
+    return orderBatch
+        .switchIfEmpty(Mono.error(() -> new IllegalArgumentException("Batch is missing.")))
+        .publishOn(Schedulers.boundedElastic())
+        .map(ordersService::applyBatch)
+        .map(result -> ResponseEntity
+            .ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(result));
+  }
+
+  /**
+   * Stream changes of orders as Server-Sent Events, events are read while there is demand.
+   *
+   * @param lastEventIdHeader - id of the last received event sent by reconnecting client
+   * @param lastEventId       - id of the last received event as query parameter
+   * @return Flux of change events
+   */
+  @GetMapping(value = "/orders/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  @ResponseBody
+  public Flux<ServerSentEvent<String>> getOrderChanges(
+      @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+      @RequestParam(value = "lastEventId", required = false) String lastEventId) {
+    OrderChangeStream.Subscription subscription = ordersService.subscribeToChanges(
+        lastEventIdHeader != null ? lastEventIdHeader : lastEventId);
+    Flux<ServerSentEvent<String>> changes = Flux.create(events -> {
+      events.onDispose(subscription::cancel);
+      subscription.start(new FluxEventSink(events));
+      events.onRequest(demand -> subscription.request());
+    }, FluxSink.OverflowStrategy.ERROR);
+    // response is committed with the first event, don't keep the client waiting for headers
+    return changes.startWith(ServerSentEvent.<String>builder().comment("subscribed").build())
+        .take(subscription.getTimeout());
+  }
+
+  /**
+   * Get progress of background import.
+   *
+   * @param jobId    - id of import job
+   * @param exchange - current exchange
+   * @return ResponseEntity with import job
+   */
+  @Override
+  @GetMapping("/orders/imports/{jobId}")
+  public Mono<ResponseEntity<ImportJob>> getImportJob(
+      @PathVariable(name = "jobId") String jobId, ServerWebExchange exchange) {
+    return Mono.fromSupplier(() -> ResponseEntity
+        .ok()
+        .contentType(MediaType.APPLICATION_JSON)
+        .body(ordersService.getImportJob(jobId)));
+  }
+
+  /**
+   * Patch existing order, with If-Match only if it wasn't changed since the given ETag.
+   *
+   * @param id          - id
+   * @param ifMatch     - ETag of order from previous response
+   * @param editedOrder - editedOrder
+   * @param exchange    - current exchange
+   * @return ResponseEntity with Order with changes from editedOrder
+   */
+  @Override
+  @PatchMapping("/orders/{id}")
+  public Mono<ResponseEntity<Order>> patchOrder(@PathVariable(name = "id") String id,
+                                                String ifMatch,
+                                                Mono<EditedOrder> editedOrder,
+                                                ServerWebExchange exchange) {
+    return editedOrder
+        .switchIfEmpty(Mono.error(() -> new IllegalArgumentException("Changes are missing.")))
+        .publishOn(Schedulers.boundedElastic())
+        .map(changes -> ordersService.patchOrder(id, changes, ETags.versions(ifMatch)))
+        .map(ReactiveOrdersController::ok);
+  }
+
+  /**
+   * Approve existing order.
+   *
+   * @param id       - id
+   * @param exchange - current exchange
+   * @return ResponseEntity (approved)
+   */
+  @Override
+  @PutMapping("/orders/{id}/approved")
+  public Mono<ResponseEntity<Order>> approveOrder(@PathVariable(name = "id") String id,
+                                                  ServerWebExchange exchange) {
+    return blocking(() -> ordersService.approveOrder(id)).map(ReactiveOrdersController::ok);
+  }
+
+  /**
+   * Deliver existing order.
+   *
+   * @param id       - id
+   * @param exchange - current exchange
+   * @return ResponseEntity (delivered)
+   */
+  @Override
+  @PutMapping("/orders/{id}/delivered")
+  public Mono<ResponseEntity<Order>> deliverOrder(@PathVariable(name = "id") String id,
+                                                  ServerWebExchange exchange) {
+    return blocking(() -> ordersService.deliverOrder(id)).map(ReactiveOrdersController::ok);
+  }
+
+  /**
+   * Delete existing order.
+   *
+   * @param id       - id
+   * @param exchange - current exchange
+   * @return - ResponseEntity with status NO_CONTENT
+   */
+  @Override
+  @DeleteMapping("/orders/{id}")
+  public Mono<ResponseEntity<Void>> deleteOrder(@PathVariable(name = "id") String id,
+                                                ServerWebExchange exchange) {
+    return Mono.fromRunnable(() -> ordersService.deleteOrder(id))
+        .subscribeOn(Schedulers.boundedElastic())
+        .then(Mono.fromSupplier(() -> ResponseEntity.noContent().build()));
+  }
+
+  private static ResponseEntity<Order> ok(Order order) {
+    return ResponseEntity
+        .ok()
+        .eTag(ETags.ofOrder(order))
+        .contentType(MediaType.APPLICATION_JSON)
+        .body(order);
+  }
+
+  private static <T> Mono<T> blocking(Callable<T> call) {
+    return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+  }
+
+  /**
+   * Reactive connection, events are sent only while there is demand for them, nothing is
+   * buffered for a slow client.
+   */
+  private static final class FluxEventSink implements OrderEventSink {
+
+    private final FluxSink<ServerSentEvent<String>> events;
+
+    private FluxEventSink(FluxSink<ServerSentEvent<String>> events) {
+      this.events = events;
+    }
+
+    @Override
+    public boolean isReady() {
+      return events.requestedFromDownstream() > 0 && !events.isCancelled();
+    }
+
+    @Override
+    public void event(String id, String name, String data) {
+      events.next(ServerSentEvent.builder(data).id(id).event(name).build());
+    }
+
+    @Override
+    public void comment(String comment) {
+      events.next(ServerSentEvent.<String>builder().comment(comment).build());
+    }
+
+    @Override
+    public void complete() {
+      events.complete();
+    }
+
+    @Override
+    public void fail(Throwable error) {
+      events.error(error);
+    }
+  }
+
+}
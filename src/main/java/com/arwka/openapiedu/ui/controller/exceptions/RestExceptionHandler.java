@@ -4,23 +4,38 @@ import static org.zalando.problem.Status.BAD_REQUEST;
 import static org.zalando.problem.Status.CONFLICT;
 import static org.zalando.problem.Status.INTERNAL_SERVER_ERROR;
 import static org.zalando.problem.Status.NOT_FOUND;
+import static org.zalando.problem.Status.PRECONDITION_FAILED;
+import static org.zalando.problem.Status.SERVICE_UNAVAILABLE;
 
+import com.arwka.openapiedu.service.OrderVersionMismatchException;
+import com.arwka.openapiedu.service.metrics.OrdersMetrics;
 import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
+import javax.validation.ConstraintViolationException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.crossstore.ChangeSetPersister.NotFoundException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 import org.zalando.problem.Problem;
+import org.zalando.problem.Status;
 
+@Slf4j
 @ControllerAdvice
+@RequiredArgsConstructor
 public class RestExceptionHandler extends ResponseEntityExceptionHandler {
 
-  @ExceptionHandler(value = IllegalArgumentException.class)
-  protected ResponseEntity<Object> illegalArgExceptionHandler() {
-    System.out.println("illegalArg works");
+  private final OrdersMetrics ordersMetrics;
+
+  @ExceptionHandler(value = {IllegalArgumentException.class, ConstraintViolationException.class})
+  protected ResponseEntity<Object> illegalArgExceptionHandler(Exception e) {
+    log.debug("Bad request: {}", e.getMessage());
+    ordersMetrics.exceptionHandled("illegal_argument");
     Problem problem = Problem.builder()
         .withTitle("Illegal Argument Exception")
         .withDetail("Unknown arguments handler works!")
@@ -33,8 +48,9 @@ public class RestExceptionHandler extends ResponseEntityExceptionHandler {
   }
 
   @ExceptionHandler(value = {NotFoundException.class, NoSuchElementException.class})
-  protected ResponseEntity<Object> notFoundOrNoSuchElementExceptionHandler() {
-    System.out.println("noSuchEl/NotFound works");
+  protected ResponseEntity<Object> notFoundOrNoSuchElementExceptionHandler(Exception e) {
+    log.debug("Not found: {}", e.getMessage());
+    ordersMetrics.exceptionHandled("not_found");
     Problem problem = Problem.builder()
         .withTitle("Not found or not such element exception")
         .withDetail("Not found & No such element handler works!")
@@ -47,8 +63,9 @@ public class RestExceptionHandler extends ResponseEntityExceptionHandler {
   }
 
   @ExceptionHandler(value = IllegalStateException.class)
-  protected ResponseEntity<Object> illegalStateExceptionHandler() {
-    System.out.println("illegalState works");
+  protected ResponseEntity<Object> illegalStateExceptionHandler(IllegalStateException e) {
+    log.debug("Conflict: {}", e.getMessage());
+    ordersMetrics.exceptionHandled("illegal_state");
     Problem problem = Problem.builder()
         .withTitle("Illegal State Exception")
         .withDetail("Illegal State Exception handler works!")
@@ -60,9 +77,60 @@ public class RestExceptionHandler extends ResponseEntityExceptionHandler {
         .body(problem);
   }
 
+  @ExceptionHandler(value = OrderVersionMismatchException.class)
+  protected ResponseEntity<Object> versionMismatchExceptionHandler(
+      OrderVersionMismatchException e) {
+    log.debug("Precondition failed: {}", e.getMessage());
+    ordersMetrics.exceptionHandled("version_mismatch");
+    Problem problem = Problem.builder()
+        .withTitle("Precondition failed")
+        .withDetail("Order was changed since the given ETag, fetch it again.")
+        .withStatus(PRECONDITION_FAILED)
+        .build();
+
+    return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
+        .contentType(MediaType.APPLICATION_PROBLEM_JSON)
+        .body(problem);
+  }
+
+  @ExceptionHandler(value = RejectedExecutionException.class)
+  protected ResponseEntity<Object> rejectedExecutionExceptionHandler(
+      RejectedExecutionException e) {
+    log.warn("Background task rejected: {}", e.getMessage());
+    ordersMetrics.exceptionHandled("rejected_execution");
+    Problem problem = Problem.builder()
+        .withTitle("Service unavailable")
+        .withDetail("Too many background tasks, try again later.")
+        .withStatus(SERVICE_UNAVAILABLE)
+        .build();
+
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .contentType(MediaType.APPLICATION_PROBLEM_JSON)
+        .body(problem);
+  }
+
+  /**
+   * Errors of WebFlux with their own status, e.g. 400 for a malformed parameter or body.
+   */
+  @ExceptionHandler(value = ResponseStatusException.class)
+  protected ResponseEntity<Object> responseStatusExceptionHandler(ResponseStatusException e) {
+    log.debug("Request failed with status {}: {}", e.getRawStatusCode(), e.getReason());
+    ordersMetrics.exceptionHandled("response_status");
+    Problem problem = Problem.builder()
+        .withTitle(e.getStatus().getReasonPhrase())
+        .withDetail(e.getReason())
+        .withStatus(Status.valueOf(e.getRawStatusCode()))
+        .build();
+
+    return ResponseEntity.status(e.getRawStatusCode())
+        .contentType(MediaType.APPLICATION_PROBLEM_JSON)
+        .body(problem);
+  }
+
   @ExceptionHandler(value = Exception.class)
-  protected ResponseEntity<Object> otherExceptionsHandler() {
-    System.out.println("otherExceptions works");
+  protected ResponseEntity<Object> otherExceptionsHandler(Exception e) {
+    log.error("Request failed with unexpected exception", e);
+    ordersMetrics.exceptionHandled("other");
     Problem problem = Problem.builder()
         .withTitle("Internal server error")
         .withDetail("Internal server etc. error")
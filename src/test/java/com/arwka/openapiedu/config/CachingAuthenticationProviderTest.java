@@ -0,0 +1,102 @@
+package com.arwka.openapiedu.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+
+public class CachingAuthenticationProviderTest {
+
+  private final AtomicInteger verifications = new AtomicInteger();
+  private final AtomicLong clock = new AtomicLong();
+  private final PasswordEncoder encoder = new CountingEncoder();
+  private final InMemoryUserDetailsManager users = new InMemoryUserDetailsManager(
+      user("admin", "admin1"), user("viewer", "viewer1"));
+  private final CachingAuthenticationProvider provider = new CachingAuthenticationProvider(
+      dao(), users, Duration.ofMinutes(5), 1, clock::get);
+
+  @Test
+  @DisplayName("verified credentials should skip encoder, wrong ones should always reach it")
+  void cacheTest() {
+    Authentication first = provider.authenticate(token("admin", "admin1"));
+    Authentication second = provider.authenticate(token("admin", "admin1"));
+
+    assertTrue(first.isAuthenticated() && second.isAuthenticated());
+    assertEquals("admin", second.getName());
+    assertEquals(first.getAuthorities(), second.getAuthorities());
+    assertEquals(1, verifications.get());
+
+    for (int i = 0; i < 2; i++) {
+      assertThrows(BadCredentialsException.class,
+          () -> provider.authenticate(token("admin", "admin2")));
+    }
+    assertEquals(3, verifications.get());
+  }
+
+  @Test
+  @DisplayName("credentials should be verified again after expiry, password change and eviction")
+  void invalidationTest() {
+    provider.authenticate(token("admin", "admin1"));
+
+    clock.addAndGet(Duration.ofMinutes(5).toNanos());
+    provider.authenticate(token("admin", "admin1"));
+    assertEquals(2, verifications.get());
+
+    users.updateUser(user("admin", "changed"));
+    assertThrows(BadCredentialsException.class,
+        () -> provider.authenticate(token("admin", "admin1")));
+    assertEquals(3, verifications.get());
+
+    provider.authenticate(token("admin", "changed"));
+    clock.incrementAndGet();
+    provider.authenticate(token("viewer", "viewer1"));
+    assertEquals(1, provider.size());
+    provider.authenticate(token("viewer", "viewer1"));
+    assertEquals(5, verifications.get());
+  }
+
+  private DaoAuthenticationProvider dao() {
+    DaoAuthenticationProvider dao = new DaoAuthenticationProvider();
+    dao.setUserDetailsService(users);
+    dao.setPasswordEncoder(encoder);
+    return dao;
+  }
+
+  private User user(String username, String password) {
+    return (User) User.withUsername(username)
+        .password(encoder.encode(password))
+        .roles("ADMIN")
+        .build();
+  }
+
+  private static UsernamePasswordAuthenticationToken token(String username, String password) {
+    return new UsernamePasswordAuthenticationToken(username, password);
+  }
+
+  private class CountingEncoder extends BCryptPasswordEncoder {
+
+    CountingEncoder() {
+      super(4);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+      verifications.incrementAndGet();
+      return super.matches(rawPassword, encodedPassword);
+    }
+  }
+
+}
@@ -0,0 +1,32 @@
+package com.arwka.openapiedu.config;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class VirtualThreadsTest {
+
+  @Test
+  @DisplayName("executor should run tasks on virtual threads or fail clearly without them")
+  void executorTest() throws Exception {
+    if (!VirtualThreads.isSupported()) {
+      IllegalStateException e = assertThrows(IllegalStateException.class,
+          () -> VirtualThreads.newExecutor("test-"));
+      assertTrue(e.getMessage().contains("JDK 21"));
+      return;
+    }
+
+    ExecutorService executor = VirtualThreads.newExecutor("test-");
+    try {
+      Thread thread = executor.submit(Thread::currentThread).get();
+      assertTrue((Boolean) Thread.class.getMethod("isVirtual").invoke(thread));
+      assertTrue(thread.getName().startsWith("test-"));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+}
@@ -0,0 +1,323 @@
+package com.arwka.openapiedu.persistent.journal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.arwka.openapiedu.persistent.repository.OrderChangeListener;
+import com.arwka.openapiedu.persistent.repository.OrderCursor;
+import com.arwka.openapiedu.persistent.repository.OrderFilter;
+import com.arwka.openapiedu.persistent.repository.impl.OrdersRepositoryImpl;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.openapitools.model.Order;
+import org.openapitools.model.OrderSortField;
+import org.openapitools.model.StatusEnum;
+
+public class OrdersJournalTest {
+
+  private static final OffsetDateTime DATE =
+      OffsetDateTime.of(2022, 8, 10, 12, 30, 0, 123_456_789, ZoneOffset.ofHours(3));
+
+  @TempDir
+  Path directory;
+
+  @ParameterizedTest
+  @EnumSource(FsyncPolicy.class)
+  @DisplayName("orders written concurrently should be recovered after restart")
+  void recoverAfterRestartTest(FsyncPolicy policy) throws Exception {
+    OrdersJournal journal = journal(policy);
+    OrdersRepositoryImpl repository = open(journal);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        long base = t * 1000L;
+        futures.add(executor.submit(() -> {
+          for (long id = base + 1; id <= base + 500; id++) {
+            repository.save(order(id));
+            if (id % 3 == 0) {
+              repository.update(id, order -> order.setStatus(StatusEnum.APPROVED));
+            }
+            if (id % 5 == 0) {
+              repository.deleteById(id);
+            }
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    journal.close();
+
+    assertEquals(dump(repository), dump(open(journal(policy))));
+  }
+
+  @Test
+  @DisplayName("recovery should load snapshot and replay log written after it")
+  void snapshotAndTailTest() throws Exception {
+    OrdersJournal journal = journal(FsyncPolicy.ALWAYS);
+    OrdersRepositoryImpl repository = open(journal);
+    for (long id = 1; id <= 100; id++) {
+      repository.save(order(id));
+    }
+    journal.snapshot();
+    repository.update(1L, order -> order.setQuantity(42L));
+    repository.deleteById(2L);
+    repository.insertAll(List.of(order(101L), order(102L)));
+    journal.close();
+
+    assertEquals(1, JournalFiles.numbers(directory, SnapshotFile.PREFIX, SnapshotFile.SUFFIX)
+        .size());
+    OrdersRepositoryImpl recovered = open(journal(FsyncPolicy.ALWAYS));
+    assertEquals(dump(repository), dump(recovered));
+    assertEquals(42L, recovered.findById(1L).orElseThrow().getQuantity());
+    assertEquals(DATE.plusMinutes(3), recovered.findById(3L).orElseThrow().getDate());
+  }
+
+  @Test
+  @DisplayName("orders of mapped snapshot should be merged with later changes in every query")
+  void mappedSnapshotTest() throws Exception {
+    OrdersJournal journal = journal(FsyncPolicy.BATCHED);
+    OrdersRepositoryImpl repository = open(journal);
+    for (long id = 1; id <= 200; id++) {
+      repository.save(order(id));
+    }
+    journal.snapshot();
+    journal.close();
+
+    OrdersJournal reopened = journal(FsyncPolicy.BATCHED);
+    OrdersRepositoryImpl mapped = open(reopened);
+    assertEquals(200, mapped.count());
+    assertEquals(order(7L).version(1L), mapped.findById(7L).orElseThrow());
+    mapped.update(10L, order -> order.setStatus(StatusEnum.DELIVERED));
+    mapped.update(20L, order -> order.setDate(DATE.minusDays(1)));
+    mapped.deleteById(30L);
+    mapped.save(order(250L).status(StatusEnum.DELIVERED));
+    assertFalse(mapped.existsById(30L));
+    assertTrue(mapped.insert(order(30L)).isPresent());
+    mapped.deleteById(30L);
+    assertEquals(200, mapped.count());
+    assertEquals(200, mapped.findAll().size());
+
+    OrderFilter delivered = new OrderFilter(StatusEnum.DELIVERED, null, null);
+    assertEquals(List.of(10L, 250L), ids(mapped.findAll(delivered)));
+    OrderFilter period = new OrderFilter(null, DATE.minusDays(2), DATE.plusMinutes(5));
+    assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 20L), ids(mapped.findAll(period)));
+    for (OrderSortField sort : OrderSortField.values()) {
+      List<Order> expected = mapped.findAll().stream()
+          .filter(order -> order.getDate() != null)
+          .sorted(sort == OrderSortField.ID
+              ? Comparator.comparing(Order::getId)
+              : Comparator.comparing(Order::getDate).thenComparing(Order::getId))
+          .collect(Collectors.toList());
+      assertEquals(expected, readAllPages(mapped, new OrderFilter(null, DATE.minusDays(2), null),
+          sort));
+      OrderFilter narrow = new OrderFilter(null, DATE.plusMinutes(50), DATE.plusMinutes(70));
+      assertEquals(expected.stream().filter(narrow::matches).collect(Collectors.toList()),
+          readAllPages(mapped, narrow, sort));
+    }
+
+    reopened.snapshot();
+    reopened.close();
+    assertEquals(dump(mapped), dump(open(journal(FsyncPolicy.BATCHED))));
+  }
+
+  @Test
+  @DisplayName("snapshot should carry status and date indexes of its orders")
+  void snapshotIndexesTest() throws Exception {
+    StatusEnum[] statuses = StatusEnum.values();
+    List<Order> orders = new ArrayList<>();
+    for (long id = 1; id <= 1000; id++) {
+      orders.add(order(id)
+          .status(id % 4 == 0 ? null : statuses[(int) (id % statuses.length)])
+          .date(id % 13 == 0 ? null : DATE.minusMinutes(id % 97)));
+    }
+    SnapshotFile.write(directory, 1L, orders.iterator());
+    MappedSnapshot snapshot = MappedSnapshot.open(SnapshotFile.path(directory, 1L));
+    snapshot.verify();
+
+    List<StatusEnum> groups = new ArrayList<>(List.of(statuses));
+    groups.add(null);
+    for (StatusEnum status : groups) {
+      List<Long> expected = orders.stream()
+          .filter(order -> order.getStatus() == status)
+          .map(Order::getId)
+          .collect(Collectors.toList());
+      List<Long> indexed = new ArrayList<>();
+      for (int entry = snapshot.statusFrom(status); entry < snapshot.statusTo(status); entry++) {
+        indexed.add(snapshot.id(snapshot.byStatus(entry)));
+      }
+      assertEquals(expected, indexed);
+    }
+    List<Long> expected = orders.stream()
+        .sorted(Comparator.comparing(OrderCursor::dateKey).thenComparing(Order::getId))
+        .map(Order::getId)
+        .collect(Collectors.toList());
+    List<Long> indexed = new ArrayList<>();
+    for (int entry = 0; entry < snapshot.size(); entry++) {
+      indexed.add(snapshot.id(snapshot.byDate(entry)));
+    }
+    assertEquals(expected, indexed);
+  }
+
+  @Test
+  @DisplayName("torn tail of the last segment should be cut off, corrupted segment in the middle"
+      + " should fail recovery")
+  void tornTailTest() throws Exception {
+    OrdersJournal journal = journal(FsyncPolicy.ALWAYS);
+    OrdersRepositoryImpl repository = open(journal);
+    repository.save(order(1L));
+    repository.save(order(2L));
+    journal.close();
+    Path segment = lastSegment();
+    Files.write(segment, new byte[] {0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+    long size = Files.size(segment);
+
+    OrdersJournal reopened = journal(FsyncPolicy.ALWAYS);
+    OrdersRepositoryImpl recovered = open(reopened);
+    assertEquals(dump(repository), dump(recovered));
+    assertEquals(size - 6, Files.size(segment));
+    recovered.save(order(3L));
+    reopened.close();
+
+    Files.write(segment, new byte[] {0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+    assertThrows(IllegalStateException.class, () -> open(journal(FsyncPolicy.ALWAYS)));
+  }
+
+  @Test
+  @DisplayName("files of another format version should be rejected instead of being truncated")
+  void formatVersionTest() throws Exception {
+    OrdersJournal journal = journal(FsyncPolicy.ALWAYS);
+    OrdersRepositoryImpl repository = open(journal);
+    repository.save(order(1L));
+    journal.close();
+    Path segment = lastSegment();
+    byte[] content = Files.readAllBytes(segment);
+    // a segment of the first release: the same records without the header
+    Files.write(segment, Arrays.copyOfRange(content, 8, content.length));
+
+    IllegalStateException headerless =
+        assertThrows(IllegalStateException.class, () -> open(journal(FsyncPolicy.ALWAYS)));
+    assertTrue(headerless.getMessage().contains("no format header"));
+    assertEquals(content.length - 8, Files.size(segment));
+
+    Files.write(segment, content);
+    OrdersJournal reopened = journal(FsyncPolicy.ALWAYS);
+    open(reopened);
+    reopened.snapshot();
+    reopened.close();
+    Path snapshot = SnapshotFile.path(directory, SnapshotFile.latest(directory));
+    try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.allocate(4).putInt(0, 1), 4);
+    }
+
+    IllegalStateException oldSnapshot =
+        assertThrows(IllegalStateException.class, () -> open(journal(FsyncPolicy.ALWAYS)));
+    assertTrue(oldSnapshot.getMessage().contains("format version 1"));
+  }
+
+  @Test
+  @DisplayName("failing listener shouldn't make the log differ from the store")
+  void failingListenerTest() throws Exception {
+    OrdersJournal journal = journal(FsyncPolicy.ALWAYS);
+    OrdersRepositoryImpl repository = open(journal);
+    repository.addListener(new OrderChangeListener() {
+      @Override
+      public void onChange(Order before, Order after) {
+        throw new IllegalStateException("listener");
+      }
+
+      @Override
+      public void afterChanges() {
+        throw new IllegalStateException("listener");
+      }
+    });
+    repository.save(order(1L));
+    repository.update(1L, order -> order.setQuantity(42L));
+    repository.save(order(2L));
+    repository.deleteById(2L);
+    journal.close();
+
+    assertEquals(42L, repository.findById(1L).orElseThrow().getQuantity());
+    assertFalse(repository.existsById(2L));
+    assertEquals(dump(repository), dump(open(journal(FsyncPolicy.ALWAYS))));
+  }
+
+  private static List<Order> readAllPages(OrdersRepositoryImpl repository, OrderFilter filter,
+                                          OrderSortField sort) {
+    List<Order> result = new ArrayList<>();
+    List<Order> page;
+    OrderCursor cursor = null;
+    do {
+      page = repository.findPage(filter, sort, cursor, 7);
+      result.addAll(page);
+      if (!page.isEmpty()) {
+        cursor = OrderCursor.after(page.get(page.size() - 1), sort);
+      }
+    } while (page.size() == 7);
+    return result;
+  }
+
+  private static List<Long> ids(List<Order> orders) {
+    return orders.stream().map(Order::getId).sorted().collect(Collectors.toList());
+  }
+
+  private OrdersJournal journal(FsyncPolicy policy) {
+    return new OrdersJournal(directory, policy, 16, Duration.ofMillis(10), Duration.ofHours(1));
+  }
+
+  private static OrdersRepositoryImpl open(OrdersJournal journal) {
+    OrdersRepositoryImpl repository = new OrdersRepositoryImpl(Optional.of(journal));
+    repository.init();
+    return repository;
+  }
+
+  private Path lastSegment() throws IOException {
+    List<Long> segments = JournalFiles.numbers(directory, "wal", ".log");
+    return JournalFiles.path(directory, "wal", segments.get(segments.size() - 1), ".log");
+  }
+
+  private static Order order(long id) {
+    return new Order()
+        .id(id)
+        .productId(id % 7 == 0 ? null : id * 10)
+        .quantity(id % 11 == 0 ? null : id % 100)
+        .date(id % 13 == 0 ? null : DATE.plusMinutes(id))
+        .status(StatusEnum.PLACED)
+        .complete(id % 2 == 0);
+  }
+
+  private static String dump(OrdersRepositoryImpl repository) {
+    return repository.findAll().stream()
+        .sorted(Comparator.comparing(Order::getId))
+        .map(Order::toString)
+        .collect(Collectors.joining());
+  }
+
+}
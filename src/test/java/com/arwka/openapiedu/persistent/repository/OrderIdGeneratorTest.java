@@ -0,0 +1,66 @@
+package com.arwka.openapiedu.persistent.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.arwka.openapiedu.persistent.repository.impl.OrdersRepositoryImpl;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.openapitools.model.Order;
+
+public class OrderIdGeneratorTest {
+
+  @Test
+  @DisplayName("nextId should give unique ids to concurrent threads")
+  void uniqueIdsTest() throws Exception {
+    OrderIdGenerator generator = new OrderIdGenerator(new OrdersRepositoryImpl(), 16);
+    Set<Long> ids = ConcurrentHashMap.newKeySet();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    for (int t = 0; t < 8; t++) {
+      executor.execute(() -> {
+        for (int i = 0; i < 10_000; i++) {
+          ids.add(generator.nextId());
+        }
+      });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+    assertEquals(80_000, ids.size());
+  }
+
+  @Test
+  @DisplayName("generator should start above stored ids and jump over observed ones")
+  void observeTest() {
+    OrdersRepositoryImpl repository = new OrdersRepositoryImpl();
+    repository.save(new Order().id(41L));
+    OrderIdGenerator generator = new OrderIdGenerator(repository, 1);
+
+    assertEquals(42L, generator.nextId());
+    generator.observe(100L);
+    assertEquals(101L, generator.nextId());
+    generator.observe(50L);
+    assertEquals(102L, generator.nextId());
+  }
+
+  @Test
+  @DisplayName("short-lived threads should share reserved blocks instead of taking one each")
+  void shortLivedThreadsTest() throws Exception {
+    OrderIdGenerator generator = new OrderIdGenerator(new OrdersRepositoryImpl(), 64);
+    Set<Long> ids = ConcurrentHashMap.newKeySet();
+    for (int t = 0; t < 1_000; t++) {
+      Thread thread = new Thread(() -> ids.add(generator.nextId()));
+      thread.start();
+      thread.join();
+    }
+
+    assertEquals(1_000, ids.size());
+    assertTrue(generator.reservedBlocks() < 100, "blocks: " + generator.reservedBlocks());
+  }
+
+}
@@ -0,0 +1,297 @@
+package com.arwka.openapiedu.persistent.repository.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.arwka.openapiedu.persistent.repository.OrderChangeListener;
+import com.arwka.openapiedu.persistent.repository.OrderCursor;
+import com.arwka.openapiedu.persistent.repository.OrderFilter;
+import com.arwka.openapiedu.persistent.repository.OrdersRepository;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.openapitools.model.Order;
+import org.openapitools.model.OrderSortField;
+import org.openapitools.model.StatusEnum;
+
+public class ColumnarOrdersRepositoryTest {
+
+
+  private static final OffsetDateTime DAY =
+      OffsetDateTime.of(2022, 8, 10, 0, 0, 0, 0, ZoneOffset.ofHours(3));
+
+  @Test
+  @DisplayName("columnar store should keep every field including absent values")
+  void roundTripTest() {
+    ColumnarOrdersRepository repository = new ColumnarOrdersRepository();
+    Order full = new Order().id(1L).productId(7L).quantity(0L).date(DAY.plusNanos(5))
+        .status(StatusEnum.APPROVED).complete(true);
+    Order empty = new Order().id(2L);
+
+    repository.save(full);
+    repository.save(empty);
+
+    assertEquals(full.version(1L), repository.findById(1L).orElseThrow());
+    assertEquals(empty.version(1L), repository.findById(2L).orElseThrow());
+    assertFalse(repository.insert(new Order().id(1L)).isPresent());
+    assertEquals(6L, repository.update(1L, order -> order.setQuantity(6L)).orElseThrow()
+        .getQuantity());
+    assertEquals(full.quantity(6L).version(2L), repository.deleteById(1L).orElseThrow());
+    assertFalse(repository.existsById(1L));
+    assertEquals(1L, repository.count());
+  }
+
+  @Test
+  @DisplayName("concurrent updates, inserts and deletes should keep slots and index consistent")
+  void concurrentChangesTest() throws Exception {
+    ColumnarOrdersRepository repository = new ColumnarOrdersRepository();
+    repository.save(new Order().id(0L).quantity(0L));
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        long base = (t + 1) * 100_000L;
+        futures.add(executor.submit(() -> {
+          for (long i = 0; i < 5_000; i++) {
+            repository.update(0L, order -> order.setQuantity(order.getQuantity() + 1));
+            repository.insert(new Order().id(base + i));
+            if (i % 2 == 1) {
+              repository.deleteById(base + i);
+            }
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(40_000L, repository.findById(0L).orElseThrow().getQuantity());
+    assertEquals(1 + 8 * 2_500L, repository.count());
+    assertEquals(repository.count(), repository.findAll().size());
+    assertEquals(804_998L, repository.maxId());
+  }
+
+  @Test
+  @DisplayName("filters and pages should match the map store")
+  void sameResultsAsMapStoreTest() {
+    ColumnarOrdersRepository columnar = new ColumnarOrdersRepository();
+    OrdersRepositoryImpl map = new OrdersRepositoryImpl();
+    for (long id = 1; id <= 300; id++) {
+      Order order = new Order()
+          .id(id * 7 % 1000)
+          .date(id % 10 == 0 ? null : DAY.minusHours(id % 13))
+          .status(StatusEnum.values()[(int) (id % 3)]);
+      columnar.save(order);
+      map.save(order);
+    }
+    for (long id = 7; id <= 700; id += 21) {
+      columnar.deleteById(id);
+      map.deleteById(id);
+    }
+
+    List<OrderFilter> filters = List.of(OrderFilter.ANY,
+        new OrderFilter(StatusEnum.APPROVED, null, null),
+        new OrderFilter(null, DAY.minusHours(8), DAY.minusHours(2)),
+        new OrderFilter(StatusEnum.PLACED, null, DAY.minusHours(5)));
+    for (OrderFilter filter : filters) {
+      assertEquals(sorted(map.findAll(filter)), sorted(columnar.findAll(filter)));
+      for (OrderSortField sort : OrderSortField.values()) {
+        assertEquals(readAllPages(map, filter, sort), readAllPages(columnar, filter, sort));
+      }
+    }
+    assertEquals(map.findAll(), columnar.findAll());
+  }
+
+  @Test
+  @DisplayName("status, date and id indexes should give the results of the map store across blocks")
+  void indexesTest() {
+    ColumnarOrdersRepository columnar = new ColumnarOrdersRepository();
+    OrdersRepositoryImpl map = new OrdersRepositoryImpl();
+    for (long id = 1; id <= 5_000; id++) {
+      Order order = new Order()
+          .id(id)
+          .date(id % 50 == 0 ? null : DAY.plusMinutes(id).plusNanos(id % 3))
+          .status(id % 7 == 0 ? null : StatusEnum.values()[(int) (id % 3)]);
+      columnar.save(order);
+      map.save(order);
+    }
+    for (long id = 3; id <= 5_000; id += 11) {
+      StatusEnum status = StatusEnum.values()[(int) (id % 2)];
+      columnar.update(id, order -> order.setStatus(status));
+      map.update(id, order -> order.setStatus(status));
+    }
+    for (long id = 1_000; id <= 2_100; id++) {
+      columnar.deleteById(id);
+      map.deleteById(id);
+    }
+    columnar.save(new Order().id(7_000L).date(DAY.plusMinutes(10)).status(StatusEnum.DELIVERED));
+    map.save(new Order().id(7_000L).date(DAY.plusMinutes(10)).status(StatusEnum.DELIVERED));
+
+    List<OrderFilter> filters = List.of(
+        new OrderFilter(StatusEnum.DELIVERED, null, null),
+        new OrderFilter(null, DAY.plusMinutes(3_000), DAY.plusMinutes(3_100)),
+        new OrderFilter(null, DAY.plusMinutes(4_500), null),
+        new OrderFilter(StatusEnum.PLACED, null, DAY.plusMinutes(1_500)),
+        new OrderFilter(StatusEnum.APPROVED, DAY.plusMinutes(20_000), null));
+    for (OrderFilter filter : filters) {
+      assertEquals(sorted(map.findAll(filter)), sorted(columnar.findAll(filter)));
+      for (OrderSortField sort : OrderSortField.values()) {
+        assertEquals(readAllPages(map, filter, sort), readAllPages(columnar, filter, sort));
+      }
+    }
+    for (OrderSortField sort : OrderSortField.values()) {
+      assertEquals(readAllPages(map, OrderFilter.ANY, sort),
+          readAllPages(columnar, OrderFilter.ANY, sort));
+    }
+    assertEquals(7_000L, columnar.maxId());
+    columnar.deleteById(7_000L);
+    assertEquals(5_000L, columnar.maxId());
+  }
+
+  @Test
+  @DisplayName("orders of different stripes should be changed in parallel")
+  void parallelUpdatesTest() throws Exception {
+    ColumnarOrdersRepository repository = new ColumnarOrdersRepository();
+    repository.save(new Order().id(1L).quantity(1L));
+    repository.save(new Order().id(2L).quantity(2L).status(StatusEnum.APPROVED));
+    CountDownLatch inside = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<?> slow = executor.submit(() -> repository.update(1L, order -> {
+        inside.countDown();
+        awaitQuietly(release);
+        order.setQuantity(10L);
+      }));
+      assertTrue(inside.await(5, TimeUnit.SECONDS));
+
+      assertEquals(20L, repository.update(2L, order -> order.setQuantity(20L)).orElseThrow()
+          .getQuantity());
+      assertEquals(20L, repository.findById(2L).orElseThrow().getQuantity());
+      assertEquals(20L, repository.findAll(new OrderFilter(StatusEnum.APPROVED, null, null))
+          .get(0).getQuantity());
+      release.countDown();
+      slow.get(5, TimeUnit.SECONDS);
+    } finally {
+      release.countDown();
+      executor.shutdownNow();
+    }
+    assertEquals(10L, repository.findById(1L).orElseThrow().getQuantity());
+  }
+
+  @Test
+  @DisplayName("atomic batch should stage its changes and install them under one lock")
+  void atomicBatchTest() {
+    ColumnarOrdersRepository repository = new ColumnarOrdersRepository();
+    repository.save(new Order().id(1L).quantity(1L));
+    repository.save(new Order().id(2L).quantity(2L));
+    AtomicInteger changes = new AtomicInteger();
+    AtomicInteger commits = new AtomicInteger();
+    repository.addListener(new OrderChangeListener() {
+      @Override
+      public void onChange(Order before, Order after) {
+        changes.incrementAndGet();
+      }
+
+      @Override
+      public void afterChanges() {
+        commits.incrementAndGet();
+      }
+    });
+
+    assertThrows(IllegalStateException.class, () -> repository.batch(true, () -> {
+      repository.insert(new Order().id(3L).quantity(3L));
+      repository.update(1L, order -> order.setQuantity(10L));
+      repository.deleteById(2L);
+      assertTrue(repository.existsById(3L));
+      throw new IllegalStateException("abort");
+    }));
+
+    assertEquals(0, changes.get());
+    assertEquals(0, commits.get());
+    assertFalse(repository.existsById(3L));
+    assertEquals(new Order().id(1L).quantity(1L).version(1L),
+        repository.findById(1L).orElseThrow());
+    assertEquals(2, repository.count());
+
+    assertThrows(ConcurrentModificationException.class, () -> repository.batch(true, () -> {
+      repository.update(1L, order -> order.setQuantity(10L));
+      Thread other = new Thread(() -> repository.update(1L, order -> order.setQuantity(100L)));
+      other.start();
+      joinQuietly(other);
+    }));
+    assertEquals(100L, repository.findById(1L).orElseThrow().getQuantity());
+
+    repository.batch(true, () -> {
+      repository.insert(new Order().id(3L).quantity(3L));
+      repository.deleteById(2L);
+    });
+
+    assertEquals(3, changes.get());
+    assertEquals(2, commits.get());
+    assertEquals(3L, repository.findById(3L).orElseThrow().getQuantity());
+    assertFalse(repository.existsById(2L));
+
+    repository.batch(false, () -> {
+      repository.update(1L, order -> order.setQuantity(20L));
+      repository.deleteById(3L);
+    });
+
+    assertEquals(3, commits.get());
+    assertEquals(20L, repository.findById(1L).orElseThrow().getQuantity());
+    assertFalse(repository.existsById(3L));
+  }
+
+  private static void joinQuietly(Thread thread) {
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static List<Order> readAllPages(OrdersRepository repository, OrderFilter filter,
+                                          OrderSortField sort) {
+    List<Order> result = new ArrayList<>();
+    OrderCursor cursor = null;
+    List<Order> page;
+    do {
+      page = repository.findPage(filter, sort, cursor, 11);
+      result.addAll(page);
+      if (!page.isEmpty()) {
+        cursor = OrderCursor.after(page.get(page.size() - 1), sort);
+      }
+    } while (page.size() == 11);
+    return result;
+  }
+
+  private static List<Order> sorted(List<Order> orders) {
+    return orders.stream().sorted(Comparator.comparing(Order::getId)).collect(Collectors.toList());
+  }
+
+}
@@ -0,0 +1,36 @@
+package com.arwka.openapiedu.persistent.repository.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class LongIntMapTest {
+
+  @Test
+  @DisplayName("map should behave like HashMap under random puts and removals")
+  void randomOperationsTest() {
+    LongIntMap map = new LongIntMap(4);
+    Map<Long, Integer> expected = new HashMap<>();
+    Random random = new Random(42);
+    for (int i = 0; i < 200_000; i++) {
+      // narrow key range makes long probe clusters and many removals inside them
+      long key = random.nextInt(5_000) * 1024L;
+      if (random.nextInt(3) == 0) {
+        Integer removed = expected.remove(key);
+        assertEquals(removed == null ? LongIntMap.MISSING : removed, map.remove(key));
+      } else {
+        expected.put(key, i);
+        map.put(key, i);
+      }
+    }
+    assertEquals(expected.size(), map.size());
+    for (long key = 0; key < 5_000 * 1024L; key += 1024L) {
+      assertEquals(expected.getOrDefault(key, LongIntMap.MISSING), map.get(key));
+    }
+  }
+
+}
@@ -0,0 +1,462 @@
+package com.arwka.openapiedu.persistent.repository.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.arwka.openapiedu.persistent.repository.OrderChangeListener;
+import com.arwka.openapiedu.persistent.repository.OrderCursor;
+import com.arwka.openapiedu.persistent.repository.OrderFilter;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.openapitools.model.Order;
+import org.openapitools.model.OrderSortField;
+import org.openapitools.model.StatusEnum;
+
+public class OrdersRepositoryImplTest {
+
+
+  private static final int THREADS = 16;
+  private static final int OPERATIONS_PER_THREAD = 10_000;
+
+  @Test
+  @DisplayName("update should be atomic per order and shouldn't lose concurrent writes")
+  void concurrentUpdatesTest() throws Exception {
+    OrdersRepositoryImpl repository = new OrdersRepositoryImpl();
+    repository.save(new Order().id(1L).quantity(0L));
+    repository.save(new Order().id(2L).quantity(0L));
+
+    runConcurrently(thread -> {
+      for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+        long id = i % 2 + 1L;
+        repository.update(id, order -> order.setQuantity(order.getQuantity() + 1));
+      }
+    });
+
+    long total = repository.findById(1L).orElseThrow().getQuantity()
+        + repository.findById(2L).orElseThrow().getQuantity();
+    assertEquals((long) THREADS * OPERATIONS_PER_THREAD, total);
+  }
+
+  @Test
+  @DisplayName("listeners should get changes of every order in the order they were applied")
+  void changesOrderTest() throws Exception {
+    OrdersRepositoryImpl repository = new OrdersRepositoryImpl();
+    for (long id = 1; id <= 4; id++) {
+      repository.save(new Order().id(id).quantity(0L));
+    }
+    Map<Long, Long> versions = new ConcurrentHashMap<>();
+    AtomicInteger outOfOrder = new AtomicInteger();
+    repository.addListener((before, after) -> {
+      Long previous = versions.put(after.getId(), after.getVersion());
+      if (previous != null && !previous.equals(before.getVersion())) {
+        outOfOrder.incrementAndGet();
+      }
+    });
+
+    runConcurrently(thread -> {
+      for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+        long id = i % 4 + 1L;
+        repository.update(id, order -> order.setQuantity(order.getQuantity() + 1));
+      }
+    });
+
+    assertEquals(0, outOfOrder.get());
+    assertEquals(THREADS * OPERATIONS_PER_THREAD / 4 + 1L, versions.get(1L));
+  }
+
+  @Test
+  @DisplayName("version should grow only with calls which changed some order")
+  void versionTest() {
+    OrdersRepositoryImpl repository = new OrdersRepositoryImpl();
+    repository.save(new Order().id(1L).quantity(0L));
+    long version = repository.version();
+
+    assertThrows(IllegalStateException.class, () -> repository.update(1L, order -> {
+      throw new IllegalStateException("rejected");
+    }));
+    repository.update(2L, order -> order.setQuantity(1L));
+    repository.deleteById(2L);
+    repository.batch(false, () -> repository.update(2L, order -> order.setQuantity(1L)));
+    assertEquals(version, repository.version());
+
+    repository.batch(false, () -> repository.update(1L, order -> order.setQuantity(1L)));
+    assertEquals(version + 1, repository.version());
+  }
+
+  @Test
+  @DisplayName("concurrent save & delete should keep the store consistent")
+  void concurrentSaveAndDeleteTest() throws Exception {
+    OrdersRepositoryImpl repository = new OrdersRepositoryImpl();
+
+    runConcurrently(thread -> {
+      long base = (long) thread * OPERATIONS_PER_THREAD;
+      for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+        repository.save(new Order().id(base + i).quantity(1L));
+        if (i % 2 == 1) {
+          repository.deleteById(base + i);
+        }
+      }
+    });
+
+    assertEquals((long) THREADS * OPERATIONS_PER_THREAD / 2, repository.count());
+    assertEquals(repository.count(), repository.findAll().size());
+    assertTrue(repository.existsById(0L));
+    assertFalse(repository.existsById(1L));
+  }
+
+  @Test
+  @DisplayName("orders returned by repository shouldn't change after update")
+  void readOnlySnapshotsTest() {
+    OrdersRepositoryImpl repository = new OrdersRepositoryImpl();
+    Order saved = repository.save(new Order().id(1L).quantity(5L));
+
+    repository.update(1L, order -> order.setQuantity(6L));
+
+    assertEquals(5L, saved.getQuantity());
+    assertEquals(6L, repository.findById(1L).orElseThrow().getQuantity());
+  }
+
+  @Test
+  @DisplayName("findAll(filter) should use indexes consistent with create, update and delete")
+  void filterByStatusAndPeriodTest() {
+    OrdersRepositoryImpl repository = new OrdersRepositoryImpl();
+    OffsetDateTime day = OffsetDateTime.of(2022, 8, 10, 0, 0, 0, 0, ZoneOffset.UTC);
+    for (long id = 1; id <= 10; id++) {
+      repository.save(new Order().id(id).date(day.plusDays(id)).status(StatusEnum.PLACED));
+    }
+
+    repository.update(2L, order -> order.setStatus(StatusEnum.APPROVED));
+    repository.update(3L, order -> order.setStatus(StatusEnum.APPROVED));
+    repository.update(3L, order -> order.setDate(day.plusDays(20)));
+    repository.deleteById(4L);
+    repository.save(new Order().id(5L).date(day.plusDays(5)).status(StatusEnum.DELIVERED));
+
+    assertEquals(List.of(2L, 3L), ids(repository.findAll(
+        new OrderFilter(StatusEnum.APPROVED, null, null))));
+    assertEquals(List.of(1L, 2L), ids(repository.findAll(
+        new OrderFilter(null, null, day.plusDays(3)))));
+    assertEquals(List.of(6L, 7L), ids(repository.findAll(
+        new OrderFilter(StatusEnum.PLACED, day.plusDays(4), day.plusDays(7)))));
+    assertEquals(List.of(3L), ids(repository.findAll(
+        new OrderFilter(null, day.plusDays(11), null))));
+  }
+
+  @Test
+  @DisplayName("indexes should match full scan after concurrent status changes")
+  void concurrentIndexConsistencyTest() throws Exception {
+    OrdersRepositoryImpl repository = new OrdersRepositoryImpl();
+    OffsetDateTime now = OffsetDateTime.now();
+    for (long id = 0; id < 100; id++) {
+      repository.save(new Order().id(id).date(now).status(StatusEnum.PLACED));
+    }
+
+    runConcurrently(thread -> {
+      StatusEnum[] statuses = StatusEnum.values();
+      for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+        StatusEnum status = statuses[(i + thread) % statuses.length];
+        repository.update(i % 100, order -> order.setStatus(status));
+      }
+    });
+
+    for (StatusEnum status : StatusEnum.values()) {
+      OrderFilter filter = new OrderFilter(status, null, null);
+      List<Long> expected = repository.findAll().stream()
+          .filter(filter::matches)
+          .map(Order::getId)
+          .sorted()
+          .toList();
+      assertEquals(expected, ids(repository.findAll(filter)));
+    }
+  }
+
+  @Test
+  @DisplayName("findPage should walk all matching orders page by page in sort order")
+  void keysetPaginationTest() {
+    OrdersRepositoryImpl repository = new OrdersRepositoryImpl();
+    OffsetDateTime day = OffsetDateTime.of(2022, 8, 10, 0, 0, 0, 0, ZoneOffset.UTC);
+    for (long id = 1; id <= 25; id++) {
+      StatusEnum status = id % 5 == 0 ? StatusEnum.DELIVERED : StatusEnum.PLACED;
+      repository.save(new Order().id(id).date(day.minusHours(id % 7)).status(status));
+    }
+    OrderFilter placed = new OrderFilter(StatusEnum.PLACED, null, null);
+
+    List<Long> byId = readAllPages(repository, placed, OrderSortField.ID);
+    List<Long> expectedById = repository.findAll(placed).stream()
+        .map(Order::getId)
+        .sorted()
+        .toList();
+    assertEquals(expectedById, byId);
+
+    List<Long> byDate = readAllPages(repository, placed, OrderSortField.DATE);
+    List<Long> expectedByDate = repository.findAll(placed).stream()
+        .sorted(Comparator.comparing(Order::getDate).thenComparing(Order::getId))
+        .map(Order::getId)
+        .toList();
+    assertEquals(expectedByDate, byDate);
+  }
+
+  @Test
+  @DisplayName("aborted atomic batch should change, journal and publish nothing")
+  void atomicBatchTest() {
+    OrdersRepositoryImpl repository = new OrdersRepositoryImpl();
+    repository.save(new Order().id(1L).quantity(1L));
+    repository.save(new Order().id(2L).quantity(2L));
+    AtomicInteger changes = new AtomicInteger();
+    AtomicInteger commits = new AtomicInteger();
+    repository.addListener(new OrderChangeListener() {
+      @Override
+      public void onChange(Order before, Order after) {
+        changes.incrementAndGet();
+      }
+
+      @Override
+      public void afterChanges() {
+        commits.incrementAndGet();
+      }
+    });
+
+    assertThrows(IllegalStateException.class, () -> repository.batch(true, () -> {
+      repository.insert(new Order().id(3L).quantity(3L));
+      repository.update(1L, order -> order.setQuantity(10L));
+      repository.deleteById(2L);
+      assertEquals(10L, repository.findById(1L).orElseThrow().getQuantity());
+      assertFalse(repository.existsById(2L));
+      throw new IllegalStateException("abort");
+    }));
+
+    assertEquals(0, changes.get());
+    assertEquals(0, commits.get());
+    assertFalse(repository.existsById(3L));
+    assertEquals(new Order().id(1L).quantity(1L).version(1L),
+        repository.findById(1L).orElseThrow());
+    assertEquals(new Order().id(2L).quantity(2L).version(1L),
+        repository.findById(2L).orElseThrow());
+    assertEquals(2, repository.count());
+
+    repository.batch(true, () -> {
+      repository.update(1L, order -> order.setQuantity(20L));
+      repository.update(1L, order -> order.setQuantity(order.getQuantity() + 1));
+      repository.deleteById(2L);
+    });
+
+    assertEquals(2, changes.get());
+    assertEquals(1, commits.get());
+    assertEquals(new Order().id(1L).quantity(21L).version(3L),
+        repository.findById(1L).orElseThrow());
+    assertFalse(repository.existsById(2L));
+
+    repository.batch(false, () -> {
+      repository.update(1L, order -> order.setQuantity(30L));
+      repository.save(new Order().id(2L));
+    });
+
+    assertEquals(2, commits.get());
+    assertEquals(30L, repository.findById(1L).orElseThrow().getQuantity());
+    assertTrue(repository.existsById(2L));
+  }
+
+  @Test
+  @DisplayName("atomic batch should fail without changes if its orders were changed meanwhile")
+  void atomicBatchConflictTest() throws Exception {
+    OrdersRepositoryImpl repository = new OrdersRepositoryImpl();
+    repository.save(new Order().id(1L).quantity(1L));
+    repository.save(new Order().id(2L).quantity(2L));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      assertThrows(ConcurrentModificationException.class, () -> repository.batch(true, () -> {
+        repository.update(2L, order -> order.setQuantity(20L));
+        repository.update(1L, order -> order.setQuantity(10L));
+        awaitQuietly(executor.submit(() ->
+            repository.update(1L, order -> order.setQuantity(100L))));
+      }));
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(100L, repository.findById(1L).orElseThrow().getQuantity());
+    assertEquals(new Order().id(2L).quantity(2L).version(1L),
+        repository.findById(2L).orElseThrow());
+  }
+
+  @Test
+  @DisplayName("scans should see a consistent point in time under heavy patch traffic")
+  void snapshotReadsUnderWritesTest() throws Exception {
+    OrdersRepositoryImpl repository = new OrdersRepositoryImpl();
+    int size = 1_000;
+    for (long id = 0; id < size; id++) {
+      repository.save(new Order().id(id).quantity(100L).status(StatusEnum.PLACED));
+    }
+    long total = 100L * size;
+    OrderFilter placed = new OrderFilter(StatusEnum.PLACED, null, null);
+    AtomicInteger writing = new AtomicInteger(THREADS / 2);
+
+    runConcurrently(thread -> {
+      if (thread >= THREADS / 2) {
+        // readers: every scan must see whole batches only
+        do {
+          List<Order> all = repository.findAll();
+          assertEquals(size, all.size());
+          assertEquals(total, all.stream().mapToLong(Order::getQuantity).sum());
+          for (int i = 1; i < all.size(); i++) {
+            assertTrue(all.get(i - 1).getId() < all.get(i).getId());
+          }
+          List<Order> matching = repository.findAll(placed);
+          assertEquals(size, matching.size());
+          assertEquals(total, matching.stream().mapToLong(Order::getQuantity).sum());
+        } while (writing.get() > 0);
+        return;
+      }
+      // writers: transfer quantity within the first half, recreate orders of the second one
+      int half = size / 2;
+      for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+        long from = (i * 7L + thread) % half;
+        long to = (i * 13L + thread * 3L) % half;
+        if (i % 10 == 0) {
+          // scans must see the order exactly once, before or after
+          retrying(() -> repository.batch(true, () ->
+              repository.deleteById(half + from).ifPresent(repository::save)));
+        } else {
+          retrying(() -> repository.batch(true, () -> {
+            repository.update(from, order -> order.setQuantity(order.getQuantity() - 1));
+            repository.update(to, order -> order.setQuantity(order.getQuantity() + 1));
+          }));
+        }
+      }
+      writing.decrementAndGet();
+    });
+
+    assertEquals(total, repository.findAll().stream().mapToLong(Order::getQuantity).sum());
+  }
+
+  @Test
+  @DisplayName("stream should keep the point in time of its first read, writers shouldn't wait")
+  void streamDoesNotBlockWritersTest() throws Exception {
+    OrdersRepositoryImpl repository = new OrdersRepositoryImpl();
+    for (long id = 0; id < 100; id++) {
+      repository.save(new Order().id(id).quantity(1L));
+    }
+
+    // the point in time is the first read of the stream
+    try (var unread = repository.stream()) {
+      repository.update(0L, order -> order.setQuantity(3L));
+      assertEquals(3L, unread.findFirst().orElseThrow().getQuantity());
+    }
+
+    try (var stream = repository.stream()) {
+      Iterator<Order> orders = stream.iterator();
+      for (int i = 0; i < 50; i++) {
+        orders.next();
+      }
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      try {
+        executor.submit(() -> {
+          for (long id = 0; id < 100; id++) {
+            repository.update(id, order -> order.setQuantity(2L));
+          }
+          repository.deleteById(60L);
+          repository.save(new Order().id(200L).quantity(2L));
+        }).get(10, TimeUnit.SECONDS);
+      } finally {
+        executor.shutdownNow();
+      }
+
+      List<Long> rest = new ArrayList<>();
+      orders.forEachRemaining(order -> {
+        assertEquals(1L, order.getQuantity());
+        rest.add(order.getId());
+      });
+      assertEquals(50, rest.size());
+      assertEquals(50L, rest.get(0));
+      assertEquals(99L, rest.get(49));
+    }
+
+    assertFalse(repository.existsById(60L));
+    assertEquals(100, repository.findAll().size());
+    assertTrue(repository.findAll().stream().allMatch(order -> order.getQuantity() == 2L));
+  }
+
+  private static List<Long> readAllPages(OrdersRepositoryImpl repository, OrderFilter filter,
+                                         OrderSortField sort) {
+    List<Long> result = new ArrayList<>();
+    OrderCursor cursor = null;
+    List<Order> page;
+    do {
+      page = repository.findPage(filter, sort, cursor, 3);
+      page.forEach(order -> result.add(order.getId()));
+      if (!page.isEmpty()) {
+        cursor = OrderCursor.decode(OrderCursor.after(page.get(page.size() - 1), sort).encode());
+      }
+    } while (page.size() == 3);
+    return result;
+  }
+
+  private static List<Long> ids(List<Order> orders) {
+    return orders.stream().map(Order::getId).sorted().toList();
+  }
+
+  /**
+   * Run atomic batch till it isn't in conflict with others.
+   */
+  private static void retrying(Runnable batch) {
+    while (true) {
+      try {
+        batch.run();
+        return;
+      } catch (ConcurrentModificationException e) {
+        // orders of the batch were changed by another thread, run it again
+      }
+    }
+  }
+
+  private static void awaitQuietly(Future<?> future) {
+    try {
+      future.get(5, TimeUnit.SECONDS);
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void runConcurrently(ThreadTask task) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> futures = new ArrayList<>();
+    try {
+      for (int t = 0; t < THREADS; t++) {
+        int thread = t;
+        futures.add(executor.submit(() -> {
+          start.await();
+          task.run(thread);
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private interface ThreadTask {
+    void run(int thread);
+  }
+
+}
@@ -1,8 +1,31 @@
 package com.arwka.openapiedu.service;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
 import com.arwka.openapiedu.persistent.repository.OrdersRepository;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.openapitools.model.EditedOrder;
+import org.openapitools.model.NewOrder;
+import org.openapitools.model.Order;
+import org.openapitools.model.OrderBatch;
+import org.openapitools.model.OrderBatchResult;
+import org.openapitools.model.OrderOperation;
+import org.openapitools.model.OrderOperationResult;
+import org.openapitools.model.OrderOperationStatus;
+import org.openapitools.model.OrderOperationType;
+import org.openapitools.model.StatusEnum;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
@@ -16,9 +39,143 @@ public class OrdersServiceTest {
   OrdersService ordersService;
 
   @Test
-  @DisplayName("")
-  void test() {
-    // no tests here, look in ui.controller ;)
+  @DisplayName("createNewOrder shouldn't overwrite existing order after delete")
+  void createAfterDeleteTest() {
+    Order first = ordersService.createNewOrder(new NewOrder().productId(1L).quantity(1L));
+    Order second = ordersService.createNewOrder(new NewOrder().productId(2L).quantity(2L));
+    ordersService.deleteOrder(first.getId().toString());
+
+    Order third = ordersService.createNewOrder(new NewOrder().productId(3L).quantity(3L));
+
+    assertNotEquals(second.getId(), third.getId());
+    assertEquals(2L, ordersRepository.findById(second.getId()).orElseThrow().getProductId());
+  }
+
+  @Test
+  @DisplayName("concurrent approve & deliver should move every order through each status once")
+  void concurrentTransitionsTest() throws Exception {
+    List<Order> orders = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      orders.add(ordersService.createNewOrder(new NewOrder().productId(1L).quantity(1L)));
+    }
+    AtomicInteger approved = new AtomicInteger();
+    AtomicInteger delivered = new AtomicInteger();
+    AtomicInteger conflicts = new AtomicInteger();
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        futures.add(executor.submit(() -> {
+          for (Order order : orders) {
+            String id = order.getId().toString();
+            try {
+              ordersService.approveOrder(id);
+              approved.incrementAndGet();
+            } catch (IllegalStateException e) {
+              conflicts.incrementAndGet();
+            }
+            try {
+              ordersService.deliverOrder(id);
+              delivered.incrementAndGet();
+            } catch (IllegalStateException e) {
+              conflicts.incrementAndGet();
+            }
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(100, approved.get());
+    assertEquals(100, delivered.get());
+    assertEquals(8 * 200 - 200, conflicts.get());
+    for (Order order : orders) {
+      Order stored = ordersRepository.findById(order.getId()).orElseThrow();
+      assertEquals(StatusEnum.DELIVERED, stored.getStatus());
+      assertEquals(3L, stored.getVersion());
+    }
+    assertThrows(NoSuchElementException.class, () -> ordersService.approveOrder("-1"));
+  }
+
+  @Test
+  @DisplayName("patchOrder with stale version should fail and keep the order")
+  void patchOrderVersionTest() {
+    Order order = ordersService.createNewOrder(new NewOrder().productId(1L).quantity(1L));
+    String id = order.getId().toString();
+    String storeVersion = ordersService.getStoreVersion();
+
+    Order patched = ordersService.patchOrder(id, new EditedOrder().quantity(2L), Set.of(1L));
+    assertEquals(2L, patched.getVersion());
+    assertNotEquals(storeVersion, ordersService.getStoreVersion());
+
+    assertThrows(OrderVersionMismatchException.class,
+        () -> ordersService.patchOrder(id, new EditedOrder().quantity(3L), Set.of(1L)));
+    assertEquals(2L, ordersRepository.findById(order.getId()).orElseThrow().getQuantity());
+
+    assertEquals(3L,
+        ordersService.patchOrder(id, new EditedOrder().quantity(3L), null).getVersion());
+  }
+
+  @Test
+  @DisplayName("patchOrder should move status only to the next one of the lifecycle")
+  void patchStatusTest() {
+    String id = ordersService.createNewOrder(new NewOrder().productId(1L).quantity(1L))
+        .getId().toString();
+
+    assertThrows(IllegalStateException.class, () -> ordersService.patchOrder(id,
+        new EditedOrder().quantity(1L).status(StatusEnum.DELIVERED), null));
+    assertEquals(StatusEnum.APPROVED, ordersService.patchOrder(id,
+        new EditedOrder().quantity(1L).status(StatusEnum.APPROVED), null).getStatus());
+    assertEquals(StatusEnum.APPROVED, ordersService.patchOrder(id,
+        new EditedOrder().quantity(2L), null).getStatus());
+    assertEquals(StatusEnum.DELIVERED, ordersService.deliverOrder(id).getStatus());
+    assertThrows(IllegalStateException.class, () -> ordersService.patchOrder(id,
+        new EditedOrder().quantity(1L).status(StatusEnum.PLACED), null));
+    assertEquals(2L, ordersRepository.findById(Long.parseLong(id)).orElseThrow().getQuantity());
+  }
+
+  @Test
+  @DisplayName("applyBatch should report every operation and revert atomic batch on failure")
+  void applyBatchTest() {
+    Order order = ordersService.createNewOrder(new NewOrder().productId(1L).quantity(1L));
+    long missing = ordersRepository.maxId() + 1000;
+    List<OrderOperation> operations = List.of(
+        new OrderOperation().op(OrderOperationType.CREATE)
+            .order(new NewOrder().productId(5L).quantity(5L)),
+        new OrderOperation().op(OrderOperationType.APPROVE).id(order.getId()),
+        new OrderOperation().op(OrderOperationType.DELETE).id(missing),
+        new OrderOperation().op(OrderOperationType.PATCH).id(order.getId()));
+
+    OrderBatchResult atomic = ordersService.applyBatch(
+        new OrderBatch().atomic(true).operations(operations));
+
+    assertEquals(false, atomic.getCommitted());
+    assertEquals(List.of(OrderOperationStatus.ROLLED_BACK, OrderOperationStatus.ROLLED_BACK,
+        OrderOperationStatus.NOT_FOUND, OrderOperationStatus.SKIPPED), statuses(atomic));
+    assertEquals(StatusEnum.PLACED,
+        ordersRepository.findById(order.getId()).orElseThrow().getStatus());
+
+    OrderBatchResult partial = ordersService.applyBatch(
+        new OrderBatch().atomic(false).operations(operations));
+
+    assertEquals(true, partial.getCommitted());
+    assertEquals(List.of(OrderOperationStatus.OK, OrderOperationStatus.OK,
+        OrderOperationStatus.NOT_FOUND, OrderOperationStatus.INVALID), statuses(partial));
+    Order created = partial.getResults().get(0).getOrder();
+    assertEquals(5L, ordersRepository.findById(created.getId()).orElseThrow().getProductId());
+    assertEquals(StatusEnum.APPROVED,
+        ordersRepository.findById(order.getId()).orElseThrow().getStatus());
+  }
+
+  private static List<OrderOperationStatus> statuses(OrderBatchResult result) {
+    return result.getResults().stream()
+        .map(OrderOperationResult::getStatus)
+        .collect(Collectors.toList());
   }
 
 }
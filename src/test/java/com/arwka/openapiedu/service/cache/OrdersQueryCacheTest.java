@@ -0,0 +1,122 @@
+package com.arwka.openapiedu.service.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.arwka.openapiedu.persistent.repository.OrderFilter;
+import com.arwka.openapiedu.persistent.repository.impl.OrdersRepositoryImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.openapitools.model.Order;
+import org.openapitools.model.StatusEnum;
+
+public class OrdersQueryCacheTest {
+
+  private static final OffsetDateTime MARCH = OffsetDateTime.parse("2022-03-01T00:00:00Z");
+
+  private final OrdersRepositoryImpl repository = new OrdersRepositoryImpl();
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final AtomicInteger serialized = new AtomicInteger();
+
+  @Test
+  @DisplayName("cached list should be removed only by changes of orders matching its filter")
+  void invalidationTest() {
+    OrdersQueryCache cache = new OrdersQueryCache(repository, registry, 1 << 20, 100);
+    cache.init();
+    repository.save(order(1, StatusEnum.PLACED));
+    repository.save(order(2, StatusEnum.APPROVED));
+
+    OrdersQuery placed = new OrdersQuery(new OrderFilter(StatusEnum.PLACED, null, null), "json");
+    OrdersQuery approved =
+        new OrdersQuery(new OrderFilter(StatusEnum.APPROVED, null, null), "json");
+    assertEquals("1", get(cache, placed));
+    assertEquals("1", get(cache, placed));
+    assertEquals("2", get(cache, approved));
+    assertEquals(2, serialized.get());
+
+    // placed order becomes approved: both lists change
+    repository.save(order(1, StatusEnum.APPROVED));
+    assertEquals("", get(cache, placed));
+    assertEquals("1,2", get(cache, approved));
+    assertEquals(4, serialized.get());
+
+    OrdersQuery all = new OrdersQuery(OrderFilter.ANY, "json");
+    OrdersQuery april = new OrdersQuery(
+        new OrderFilter(null, MARCH.plusMonths(1), null), "json");
+    assertEquals("1,2", get(cache, all));
+    assertEquals("", get(cache, april));
+    assertEquals(6, serialized.get());
+
+    // new delivered order changes neither of them, only the list of any status and period
+    repository.save(order(3, StatusEnum.DELIVERED));
+    assertEquals("", get(cache, placed));
+    assertEquals("1,2", get(cache, approved));
+    assertEquals("", get(cache, april));
+    assertEquals(6, serialized.get());
+    assertEquals("1,2,3", get(cache, all));
+    assertEquals(7, serialized.get());
+
+    assertEquals(3, registry.get("orders.query.cache.invalidations").counter().count());
+    assertEquals(4, registry.get("cache.gets").tag("cache", "orders.query")
+        .tag("result", "hit").functionCounter().count());
+  }
+
+  @Test
+  @DisplayName("the same period with other offsets should hit the same entry")
+  void normalizedQueryTest() {
+    OrdersQuery utc = new OrdersQuery(new OrderFilter(null, MARCH, null), "json");
+    OrdersQuery moscow = new OrdersQuery(
+        new OrderFilter(null, OffsetDateTime.parse("2022-03-01T03:00:00+03:00"), null), "json");
+    assertEquals(utc, moscow);
+    assertFalse(utc.equals(new OrdersQuery(new OrderFilter(null, MARCH, null), "smile")));
+  }
+
+  @Test
+  @DisplayName("long lists should not be cached and the total size should be bounded")
+  void boundsTest() {
+    OrdersQueryCache cache = new OrdersQueryCache(repository, registry, 64, 2);
+    cache.init();
+    for (long id = 1; id <= 3; id++) {
+      repository.save(order(id, StatusEnum.PLACED));
+    }
+
+    OrdersQuery all = new OrdersQuery(OrderFilter.ANY, "json");
+    OrdersQueryResult result = cache.get(all, repository::findAll, this::serialize);
+    assertFalse(result.isSerialized());
+    assertEquals(3, result.getOrders().size());
+
+    OrdersQuery placed = new OrdersQuery(new OrderFilter(StatusEnum.PLACED, MARCH, null), "x");
+    OrdersQueryResult large = cache.get(placed, () -> List.of(order(1, StatusEnum.PLACED)),
+        orders -> new byte[100]);
+    assertTrue(large.isSerialized());
+    assertArrayEquals(new byte[100], large.getBytes());
+    assertEquals(0, serialized.get());
+  }
+
+  private String get(OrdersQueryCache cache, OrdersQuery query) {
+    OrdersQueryResult result = cache.get(query,
+        () -> repository.findAll(query.getFilter()), this::serialize);
+    assertTrue(result.isSerialized());
+    return new String(result.getBytes(), StandardCharsets.UTF_8);
+  }
+
+  private byte[] serialize(List<Order> orders) {
+    serialized.incrementAndGet();
+    StringBuilder ids = new StringBuilder();
+    orders.stream().map(Order::getId).sorted().forEach(id ->
+        ids.append(ids.length() == 0 ? "" : ",").append(id));
+    return ids.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static Order order(long id, StatusEnum status) {
+    return new Order().id(id).productId(10L).quantity(1L).date(MARCH).status(status);
+  }
+
+}
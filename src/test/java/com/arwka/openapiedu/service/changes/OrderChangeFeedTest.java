@@ -0,0 +1,71 @@
+package com.arwka.openapiedu.service.changes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.arwka.openapiedu.persistent.repository.impl.OrdersRepositoryImpl;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.openapitools.model.Order;
+import org.openapitools.model.OrderChangeType;
+
+public class OrderChangeFeedTest {
+
+  @Test
+  @DisplayName("feed should publish committed changes and report overwritten ones as lost")
+  void ringBufferTest() {
+    OrderChangeFeed feed = new OrderChangeFeed(new OrdersRepositoryImpl(), 3);
+    feed.onChange(null, new Order().id(1L).version(1L));
+    for (long version = 2; version <= 5; version++) {
+      feed.onChange(new Order().id(1L).version(version - 1), new Order().id(1L).version(version));
+    }
+    feed.onChange(new Order().id(1L).version(5L), null);
+
+    assertEquals(6L, feed.head());
+    assertNull(feed.get(5L));
+    feed.afterChanges();
+    assertSame(OrderChangeFeed.LOST, feed.get(0L));
+    assertSame(OrderChangeFeed.LOST, feed.get(1L));
+    assertEquals(3L, feed.get(2L).getOrder().getVersion());
+    assertEquals(OrderChangeType.UPDATED, feed.get(4L).getType());
+    assertEquals(OrderChangeType.DELETED, feed.get(5L).getType());
+    assertEquals(5L, feed.get(5L).getOrder().getVersion());
+    assertNull(feed.get(6L));
+  }
+
+  @Test
+  @DisplayName("feed should publish changes of batch only after its commit")
+  void publishAfterCommitTest() {
+    OrdersRepositoryImpl repository = new OrdersRepositoryImpl();
+    OrderChangeFeed feed = new OrderChangeFeed(repository, 16);
+    feed.init();
+    long head = feed.head();
+
+    repository.batch(false, () -> {
+      repository.save(new Order().id(10L));
+      repository.update(10L, order -> order.setQuantity(2L));
+      assertEquals(head + 2, feed.head());
+      assertNull(feed.get(head));
+    });
+
+    assertEquals(OrderChangeType.CREATED, feed.get(head).getType());
+    assertEquals(2L, feed.get(head + 1).getOrder().getQuantity());
+  }
+
+  @Test
+  @DisplayName("feed should resume only from positions of this run")
+  void resumeOffsetTest() {
+    OrderChangeFeed feed = new OrderChangeFeed(new OrdersRepositoryImpl(), 16);
+    feed.onChange(null, new Order().id(1L));
+    feed.onChange(null, new Order().id(2L));
+    feed.afterChanges();
+
+    assertEquals(2L, feed.offset(null));
+    assertEquals(1L, feed.offset(feed.id(1L)));
+    assertEquals(-1L, feed.offset(feed.id(3L)));
+    assertEquals(-1L, feed.offset("l6ov2k1c-1"));
+    assertEquals(-1L, feed.offset("garbage"));
+  }
+
+}
@@ -0,0 +1,95 @@
+package com.arwka.openapiedu.service.changes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+import com.arwka.openapiedu.service.OrdersService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.openapitools.model.EditedOrder;
+import org.openapitools.model.NewOrder;
+import org.openapitools.model.Order;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+public class OrderChangeStreamTest {
+
+  private static final Pattern EVENT = Pattern.compile("id:(\\S+)\nevent:(\\S+)\n");
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private OrdersService ordersService;
+
+  @Test
+  @DisplayName("/orders/changes should stream changes, resume after Last-Event-ID and resync")
+  void streamTest() throws Exception {
+    MockHttpServletResponse live = subscribe(null);
+
+    Order order = ordersService.createNewOrder(new NewOrder().productId(1L).quantity(1L));
+    ordersService.patchOrder(order.getId().toString(), new EditedOrder().quantity(2L), null);
+    ordersService.approveOrder(order.getId().toString());
+    ordersService.deleteOrder(order.getId().toString());
+
+    List<String[]> events = awaitEvents(live, 4);
+    assertEquals(List.of("created", "updated", "updated", "deleted"), types(events));
+    assertTrue(live.getContentAsString().contains("\"version\":3"));
+
+    List<String[]> resumed = awaitEvents(subscribe(events.get(1)[0]), 2);
+    assertEquals(List.of("updated", "deleted"), types(resumed));
+    assertEquals(events.get(3)[0], resumed.get(1)[0]);
+
+    List<String[]> resync = awaitEvents(subscribe("l6ov2k1c-1"), 1);
+    assertEquals(List.of("resync"), types(resync));
+  }
+
+  private MockHttpServletResponse subscribe(String lastEventId) throws Exception {
+    MvcResult result = mockMvc.perform(lastEventId == null
+            ? get("/orders/changes").with(user("ADMIN"))
+            : get("/orders/changes").with(user("ADMIN")).header("Last-Event-ID", lastEventId))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    return result.getResponse();
+  }
+
+  private static List<String[]> awaitEvents(MockHttpServletResponse response, int count)
+      throws Exception {
+    long deadline = System.currentTimeMillis() + 5_000;
+    List<String[]> events = new ArrayList<>();
+    while (System.currentTimeMillis() < deadline) {
+      events.clear();
+      Matcher matcher = EVENT.matcher(response.getContentAsString());
+      while (matcher.find()) {
+        events.add(new String[] {matcher.group(1), matcher.group(2)});
+      }
+      if (events.size() >= count) {
+        return events;
+      }
+      Thread.sleep(10);
+    }
+    throw new AssertionError("Expected " + count + " events, got " + events.size());
+  }
+
+  private static List<String> types(List<String[]> events) {
+    List<String> types = new ArrayList<>();
+    for (String[] event : events) {
+      types.add(event[1]);
+    }
+    return types;
+  }
+
+}
@@ -0,0 +1,92 @@
+package com.arwka.openapiedu.service.csv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.arwka.openapiedu.service.csv.OrdersCsvExportFiles.ExportFile;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class OrdersCsvExportFilesTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  @DisplayName("export should be written in the background once per version, "
+      + "replaced files should be deleted once released")
+  void filesTest() throws Exception {
+    OrdersCsvExportFiles files = new OrdersCsvExportFiles(true, directory, Duration.ZERO);
+    AtomicInteger exports = new AtomicInteger();
+    try {
+      assertTrue(files.get("run-1", CsvEncoding.GZIP, output -> write(output, "1", exports))
+          .isEmpty());
+      ExportFile first = await(files, "run-1", exports);
+      try (InputStream in = CsvEncoding.GZIP.decode(Files.newInputStream(first.getPath()))) {
+        assertEquals("id\n1\n", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+      }
+
+      // the previous file is sent while the next one is written
+      ExportFile held = files.get("run-2", CsvEncoding.GZIP,
+          output -> write(output, "2", exports)).orElseThrow();
+      assertEquals("run-1", held.getVersion());
+      first.release();
+      ExportFile second = await(files, "run-2", exports);
+      second.release();
+      ExportFile third = await(files, "run-3", exports);
+      third.release();
+
+      assertEquals(3, exports.get());
+      assertTrue(Files.exists(held.getPath()));
+      assertFalse(Files.exists(second.getPath()));
+      assertTrue(Files.exists(third.getPath()));
+
+      held.release();
+      await(files, "run-4", exports).release();
+      assertFalse(Files.exists(held.getPath()));
+    } finally {
+      files.shutdown();
+    }
+  }
+
+  /**
+   * Get the file of version once the background write completes.
+   */
+  private static ExportFile await(OrdersCsvExportFiles files, String version,
+                                  AtomicInteger exports) throws InterruptedException {
+    String id = version.substring(version.indexOf('-') + 1);
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (System.currentTimeMillis() < deadline) {
+      Optional<ExportFile> file = files.get(version, CsvEncoding.GZIP,
+          output -> write(output, id, exports));
+      if (file.isPresent()) {
+        if (file.get().getVersion().equals(version)) {
+          return file.get();
+        }
+        file.get().release();
+      }
+      Thread.sleep(10);
+    }
+    throw new AssertionError("Export of " + version + " isn't written");
+  }
+
+  private static void write(OutputStream output, String id, AtomicInteger exports)
+      throws IOException {
+    exports.incrementAndGet();
+    try (OutputStream csv = CsvEncoding.GZIP.encode(output)) {
+      csv.write(("id\n" + id + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+}
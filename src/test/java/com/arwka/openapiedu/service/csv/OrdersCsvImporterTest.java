@@ -0,0 +1,112 @@
+package com.arwka.openapiedu.service.csv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.arwka.openapiedu.persistent.repository.impl.OrdersRepositoryImpl;
+import com.arwka.openapiedu.service.OrdersService;
+import com.arwka.openapiedu.service.metrics.OrdersMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.openapitools.model.ImportSummary;
+import org.openapitools.model.Order;
+import org.openapitools.model.StatusEnum;
+
+public class OrdersCsvImporterTest {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final OrdersMetrics metrics = new OrdersMetrics(registry);
+  private final OrdersRepositoryImpl repository = new OrdersRepositoryImpl();
+  private final OrdersCsvImporter importer = new OrdersCsvImporter(repository, metrics, 2, 10, 1, 0);
+
+  @Test
+  @DisplayName("importOrders should save valid rows in batches and report the rest")
+  void importSummaryTest() {
+    String csv = String.join("\n",
+        "id,productId,quantity,date,status,complete",
+        "1,10,5,2022-08-10T07:58:52.965Z,placed,true",
+        "2,11,500,2022-08-10T07:58:52.965Z,placed,false",
+        "3,12,7,null,approved,false",
+        "1,13,8,null,delivered,false",
+        "4,14,9,yesterday,placed,false",
+        "5,15,10,null,null,null",
+        "");
+
+    ImportSummary summary = importer.importOrders(stream(csv));
+
+    assertEquals(3L, summary.getAccepted());
+    assertEquals(2L, summary.getRejected());
+    assertEquals(1L, summary.getDuplicates());
+    assertEquals(3, summary.getErrors().get(0).getRow());
+    assertEquals(6, summary.getErrors().get(1).getRow());
+    assertEquals(3L, repository.count());
+    assertTrue(repository.findById(1L).orElseThrow().getComplete());
+    assertEquals(StatusEnum.APPROVED, repository.findById(3L).orElseThrow().getStatus());
+  }
+
+  @Test
+  @DisplayName("exported .csv should be imported back without changes and counted both ways")
+  void exportImportRoundTripTest() {
+    OrdersRepositoryImpl source = new OrdersRepositoryImpl();
+    OffsetDateTime date = OffsetDateTime.of(2022, 8, 10, 7, 58, 52, 0, ZoneOffset.UTC);
+    for (long id = 1; id <= 5; id++) {
+      source.save(new Order().id(id).productId(100 + id).quantity(id).date(date)
+          .status(StatusEnum.DELIVERED).complete(id % 2 == 0));
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new OrdersService(source, null, null, null, null, null, metrics, null, null)
+        .writeOrdersInCsv(out);
+
+    ImportSummary summary = importer.importOrders(new ByteArrayInputStream(out.toByteArray()));
+
+    assertEquals(5L, summary.getAccepted());
+    assertEquals(0L, summary.getRejected());
+    for (long id = 1; id <= 5; id++) {
+      assertEquals(source.findById(id), repository.findById(id));
+    }
+    for (String direction : List.of("export", "import")) {
+      assertEquals(5.0, registry.get("orders.csv.rows").tag("direction", direction)
+          .counter().count());
+      assertEquals(out.size(), registry.get("orders.csv.bytes").tag("direction", direction)
+          .counter().count());
+    }
+  }
+
+  @Test
+  @DisplayName("parallel import should give the same orders and row numbers as sequential one")
+  void parallelImportTest() {
+    StringBuilder csv = new StringBuilder("id,productId,quantity,date,status,complete\n");
+    for (int row = 2; row <= 5000; row++) {
+      long id = row % 997 == 0 ? 1 : row;
+      long quantity = row % 101 == 0 ? 0 : row % 100 + 1;
+      csv.append(id).append(",10,").append(quantity).append(",null,placed,false\n");
+    }
+
+    OrdersRepositoryImpl parallelRepository = new OrdersRepositoryImpl();
+    OrdersCsvImporter parallel =
+        new OrdersCsvImporter(parallelRepository, metrics, 100, 10, 4, 512);
+    ImportSummary parallelSummary;
+    try {
+      parallelSummary = parallel.importOrders(stream(csv.toString()));
+    } finally {
+      parallel.shutdown();
+    }
+    ImportSummary sequentialSummary = importer.importOrders(stream(csv.toString()));
+
+    assertEquals(sequentialSummary, parallelSummary);
+    assertEquals(repository.findAll().size(), parallelRepository.findAll().size());
+    assertTrue(parallelSummary.getRejected() > 0 && parallelSummary.getDuplicates() > 0);
+  }
+
+  private static ByteArrayInputStream stream(String csv) {
+    return new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8));
+  }
+
+}
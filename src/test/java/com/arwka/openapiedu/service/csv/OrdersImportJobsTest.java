@@ -0,0 +1,110 @@
+package com.arwka.openapiedu.service.csv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.arwka.openapiedu.persistent.repository.impl.OrdersRepositoryImpl;
+import com.arwka.openapiedu.service.metrics.OrdersMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.openapitools.model.ImportJob;
+import org.openapitools.model.ImportJobStatus;
+
+public class OrdersImportJobsTest {
+
+  private final OrdersRepositoryImpl repository = new OrdersRepositoryImpl();
+  private final OrdersImportJobs jobs = new OrdersImportJobs(
+      new OrdersCsvImporter(repository, new OrdersMetrics(new SimpleMeterRegistry()),
+          10, 10, 1, 0), 1, 1, 10, 10);
+
+  @AfterEach
+  void shutdown() {
+    jobs.shutdown();
+  }
+
+  @Test
+  @DisplayName("submitted import should run in background and report its summary")
+  void backgroundImportTest() throws Exception {
+    String csv = "id,productId,quantity,date,status,complete\n"
+        + "1,10,5,null,placed,false\n"
+        + "2,10,500,null,placed,false\n";
+
+    ImportJob job = jobs.submit(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+    assertEquals(csv.length(), job.getBytes());
+
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (!jobs.getJob(job.getId()).getStatus().equals(ImportJobStatus.COMPLETED)
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+
+    ImportJob finished = jobs.getJob(job.getId());
+    assertEquals(ImportJobStatus.COMPLETED, finished.getStatus());
+    assertEquals(1L, finished.getSummary().getAccepted());
+    assertEquals(1L, finished.getSummary().getRejected());
+    assertEquals(1L, repository.count());
+  }
+
+  @Test
+  @DisplayName("submit should reject import without reading its upload when the pool is full")
+  void rejectBeforeUploadTest() throws Exception {
+    CountDownLatch reading = new CountDownLatch(2);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService uploads = Executors.newFixedThreadPool(2);
+    try {
+      // one thread and one place in the queue are taken by uploads still being spooled
+      for (int i = 0; i < 2; i++) {
+        uploads.submit(() -> jobs.submit(new InputStream() {
+          @Override
+          public int read() throws IOException {
+            reading.countDown();
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              throw new InterruptedIOException();
+            }
+            return -1;
+          }
+        }));
+      }
+      assertTrue(reading.await(5, TimeUnit.SECONDS));
+
+      AtomicBoolean read = new AtomicBoolean();
+      assertThrows(RejectedExecutionException.class, () -> jobs.submit(new InputStream() {
+        @Override
+        public int read() {
+          read.set(true);
+          return -1;
+        }
+      }));
+      assertFalse(read.get());
+    } finally {
+      release.countDown();
+      uploads.shutdown();
+      assertTrue(uploads.awaitTermination(5, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  @DisplayName("getJob should throw NoSuchElementException for unknown job")
+  void unknownJobTest() {
+    assertThrows(NoSuchElementException.class, () -> jobs.getJob("unknown"));
+  }
+
+}
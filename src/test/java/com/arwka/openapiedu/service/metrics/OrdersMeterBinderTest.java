@@ -0,0 +1,42 @@
+package com.arwka.openapiedu.service.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.arwka.openapiedu.persistent.repository.OrderIdGenerator;
+import com.arwka.openapiedu.persistent.repository.impl.OrdersRepositoryImpl;
+import com.arwka.openapiedu.service.stats.OrderStatistics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.openapitools.model.Order;
+import org.openapitools.model.StatusEnum;
+
+public class OrdersMeterBinderTest {
+
+  @Test
+  @DisplayName("gauges should follow repository and id counters should count reserved blocks")
+  void gaugesTest() {
+    OrdersRepositoryImpl repository = new OrdersRepositoryImpl();
+    OrderStatistics statistics = new OrderStatistics(repository);
+    statistics.init();
+    OrderIdGenerator generator = new OrderIdGenerator(repository, 4);
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    new OrdersMeterBinder(repository, statistics, generator).bindTo(registry);
+
+    for (long id = 1; id <= 5; id++) {
+      repository.save(new Order().id(id).status(id <= 3 ? StatusEnum.PLACED : null));
+    }
+    repository.update(1L, order -> order.setStatus(StatusEnum.APPROVED));
+    for (int i = 0; i < 10; i++) {
+      generator.nextId();
+    }
+
+    assertEquals(5.0, registry.get("orders.stored").gauge().value());
+    assertEquals(2.0, registry.get("orders.status").tag("status", "placed").gauge().value());
+    assertEquals(1.0, registry.get("orders.status").tag("status", "approved").gauge().value());
+    assertEquals(0.0, registry.get("orders.status").tag("status", "delivered").gauge().value());
+    assertEquals(2.0, registry.get("orders.status").tag("status", "none").gauge().value());
+    assertEquals(3.0, registry.get("orders.id.blocks").functionCounter().count());
+  }
+
+}
@@ -0,0 +1,203 @@
+package com.arwka.openapiedu.service.stats;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.arwka.openapiedu.persistent.journal.FsyncPolicy;
+import com.arwka.openapiedu.persistent.journal.OrdersJournal;
+import com.arwka.openapiedu.persistent.repository.OrdersRepository;
+import com.arwka.openapiedu.persistent.repository.impl.ColumnarOrdersRepository;
+import com.arwka.openapiedu.persistent.repository.impl.OrdersRepositoryImpl;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.openapitools.model.DayStats;
+import org.openapitools.model.Order;
+import org.openapitools.model.OrderStats;
+import org.openapitools.model.ProductStats;
+import org.openapitools.model.StatusEnum;
+
+public class OrderStatisticsTest {
+
+  private static final int THREADS = 8;
+  private static final int OPERATIONS_PER_THREAD = 20_000;
+  private static final int IDS = 2_000;
+  private static final OffsetDateTime DAY =
+      OffsetDateTime.of(2022, 8, 10, 22, 0, 0, 0, ZoneOffset.ofHours(3));
+
+  @TempDir
+  Path directory;
+
+  static Stream<Arguments> stores() {
+    return Stream.of(
+        Arguments.of("map", (Supplier<OrdersRepository>) OrdersRepositoryImpl::new),
+        Arguments.of("columnar", (Supplier<OrdersRepository>) ColumnarOrdersRepository::new));
+  }
+
+  @ParameterizedTest(name = "{0} store")
+  @MethodSource("stores")
+  @DisplayName("counters should match full-scan recount after concurrent changes")
+  void recountTest(String name, Supplier<OrdersRepository> store) throws Exception {
+    OrdersRepository repository = store.get();
+    for (long id = 0; id < IDS / 2; id++) {
+      repository.save(randomOrder(id));
+    }
+    repository.save(new Order().id((long) IDS));
+    OrderStatistics statistics = new OrderStatistics(repository);
+    statistics.init();
+
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < THREADS; t++) {
+        futures.add(executor.submit(() -> {
+          ThreadLocalRandom random = ThreadLocalRandom.current();
+          for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+            long id = random.nextLong(IDS);
+            switch (random.nextInt(4)) {
+              case 0:
+                repository.insert(randomOrder(id));
+                break;
+              case 1:
+                repository.save(randomOrder(id));
+                break;
+              case 2:
+                repository.update(id, order -> order
+                    .status(StatusEnum.values()[random.nextInt(3)])
+                    .quantity(random.nextBoolean() ? null : random.nextLong(1, 100)));
+                break;
+              default:
+                repository.deleteById(id);
+            }
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(recount(repository), statistics.getStats());
+  }
+
+  static Stream<Arguments> recoveredStores() {
+    return Stream.of(
+        Arguments.of("map", (Function<OrdersJournal, OrdersRepository>) journal -> {
+          OrdersRepositoryImpl repository = new OrdersRepositoryImpl(Optional.of(journal));
+          repository.init();
+          return repository;
+        }),
+        Arguments.of("columnar", (Function<OrdersJournal, OrdersRepository>) journal -> {
+          ColumnarOrdersRepository repository =
+              new ColumnarOrdersRepository(Optional.of(journal));
+          repository.init();
+          return repository;
+        }));
+  }
+
+  @ParameterizedTest(name = "{0} store")
+  @MethodSource("recoveredStores")
+  @DisplayName("counters of recovered store should start from snapshot totals and log tail")
+  void recoveredTotalsTest(String name, Function<OrdersJournal, OrdersRepository> store)
+      throws Exception {
+    OrdersJournal journal = journal();
+    OrdersRepository repository = store.apply(journal);
+    for (long id = 0; id < IDS; id++) {
+      repository.save(randomOrder(id));
+    }
+    journal.snapshot();
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int i = 0; i < IDS; i++) {
+      long id = random.nextLong(IDS + IDS / 10);
+      if (i % 3 == 0) {
+        repository.deleteById(id);
+      } else {
+        repository.save(randomOrder(id));
+      }
+    }
+    journal.close();
+
+    OrdersJournal reopened = journal();
+    OrdersRepository recovered = store.apply(reopened);
+    assertTrue(recovered.recoveredTotals().isPresent());
+    OrderStatistics statistics = new OrderStatistics(recovered);
+    statistics.init();
+    recovered.update(1L, order -> order.setStatus(StatusEnum.DELIVERED));
+    reopened.close();
+
+    assertEquals(recount(recovered), statistics.getStats());
+  }
+
+  private OrdersJournal journal() {
+    return new OrdersJournal(directory, FsyncPolicy.ALWAYS, 16, Duration.ofMillis(10),
+        Duration.ofHours(1));
+  }
+
+  private static Order randomOrder(long id) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return new Order()
+        .id(id)
+        .productId(random.nextInt(10) == 0 ? null : random.nextLong(1, 20))
+        .quantity(random.nextLong(1, 100))
+        .date(random.nextInt(10) == 0 ? null : DAY.plusHours(random.nextInt(72)))
+        .status(random.nextInt(10) == 0 ? null : StatusEnum.values()[random.nextInt(3)]);
+  }
+
+  private static OrderStats recount(OrdersRepository repository) {
+    Map<String, Long> byStatus = new TreeMap<>();
+    Map<Long, ProductStats> byProduct = new TreeMap<>();
+    Map<LocalDate, DayStats> byDay = new TreeMap<>();
+    long[] total = new long[1];
+    repository.stream().forEach(order -> {
+      total[0]++;
+      byStatus.merge(order.getStatus() == null ? "none" : order.getStatus().getValue(),
+          1L, Long::sum);
+      if (order.getProductId() != null) {
+        ProductStats product = byProduct.computeIfAbsent(order.getProductId(),
+            key -> new ProductStats().productId(key).orders(0L).quantity(0L));
+        product.orders(product.getOrders() + 1)
+            .quantity(product.getQuantity()
+                + (order.getQuantity() == null ? 0L : order.getQuantity()));
+      }
+      if (order.getDate() != null) {
+        LocalDate day = order.getDate().atZoneSameInstant(ZoneOffset.UTC).toLocalDate();
+        DayStats stats = byDay.computeIfAbsent(day, key -> new DayStats().day(key).orders(0L));
+        stats.orders(stats.getOrders() + 1);
+      }
+    });
+    Map<String, Long> statuses = new LinkedHashMap<>();
+    for (StatusEnum status : StatusEnum.values()) {
+      statuses.put(status.getValue(), byStatus.getOrDefault(status.getValue(), 0L));
+    }
+    statuses.put("none", byStatus.getOrDefault("none", 0L));
+    return new OrderStats()
+        .total(total[0])
+        .byStatus(statuses)
+        .byProduct(new ArrayList<>(byProduct.values()))
+        .byDay(new ArrayList<>(byDay.values()));
+  }
+
+}
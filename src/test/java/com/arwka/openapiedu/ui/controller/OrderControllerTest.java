@@ -1,12 +1,49 @@
 package com.arwka.openapiedu.ui.controller;
 
+import com.arwka.openapiedu.service.OrderVersionMismatchException;
+import com.arwka.openapiedu.service.OrdersPage;
 import com.arwka.openapiedu.service.OrdersService;
+import com.arwka.openapiedu.service.cache.OrdersQueryResult;
+import com.arwka.openapiedu.service.csv.CsvEncoding;
+import com.arwka.openapiedu.service.csv.OrdersCsvExportFiles;
+import com.arwka.openapiedu.service.csv.OrdersCsvExportFiles.ExportFile;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.openapitools.model.EditedOrder;
+import org.openapitools.model.ImportJob;
+import org.openapitools.model.ImportJobStatus;
+import org.openapitools.model.ImportSummary;
 import org.openapitools.model.NewOrder;
 import org.openapitools.model.Order;
+import org.openapitools.model.OrderBatch;
+import org.openapitools.model.OrderBatchResult;
+import org.openapitools.model.OrderOperationResult;
+import org.openapitools.model.OrderOperationStatus;
+import org.openapitools.model.OrderSortField;
+import org.openapitools.model.OrderStats;
+import org.openapitools.model.ProductStats;
 import org.openapitools.model.StatusEnum;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -15,18 +52,31 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -36,6 +86,9 @@ public class OrderControllerTest {
   @Autowired
   private MockMvc mockMvc;
 
+  @Autowired
+  private MeterRegistry meterRegistry;
+
   @MockBean
   OrdersService ordersService;
 
@@ -65,6 +118,265 @@ public class OrderControllerTest {
         .andExpect(jsonPath("$.[1].id", is(5)));
   }
 
+  @Test
+  @DisplayName("getOrders with limit should return page and cursor of the next page")
+  void getOrdersPageTest() throws Exception {
+    Order order = new Order();
+    order.setId(7L);
+
+    when(ordersService.getOrdersPage(StatusEnum.PLACED, null, null, null, 1,
+        OrderSortField.DATE))
+        .thenReturn(new OrdersPage(List.of(order), "next"));
+
+    mockMvc.perform(get("/orders")
+            .param("status", "placed")
+            .param("limit", "1")
+            .param("sort", "date")
+            .contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk())
+        .andExpect(header().string("X-Next-Cursor", "next"))
+        .andExpect(jsonPath("$.[0].id", is(7)));
+  }
+
+  @Test
+  @DisplayName("getOrdersInCsv should stream .csv of filtered orders written by service")
+  void getOrdersInCsvTest() throws Exception {
+    Stream<Order> placed = Stream.of(new Order().id(1L));
+    when(ordersService.streamOrders(StatusEnum.PLACED,
+        OffsetDateTime.parse("2022-03-01T00:00:00Z"), null))
+        .thenReturn(placed);
+    doAnswer(invocation -> {
+      OutputStream out = invocation.getArgument(2);
+      out.write("id,productId\n1,15\n".getBytes(StandardCharsets.UTF_8));
+      return null;
+    }).when(ordersService)
+        .writeOrdersInCsv(eq(placed), eq(CsvEncoding.IDENTITY), any(OutputStream.class));
+
+    MvcResult result = mockMvc.perform(get("/orders")
+            .param("status", "placed")
+            .param("from", "2022-03-01T00:00:00Z")
+            .contentType("text/csv"))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    mockMvc.perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(header().string("Content-Disposition", "attachment; filename=orders.csv"))
+        .andExpect(content().string("id,productId\n1,15\n"));
+  }
+
+  @Test
+  @DisplayName("getOrdersInCsv should compress .csv in coding of Accept-Encoding")
+  void getOrdersInCsvCompressedTest() throws Exception {
+    when(ordersService.getStoreVersion()).thenReturn("run-7");
+    when(ordersService.getOrdersCsvFile(any())).thenReturn(Optional.empty());
+    doAnswer(invocation -> {
+      OutputStream out = invocation.getArgument(2);
+      out.write(gzip("id,productId\n1,15\n"));
+      return null;
+    }).when(ordersService)
+        .writeOrdersInCsv(any(), eq(CsvEncoding.GZIP), any(OutputStream.class));
+
+    MvcResult result = mockMvc.perform(get("/orders")
+            .header("Accept-Encoding", "gzip;q=0.8, br, identity;q=0.1")
+            .contentType("text/csv"))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    mockMvc.perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(header().string("Content-Encoding", "gzip"))
+        .andExpect(header().string("Vary", "Accept-Encoding"))
+        .andExpect(header().string("ETag", "\"run-7-csv-gzip\""))
+        .andExpect(content().bytes(gzip("id,productId\n1,15\n")));
+
+    mockMvc.perform(get("/orders")
+            .header("If-None-Match", "\"run-7-csv\"")
+            .header("Accept-Encoding", "gzip")
+            .contentType("text/csv"))
+        .andExpect(request().asyncStarted());
+  }
+
+  @Test
+  @DisplayName("getOrdersInCsv should send the latest file of export with its version by sendfile")
+  void getOrdersInCsvFileTest(@TempDir Path directory) throws Exception {
+    OrdersCsvExportFiles files =
+        new OrdersCsvExportFiles(true, directory, Duration.ofMinutes(1));
+    Optional<ExportFile> export = Optional.empty();
+    try {
+      for (int i = 0; i < 1000 && export.isEmpty(); i++) {
+        export = files.get("run-6", CsvEncoding.IDENTITY,
+            output -> output.write("id,productId\n1,15\n".getBytes(StandardCharsets.UTF_8)));
+        Thread.sleep(10);
+      }
+    } finally {
+      files.shutdown();
+    }
+    Path file = export.orElseThrow().getPath();
+    when(ordersService.getStoreVersion()).thenReturn("run-7");
+    when(ordersService.getOrdersCsvFile(CsvEncoding.IDENTITY)).thenReturn(export);
+
+    MvcResult result = mockMvc.perform(get("/orders")
+            .contentType("text/csv"))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    mockMvc.perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(header().string("ETag", "\"run-6-csv\""))
+        .andExpect(header().longValue("Content-Length", Files.size(file)))
+        .andExpect(content().string("id,productId\n1,15\n"));
+
+    mockMvc.perform(get("/orders")
+            .requestAttr("org.apache.tomcat.sendfile.support", true)
+            .contentType("text/csv"))
+        .andExpect(status().isOk())
+        .andExpect(header().longValue("Content-Length", Files.size(file)))
+        .andExpect(request().attribute("org.apache.tomcat.sendfile.filename",
+            file.toAbsolutePath().toString()))
+        .andExpect(request().attribute("org.apache.tomcat.sendfile.end", Files.size(file)))
+        .andExpect(content().string(""));
+    verify(ordersService, never()).streamOrders(any(), any(), any());
+    verify(ordersService, never()).writeOrdersInCsv(any(), any(), any(OutputStream.class));
+  }
+
+  @Test
+  @DisplayName("getOrders should write NDJSON and Smile for their Accept")
+  void getOrdersFormatsTest() throws Exception {
+    when(ordersService.getStoreVersion()).thenReturn("run-7");
+    when(ordersService.getOrdersWithoutParams())
+        .thenReturn(List.of(new Order().id(1L).productId(15L), new Order().id(2L)));
+
+    mockMvc.perform(get("/orders")
+            .accept(MediaType.APPLICATION_NDJSON)
+            .contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+        .andExpect(header().string("ETag", "\"run-7-ndjson\""))
+        .andExpect(content().string(matchesPattern("\\{\"id\":1,.*}\n\\{\"id\":2,.*}\n")));
+
+    byte[] smile = mockMvc.perform(get("/orders")
+            .accept("application/x-jackson-smile")
+            .contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType("application/x-jackson-smile"))
+        .andExpect(header().string("ETag", "\"run-7-smile\""))
+        .andReturn().getResponse().getContentAsByteArray();
+
+    List<Order> orders = new ObjectMapper(new SmileFactory()).findAndRegisterModules()
+        .readValue(smile, new TypeReference<List<Order>>() {});
+    assertEquals(15L, orders.get(0).getProductId());
+    assertEquals(2L, orders.get(1).getId());
+  }
+
+  @Test
+  @DisplayName("getOrders should write list serialized by cache of query results as it is")
+  void getOrdersCachedTest() throws Exception {
+    when(ordersService.getStoreVersion()).thenReturn("run-7");
+    when(ordersService.isQueryCacheEnabled()).thenReturn(true);
+    when(ordersService.getSerializedOrders(eq(StatusEnum.PLACED), isNull(), isNull(),
+        eq("ndjson"), any()))
+        .thenAnswer(invocation -> {
+          Function<List<Order>, byte[]> serializer = invocation.getArgument(4);
+          return OrdersQueryResult.serialized(
+              serializer.apply(List.of(new Order().id(1L), new Order().id(2L))));
+        });
+
+    mockMvc.perform(get("/orders")
+            .param("status", "placed")
+            .accept(MediaType.APPLICATION_NDJSON)
+            .contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+        .andExpect(header().string("ETag", "\"run-7-ndjson\""))
+        .andExpect(header().string("Vary", "Accept"))
+        .andExpect(content().string(matchesPattern("\\{\"id\":1,.*}\n\\{\"id\":2,.*}\n")));
+
+    when(ordersService.getSerializedOrders(eq(StatusEnum.PLACED), isNull(), isNull(),
+        eq("smile"), any()))
+        .thenAnswer(invocation -> {
+          Function<List<Order>, byte[]> serializer = invocation.getArgument(4);
+          return OrdersQueryResult.serialized(serializer.apply(List.of(new Order().id(3L))));
+        });
+
+    byte[] smile = mockMvc.perform(get("/orders")
+            .param("status", "placed")
+            .accept("application/x-jackson-smile")
+            .contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType("application/x-jackson-smile"))
+        .andExpect(header().string("ETag", "\"run-7-smile\""))
+        .andReturn().getResponse().getContentAsByteArray();
+    List<Order> orders = new ObjectMapper(new SmileFactory()).findAndRegisterModules()
+        .readValue(smile, new TypeReference<List<Order>>() {});
+    assertEquals(3L, orders.get(0).getId());
+    verify(ordersService, never()).getOrders(any(), any(), any());
+  }
+
+  @Test
+  @DisplayName("getOrders & getOrdersInCsv should return 304 while store version is the same")
+  void getOrdersNotModifiedTest() throws Exception {
+    when(ordersService.getStoreVersion()).thenReturn("run-7");
+
+    mockMvc.perform(get("/orders")
+            .contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk())
+        .andExpect(header().string("ETag", "\"run-7-json\""));
+
+    mockMvc.perform(get("/orders")
+            .header("If-None-Match", "\"run-7-json\"")
+            .contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string("ETag", "\"run-7-json\""))
+        .andExpect(content().string(""));
+
+    mockMvc.perform(get("/orders")
+            .header("If-None-Match", "W/\"run-6-csv\", \"run-7-csv\"")
+            .contentType("text/csv"))
+        .andExpect(status().isNotModified());
+
+    verify(ordersService).getOrdersWithoutParams();
+    verify(ordersService, never()).writeOrdersInCsv(any(), any(), any(OutputStream.class));
+
+    when(ordersService.getStoreVersion()).thenReturn("run-8");
+    mockMvc.perform(get("/orders")
+            .header("If-None-Match", "\"run-7-json\"")
+            .contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk())
+        .andExpect(header().string("ETag", "\"run-8-json\""));
+  }
+
+  @Test
+  @DisplayName("getOrderStats should return statistics of service")
+  @WithMockUser("ADMIN")
+  void getOrderStatsTest() throws Exception {
+    when(ordersService.getStats())
+        .thenReturn(new OrderStats()
+            .total(3L)
+            .byStatus(Map.of("placed", 3L))
+            .byProduct(List.of(new ProductStats().productId(15L).orders(3L).quantity(30L))));
+
+    mockMvc.perform(get("/orders/stats"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.total", is(3)))
+        .andExpect(jsonPath("$.byStatus.placed", is(3)))
+        .andExpect(jsonPath("$.byProduct[0].quantity", is(30)));
+  }
+
+  @Test
+  @DisplayName("requests should be timed by operation of OrdersApi")
+  @WithMockUser("ADMIN")
+  void requestTimersTest() throws Exception {
+    when(ordersService.getStats()).thenReturn(new OrderStats().total(0L));
+
+    mockMvc.perform(get("/orders/stats"))
+        .andExpect(status().isOk());
+
+    assertTrue(meterRegistry.get("http.server.requests")
+        .tag("operation", "getOrderStats")
+        .tag("status", "200")
+        .timer().count() >= 1);
+  }
+
   @Test
   @DisplayName("createNewOrder should create and return new order")
   void postOrdersTest() throws Exception {
@@ -85,6 +397,62 @@ public class OrderControllerTest {
 
   }
 
+  @Test
+  @DisplayName("createNewOrder should read and write Smile")
+  void postOrdersInSmileTest() throws Exception {
+    ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+    when(ordersService.createNewOrder(new NewOrder().productId(5L).quantity(10L)))
+        .thenReturn(new Order().id(4L).productId(5L).quantity(10L));
+
+    byte[] created = mockMvc.perform(post("/orders")
+            .contentType("application/x-jackson-smile")
+            .accept("application/x-jackson-smile")
+            .content(smileMapper.writeValueAsBytes(new NewOrder().productId(5L).quantity(10L))))
+        .andExpect(status().isCreated())
+        .andExpect(content().contentType("application/x-jackson-smile"))
+        .andReturn().getResponse().getContentAsByteArray();
+
+    assertEquals(4L, smileMapper.readValue(created, Order.class).getId());
+  }
+
+  @Test
+  @DisplayName(".csv import should decompress body in coding of Content-Encoding")
+  void loadOrdersFromCompressedCsvTest() throws Exception {
+    when(ordersService.addOrdersFromCsv(any(InputStream.class))).thenAnswer(invocation -> {
+      InputStream in = invocation.getArgument(0);
+      String csv = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+      return new ImportSummary().accepted(csv.equals("1,10,5,null,placed,false") ? 1L : 0L);
+    });
+
+    mockMvc.perform(post("/orders")
+            .contentType("text/csv")
+            .header("Content-Encoding", "gzip")
+            .content(gzip("1,10,5,null,placed,false")))
+        .andExpect(status().isCreated())
+        .andExpect(jsonPath("$.accepted", is(1)));
+
+    mockMvc.perform(post("/orders")
+            .contentType("text/csv")
+            .header("Content-Encoding", "br")
+            .content("1,10,5,null,placed,false"))
+        .andExpect(status().isUnsupportedMediaType());
+  }
+
+  @Test
+  @DisplayName("async .csv import should return 202 with location of import job")
+  void submitOrdersFromCsvTest() throws Exception {
+    when(ordersService.submitOrdersFromCsv(any(InputStream.class)))
+        .thenReturn(new ImportJob().id("job-1").status(ImportJobStatus.QUEUED));
+
+    mockMvc.perform(post("/orders")
+            .param("async", "true")
+            .contentType("text/csv")
+            .content("1,10,5,null,placed,false"))
+        .andExpect(status().isAccepted())
+        .andExpect(header().string("Location", "/orders/imports/job-1"))
+        .andExpect(jsonPath("$.status", is("queued")));
+  }
+
   @Test
   @DisplayName("deleteOrder should delete order and return isNoContent")
   @WithMockUser("ADMIN")
@@ -100,7 +468,7 @@ public class OrderControllerTest {
 
     String jsonToPost = "{ \"quantity\": 75, \"complete\": true}";
 
-    when(ordersService.patchOrder(anyString(), any(EditedOrder.class)))
+    when(ordersService.patchOrder(anyString(), any(EditedOrder.class), isNull()))
         .thenReturn(new Order());
 
     mockMvc.perform(patch("/orders/1")
@@ -110,6 +478,59 @@ public class OrderControllerTest {
         .andExpect(content().contentType(MediaType.APPLICATION_JSON));
   }
 
+  @Test
+  @DisplayName("patchOrder should pass If-Match versions and return 412 on mismatch")
+  @WithMockUser("ADMIN")
+  void patchOrderIfMatchTest() throws Exception {
+    String jsonToPost = "{ \"quantity\": 75 }";
+
+    when(ordersService.patchOrder(eq("1"), any(EditedOrder.class), eq(Set.of(3L))))
+        .thenReturn(new Order().id(1L).version(4L));
+    when(ordersService.patchOrder(eq("2"), any(EditedOrder.class), eq(Set.of(3L))))
+        .thenThrow(new OrderVersionMismatchException(2L, 5L));
+
+    mockMvc.perform(patch("/orders/1")
+            .header("If-Match", "\"3\"")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(jsonToPost))
+        .andExpect(status().isOk())
+        .andExpect(header().string("ETag", "\"4\""));
+
+    mockMvc.perform(patch("/orders/2")
+            .header("If-Match", "\"3\"")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(jsonToPost))
+        .andExpect(status().isPreconditionFailed())
+        .andExpect(content().contentType(MediaType.APPLICATION_PROBLEM_JSON));
+  }
+
+  @Test
+  @DisplayName("batchOrders should require auth and return result of every operation")
+  void batchOrdersTest() throws Exception {
+    String jsonToPost = "{ \"atomic\": true, \"operations\": ["
+        + "{ \"op\": \"create\", \"order\": { \"productId\": 5, \"quantity\": 10 } },"
+        + "{ \"op\": \"approve\", \"id\": 1, \"version\": 2 } ] }";
+
+    mockMvc.perform(post("/orders:batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(jsonToPost))
+        .andExpect(status().isUnauthorized());
+
+    when(ordersService.applyBatch(any(OrderBatch.class)))
+        .thenReturn(new OrderBatchResult().committed(true).results(List.of(
+            new OrderOperationResult().status(OrderOperationStatus.OK).order(new Order().id(9L)),
+            new OrderOperationResult().status(OrderOperationStatus.OK))));
+
+    mockMvc.perform(post("/orders:batch")
+            .with(user("ADMIN"))
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(jsonToPost))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.committed", is(true)))
+        .andExpect(jsonPath("$.results[0].order.id", is(9)))
+        .andExpect(jsonPath("$.results[1].status", is("ok")));
+  }
+
   @Test
   @DisplayName("approveOrder & DeliverOrder should change StatusEnum of order to approved")
   @WithMockUser("ADMIN")
@@ -139,4 +560,28 @@ public class OrderControllerTest {
 
   }
 
+  @Test
+  @DisplayName("approveOrder should return 409 on conflicting transition and 404 on missing order")
+  @WithMockUser("ADMIN")
+  void putApprovedConflictTest() throws Exception {
+    when(ordersService.approveOrder("1"))
+        .thenThrow(new IllegalStateException("Order is delivered, it can't become approved."));
+    when(ordersService.approveOrder("2"))
+        .thenThrow(new NoSuchElementException("Order not found."));
+
+    mockMvc.perform(put("/orders/1/approved"))
+        .andExpect(status().isConflict())
+        .andExpect(content().contentType(MediaType.APPLICATION_PROBLEM_JSON));
+    mockMvc.perform(put("/orders/2/approved"))
+        .andExpect(status().isNotFound());
+  }
+
+  private static byte[] gzip(String text) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (OutputStream out = new GZIPOutputStream(bytes)) {
+      out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+    return bytes.toByteArray();
+  }
+
 }
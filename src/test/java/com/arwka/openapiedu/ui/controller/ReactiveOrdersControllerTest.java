@@ -0,0 +1,260 @@
+package com.arwka.openapiedu.ui.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.luben.zstd.ZstdInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.openapitools.model.ImportSummary;
+import org.openapitools.model.NewOrder;
+import org.openapitools.model.Order;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {"spring.main.web-application-type=reactive", "management.server.port=0",
+        "orders.export.files.enabled=true", "orders.export.files.directory=target/exports"})
+@AutoConfigureWebTestClient
+public class ReactiveOrdersControllerTest {
+
+  private static final String CSV = "id,productId,quantity,date,status,complete\n"
+      + "1001,7,3,2022-03-01T10:00:00Z,placed,false\n"
+      + "1002,8,5,2022-03-02T10:00:00Z,approved,false\n";
+
+  @Autowired
+  private WebTestClient webTestClient;
+
+  @Autowired
+  private Jackson2ObjectMapperBuilder jacksonObjectMapperBuilder;
+
+  private ObjectMapper smileMapper;
+
+  @BeforeEach
+  void setUp() {
+    smileMapper = jacksonObjectMapperBuilder.createXmlMapper(false)
+        .factory(new SmileFactory())
+        .build();
+  }
+
+  @Test
+  @DisplayName("orders should be listed as JSON array and as NDJSON with the same content")
+  void streamTest() throws IOException {
+    Order created = webTestClient.post().uri("/orders")
+        .headers(headers -> headers.setBasicAuth("admin", "admin1"))
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(new NewOrder().productId(15L).quantity(2L))
+        .exchange()
+        .expectStatus().isCreated()
+        .expectHeader().exists("ETag")
+        .expectBody(Order.class).returnResult().getResponseBody();
+
+    List<Order> array = webTestClient.get().uri("/orders")
+        .header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+        .exchange()
+        .expectStatus().isOk()
+        .expectHeader().contentType(MediaType.APPLICATION_JSON)
+        .expectBodyList(Order.class).returnResult().getResponseBody();
+
+    String lines = webTestClient.get().uri("/orders")
+        .header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+        .accept(MediaType.APPLICATION_NDJSON)
+        .exchange()
+        .expectStatus().isOk()
+        .expectHeader().contentType(MediaType.APPLICATION_NDJSON)
+        .expectBody(String.class).returnResult().getResponseBody();
+
+    byte[] smile = webTestClient.get().uri("/orders")
+        .header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+        .accept(MediaType.parseMediaType("application/x-jackson-smile"))
+        .exchange()
+        .expectStatus().isOk()
+        .expectHeader().valueEquals("Content-Type", "application/x-jackson-smile")
+        .expectBody(byte[].class).returnResult().getResponseBody();
+
+    assertTrue(array.stream().anyMatch(order -> order.getId().equals(created.getId())));
+    assertEquals(array.size(), lines.split("\n").length);
+    assertTrue(lines.startsWith("{") && lines.endsWith("}\n"));
+    assertEquals(array, smileMapper.readValue(smile, new TypeReference<List<Order>>() {}));
+    assertTrue(smile.length < lines.length());
+  }
+
+  @Test
+  @DisplayName("cached list of orders should be served again till a matching order changes")
+  void cachedListTest() {
+    List<Order> before = placedOrders();
+    assertEquals(before, placedOrders());
+
+    Order created = webTestClient.post().uri("/orders")
+        .headers(headers -> headers.setBasicAuth("admin", "admin1"))
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(new NewOrder().productId(16L).quantity(3L))
+        .exchange()
+        .expectStatus().isCreated()
+        .expectBody(Order.class).returnResult().getResponseBody();
+
+    List<Order> after = placedOrders();
+    assertEquals(before.size() + 1, after.size());
+    assertTrue(after.contains(created));
+  }
+
+  private List<Order> placedOrders() {
+    return webTestClient.get().uri("/orders?status=placed")
+        .header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+        .exchange()
+        .expectStatus().isOk()
+        .expectHeader().contentType(MediaType.APPLICATION_JSON)
+        .expectHeader().exists("Content-Length")
+        .expectBodyList(Order.class).returnResult().getResponseBody();
+  }
+
+  @Test
+  @DisplayName("uploaded .csv should be imported and exported again")
+  void csvTest() {
+    ImportSummary summary = webTestClient.post().uri("/orders")
+        .contentType(MediaType.parseMediaType("text/csv"))
+        .bodyValue(CSV.getBytes(StandardCharsets.UTF_8))
+        .exchange()
+        .expectStatus().isCreated()
+        .expectBody(ImportSummary.class).returnResult().getResponseBody();
+    assertEquals(2L, summary.getAccepted());
+
+    String csv = webTestClient.get().uri("/orders")
+        .header("Content-Type", "text/csv")
+        .exchange()
+        .expectStatus().isOk()
+        .expectHeader().valueEquals("Content-Disposition", "attachment; filename=orders.csv")
+        .expectBody(String.class).returnResult().getResponseBody();
+
+    assertTrue(csv.startsWith("id,"));
+    assertTrue(csv.contains("1001,7,3,") && csv.contains("1002,8,5,"));
+
+    String approved = webTestClient.get().uri("/orders?status=approved&from=2022-03-02T00:00:00Z")
+        .header("Content-Type", "text/csv")
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody(String.class).returnResult().getResponseBody();
+
+    assertTrue(approved.contains("1002,8,5,") && !approved.contains("1001,"));
+  }
+
+  @Test
+  @DisplayName("compressed .csv should be imported and exported in coding of Accept-Encoding")
+  void compressedCsvTest() throws IOException {
+    String csv = CSV.replace("1001,", "2001,").replace("1002,", "2002,");
+    ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+    try (OutputStream out = new GZIPOutputStream(gzip)) {
+      out.write(csv.getBytes(StandardCharsets.UTF_8));
+    }
+    ImportSummary summary = webTestClient.post().uri("/orders")
+        .contentType(MediaType.parseMediaType("text/csv"))
+        .header("Content-Encoding", "gzip")
+        .bodyValue(gzip.toByteArray())
+        .exchange()
+        .expectStatus().isCreated()
+        .expectBody(ImportSummary.class).returnResult().getResponseBody();
+    assertEquals(2L, summary.getAccepted());
+
+    for (String coding : List.of("gzip", "zstd")) {
+      byte[] body = webTestClient.get().uri("/orders")
+          .header("Content-Type", "text/csv")
+          .header("Accept-Encoding", coding)
+          .exchange()
+          .expectStatus().isOk()
+          .expectHeader().valueEquals("Content-Encoding", coding)
+          .expectHeader().valueEquals("Vary", "Accept-Encoding")
+          .expectBody(byte[].class).returnResult().getResponseBody();
+
+      InputStream in = coding.equals("gzip")
+          ? new GZIPInputStream(new ByteArrayInputStream(body))
+          : new ZstdInputStream(new ByteArrayInputStream(body));
+      String exported = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+      assertTrue(exported.startsWith("id,"));
+      assertTrue(exported.contains("2001,7,3,") && exported.contains("2002,8,5,"));
+    }
+
+    byte[] filtered = webTestClient.get().uri("/orders?status=approved")
+        .header("Content-Type", "text/csv")
+        .header("Accept-Encoding", "gzip")
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody(byte[].class).returnResult().getResponseBody();
+    String approved = new String(
+        new GZIPInputStream(new ByteArrayInputStream(filtered)).readAllBytes(),
+        StandardCharsets.UTF_8);
+    assertTrue(approved.contains("2002,8,5,") && !approved.contains("2001,"));
+  }
+
+  @Test
+  @DisplayName("created order should be sent to subscriber of changes")
+  void changesTest() {
+    Flux<ServerSentEvent<String>> events = webTestClient.get().uri("/orders/changes")
+        .headers(headers -> headers.setBasicAuth("admin", "admin1"))
+        .accept(MediaType.TEXT_EVENT_STREAM)
+        .exchange()
+        .expectStatus().isOk()
+        .returnResult(new ParameterizedTypeReference<ServerSentEvent<String>>() {})
+        .getResponseBody();
+
+    Order created = webTestClient.post().uri("/orders")
+        .headers(headers -> headers.setBasicAuth("admin", "admin1"))
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(new NewOrder().productId(16L).quantity(4L))
+        .exchange()
+        .expectStatus().isCreated()
+        .expectBody(Order.class).returnResult().getResponseBody();
+
+    ServerSentEvent<String> event = events
+        .filter(sent -> "created".equals(sent.event()))
+        .filter(sent -> sent.data().contains("\"id\":" + created.getId() + ","))
+        .blockFirst(Duration.ofSeconds(10));
+    assertTrue(event != null && event.id() != null);
+  }
+
+  @Test
+  @DisplayName("security and errors should work like in servlet mode")
+  void errorsTest() {
+    webTestClient.get().uri("/orders/stats")
+        .exchange()
+        .expectStatus().isUnauthorized();
+
+    webTestClient.get().uri("/orders/stats")
+        .headers(headers -> headers.setBasicAuth("admin", "admin1"))
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody().jsonPath("$.total").exists();
+
+    webTestClient.put().uri("/orders/999999/approved")
+        .headers(headers -> headers.setBasicAuth("admin", "admin1"))
+        .exchange()
+        .expectStatus().isNotFound();
+
+    webTestClient.get().uri("/orders?status=lost")
+        .header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+        .exchange()
+        .expectStatus().isBadRequest();
+  }
+
+}
@@ -1,6 +1,7 @@
 package com.arwka.openapiedu.ui.controller.exceptions;
 
 import com.arwka.openapiedu.service.OrdersService;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.util.NoSuchElementException;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -11,6 +12,7 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
@@ -26,6 +28,9 @@ public class RestExceptionHandlerTest {
   @Autowired
   private MockMvc mockMvc;
 
+  @Autowired
+  private MeterRegistry meterRegistry;
+
   @MockBean
   OrdersService ordersService;
 
@@ -85,4 +90,23 @@ public class RestExceptionHandlerTest {
         .andExpect(jsonPath("$.title", is("Internal server error")));
   }
 
+  @Test
+  @DisplayName("Handled exceptions should be counted by handler")
+  void handledExceptionsCountTest() throws Exception {
+
+    when(ordersService.getOrdersWithoutParams())
+        .thenThrow(new IllegalStateException());
+    double before = meterRegistry.counter("orders.exceptions", "handler", "illegal_state")
+        .count();
+
+    for (int i = 0; i < 2; i++) {
+      mockMvc.perform(get("/orders")
+              .contentType(MediaType.APPLICATION_JSON))
+          .andExpect(status().isConflict());
+    }
+
+    assertEquals(before + 2, meterRegistry.counter("orders.exceptions", "handler",
+        "illegal_state").count());
+  }
+
 }